@@ -0,0 +1,81 @@
+package com.example.mehrdad.querymind;
+
+import com.example.mehrdad.querymind.support.StubChatModel;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end POST /api/query/convert-and-execute over HTTP against a zero-latency stub ChatModel, so the score is
+ * QueryMind's own overhead. The uncached variant sends a distinct question every call; both variants execute the
+ * query, since the result cache is switched off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConvertAndExecuteBenchmark {
+
+    @Configuration
+    static class StubLlm {
+        @Bean
+        @Primary
+        ChatModel stubChatModel() {
+            return new StubChatModel(Duration.ZERO, prompt -> "SELECT * FROM orders;");
+        }
+    }
+
+    @Param({"true", "false"})
+    boolean cached;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private URI uri;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(QueryMindApplication.class, StubLlm.class)
+                .properties("server.port=0", "llm.provider=gemini", "logging.level.root=WARN",
+                        // The stub always answers the same SQL, so every call after the first would be a result cache hit
+                        "querymind.cache.result.enabled=false")
+                .run();
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        uri = URI.create("http://localhost:" + port + "/api/query/convert-and-execute");
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public String convertAndExecute() throws Exception {
+        String text = cached ? "list all orders" : "list all orders " + sequence.incrementAndGet();
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"text\":\"" + text + "\"}"))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+}
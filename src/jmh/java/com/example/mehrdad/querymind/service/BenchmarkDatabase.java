@@ -0,0 +1,47 @@
+package com.example.mehrdad.querymind.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Generated H2 catalogs and a hand-wired DatabaseSchemaService for the JMH benchmarks
+ */
+final class BenchmarkDatabase {
+
+    private BenchmarkDatabase() {
+    }
+
+    static DataSource dataSource(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    /**
+     * Create tables t0..t(n-1), each with a foreign key to its predecessor
+     */
+    static void createChainedTables(JdbcTemplate jdbcTemplate, int tables) {
+        String[] ddl = new String[tables];
+        for (int i = 0; i < tables; i++) {
+            ddl[i] = "CREATE TABLE t" + i + " (id BIGINT PRIMARY KEY, name VARCHAR(100) NOT NULL, "
+                    + "amount DECIMAL(10,2), created_at TIMESTAMP"
+                    + (i > 0 ? ", parent_id BIGINT REFERENCES t" + (i - 1) + "(id)" : "") + ")";
+        }
+        jdbcTemplate.batchUpdate(ddl);
+    }
+
+    /**
+     * Schema service whose execution policy is wide enough that benchmarks measure full results, not truncation,
+     * and whose result cache is disabled so every call reaches the database
+     */
+    static DatabaseSchemaService schemaService(DataSource dataSource) {
+        ExecutionPolicy policy = new ExecutionPolicy(1_000_000, 1_000_000, DataSize.ofGigabytes(1), Duration.ofMinutes(5), 500);
+        return SchemaServiceFixture.schemaService(dataSource).executionPolicy(policy).statementCacheSize(256).build();
+    }
+
+    static void drop(DataSource dataSource) {
+        new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+    }
+}
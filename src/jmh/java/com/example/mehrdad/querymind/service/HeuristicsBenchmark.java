@@ -0,0 +1,45 @@
+package com.example.mehrdad.querymind.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The LLM-free paths: heuristic SQL generation (single table and multi-table joins) and response cleanup
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeuristicsBenchmark {
+
+    private static final String SCHEMA = String.join("\n",
+            "USERS (\n  ID BIGINT [PK],\n  NAME VARCHAR,\n  EMAIL VARCHAR,\n  AGE INTEGER\n)",
+            "PRODUCTS (\n  ID BIGINT [PK],\n  NAME VARCHAR,\n  PRICE DECIMAL,\n  CATEGORY VARCHAR\n)",
+            "ORDERS (\n  ID BIGINT [PK],\n  USER_ID BIGINT [FK->USERS.ID],\n  PRODUCT_ID BIGINT [FK->PRODUCTS.ID],\n  STATUS VARCHAR\n)",
+            "ORDER_ITEMS (\n  ID BIGINT [PK],\n  ORDER_ID BIGINT [FK->ORDERS.ID],\n  QUANTITY INTEGER\n)");
+
+    private final HeuristicSqlGenerator generator = new HeuristicSqlGenerator();
+
+    @Setup(Level.Trial)
+    public void warmModel() {
+        generator.generate("users", SCHEMA);
+    }
+
+    @Benchmark
+    public String singleTable() {
+        return generator.generate("How many users signed up this year?", SCHEMA);
+    }
+
+    @Benchmark
+    public String multiTableJoin() {
+        return generator.generate("show order items with the product and the user who ordered them", SCHEMA);
+    }
+
+    @Benchmark
+    public String cleanSqlQuery() {
+        return AIQueryService.cleanSqlQuery("```sql\nSELECT u.name, COUNT(*) AS cnt FROM users u GROUP BY u.name\n```");
+    }
+}
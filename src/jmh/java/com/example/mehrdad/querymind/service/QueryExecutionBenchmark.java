@@ -0,0 +1,46 @@
+package com.example.mehrdad.querymind.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row mapping in executeQuery: draining a result set of typical mixed columns into the response model
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryExecutionBenchmark {
+
+    @Param({"1000", "100000"})
+    int rows;
+
+    private DataSource dataSource;
+    private DatabaseSchemaService schemaService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDatabase.dataSource("execution_bench_" + rows);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE bench_rows (id BIGINT PRIMARY KEY, name VARCHAR(100), "
+                + "amount DECIMAL(10,2), quantity INT, created_at TIMESTAMP)");
+        jdbcTemplate.update("INSERT INTO bench_rows SELECT x, 'name-' || x, x * 1.25, MOD(x, 100), CURRENT_TIMESTAMP "
+                + "FROM SYSTEM_RANGE(1, ?)", rows);
+        schemaService = BenchmarkDatabase.schemaService(dataSource);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDatabase.drop(dataSource);
+    }
+
+    @Benchmark
+    public DatabaseSchemaService.QueryExecutionResult executeQuery() {
+        return schemaService.executeQuery("SELECT id, name, amount, quantity, created_at FROM bench_rows");
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.mehrdad.querymind.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schema access on generated catalogs: the steady-state snapshot reads every request makes, the full
+ * introspect-and-render cost of a refresh, and the two introspection strategies on their own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int tables;
+
+    private DataSource dataSource;
+    private DatabaseSchemaService schemaService;
+    private Connection connection;
+    private final SchemaIntrospector metadataIntrospector = new JdbcMetadataSchemaIntrospector();
+    private final SchemaIntrospector informationSchemaIntrospector = new H2InformationSchemaIntrospector();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDatabase.dataSource("schema_bench_" + tables);
+        BenchmarkDatabase.createChainedTables(new JdbcTemplate(dataSource), tables);
+        schemaService = BenchmarkDatabase.schemaService(dataSource);
+        schemaService.refreshSnapshot();
+        connection = dataSource.getConnection();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+        BenchmarkDatabase.drop(dataSource);
+    }
+
+    @Benchmark
+    public Map<String, List<DatabaseSchemaService.ColumnInfo>> getAllTables() {
+        return schemaService.getAllTables();
+    }
+
+    @Benchmark
+    public String getSchemaAsString() {
+        return schemaService.getSchemaAsString();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public SchemaSnapshot refreshSnapshot() {
+        return schemaService.refreshSnapshot();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Map<String, List<DatabaseSchemaService.ColumnInfo>> introspectWithMetadata() throws SQLException {
+        return metadataIntrospector.loadTables(connection);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Map<String, List<DatabaseSchemaService.ColumnInfo>> introspectWithInformationSchema() throws SQLException {
+        return informationSchemaIntrospector.loadTables(connection);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.mehrdad.querymind.config;
+
+import com.example.mehrdad.querymind.service.DataSourceRouter;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connection pools for QueryMind's own database work, separate from the application's primary pool. Introspection
+ * gets a small metadata pool on the primary. Generated queries get one read-only pool per configured replica, or
+ * a separately sized read pool on the primary when no replica is configured. With routing disabled everything
+ * goes through the primary data source as before. Hikari publishes hikaricp.* meters for each pool by name.
+ */
+@Configuration
+public class DataSourceRoutingConfig {
+
+    @Bean(destroyMethod = "close")
+    public DataSourceRouter dataSourceRouter(DataSource dataSource,
+                                             DataSourceProperties primary,
+                                             MeterRegistry meterRegistry,
+                                             @Value("${querymind.datasource.routing.enabled:true}") boolean enabled,
+                                             @Value("${querymind.datasource.metadata.max-pool-size:2}") int metadataPoolSize,
+                                             @Value("${querymind.datasource.metadata.max-queued:4}") int metadataMaxQueued,
+                                             @Value("${querymind.datasource.execution.max-pool-size:8}") int executionPoolSize,
+                                             @Value("${querymind.datasource.execution.max-queued:16}") int executionMaxQueued,
+                                             @Value("${querymind.datasource.connection-timeout:5s}") Duration connectionTimeout,
+                                             @Value("${querymind.datasource.replicas.urls:}") String replicaUrls,
+                                             @Value("${querymind.datasource.replicas.username:}") String replicaUsername,
+                                             @Value("${querymind.datasource.replicas.password:}") String replicaPassword) {
+        if (!enabled) {
+            return new DataSourceRouter(new DataSourceRouter.Pool("metadata", dataSource, Integer.MAX_VALUE, false),
+                    List.of(new DataSourceRouter.Pool("execution", dataSource, Integer.MAX_VALUE, false)), meterRegistry);
+        }
+
+        HikariDataSource metadata = pool("querymind-metadata", primary.determineUrl(), primary.determineUsername(),
+                primary.determinePassword(), metadataPoolSize, connectionTimeout, false, meterRegistry);
+        List<DataSourceRouter.Pool> execution = new ArrayList<>();
+        List<String> urls = replicaUrls.isBlank() ? List.of() : List.of(replicaUrls.split("\\s*,\\s*"));
+        if (urls.isEmpty()) {
+            execution.add(new DataSourceRouter.Pool("querymind-read", pool("querymind-read", primary.determineUrl(),
+                    primary.determineUsername(), primary.determinePassword(), executionPoolSize, connectionTimeout,
+                    true, meterRegistry), executionPoolSize + executionMaxQueued, true));
+        } else {
+            String username = replicaUsername.isBlank() ? primary.determineUsername() : replicaUsername;
+            String password = replicaUsername.isBlank() ? primary.determinePassword() : replicaPassword;
+            for (int i = 0; i < urls.size(); i++) {
+                String name = "querymind-replica-" + i;
+                execution.add(new DataSourceRouter.Pool(name, pool(name, urls.get(i), username, password,
+                        executionPoolSize, connectionTimeout, true, meterRegistry),
+                        executionPoolSize + executionMaxQueued, true));
+            }
+        }
+        return new DataSourceRouter(new DataSourceRouter.Pool("querymind-metadata", metadata,
+                metadataPoolSize + metadataMaxQueued, true), execution, meterRegistry);
+    }
+
+    static HikariDataSource pool(String name, String url, String username, String password, int maxPoolSize,
+                                 Duration connectionTimeout, boolean readOnly, MeterRegistry meterRegistry) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(name);
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(maxPoolSize);
+        config.setMinimumIdle(Math.min(2, maxPoolSize));
+        config.setConnectionTimeout(connectionTimeout.toMillis());
+        config.setReadOnly(readOnly);
+        config.setMetricRegistry(meterRegistry);
+        return new HikariDataSource(config);
+    }
+}
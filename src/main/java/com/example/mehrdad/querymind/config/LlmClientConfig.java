@@ -0,0 +1,93 @@
+package com.example.mehrdad.querymind.config;
+
+import com.example.mehrdad.querymind.service.ProviderBulkhead;
+import com.example.mehrdad.querymind.service.TokenBucket;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.theokanning.openai.client.OpenAiApi;
+import com.theokanning.openai.service.OpenAiService;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
+import retrofit2.converter.jackson.JacksonConverterFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared, long-lived LLM clients. The OpenAI client owns one OkHttp connection pool (keep-alive, HTTP/2 where
+ * the server negotiates it) instead of building a new client, pool and dispatcher for every request.
+ */
+@Configuration
+public class LlmClientConfig {
+
+    @Bean(destroyMethod = "shutdownExecutor")
+    @ConditionalOnExpression("'${openai.api.key:}' != ''")
+    public OpenAiService openAiService(@Value("${openai.api.key}") String apiKey,
+                                       @Value("${openai.api.base-url:https://api.openai.com/}") String baseUrl,
+                                       @Value("${openai.client.max-idle-connections:20}") int maxIdleConnections,
+                                       @Value("${openai.client.keep-alive:5m}") Duration keepAlive,
+                                       @Value("${openai.client.connect-timeout:5s}") Duration connectTimeout,
+                                       @Value("${openai.client.read-timeout:30s}") Duration readTimeout) {
+        return createOpenAiService(apiKey, baseUrl, maxIdleConnections, keepAlive, connectTimeout, readTimeout);
+    }
+
+    @Bean
+    public ProviderBulkhead openAiBulkhead(@Value("${openai.client.max-concurrency:32}") int maxConcurrency,
+                                           @Value("${openai.client.requests-per-second:0}") double requestsPerSecond,
+                                           @Value("${llm.client.acquire-timeout:10s}") Duration acquireTimeout) {
+        return new ProviderBulkhead("openai", maxConcurrency, acquireTimeout,
+                new TokenBucket(requestsPerSecond, (int) Math.ceil(requestsPerSecond)));
+    }
+
+    @Bean
+    public ProviderBulkhead geminiBulkhead(@Value("${gemini.client.max-concurrency:32}") int maxConcurrency,
+                                           @Value("${gemini.client.requests-per-second:0}") double requestsPerSecond,
+                                           @Value("${llm.client.acquire-timeout:10s}") Duration acquireTimeout) {
+        return new ProviderBulkhead("gemini", maxConcurrency, acquireTimeout,
+                new TokenBucket(requestsPerSecond, (int) Math.ceil(requestsPerSecond)));
+    }
+
+    public static OpenAiService createOpenAiService(String apiKey, String baseUrl, int maxIdleConnections,
+                                                    Duration keepAlive, Duration connectTimeout, Duration readTimeout) {
+        return createOpenAiService(createOpenAiClient(apiKey, maxIdleConnections, keepAlive, connectTimeout, readTimeout),
+                baseUrl);
+    }
+
+    /**
+     * The pooled HTTP client behind the shared OpenAI service
+     */
+    public static OkHttpClient createOpenAiClient(String apiKey, int maxIdleConnections, Duration keepAlive,
+                                                  Duration connectTimeout, Duration readTimeout) {
+        return new OkHttpClient.Builder()
+                .addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                        .header("Authorization", "Bearer " + apiKey)
+                        .build()))
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS))
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(connectTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * An OpenAI service over the given client; the library's own constructors always target the public API URL
+     */
+    public static OpenAiService createOpenAiService(OkHttpClient client, String baseUrl) {
+        ObjectMapper mapper = OpenAiService.defaultObjectMapper();
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client)
+                .addConverterFactory(JacksonConverterFactory.create(mapper))
+                .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
+                .build();
+
+        return new OpenAiService(retrofit.create(OpenAiApi.class), client.dispatcher().executorService());
+    }
+}
@@ -5,11 +5,41 @@ import com.example.mehrdad.querymind.dto.QueryRequest;
 import com.example.mehrdad.querymind.dto.QueryResponse;
 import com.example.mehrdad.querymind.dto.QueryResponseWithData;
 import com.example.mehrdad.querymind.service.AIQueryService;
+import com.example.mehrdad.querymind.service.AdaptiveLimiter;
+import com.example.mehrdad.querymind.service.AdmissionController;
+import com.example.mehrdad.querymind.service.AdmissionRejectedException;
+import com.example.mehrdad.querymind.service.BatchConversionService;
+import com.example.mehrdad.querymind.service.ColumnarResult;
+import com.example.mehrdad.querymind.service.ConversionCache;
+import com.example.mehrdad.querymind.service.ConversionTrace;
+import com.example.mehrdad.querymind.service.DataSourceRouter;
 import com.example.mehrdad.querymind.service.DatabaseSchemaService;
+import com.example.mehrdad.querymind.service.LlmProviderRouter;
+import com.example.mehrdad.querymind.service.PagedQueryService;
+import com.example.mehrdad.querymind.service.PoolSaturatedException;
+import com.example.mehrdad.querymind.service.QueryJobService;
+import com.example.mehrdad.querymind.service.QueryMetrics;
+import com.example.mehrdad.querymind.service.QueryPreflight;
+import com.example.mehrdad.querymind.service.ResultCache;
+import com.example.mehrdad.querymind.service.StatementCache;
+import com.example.mehrdad.querymind.service.SchemaSnapshot;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -20,79 +50,556 @@ public class QueryController {
 
     private final AIQueryService aiQueryService;
     private final DatabaseSchemaService databaseSchemaService;
+    private final BatchConversionService batchConversionService;
+    private final QueryJobService queryJobService;
+    private final PagedQueryService pagedQueryService;
+    private final QueryPreflight queryPreflight;
+    private final ConversionCache conversionCache;
+    private final ResultCache resultCache;
+    private final StatementCache statementCache;
+    private final DataSourceRouter dataSourceRouter;
+    private final AdmissionController admissionController;
+    private final LlmProviderRouter llmProviderRouter;
+    private final QueryMetrics queryMetrics;
+    private final ObjectMapper objectMapper;
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    @Value("${querymind.streaming.flush-rows:100}")
+    private int streamFlushRows;
 
     @PostMapping("/convert")
-    public ResponseEntity<QueryResponse> convertTextToQuery(@RequestBody QueryRequest request) {
+    public ResponseEntity<QueryResponse> convertTextToQuery(@RequestBody QueryRequest request, HttpServletRequest httpRequest) {
         if (request.getText() == null || request.getText().trim().isEmpty()) {
             return ResponseEntity.badRequest().body(
                 new QueryResponse(null, null, false, "Text cannot be empty")
             );
         }
 
-        QueryResponse response = aiQueryService.convertTextToQuery(
-            request.getText(),
-            request.getDatabaseSchema()
-        );
+        ConversionTrace trace = new ConversionTrace();
+        trace.setClient(AdmissionController.clientKey(httpRequest));
+        QueryResponse response = aiQueryService.convertTextToQuery(request.getText(), request.getDatabaseSchema(), trace);
+        queryMetrics.record(trace);
 
         return ResponseEntity.ok(response);
     }
 
     @PostMapping("/convert-and-execute")
-    public ResponseEntity<QueryResponseWithData> convertAndExecute(@RequestBody QueryRequest request) {
+    public ResponseEntity<QueryResponseWithData> convertAndExecute(@RequestBody QueryRequest request, HttpServletRequest httpRequest) {
         if (request.getText() == null || request.getText().trim().isEmpty()) {
             return ResponseEntity.badRequest().body(
-                new QueryResponseWithData(null, null, false, "Text cannot be empty", null, 0, false)
+                QueryResponseWithData.builder().success(false).error("Text cannot be empty").build()
             );
         }
 
-        // Use auto-detected schema if none provided
-        String schema = request.getDatabaseSchema();
-        if (schema == null || schema.trim().isEmpty()) {
-            schema = databaseSchemaService.getSchemaAsString();
-        }
-
-        // Generate SQL query
-        QueryResponse queryResponse = aiQueryService.convertTextToQuery(request.getText(), schema);
+        // Generate SQL query; the service falls back to the auto-detected schema snapshot if none is provided
+        ConversionTrace trace = new ConversionTrace();
+        trace.setClient(AdmissionController.clientKey(httpRequest));
+        // Validate and cost-check it before the database sees it, with one LLM repair if that fails
+        QueryPreflight.Outcome preflight = queryPreflight.review(request.getText(), request.getDatabaseSchema(),
+                aiQueryService.convertTextToQuery(request.getText(), request.getDatabaseSchema(), trace), trace);
+        QueryResponse queryResponse = preflight.response();
 
         if (!queryResponse.isSuccess()) {
-            return ResponseEntity.ok(new QueryResponseWithData(
-                queryResponse.getSqlQuery(),
-                queryResponse.getExplanation(),
-                false,
-                queryResponse.getError(),
-                null,
-                0,
-                false
-            ));
+            if (preflight.passed()) {
+                trace.setOutcome(ConversionTrace.OUTCOME_ERROR);
+            }
+            queryMetrics.record(trace);
+            return ResponseEntity.ok(QueryResponseWithData.builder()
+                .sqlQuery(queryResponse.getSqlQuery())
+                .explanation(queryResponse.getExplanation())
+                .success(false)
+                .error(queryResponse.getError())
+                .timings(request.isIncludeTimings() ? trace.toMillis() : null)
+                .warnings(preflight.warnings())
+                .build());
+        }
+
+        if (request.getPageSize() != null) {
+            return ResponseEntity.ok(executePaged(request, queryResponse, preflight.warnings(), trace));
         }
 
         // Execute the query
-        DatabaseSchemaService.QueryExecutionResult executionResult =
-            databaseSchemaService.executeQuery(queryResponse.getSqlQuery());
+        DatabaseSchemaService.QueryExecutionResult executionResult;
+        try (AdaptiveLimiter.Permit permit = trace.time("execution-admission",
+                () -> admissionController.acquireExecution(trace.getClient()))) {
+            executionResult = trace.time("execution",
+                () -> databaseSchemaService.executeQuery(queryResponse.getSqlQuery()));
+            if (executionResult.isCached()) {
+                // Served from the result cache: says nothing about how the database is coping
+                permit.skipSample();
+            }
+        }
+        trace.setRowCount(executionResult.getRowCount());
+        if (!executionResult.isSuccess()) {
+            trace.setOutcome(ConversionTrace.OUTCOME_ERROR);
+        }
 
         QueryResponseWithData response = new QueryResponseWithData();
         response.setSqlQuery(queryResponse.getSqlQuery());
         response.setExplanation(queryResponse.getExplanation());
         response.setSuccess(executionResult.isSuccess());
         response.setError(executionResult.getError());
-        response.setData(executionResult.getRows());
+        if ("rows".equalsIgnoreCase(request.getResultFormat())) {
+            response.setData(executionResult.getRows());
+        } else {
+            response.setResult(executionResult.getResult());
+        }
         response.setRowCount(executionResult.getRowCount());
         response.setExecuted(true);
+        response.setTruncated(executionResult.isTruncated());
+        response.setTruncationReason(executionResult.getTruncationReason());
+        response.setWarnings(preflight.warnings());
+        if (request.isIncludeTimings()) {
+            response.setTimings(trace.toMillis());
+        }
+        queryMetrics.record(trace);
 
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * First page of a paged convert-and-execute; the rest is read through GET /pages/{cursor}
+     */
+    private QueryResponseWithData executePaged(QueryRequest request, QueryResponse queryResponse, List<String> warnings,
+                                               ConversionTrace trace) {
+        QueryResponseWithData response = new QueryResponseWithData();
+        response.setSqlQuery(queryResponse.getSqlQuery());
+        response.setExplanation(queryResponse.getExplanation());
+        response.setExecuted(true);
+        response.setWarnings(warnings);
+        try (AdaptiveLimiter.Permit permit = trace.time("execution-admission",
+                () -> admissionController.acquireExecution(trace.getClient()))) {
+            PagedQueryService.Page page = trace.time("execution",
+                () -> pagedQueryService.open(queryResponse.getSqlQuery(), request.getPageSize()));
+            response.setSuccess(true);
+            if ("rows".equalsIgnoreCase(request.getResultFormat())) {
+                response.setData(page.result().toRowMaps());
+            } else {
+                response.setResult(page.result());
+            }
+            response.setRowCount(page.rowCount());
+            response.setCursor(page.cursor());
+            response.setHasMore(page.hasMore());
+            response.setPagination(page.mode());
+            response.setTruncated(page.truncationReason() != null);
+            response.setTruncationReason(page.truncationReason());
+        } catch (AdmissionRejectedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            trace.setOutcome(ConversionTrace.OUTCOME_ERROR);
+            response.setSuccess(false);
+            response.setError(e.getMessage());
+        }
+        trace.setRowCount(response.getRowCount());
+        if (request.isIncludeTimings()) {
+            response.setTimings(trace.toMillis());
+        }
+        queryMetrics.record(trace);
+        return response;
+    }
+
+    @PostMapping(value = "/convert-and-execute/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> convertAndExecuteStream(@RequestBody QueryRequest request,
+                                                                         HttpServletRequest httpRequest) {
+        if (request.getText() == null || request.getText().trim().isEmpty()) {
+            StreamingResponseBody error = out -> {
+                JsonGenerator json = ndjsonGenerator(out);
+                writeEnd(json, false, "Text cannot be empty", 0, null);
+                json.close();
+            };
+            return ResponseEntity.badRequest().body(error);
+        }
+
+        ConversionTrace trace = new ConversionTrace();
+        trace.setClient(AdmissionController.clientKey(httpRequest));
+        QueryPreflight.Outcome preflight = queryPreflight.review(request.getText(), request.getDatabaseSchema(),
+                aiQueryService.convertTextToQuery(request.getText(), request.getDatabaseSchema(), trace), trace);
+        QueryResponse queryResponse = preflight.response();
+
+        StreamingResponseBody body = out -> {
+            // Admitted before anything is written, so a rejection can still be answered with a 429
+            AdaptiveLimiter.Permit permit = queryResponse.isSuccess()
+                ? trace.time("execution-admission", () -> admissionController.acquireExecution(trace.getClient()))
+                : null;
+            try (permit) {
+                JsonGenerator json = ndjsonGenerator(out);
+                json.writeStartObject();
+                json.writeStringField("type", "header");
+                json.writeStringField("sqlQuery", queryResponse.getSqlQuery());
+                json.writeStringField("explanation", queryResponse.getExplanation());
+                if (!preflight.warnings().isEmpty()) {
+                    json.writeArrayFieldStart("warnings");
+                    for (String warning : preflight.warnings()) {
+                        json.writeString(warning);
+                    }
+                    json.writeEndArray();
+                }
+                json.writeEndObject();
+                json.writeRaw('\n');
+                json.flush();
+
+                if (!queryResponse.isSuccess()) {
+                    if (preflight.passed()) {
+                        trace.setOutcome(ConversionTrace.OUTCOME_ERROR);
+                    }
+                    writeEnd(json, false, queryResponse.getError(), 0, null);
+                } else {
+                    // The stream lasts as long as the client takes to read it, which says nothing about the database
+                    permit.skipSample();
+                    try {
+                        DatabaseSchemaService.QueryExecutionResult executionResult = trace.time("execution",
+                            () -> databaseSchemaService.streamQuery(queryResponse.getSqlQuery(), new NdjsonRowWriter(json, streamFlushRows)));
+                        trace.setRowCount(executionResult.getRowCount());
+                        if (!executionResult.isSuccess()) {
+                            trace.setOutcome(ConversionTrace.OUTCOME_ERROR);
+                        }
+                        writeEnd(json, executionResult.isSuccess(), executionResult.getError(), executionResult.getRowCount(),
+                            executionResult.getTruncationReason());
+                    } catch (PoolSaturatedException e) {
+                        // The header line is out, so the status can no longer say so
+                        trace.setOutcome(ConversionTrace.OUTCOME_ERROR);
+                        writeEnd(json, false, e.getMessage(), 0, null);
+                    }
+                }
+                json.close();
+                queryMetrics.record(trace);
+            }
+        };
+
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    /**
+     * Convert a list of requests against one schema snapshot. Streams one NDJSON "item" line per request as it
+     * finishes (in completion order, carrying the request index), then an "end" line with the totals.
+     */
+    @PostMapping(value = "/convert-batch", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> convertBatch(@RequestBody List<QueryRequest> requests) {
+        if (requests == null || requests.isEmpty() || requests.size() > batchConversionService.getMaxBatchSize()) {
+            String message = requests == null || requests.isEmpty()
+                ? "Batch cannot be empty"
+                : "Batch size " + requests.size() + " exceeds the limit of " + batchConversionService.getMaxBatchSize();
+            StreamingResponseBody error = out -> {
+                JsonGenerator json = ndjsonGenerator(out);
+                writeEnd(json, false, message, 0, null);
+                json.close();
+            };
+            return ResponseEntity.badRequest().contentType(MediaType.parseMediaType(NDJSON)).body(error);
+        }
+
+        StreamingResponseBody body = out -> {
+            JsonGenerator json = ndjsonGenerator(out);
+            int[] succeeded = {0};
+            try {
+                batchConversionService.convertAll(requests, item -> {
+                    if (item.response().isSuccess()) {
+                        succeeded[0]++;
+                    }
+                    try {
+                        writeBatchItem(json, item);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Batch conversion interrupted", e);
+            }
+            json.writeStartObject();
+            json.writeStringField("type", "end");
+            json.writeNumberField("total", requests.size());
+            json.writeNumberField("succeeded", succeeded[0]);
+            json.writeNumberField("failed", requests.size() - succeeded[0]);
+            json.writeEndObject();
+            json.writeRaw('\n');
+            json.close();
+        };
+
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    private static void writeBatchItem(JsonGenerator json, BatchConversionService.ItemResult item) throws IOException {
+        QueryResponse response = item.response();
+        json.writeStartObject();
+        json.writeStringField("type", "item");
+        json.writeNumberField("index", item.index());
+        json.writeBooleanField("success", response.isSuccess());
+        json.writeStringField("sqlQuery", response.getSqlQuery());
+        json.writeStringField("explanation", response.getExplanation());
+        if (response.getError() != null) {
+            json.writeStringField("error", response.getError());
+        }
+        json.writeNumberField("elapsedMs", item.elapsedMillis());
+        json.writeEndObject();
+        json.writeRaw('\n');
+        json.flush();
+    }
+
+    private JsonGenerator ndjsonGenerator(OutputStream out) throws IOException {
+        JsonGenerator json = objectMapper.createGenerator(out);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        json.setRootValueSeparator(null);
+        return json;
+    }
+
+    private static void writeEnd(JsonGenerator json, boolean success, String error, int rowCount,
+                                 String truncationReason) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("type", "end");
+        json.writeBooleanField("success", success);
+        if (error != null) {
+            json.writeStringField("error", error);
+        }
+        json.writeNumberField("rowCount", rowCount);
+        if (truncationReason != null) {
+            json.writeBooleanField("truncated", true);
+            json.writeStringField("truncationReason", truncationReason);
+        }
+        json.writeEndObject();
+        json.writeRaw('\n');
+        json.flush();
+    }
+
+    /**
+     * Writes the column descriptions once, then each row as a JSON array on its own line, flushing every few rows
+     * so the servlet output applies backpressure
+     */
+    private static final class NdjsonRowWriter implements DatabaseSchemaService.RowHandler {
+        private final JsonGenerator json;
+        private final int flushRows;
+        private int pending;
+
+        NdjsonRowWriter(JsonGenerator json, int flushRows) {
+            this.json = json;
+            this.flushRows = Math.max(1, flushRows);
+        }
+
+        @Override
+        public void onColumns(List<ColumnarResult.Column> columns) throws IOException {
+            json.writeStartObject();
+            json.writeStringField("type", "columns");
+            json.writeArrayFieldStart("columns");
+            for (ColumnarResult.Column column : columns) {
+                json.writeStartObject();
+                json.writeStringField("name", column.getName());
+                json.writeStringField("type", column.getType());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+
+        @Override
+        public void onRow(Object[] values) throws IOException {
+            json.writeStartArray();
+            for (Object value : values) {
+                json.writeObject(value);
+            }
+            json.writeEndArray();
+            json.writeRaw('\n');
+            if (++pending >= flushRows) {
+                json.flush();
+                pending = 0;
+            }
+        }
+    }
+
     @GetMapping("/schema")
     public ResponseEntity<DatabaseSchemaResponse> getDatabaseSchema() {
-        Map<String, java.util.List<DatabaseSchemaService.ColumnInfo>> tables =
-            databaseSchemaService.getAllTables();
+        return ResponseEntity.ok(toSchemaResponse(databaseSchemaService.getSnapshot()));
+    }
+
+    @PostMapping("/schema/refresh")
+    public ResponseEntity<DatabaseSchemaResponse> refreshDatabaseSchema() {
+        return ResponseEntity.ok(toSchemaResponse(databaseSchemaService.refreshSnapshot()));
+    }
 
+    private DatabaseSchemaResponse toSchemaResponse(SchemaSnapshot snapshot) {
         DatabaseSchemaResponse response = new DatabaseSchemaResponse();
-        response.setTables(tables);
-        response.setTableCount(tables.size());
-        response.setSchemaString(databaseSchemaService.getSchemaAsString());
+        response.setTables(snapshot.getTables());
+        response.setTableCount(snapshot.getTables().size());
+        response.setSchemaString(snapshot.getSchemaString());
+        response.setSchemaVersion(snapshot.getVersion());
+        response.setFingerprint(snapshot.getFingerprint());
+        return response;
+    }
 
-        return ResponseEntity.ok(response);
+    /**
+     * Run convert-and-execute in the background; poll the returned job for progress and page through its rows
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> submitJob(@RequestBody QueryRequest request) {
+        if (request.getText() == null || request.getText().trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Text cannot be empty"));
+        }
+        try {
+            QueryJobService.Job job = queryJobService.submit(request.getText(), request.getDatabaseSchema());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.status());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> jobStats() {
+        return ResponseEntity.ok(queryJobService.stats());
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> jobStatus(@PathVariable String id) {
+        return queryJobService.get(id)
+            .map(job -> ResponseEntity.ok(job.status()))
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/jobs/{id}/results")
+    public ResponseEntity<Map<String, Object>> jobResults(@PathVariable String id,
+                                                          @RequestParam(defaultValue = "0") int offset,
+                                                          @RequestParam(defaultValue = "1000") int limit) throws IOException {
+        QueryJobService.Job job = queryJobService.get(id).orElse(null);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            List<Object> rows = queryJobService.page(job, offset, limit);
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("jobId", job.getId());
+            body.put("offset", offset);
+            body.put("rowCount", job.getRowCount());
+            body.put("columns", job.getColumns());
+            body.put("rows", rows);
+            body.put("hasMore", offset + rows.size() < job.getRowCount());
+            return ResponseEntity.ok(body);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Cancel a job; a running query is stopped through JDBC Statement.cancel()
+     */
+    @DeleteMapping("/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> cancelJob(@PathVariable String id) {
+        QueryJobService.Job job = queryJobService.get(id).orElse(null);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!queryJobService.cancel(job)) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(job.status());
+        }
+        return ResponseEntity.ok(job.status());
+    }
+
+    /**
+     * Next page of a paged execution; 404 once the cursor was read to the end, closed or expired
+     */
+    @GetMapping("/pages/{cursor}")
+    public ResponseEntity<Map<String, Object>> nextPage(@PathVariable String cursor,
+                                                        @RequestParam(defaultValue = "columnar") String resultFormat,
+                                                        HttpServletRequest httpRequest) {
+        try (AdaptiveLimiter.Permit permit = admissionController.acquireExecution(AdmissionController.clientKey(httpRequest))) {
+            return pagedQueryService.next(cursor)
+                .map(page -> ResponseEntity.ok(pageBody(page, resultFormat)))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Cursor not found; it was read to the end, closed or expired")));
+        } catch (AdmissionRejectedException e) {
+            throw e;
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Release a cursor that will not be read to the end, e.g. a held cursor's connection
+     */
+    @DeleteMapping("/pages/{cursor}")
+    public ResponseEntity<Void> closeCursor(@PathVariable String cursor) {
+        return pagedQueryService.close(cursor) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+    }
+
+    @GetMapping("/pages")
+    public ResponseEntity<Map<String, Object>> pageStats() {
+        return ResponseEntity.ok(pagedQueryService.stats());
+    }
+
+    private static Map<String, Object> pageBody(PagedQueryService.Page page, String resultFormat) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("cursor", page.cursor());
+        body.put("pagination", page.mode());
+        if ("rows".equalsIgnoreCase(resultFormat)) {
+            body.put("data", page.result().toRowMaps());
+        } else {
+            body.put("result", page.result());
+        }
+        body.put("rowCount", page.rowCount());
+        body.put("hasMore", page.hasMore());
+        body.put("truncated", page.truncationReason() != null);
+        body.put("truncationReason", page.truncationReason());
+        return body;
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("conversion", conversionCache.stats());
+        stats.put("coalescing", aiQueryService.coalescingStats());
+        stats.put("result", resultCache.stats());
+        stats.put("statements", statementCache.stats());
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Signal that a table was written to; cached results that read it are dropped
+     */
+    @PostMapping("/cache/tables/{table}/bump")
+    public ResponseEntity<Map<String, Object>> bumpTable(@PathVariable String table) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("table", table);
+        body.put("invalidated", resultCache.bumpTable(table));
+        return ResponseEntity.ok(body);
+    }
+
+    @GetMapping("/providers")
+    public ResponseEntity<Map<String, Object>> providers() {
+        return ResponseEntity.ok(llmProviderRouter.stats());
+    }
+
+    @GetMapping("/datasources")
+    public ResponseEntity<Map<String, Object>> dataSources() {
+        return ResponseEntity.ok(dataSourceRouter.stats());
+    }
+
+    @GetMapping("/admission")
+    public ResponseEntity<Map<String, Object>> admission() {
+        return ResponseEntity.ok(admissionController.stats());
+    }
+
+    /**
+     * Overloaded stage: 429 with a Retry-After hint instead of queueing the request indefinitely
+     */
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<Map<String, Object>> admissionRejected(AdmissionRejectedException e) {
+        return rejection(HttpStatus.TOO_MANY_REQUESTS, e);
+    }
+
+    @ExceptionHandler(PoolSaturatedException.class)
+    public ResponseEntity<Map<String, Object>> poolSaturated(PoolSaturatedException e) {
+        return rejection(HttpStatus.SERVICE_UNAVAILABLE, e);
+    }
+
+    private static ResponseEntity<Map<String, Object>> rejection(HttpStatus status, AdmissionRejectedException e) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("success", false);
+        body.put("error", e.getMessage());
+        body.put("stage", e.getStage());
+        body.put("retryAfterSeconds", e.getRetryAfter().toSeconds());
+        return ResponseEntity.status(status)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+            .body(body);
     }
 
     @GetMapping("/health")
@@ -15,5 +15,7 @@ public class DatabaseSchemaResponse {
     private Map<String, List<DatabaseSchemaService.ColumnInfo>> tables;
     private int tableCount;
     private String schemaString;
+    private long schemaVersion;
+    private String fingerprint;
 }
 
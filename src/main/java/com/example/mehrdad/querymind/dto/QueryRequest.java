@@ -6,5 +6,11 @@ import lombok.Data;
 public class QueryRequest {
     private String text;
     private String databaseSchema;
+    // "columnar" (default) or "rows" for the legacy list-of-maps data field
+    private String resultFormat;
+    // When true the response carries a per-stage timing breakdown in milliseconds
+    private boolean includeTimings;
+    // When set, convert-and-execute returns only the first page of this many rows plus a cursor for the next one
+    private Integer pageSize;
 }
 
@@ -1,6 +1,9 @@
 package com.example.mehrdad.querymind.dto;
 
+import com.example.mehrdad.querymind.service.ColumnarResult;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
+import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -8,6 +11,7 @@ import java.util.List;
 import java.util.Map;
 
 @Data
+@Builder
 @AllArgsConstructor
 @NoArgsConstructor
 public class QueryResponseWithData {
@@ -15,8 +19,30 @@ public class QueryResponseWithData {
     private String explanation;
     private boolean success;
     private String error;
+    // Legacy list-of-maps rows, only populated when the request asks for resultFormat "rows"
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<Map<String, Object>> data;
     private int rowCount;
     private boolean executed;
+    // Compact columnar rows: {"columns":[...],"rows":[[...],...]}
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ColumnarResult result;
+    // Per-stage milliseconds (schema, prompt, llm, cleanup, execution, ..., total) when the request sets includeTimings
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Double> timings;
+    // Set when the execution policy stopped reading before the end of the result (row or byte budget)
+    private boolean truncated;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String truncationReason;
+    // Paged execution: cursor for GET /api/query/pages/{cursor}, null once the last page has been served
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String cursor;
+    private boolean hasMore;
+    // "keyset" or "held-cursor" for paged executions
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String pagination;
+    // Problems the pre-execution checks let through (non-key joins, expensive plans)
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<String> warnings;
 }
 
@@ -1,53 +1,116 @@
 package com.example.mehrdad.querymind.service;
 
 import com.example.mehrdad.querymind.dto.QueryResponse;
-import com.theokanning.openai.completion.chat.ChatCompletionRequest;
-import com.theokanning.openai.completion.chat.ChatMessage;
-import com.theokanning.openai.service.OpenAiService;
-import org.springframework.ai.chat.model.ChatModel;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.time.Duration;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Supplier;
 
 @Service
 public class AIQueryService {
 
-    @Value("${llm.provider:openai}")
-    private String llmProvider;
-
-    @Value("${openai.api.key:}")
-    private String openaiApiKey;
+    private static final String SYSTEM_PROMPT = "You are an expert SQL assistant. Convert natural language queries to optimized, syntactically correct SQL for the provided relational schema. " +
+            "Schema format: TABLE (column TYPE [annotations]) where annotations can indicate PK primary keys and FK foreign key relationships, " +
+            "or compact TABLE(column type PK,...) lines followed by FK CHILD.column->PARENT.column lines; a trailing ... means columns were omitted. " +
+            "When multiple tables are referenced, infer JOINs using foreign key relationships. Prefer explicit JOIN syntax. " +
+            "Return ONLY the SQL query (single statement) ending with a semicolon. Do not include backticks, markdown, or explanations.";
 
     private final DatabaseSchemaService databaseSchemaService;
-    private final ChatModel vertexAiGeminiChatModel;
+    private final LlmProviderRouter llmProviderRouter;
+    private final ConversionCache conversionCache;
+    private final SchemaRelevanceSelector schemaRelevanceSelector;
+    private final HeuristicSqlGenerator heuristicSqlGenerator;
+    private final QueryMetrics queryMetrics;
+    private final AdmissionController admissionController;
+    private final SingleFlight<ConversionCache.Key, QueryResponse> inFlightConversions = new SingleFlight<>();
 
     public AIQueryService(DatabaseSchemaService databaseSchemaService,
-                         @org.springframework.beans.factory.annotation.Autowired(required = false) ChatModel vertexAiGeminiChatModel) {
+                         LlmProviderRouter llmProviderRouter,
+                         ConversionCache conversionCache,
+                         SchemaRelevanceSelector schemaRelevanceSelector,
+                         HeuristicSqlGenerator heuristicSqlGenerator,
+                         QueryMetrics queryMetrics,
+                         AdmissionController admissionController) {
         this.databaseSchemaService = databaseSchemaService;
-        this.vertexAiGeminiChatModel = vertexAiGeminiChatModel;
+        this.llmProviderRouter = llmProviderRouter;
+        this.conversionCache = conversionCache;
+        this.schemaRelevanceSelector = schemaRelevanceSelector;
+        this.heuristicSqlGenerator = heuristicSqlGenerator;
+        this.queryMetrics = queryMetrics;
+        this.admissionController = admissionController;
     }
 
     public QueryResponse convertTextToQuery(String text, String databaseSchema) {
+        ConversionTrace trace = new ConversionTrace();
+        QueryResponse response = convertTextToQuery(text, databaseSchema, trace);
+        queryMetrics.record(trace);
+        return response;
+    }
+
+    /**
+     * Convert while recording stage timings, provider and outcome into the caller's trace; the caller
+     * publishes the trace once the request (including any execution) is finished
+     */
+    public QueryResponse convertTextToQuery(String text, String databaseSchema, ConversionTrace trace) {
+        return convertTextToQuery(text, databaseSchema, null, trace);
+    }
+
+    /**
+     * Convert against a snapshot the caller resolved up front (e.g. once for a whole batch); used whenever the
+     * request carries no schema of its own
+     */
+    public QueryResponse convertTextToQuery(String text, String databaseSchema, SchemaSnapshot pinnedSnapshot) {
+        ConversionTrace trace = new ConversionTrace();
+        QueryResponse response = convertTextToQuery(text, databaseSchema, pinnedSnapshot, trace);
+        queryMetrics.record(trace);
+        return response;
+    }
+
+    private QueryResponse convertTextToQuery(String text, String databaseSchema, SchemaSnapshot pinnedSnapshot,
+                                             ConversionTrace trace) {
+        SchemaSnapshot snapshot = null;
         try {
             String effectiveSchema = databaseSchema;
             if (effectiveSchema == null || effectiveSchema.trim().isEmpty()) {
                 // Auto-detect current DB schema
-                effectiveSchema = databaseSchemaService.getSchemaAsString();
+                snapshot = pinnedSnapshot != null ? pinnedSnapshot : trace.time("schema", databaseSchemaService::getSnapshot);
+                effectiveSchema = snapshot.getSchemaString();
+            }
+
+            // Looked up under the provider routing would try first; answers are stored under the one that gave them
+            ConversionCache.Key cacheKey = cacheKey(text, snapshot, effectiveSchema,
+                    llmProviderRouter.getLeadingProvider().getName());
+            Optional<ConversionCache.Entry> cached = conversionCache.get(cacheKey);
+            if (cached.isPresent()) {
+                trace.setOutcome(ConversionTrace.OUTCOME_CACHE);
+                return new QueryResponse(
+                        cached.get().sqlQuery(),
+                        cached.get().explanation() + " (served from cache)",
+                        true,
+                        null
+                );
             }
 
-            // Check which provider to use based on feature flag
-            if ("gemini".equalsIgnoreCase(llmProvider)) {
-                return convertTextToQueryWithGemini(text, effectiveSchema);
-            } else {
-                return convertTextToQueryWithOpenAI(text, effectiveSchema);
+            // Identical questions arriving while one is already being generated share its result
+            SchemaSnapshot resolvedSnapshot = snapshot;
+            String resolvedSchema = effectiveSchema;
+            long waitStart = System.nanoTime();
+            QueryResponse shared = joinFlight(cacheKey,
+                    () -> generateAndCache(text, resolvedSnapshot, resolvedSchema, cacheKey, trace));
+            if (trace.getOutcome() == null) {
+                trace.record("coalesced-wait", System.nanoTime() - waitStart);
+                trace.setOutcome(ConversionTrace.OUTCOME_COALESCED);
             }
+            return new QueryResponse(shared.getSqlQuery(), shared.getExplanation(), shared.isSuccess(), shared.getError());
 
+        } catch (AdmissionRejectedException e) {
+            // Overload is reported to the caller rather than hidden behind a heuristic answer
+            trace.setOutcome(ConversionTrace.OUTCOME_REJECTED);
+            throw e;
         } catch (Exception e) {
-            String fallback = generateBasicQuery(text, databaseSchema);
+            SchemaSnapshot fallbackSnapshot = snapshot;
+            String fallback = trace.time("heuristic", () -> generateBasicQuery(text, fallbackSnapshot, databaseSchema));
+            trace.setOutcome(ConversionTrace.OUTCOME_HEURISTIC);
             return new QueryResponse(
                     fallback,
                     "Fallback to heuristic generation due to error: " + e.getMessage(),
@@ -57,92 +120,168 @@ public class AIQueryService {
         }
     }
 
-    private QueryResponse convertTextToQueryWithOpenAI(String text, String effectiveSchema) {
-        try {
-            if (openaiApiKey == null || openaiApiKey.isEmpty()) {
-                String sql = generateBasicQuery(text, effectiveSchema);
-                return new QueryResponse(
-                    sql,
-                    "Generated using heuristic pattern matching (OpenAI API key not configured)",
-                    true,
-                    null
-                );
+    /**
+     * Run or join the in-flight conversion for the key. Admission is charged to whichever client leads, so a
+     * follower whose leader was rejected tries again (leading under its own quota if nobody else does) instead of
+     * sharing the other client's 429.
+     */
+    private QueryResponse joinFlight(ConversionCache.Key cacheKey, Supplier<QueryResponse> generate) {
+        while (true) {
+            boolean[] led = {false};
+            try {
+                return inFlightConversions.execute(cacheKey, () -> {
+                    led[0] = true;
+                    return generate.get();
+                });
+            } catch (AdmissionRejectedException e) {
+                if (led[0]) {
+                    throw e;
+                }
             }
+        }
+    }
 
-            OpenAiService service = new OpenAiService(openaiApiKey, Duration.ofSeconds(30));
-
-            String systemPrompt = "You are an expert SQL assistant. Convert natural language queries to optimized, syntactically correct SQL for the provided relational schema. " +
-                    "Schema format: TABLE (column TYPE [annotations]) where annotations can indicate PK primary keys and FK foreign key relationships. " +
-                    "When multiple tables are referenced, infer JOINs using foreign key relationships. Prefer explicit JOIN syntax. " +
-                    "Return ONLY the SQL query (single statement) ending with a semicolon. Do not include backticks, markdown, or explanations.";
-
-            String userPrompt = buildUserPrompt(text, effectiveSchema);
-
-            List<ChatMessage> messages = new ArrayList<>();
-            messages.add(new ChatMessage("system", systemPrompt));
-            messages.add(new ChatMessage("user", userPrompt));
-
-            ChatCompletionRequest completionRequest = ChatCompletionRequest.builder()
-                    .model("gpt-3.5-turbo")
-                    .messages(messages)
-                    .temperature(0.2)
-                    .maxTokens(400)
-                    .build();
-
-            String sqlQuery = service.createChatCompletion(completionRequest)
-                    .getChoices().get(0).getMessage().getContent().trim();
-
-            sqlQuery = cleanSqlQuery(sqlQuery);
-
-            return new QueryResponse(
-                    sqlQuery,
-                    "Generated using OpenAI GPT-3.5 with auto-detected schema",
+    private QueryResponse generateAndCache(String text, SchemaSnapshot snapshot, String effectiveSchema,
+                                           ConversionCache.Key cacheKey, ConversionTrace trace) {
+        // Send only the relevant part of an auto-detected schema to the LLM
+        SchemaRelevanceSelector.PromptSchema promptSchema = snapshot != null
+                ? trace.time("schema", () -> schemaRelevanceSelector.select(text, snapshot))
+                : null;
+        String promptSchemaText = promptSchema != null ? promptSchema.schemaText() : effectiveSchema;
+
+        boolean llmConfigured = llmProviderRouter.hasAvailableProvider();
+        QueryResponse response;
+        if (llmConfigured) {
+            response = convertTextToQueryWithLlm(text, promptSchemaText, trace);
+        } else {
+            response = new QueryResponse(
+                    trace.time("heuristic", () -> generateBasicQuery(text, snapshot, effectiveSchema)),
+                    "Generated using heuristic pattern matching (" + llmProviderRouter.getPreferredProvider().getUnavailableReason() + ")",
                     true,
                     null
             );
+            trace.setOutcome(ConversionTrace.OUTCOME_HEURISTIC);
+        }
 
-        } catch (Exception e) {
-            throw new RuntimeException("OpenAI API error: " + e.getMessage(), e);
+        if (llmConfigured && promptSchema != null && promptSchema.pruned()) {
+            response.setExplanation(response.getExplanation() + String.format(
+                    " (schema pruned to %d of %d tables, ~%d prompt tokens saved)",
+                    promptSchema.tables().size(), promptSchema.totalTables(), promptSchema.tokensSaved()));
         }
+        // Only LLM answers are worth caching; heuristic output is cheap and should not outlive an outage
+        if (llmConfigured && response.isSuccess()) {
+            Set<String> tables = snapshot != null ? snapshot.referencedTables(response.getSqlQuery()) : Set.of();
+            ConversionCache.Key answeredKey = ConversionCache.key(text, trace.getProvider(), cacheKey.schemaFingerprint());
+            // Kept in memory only; it reaches the persistent store once it has passed the pre-execution checks
+            conversionCache.putInMemory(answeredKey, new ConversionCache.Entry(response.getSqlQuery(), response.getExplanation(), tables));
+        }
+        return response;
     }
 
-    private QueryResponse convertTextToQueryWithGemini(String text, String effectiveSchema) {
+    /**
+     * One more LLM attempt at a conversion whose SQL failed the pre-execution checks, with the rejected statement
+     * and the problems found added to the prompt. Empty when no provider is available or the attempt fails, in
+     * which case the caller reports the original problems; an admission rejection counts as a failed attempt.
+     */
+    public Optional<QueryResponse> repairQuery(String text, String databaseSchema, String sql, List<String> problems,
+                                               ConversionTrace trace) {
+        if (!llmProviderRouter.hasAvailableProvider()) {
+            return Optional.empty();
+        }
         try {
-            if (vertexAiGeminiChatModel == null) {
-                String sql = generateBasicQuery(text, effectiveSchema);
-                return new QueryResponse(
-                    sql,
-                    "Generated using heuristic pattern matching (Gemini is not configured)",
+            String schema = databaseSchema;
+            if (schema == null || schema.trim().isEmpty()) {
+                SchemaSnapshot snapshot = databaseSchemaService.getSnapshot();
+                schema = trace.time("schema", () -> schemaRelevanceSelector.select(text, snapshot).schemaText());
+            }
+            String userPrompt = buildRepairPrompt(text, schema, sql, problems);
+            LlmProviderRouter.Routed routed;
+            try (AdaptiveLimiter.Permit permit = trace.time("llm-admission", () -> admissionController.acquireLlm(trace.getClient()))) {
+                try {
+                    routed = trace.time("repair", () -> llmProviderRouter.route(SYSTEM_PROMPT, userPrompt, AIQueryService::cleanSqlQuery));
+                } catch (RuntimeException e) {
+                    permit.markDropped();
+                    throw e;
+                }
+            }
+            trace.setProvider(routed.provider().getName());
+            return Optional.of(new QueryResponse(
+                    routed.sql(),
+                    "Generated using " + routed.provider().getDescription() + ", repaired after pre-execution checks found: "
+                            + String.join("; ", problems),
                     true,
                     null
-                );
-            }
+            ));
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+    }
 
-            String systemPrompt = "You are an expert SQL assistant. Convert natural language queries to optimized, syntactically correct SQL for the provided relational schema. " +
-                    "Schema format: TABLE (column TYPE [annotations]) where annotations can indicate PK primary keys and FK foreign key relationships. " +
-                    "When multiple tables are referenced, infer JOINs using foreign key relationships. Prefer explicit JOIN syntax. " +
-                    "Return ONLY the SQL query (single statement) ending with a semicolon. Do not include backticks, markdown, or explanations.";
+    /**
+     * Cache a repaired conversion, under the provider that repaired it, in place of the one that failed the
+     * pre-execution checks
+     */
+    public void rememberRepair(String text, String databaseSchema, QueryResponse repaired, String provider) {
+        forgetConversion(text, databaseSchema);
+        SchemaSnapshot snapshot = databaseSchema == null || databaseSchema.trim().isEmpty() ? databaseSchemaService.getSnapshot() : null;
+        Set<String> tables = snapshot != null ? snapshot.referencedTables(repaired.getSqlQuery()) : Set.of();
+        conversionCache.put(cacheKey(text, snapshot, databaseSchema, provider),
+                new ConversionCache.Entry(repaired.getSqlQuery(), repaired.getExplanation(), tables));
+    }
 
-            String userPrompt = buildUserPrompt(text, effectiveSchema);
-            String fullPrompt = systemPrompt + "\n\n" + userPrompt;
+    /**
+     * Persist a freshly generated conversion, under the provider that answered it, once its SQL has passed the
+     * pre-execution checks
+     */
+    public void confirmConversion(String text, String databaseSchema, String provider) {
+        SchemaSnapshot snapshot = databaseSchema == null || databaseSchema.trim().isEmpty() ? databaseSchemaService.getSnapshot() : null;
+        conversionCache.persist(cacheKey(text, snapshot, databaseSchema, provider));
+    }
 
-            // Use Spring AI Vertex AI Gemini
-            String sqlQuery = vertexAiGeminiChatModel.call(fullPrompt);
-            sqlQuery = cleanSqlQuery(sqlQuery);
+    /**
+     * Drop a cached conversion whose SQL failed the pre-execution checks, so the next request asks afresh; whichever
+     * provider's answer was served, none of them is kept for the question
+     */
+    public void forgetConversion(String text, String databaseSchema) {
+        SchemaSnapshot snapshot = databaseSchema == null || databaseSchema.trim().isEmpty() ? databaseSchemaService.getSnapshot() : null;
+        for (String provider : llmProviderRouter.getProviderNames()) {
+            conversionCache.invalidate(cacheKey(text, snapshot, databaseSchema, provider));
+        }
+    }
 
-            return new QueryResponse(
-                    sqlQuery,
-                    "Generated using Google Gemini 1.5 Flash with auto-detected schema",
-                    true,
-                    null
-            );
+    /**
+     * Coalescing counters for identical concurrent conversions
+     */
+    public Map<String, Object> coalescingStats() {
+        return inFlightConversions.stats();
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException("Gemini API error: " + e.getMessage(), e);
+    private QueryResponse convertTextToQueryWithLlm(String text, String effectiveSchema, ConversionTrace trace) {
+        String userPrompt = trace.time("prompt", () -> buildUserPrompt(text, effectiveSchema));
+        trace.setPromptTokens(TokenEstimator.estimate(SYSTEM_PROMPT) + TokenEstimator.estimate(userPrompt));
+        LlmProviderRouter.Routed routed;
+        try (AdaptiveLimiter.Permit permit = trace.time("llm-admission", () -> admissionController.acquireLlm(trace.getClient()))) {
+            try {
+                routed = trace.time("llm", () -> llmProviderRouter.route(SYSTEM_PROMPT, userPrompt,
+                        AIQueryService::cleanSqlQuery));
+            } catch (RuntimeException e) {
+                permit.markDropped();
+                throw e;
+            }
         }
+        // Recorded here rather than by the cleaner, which a losing hedge may still run after the trace moved on
+        trace.record("cleanup", routed.cleanupNanos());
+        trace.setProvider(routed.provider().getName());
+        trace.setOutcome(ConversionTrace.OUTCOME_LLM);
+        return new QueryResponse(
+                routed.sql(),
+                "Generated using " + routed.provider().getDescription() + " with auto-detected schema"
+                        + (routed.hedged() ? " (hedged request)" : ""),
+                true,
+                null
+        );
     }
 
-
     private String buildUserPrompt(String naturalLanguage, String schema) {
         StringBuilder sb = new StringBuilder();
         sb.append("Database Schema:\n").append(schema).append("\n\n");
@@ -151,7 +290,21 @@ public class AIQueryService {
         return sb.toString();
     }
 
-    private String cleanSqlQuery(String sql) {
+    private String buildRepairPrompt(String naturalLanguage, String schema, String rejectedSql, List<String> problems) {
+        StringBuilder sb = new StringBuilder(buildUserPrompt(naturalLanguage, schema));
+        sb.append("\n\nA previous answer was rejected before execution:\n").append(rejectedSql).append("\n");
+        sb.append("Problems found:\n");
+        problems.forEach(problem -> sb.append("- ").append(problem).append("\n"));
+        sb.append("Return a corrected query that uses only tables and columns from the schema above.");
+        return sb.toString();
+    }
+
+    private ConversionCache.Key cacheKey(String text, SchemaSnapshot snapshot, String effectiveSchema, String provider) {
+        return ConversionCache.key(text, provider,
+                snapshot != null ? snapshot.getFingerprint() : SchemaSnapshot.fingerprint(effectiveSchema));
+    }
+
+    static String cleanSqlQuery(String sql) {
         sql = sql.replaceAll("```sql\\n?", "").replaceAll("```\\n?", "");
         sql = sql.trim();
         if (!sql.endsWith(";")) {
@@ -160,114 +313,9 @@ public class AIQueryService {
         return sql;
     }
 
-    // Enhanced basic generator with simple join inference using schema
-    private String generateBasicQuery(String text, String schemaString) {
-        if (text == null || text.trim().isEmpty()) return "SELECT 1;";
-        String lowered = text.toLowerCase(Locale.ROOT);
-
-        // Parse table names from schema
-        Set<String> tables = parseTables(schemaString);
-        List<String> mentionedTables = new ArrayList<>();
-        for (String t : tables) {
-            if (lowered.contains(t.toLowerCase(Locale.ROOT))) {
-                mentionedTables.add(t);
-            }
-        }
-
-        // If user asks for count
-        boolean wantsCount = lowered.contains("count") || lowered.startsWith("how many") || lowered.contains("number of");
-
-        // Build simple queries
-        if (mentionedTables.size() == 1) {
-            String table = mentionedTables.get(0);
-            if (wantsCount) {
-                return "SELECT COUNT(*) AS cnt FROM " + table + ";";
-            }
-            return "SELECT * FROM " + table + ";";
-        }
-
-        if (mentionedTables.size() >= 2) {
-            // Attempt to build joins using FK annotations from schema string
-            String joinSql = buildJoinQuery(mentionedTables, schemaString, wantsCount);
-            if (joinSql != null) return joinSql;
-        }
-
-        // Generic fallbacks
-        if (wantsCount) return "SELECT COUNT(*) FROM " + (mentionedTables.isEmpty() ? "table_name" : mentionedTables.get(0)) + ";";
-        return "SELECT * FROM " + (mentionedTables.isEmpty() ? "table_name" : mentionedTables.get(0)) + ";";
-    }
-
-    private Set<String> parseTables(String schemaString) {
-        Set<String> tables = new LinkedHashSet<>();
-        if (schemaString == null) return tables;
-        Pattern p = Pattern.compile("^(\\w+) \\(", Pattern.MULTILINE);
-        Matcher m = p.matcher(schemaString);
-        while (m.find()) {
-            tables.add(m.group(1));
-        }
-        return tables;
-    }
-
-    private String buildJoinQuery(List<String> tables, String schemaString, boolean wantsCount) {
-        // Extract FK lines: column TYPE [PK, FK->OtherTable.otherColumn]
-        Map<String, Map<String, String>> fkMap = new HashMap<>(); // table -> column -> targetTable.targetColumn
-        Pattern tablePattern = Pattern.compile("^(\\w+) \\((.*?)\\)", Pattern.DOTALL | Pattern.MULTILINE);
-        Matcher tableMatcher = tablePattern.matcher(schemaString);
-        while (tableMatcher.find()) {
-            String tableName = tableMatcher.group(1);
-            String body = tableMatcher.group(2);
-            Map<String, String> colToFk = new HashMap<>();
-            for (String line : body.split("\n")) {
-                line = line.trim();
-                if (line.isEmpty()) continue;
-                // line format: column TYPE [annotations], maybe with trailing comma removed
-                line = line.replaceAll(",$", "");
-                int bracketIdx = line.indexOf('[');
-                if (bracketIdx > -1) {
-                    String before = line.substring(0, bracketIdx).trim();
-                    String annotations = line.substring(bracketIdx + 1, line.lastIndexOf(']'));
-                    String colName = before.split(" ")[0];
-                    for (String ann : annotations.split("\\s*,\\s*")) {
-                        if (ann.startsWith("FK->")) {
-                            String target = ann.substring(4); // may contain multiple separated by |
-                            String[] pieces = target.split("\\|");
-                            // take first for simplicity
-                            if (pieces.length > 0) {
-                                colToFk.put(colName, pieces[0]);
-                            }
-                        }
-                    }
-                }
-            }
-            if (!colToFk.isEmpty()) fkMap.put(tableName, colToFk);
-        }
-
-        // Try to find a chain connecting first two tables
-        String base = tables.get(0);
-        String second = tables.get(1);
-        String joinCondition = null;
-
-        // Search FK from base to second
-        Map<String, String> baseFks = fkMap.getOrDefault(base, Collections.emptyMap());
-        for (Map.Entry<String, String> e : baseFks.entrySet()) {
-            if (e.getValue().startsWith(second + ".")) {
-                joinCondition = base + "." + e.getKey() + " = " + e.getValue();
-                break;
-            }
-        }
-        // Or FK from second to base
-        if (joinCondition == null) {
-            Map<String, String> secondFks = fkMap.getOrDefault(second, Collections.emptyMap());
-            for (Map.Entry<String, String> e : secondFks.entrySet()) {
-                if (e.getValue().startsWith(base + ".")) {
-                    joinCondition = second + "." + e.getKey() + " = " + e.getValue();
-                    break;
-                }
-            }
-        }
-        if (joinCondition == null) return null;
-
-        String selectPart = wantsCount ? "COUNT(*) AS cnt" : base + ".* , " + second + ".*";
-        return "SELECT " + selectPart + " FROM " + base + " JOIN " + second + " ON " + joinCondition + ";";
+    private String generateBasicQuery(String text, SchemaSnapshot snapshot, String schemaString) {
+        return snapshot != null
+                ? heuristicSqlGenerator.generate(text, snapshot)
+                : heuristicSqlGenerator.generate(text, schemaString);
     }
 }
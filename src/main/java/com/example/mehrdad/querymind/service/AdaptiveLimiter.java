@@ -0,0 +1,306 @@
+package com.example.mehrdad.querymind.service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit for one pipeline stage that adapts to observed latency (AIMD): a call slower than
+ * latency-tolerance times the no-load latency, or one that failed, cuts the limit by 10%; otherwise a busy
+ * limiter grows by one per limit's worth of calls. The no-load latency is the 10th percentile of the last 200
+ * calls that ran while the stage had capacity to spare, so one unusually fast call does not set it, sustained
+ * overload does not drag it up, and a lasting change in the backend is accepted once load eases. Calls that did
+ * not exercise the backend (cache hits) or whose duration is set by the client rather than the backend (streamed
+ * results) release their slot without a sample.
+ * <p>
+ * Callers over the limit wait in per-client FIFO queues that are served round-robin, so a client with many queued
+ * calls gets no more turns than one with a single call. A call is rejected at once when the stage queue or the
+ * client's share of it is full, and after queue-timeout if no slot frees up.
+ */
+public class AdaptiveLimiter {
+
+    private static final double BACKOFF = 0.9;
+    private static final double AVERAGE_WEIGHT = 0.1;
+    private static final int WINDOW = 200;
+    private static final int MIN_SAMPLES = 10;
+    private static final double BASELINE_PERCENTILE = 0.1;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final int maxQueuedPerClient;
+    private final Duration queueTimeout;
+    private final double latencyTolerance;
+
+    // Guards the per-client queues, the turn order, the limit and every counter below
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, ArrayDeque<Waiter>> queues = new HashMap<>();
+    // Clients with queued calls, in the order they get their next turn
+    private final ArrayDeque<String> turns = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private int queued;
+    // Ring of the latest sampled call durations the baseline is taken from
+    private final long[] window = new long[WINDOW];
+    private int samples;
+    private int nextSample;
+    private double baselineNanos = -1;
+    private double averageNanos = -1;
+    private long admitted;
+    private long rejected;
+    private long timedOut;
+
+    public AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit, int maxQueued,
+                           int maxQueuedPerClient, Duration queueTimeout, double latencyTolerance) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.maxQueued = maxQueued;
+        this.maxQueuedPerClient = maxQueuedPerClient;
+        this.queueTimeout = queueTimeout;
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * Slot held for one call; close it when the call is done
+     */
+    public static final class Permit implements AutoCloseable {
+        static final Permit UNLIMITED = new Permit(null);
+
+        private final AdaptiveLimiter limiter;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile boolean dropped;
+        private volatile boolean unsampled;
+
+        private Permit(AdaptiveLimiter limiter) {
+            this.limiter = limiter;
+        }
+
+        /**
+         * Count the call as failed, which shrinks the limit like a slow call does
+         */
+        public void markDropped() {
+            dropped = true;
+        }
+
+        /**
+         * Release the slot without a latency sample, for a call whose duration says nothing about the backend
+         */
+        public void skipSample() {
+            unsampled = true;
+        }
+
+        @Override
+        public void close() {
+            if (limiter != null && released.compareAndSet(false, true)) {
+                limiter.release(unsampled && !dropped ? 0 : Math.max(1, System.nanoTime() - startNanos), dropped);
+            }
+        }
+    }
+
+    private static final class Waiter {
+        private final String client;
+        private final CountDownLatch granted = new CountDownLatch(1);
+
+        Waiter(String client) {
+            this.client = client;
+        }
+    }
+
+    public String getName() { return name; }
+
+    /**
+     * Take a slot for the client, waiting in its queue if the stage is at its limit
+     *
+     * @throws AdmissionRejectedException when the queue is full or no slot freed up within queue-timeout
+     */
+    public Permit acquire(String client) throws InterruptedException {
+        Waiter waiter = new Waiter(client);
+        lock.lock();
+        try {
+            if (queued == 0 && inFlight < (int) limit) {
+                inFlight++;
+                admitted++;
+                return new Permit(this);
+            }
+            ArrayDeque<Waiter> queue = queues.get(client);
+            if (queued >= maxQueued || (queue != null && queue.size() >= maxQueuedPerClient)) {
+                rejected++;
+                throw rejection("queue is full");
+            }
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(client, queue);
+                turns.addLast(client);
+            }
+            queue.addLast(waiter);
+            queued++;
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            if (waiter.granted.await(queueTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                return new Permit(this);
+            }
+        } catch (InterruptedException e) {
+            if (!abandon(waiter)) {
+                release(0, false);
+            }
+            throw e;
+        }
+        if (!abandon(waiter)) {
+            // Granted between the timeout and taking the lock
+            return new Permit(this);
+        }
+        lock.lock();
+        try {
+            timedOut++;
+            throw rejection("no slot within " + queueTimeout.toMillis() + " ms");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        lock.lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("limit", Math.round(limit * 100) / 100.0);
+            stats.put("inFlight", inFlight);
+            stats.put("queued", queued);
+            stats.put("waitingClients", queues.size());
+            stats.put("admitted", admitted);
+            stats.put("rejected", rejected);
+            stats.put("timedOut", timedOut);
+            stats.put("baselineMs", baselineNanos < 0 ? null : Math.round(baselineNanos / 1e4) / 100.0);
+            stats.put("averageMs", averageNanos < 0 ? null : Math.round(averageNanos / 1e4) / 100.0);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected + timedOut;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove a waiter that gave up; false if it had already been granted a slot
+     */
+    private boolean abandon(Waiter waiter) {
+        lock.lock();
+        try {
+            if (waiter.granted.getCount() == 0) {
+                return false;
+            }
+            ArrayDeque<Waiter> queue = queues.get(waiter.client);
+            queue.remove(waiter);
+            if (queue.isEmpty()) {
+                queues.remove(waiter.client);
+                turns.remove(waiter.client);
+            }
+            queued--;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long nanos, boolean dropped) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (nanos > 0) {
+                adjust(nanos, dropped);
+            }
+            // Hand freed slots to the queued clients in turn
+            while (inFlight < (int) limit && !turns.isEmpty()) {
+                String client = turns.pollFirst();
+                ArrayDeque<Waiter> queue = queues.get(client);
+                Waiter next = queue.pollFirst();
+                if (queue.isEmpty()) {
+                    queues.remove(client);
+                } else {
+                    turns.addLast(client);
+                }
+                queued--;
+                inFlight++;
+                admitted++;
+                next.granted.countDown();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjust(long nanos, boolean dropped) {
+        averageNanos = averageNanos < 0 ? nanos : averageNanos + (nanos - averageNanos) * AVERAGE_WEIGHT;
+        // Only calls that ran with capacity to spare (or at the minimum limit, which cannot go lower) say what the
+        // backend does without load; under sustained overload the baseline therefore stays put instead of creeping up
+        boolean spare = queued == 0 && inFlight + 1 < (int) limit;
+        if (!dropped && (spare || limit <= minLimit || samples < MIN_SAMPLES)) {
+            window[nextSample] = nanos;
+            nextSample = (nextSample + 1) % WINDOW;
+            samples = Math.min(WINDOW, samples + 1);
+            if (samples >= MIN_SAMPLES) {
+                long[] sorted = Arrays.copyOf(window, samples);
+                Arrays.sort(sorted);
+                baselineNanos = sorted[(int) (samples * BASELINE_PERCENTILE)];
+            }
+        }
+        if (dropped || (baselineNanos > 0 && nanos > baselineNanos * latencyTolerance)) {
+            limit = Math.max(minLimit, limit * BACKOFF);
+        } else if (inFlight + 1 >= limit / 2) {
+            // Only grow while the limit is actually being used
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    private AdmissionRejectedException rejection(String reason) {
+        // Roughly how long until the calls ahead of a new arrival have drained through the current limit
+        double average = averageNanos < 0 ? TimeUnit.SECONDS.toNanos(1) : averageNanos;
+        long seconds = (long) Math.ceil((queued + 1) / limit * average / 1e9);
+        Duration retryAfter = Duration.ofSeconds(Math.min(60, Math.max(1, seconds)));
+        return new AdmissionRejectedException(name, retryAfter,
+                "The " + name + " stage is at capacity (" + reason + "), retry after " + retryAfter.toSeconds() + " s");
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.mehrdad.querymind.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Admission control for the two expensive stages of a request, each with its own {@link AdaptiveLimiter}: the LLM
+ * call and the query execution. Clients are told apart by their X-API-Key header, or by remote address when they
+ * send none; work started by the service itself (batches, background jobs) shares the internal client's queue.
+ * Meters: querymind.admission.limit, .in-flight, .queued and .rejected, tagged with stage.
+ */
+@Component
+public class AdmissionController {
+
+    public static final String API_KEY_HEADER = "X-API-Key";
+    public static final String INTERNAL_CLIENT = "internal";
+
+    private final boolean enabled;
+    private final AdaptiveLimiter llm;
+    private final AdaptiveLimiter execution;
+
+    public AdmissionController(MeterRegistry meterRegistry,
+                               @Value("${querymind.admission.enabled:true}") boolean enabled,
+                               @Value("${querymind.admission.llm.initial-limit:16}") int llmInitialLimit,
+                               @Value("${querymind.admission.llm.min-limit:2}") int llmMinLimit,
+                               @Value("${querymind.admission.llm.max-limit:64}") int llmMaxLimit,
+                               @Value("${querymind.admission.execution.initial-limit:8}") int executionInitialLimit,
+                               @Value("${querymind.admission.execution.min-limit:1}") int executionMinLimit,
+                               @Value("${querymind.admission.execution.max-limit:24}") int executionMaxLimit,
+                               @Value("${querymind.admission.max-queued:64}") int maxQueued,
+                               @Value("${querymind.admission.max-queued-per-client:8}") int maxQueuedPerClient,
+                               @Value("${querymind.admission.queue-timeout:5s}") Duration queueTimeout,
+                               @Value("${querymind.admission.latency-tolerance:2.5}") double latencyTolerance) {
+        this.enabled = enabled;
+        this.llm = new AdaptiveLimiter("llm", llmInitialLimit, llmMinLimit, llmMaxLimit,
+                maxQueued, maxQueuedPerClient, queueTimeout, latencyTolerance);
+        this.execution = new AdaptiveLimiter("execution", executionInitialLimit, executionMinLimit, executionMaxLimit,
+                maxQueued, maxQueuedPerClient, queueTimeout, latencyTolerance);
+        register(meterRegistry, llm);
+        register(meterRegistry, execution);
+    }
+
+    /**
+     * Key the request is queued under: its API key if it sent one, otherwise its remote address
+     */
+    public static String clientKey(HttpServletRequest request) {
+        String apiKey = request.getHeader(API_KEY_HEADER);
+        if (apiKey != null && !apiKey.isBlank()) {
+            return "key:" + apiKey.trim();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    /**
+     * Slot for one LLM call
+     *
+     * @throws AdmissionRejectedException when the stage cannot take the call
+     */
+    public AdaptiveLimiter.Permit acquireLlm(String client) {
+        return acquire(llm, client);
+    }
+
+    /**
+     * Slot for one query execution
+     *
+     * @throws AdmissionRejectedException when the stage cannot take the query
+     */
+    public AdaptiveLimiter.Permit acquireExecution(String client) {
+        return acquire(execution, client);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put(llm.getName(), llm.stats());
+        stats.put(execution.getName(), execution.stats());
+        return stats;
+    }
+
+    private AdaptiveLimiter.Permit acquire(AdaptiveLimiter limiter, String client) {
+        if (!enabled) {
+            return AdaptiveLimiter.Permit.UNLIMITED;
+        }
+        try {
+            return limiter.acquire(client != null ? client : INTERNAL_CLIENT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AdmissionRejectedException(limiter.getName(), Duration.ofSeconds(1), "Interrupted while queued");
+        }
+    }
+
+    private static void register(MeterRegistry meterRegistry, AdaptiveLimiter limiter) {
+        Gauge.builder("querymind.admission.limit", limiter, AdaptiveLimiter::getLimit)
+                .description("Current adaptive concurrency limit of the stage")
+                .tag("stage", limiter.getName())
+                .register(meterRegistry);
+        Gauge.builder("querymind.admission.in-flight", limiter, AdaptiveLimiter::getInFlight)
+                .description("Calls currently holding a slot in the stage")
+                .tag("stage", limiter.getName())
+                .register(meterRegistry);
+        Gauge.builder("querymind.admission.queued", limiter, AdaptiveLimiter::getQueued)
+                .description("Calls waiting for a slot in the stage")
+                .tag("stage", limiter.getName())
+                .register(meterRegistry);
+        FunctionCounter.builder("querymind.admission.rejected", limiter, AdaptiveLimiter::getRejected)
+                .description("Calls turned away because the queue was full or the wait timed out")
+                .tag("stage", limiter.getName())
+                .register(meterRegistry);
+    }
+}
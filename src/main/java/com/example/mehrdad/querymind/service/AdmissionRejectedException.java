@@ -0,0 +1,22 @@
+package com.example.mehrdad.querymind.service;
+
+import java.time.Duration;
+
+/**
+ * A request was turned away because a stage is at its concurrency limit and its queue (or the client's share of
+ * it) is full; the client should retry after the suggested delay
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final String stage;
+    private final Duration retryAfter;
+
+    public AdmissionRejectedException(String stage, Duration retryAfter, String message) {
+        super(message);
+        this.stage = stage;
+        this.retryAfter = retryAfter;
+    }
+
+    public String getStage() { return stage; }
+    public Duration getRetryAfter() { return retryAfter; }
+}
@@ -0,0 +1,102 @@
+package com.example.mehrdad.querymind.service;
+
+import com.example.mehrdad.querymind.dto.QueryRequest;
+import com.example.mehrdad.querymind.dto.QueryResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Converts many questions in one call. The schema snapshot is resolved once and shared by every item, at most
+ * querymind.batch.parallelism conversions run at a time (provider bulkheads and rate limits still apply
+ * underneath), and results are handed back in completion order on the calling thread.
+ */
+@Slf4j
+@Service
+public class BatchConversionService {
+
+    private final AIQueryService aiQueryService;
+    private final DatabaseSchemaService databaseSchemaService;
+    private final int parallelism;
+    private final int maxBatchSize;
+
+    public BatchConversionService(AIQueryService aiQueryService,
+                                  DatabaseSchemaService databaseSchemaService,
+                                  @Value("${querymind.batch.parallelism:8}") int parallelism,
+                                  @Value("${querymind.batch.max-size:5000}") int maxBatchSize) {
+        this.aiQueryService = aiQueryService;
+        this.databaseSchemaService = databaseSchemaService;
+        this.parallelism = parallelism;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Outcome of one batch item; index is the item's position in the request list
+     */
+    public record ItemResult(int index, QueryResponse response, long elapsedMillis) {}
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Convert every request, calling the consumer once per item as soon as it finishes. Blocks until all
+     * items are done; the consumer is only ever called from the calling thread.
+     */
+    public void convertAll(List<QueryRequest> requests, Consumer<ItemResult> onResult) throws InterruptedException {
+        if (requests.size() > maxBatchSize) {
+            throw new IllegalArgumentException("Batch size " + requests.size() + " exceeds the limit of " + maxBatchSize);
+        }
+        SchemaSnapshot snapshot = databaseSchemaService.getSnapshot();
+        Semaphore slots = new Semaphore(parallelism);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletionService<ItemResult> completion = new ExecutorCompletionService<>(executor);
+            for (int i = 0; i < requests.size(); i++) {
+                int index = i;
+                QueryRequest request = requests.get(i);
+                completion.submit(() -> {
+                    slots.acquire();
+                    try {
+                        return convert(index, request, snapshot);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+            try {
+                for (int i = 0; i < requests.size(); i++) {
+                    try {
+                        onResult.accept(completion.take().get());
+                    } catch (ExecutionException e) {
+                        // convert() never throws; anything reaching here is a bug, keep streaming the rest
+                        log.error("Batch item failed unexpectedly", e.getCause());
+                    }
+                }
+            } catch (RuntimeException | InterruptedException e) {
+                // The consumer is gone (e.g. client disconnected): stop the remaining conversions
+                executor.shutdownNow();
+                throw e;
+            }
+        }
+    }
+
+    private ItemResult convert(int index, QueryRequest request, SchemaSnapshot snapshot) {
+        long start = System.nanoTime();
+        QueryResponse response;
+        if (request == null || request.getText() == null || request.getText().trim().isEmpty()) {
+            response = new QueryResponse(null, null, false, "Text cannot be empty");
+        } else {
+            try {
+                response = aiQueryService.convertTextToQuery(request.getText(), request.getDatabaseSchema(), snapshot);
+            } catch (Exception e) {
+                response = new QueryResponse(null, null, false, e.getMessage());
+            }
+        }
+        return new ItemResult(index, response, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
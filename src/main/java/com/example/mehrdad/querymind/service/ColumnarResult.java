@@ -0,0 +1,235 @@
+package com.example.mehrdad.querymind.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * Query result stored column by column. Column names and types are resolved once per query and values go into
+ * per-column arrays (primitive where the JDBC type allows it), so reading a row allocates nothing beyond the
+ * driver's own value objects. Serialized as {"columns":[{"name","type"}],"rows":[[...],...]}.
+ */
+@JsonSerialize(using = ColumnarResult.Serializer.class)
+public final class ColumnarResult {
+
+    private static final int INITIAL_CAPACITY = 64;
+    // Decimals up to this precision survive a round trip through double unchanged
+    private static final int MAX_DOUBLE_PRECISION = 15;
+
+    public enum Kind { LONG, DOUBLE, OBJECT }
+
+    public static final class Column {
+        private final String name;
+        private final String type;
+        private final Kind kind;
+
+        Column(String name, String type, Kind kind) {
+            this.name = name;
+            this.type = type;
+            this.kind = kind;
+        }
+
+        public String getName() { return name; }
+        public String getType() { return type; }
+        public Kind getKind() { return kind; }
+    }
+
+    private final List<Column> columns;
+    private final Object[] values;
+    private final BitSet[] nulls;
+    private final int rowCount;
+
+    private ColumnarResult(List<Column> columns, Object[] values, BitSet[] nulls, int rowCount) {
+        this.columns = columns;
+        this.values = values;
+        this.nulls = nulls;
+        this.rowCount = rowCount;
+    }
+
+    public List<Column> getColumns() { return columns; }
+    public int getRowCount() { return rowCount; }
+
+    /**
+     * Boxed value at the given row and column (both zero-based)
+     */
+    public Object getValue(int row, int column) {
+        if (nulls[column].get(row)) {
+            return null;
+        }
+        Object array = values[column];
+        return switch (columns.get(column).getKind()) {
+            case LONG -> ((long[]) array)[row];
+            case DOUBLE -> ((double[]) array)[row];
+            case OBJECT -> ((Object[]) array)[row];
+        };
+    }
+
+    /**
+     * Compatibility view in the historical list-of-maps shape; allocates one map per row
+     */
+    public List<Map<String, Object>> toRowMaps() {
+        List<Map<String, Object>> rows = new ArrayList<>(rowCount);
+        for (int r = 0; r < rowCount; r++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int c = 0; c < columns.size(); c++) {
+                row.put(columns.get(c).getName(), getValue(r, c));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Resolve column names and types once from the result set metadata
+     */
+    public static List<Column> describe(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        List<Column> columns = new ArrayList<>(columnCount);
+        for (int i = 1; i <= columnCount; i++) {
+            columns.add(new Column(metaData.getColumnName(i), metaData.getColumnTypeName(i), kindOf(metaData, i)));
+        }
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Drain a result set into columnar storage
+     */
+    public static ColumnarResult from(ResultSet rs) throws SQLException {
+        Builder builder = new Builder(describe(rs.getMetaData()));
+        while (rs.next()) {
+            builder.addRow(rs);
+        }
+        return builder.build();
+    }
+
+    private static Kind kindOf(ResultSetMetaData metaData, int column) throws SQLException {
+        return switch (metaData.getColumnType(column)) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT -> Kind.LONG;
+            case Types.REAL, Types.FLOAT, Types.DOUBLE -> Kind.DOUBLE;
+            case Types.DECIMAL, Types.NUMERIC -> {
+                int precision = metaData.getPrecision(column);
+                yield precision > 0 && precision <= MAX_DOUBLE_PRECISION ? Kind.DOUBLE : Kind.OBJECT;
+            }
+            default -> Kind.OBJECT;
+        };
+    }
+
+    public static final class Builder {
+        private final List<Column> columns;
+        private final Object[] values;
+        private final BitSet[] nulls;
+        private int rowCount;
+        private int capacity = INITIAL_CAPACITY;
+
+        public Builder(List<Column> columns) {
+            this.columns = columns;
+            this.values = new Object[columns.size()];
+            this.nulls = new BitSet[columns.size()];
+            for (int c = 0; c < columns.size(); c++) {
+                values[c] = switch (columns.get(c).getKind()) {
+                    case LONG -> new long[capacity];
+                    case DOUBLE -> new double[capacity];
+                    case OBJECT -> new Object[capacity];
+                };
+                nulls[c] = new BitSet();
+            }
+        }
+
+        public int getRowCount() { return rowCount; }
+
+        /**
+         * Append the current row of the result set and return its approximate heap footprint in bytes
+         */
+        public long addRow(ResultSet rs) throws SQLException {
+            if (rowCount == capacity) {
+                grow();
+            }
+            long bytes = 0;
+            for (int c = 0; c < columns.size(); c++) {
+                int index = c + 1;
+                switch (columns.get(c).getKind()) {
+                    case LONG -> {
+                        ((long[]) values[c])[rowCount] = rs.getLong(index);
+                        bytes += Long.BYTES;
+                    }
+                    case DOUBLE -> {
+                        ((double[]) values[c])[rowCount] = rs.getDouble(index);
+                        bytes += Double.BYTES;
+                    }
+                    case OBJECT -> {
+                        Object value = rs.getObject(index);
+                        ((Object[]) values[c])[rowCount] = value;
+                        bytes += Integer.BYTES + ExecutionPolicy.estimateSize(value);
+                    }
+                }
+                if (rs.wasNull()) {
+                    nulls[c].set(rowCount);
+                }
+            }
+            rowCount++;
+            return bytes;
+        }
+
+        public ColumnarResult build() {
+            return new ColumnarResult(columns, values, nulls, rowCount);
+        }
+
+        private void grow() {
+            capacity = capacity * 2;
+            for (int c = 0; c < values.length; c++) {
+                Object array = values[c];
+                values[c] = switch (columns.get(c).getKind()) {
+                    case LONG -> Arrays.copyOf((long[]) array, capacity);
+                    case DOUBLE -> Arrays.copyOf((double[]) array, capacity);
+                    case OBJECT -> Arrays.copyOf((Object[]) array, capacity);
+                };
+            }
+        }
+    }
+
+    public static final class Serializer extends StdSerializer<ColumnarResult> {
+
+        public Serializer() {
+            super(ColumnarResult.class);
+        }
+
+        @Override
+        public void serialize(ColumnarResult result, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("columns");
+            for (Column column : result.columns) {
+                gen.writeStartObject();
+                gen.writeStringField("name", column.getName());
+                gen.writeStringField("type", column.getType());
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeArrayFieldStart("rows");
+            for (int r = 0; r < result.rowCount; r++) {
+                gen.writeStartArray();
+                for (int c = 0; c < result.columns.size(); c++) {
+                    if (result.nulls[c].get(r)) {
+                        gen.writeNull();
+                        continue;
+                    }
+                    switch (result.columns.get(c).getKind()) {
+                        case LONG -> gen.writeNumber(((long[]) result.values[c])[r]);
+                        case DOUBLE -> gen.writeNumber(((double[]) result.values[c])[r]);
+                        case OBJECT -> provider.defaultSerializeValue(((Object[]) result.values[c])[r], gen);
+                    }
+                }
+                gen.writeEndArray();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.mehrdad.querymind.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Token-lean format: one line per table as {@code TABLE(COL type,ID int PK,...)} with abbreviated types and no
+ * sizes, audit columns dropped by name unless they are keys, and each FK edge listed once after the tables as
+ * {@code FK CHILD.COL->PARENT.COL}. Keys-only blocks end with {@code ...}.
+ */
+@Component
+public class CompactSchemaRenderer extends SchemaRenderer {
+
+    public static final String NAME = "compact";
+
+    private final Set<String> auditColumns = new HashSet<>();
+
+    public CompactSchemaRenderer(@Value("${querymind.schema.prompt.audit-columns:created_by,updated_at,updated_by,modified_at,modified_by,last_modified_at,last_modified_by,deleted_by,row_version}") String auditColumns) {
+        for (String column : auditColumns.split(",")) {
+            if (!column.isBlank()) {
+                this.auditColumns.add(column.trim().toUpperCase(Locale.ROOT));
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    protected String renderTable(String table, List<DatabaseSchemaService.ColumnInfo> columns, boolean keysOnly) {
+        StringBuilder sb = new StringBuilder(table).append('(');
+        boolean first = true;
+        boolean omitted = false;
+        for (DatabaseSchemaService.ColumnInfo column : columns) {
+            boolean key = isKey(column);
+            if (!key && (keysOnly || auditColumns.contains(column.getName().toUpperCase(Locale.ROOT)))) {
+                omitted |= keysOnly;
+                continue;
+            }
+            if (!first) sb.append(',');
+            first = false;
+            sb.append(column.getName()).append(' ').append(abbreviate(column.getType()));
+            if (column.isPrimaryKey()) sb.append(" PK");
+        }
+        if (omitted) {
+            sb.append(first ? "..." : ",...");
+        }
+        return sb.append(')').toString();
+    }
+
+    @Override
+    protected String renderEdge(String table, DatabaseSchemaService.ColumnInfo column, String target) {
+        return "FK " + table + "." + column.getName() + "->" + target;
+    }
+
+    /**
+     * Short type family without length or precision, e.g. CHARACTER VARYING(100) becomes str
+     */
+    static String abbreviate(String type) {
+        if (type == null) return "?";
+        String base = type.toUpperCase(Locale.ROOT);
+        int paren = base.indexOf('(');
+        if (paren > 0) base = base.substring(0, paren).trim();
+        return switch (base) {
+            case "CHARACTER VARYING", "VARCHAR", "VARCHAR2", "NVARCHAR", "CHARACTER", "CHAR", "NCHAR", "TEXT", "CLOB",
+                 "CHARACTER LARGE OBJECT", "VARCHAR_IGNORECASE" -> "str";
+            case "INTEGER", "INT", "BIGINT", "SMALLINT", "TINYINT", "INT4", "INT8", "SERIAL", "BIGSERIAL" -> "int";
+            case "DECIMAL", "NUMERIC", "NUMBER" -> "dec";
+            case "DOUBLE PRECISION", "DOUBLE", "REAL", "FLOAT", "DECFLOAT", "FLOAT8" -> "num";
+            case "BOOLEAN", "BOOL", "BIT" -> "bool";
+            case "DATE" -> "date";
+            case "TIMESTAMP", "TIMESTAMP WITH TIME ZONE", "TIMESTAMP WITHOUT TIME ZONE", "DATETIME", "TIMESTAMPTZ" -> "ts";
+            case "TIME", "TIME WITH TIME ZONE", "TIME WITHOUT TIME ZONE" -> "time";
+            case "BINARY VARYING", "VARBINARY", "BINARY", "BLOB", "BINARY LARGE OBJECT", "BYTEA" -> "bin";
+            default -> base.toLowerCase(Locale.ROOT);
+        };
+    }
+}
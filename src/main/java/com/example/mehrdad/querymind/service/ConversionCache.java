@@ -0,0 +1,215 @@
+package com.example.mehrdad.querymind.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded cache of LLM-generated SQL keyed by normalized question, provider and schema fingerprint.
+ * When the schema snapshot changes, entries that only reference untouched tables are carried over to the
+ * new fingerprint, keeping the expiry of their original write, and the rest are dropped; the store applies the
+ * same rule to its rows. Entries put here are also written to the {@link PersistentConversionStore}
+ * when one is configured, while fresh answers are only kept in memory until {@link #persist} confirms them; after
+ * a restart the store's warm set is loaded in the background, and with read-through misses are looked up there
+ * before they go to the LLM.
+ */
+@Slf4j
+@Component
+public class ConversionCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[\\s.?!]+$");
+
+    private final Cache<Key, Cached> cache;
+    private final PersistentConversionStore store;
+    private final Ticker ticker;
+
+    public ConversionCache(long maxSize, Duration ttl) {
+        this(maxSize, ttl, null);
+    }
+
+    @Autowired
+    public ConversionCache(@Value("${querymind.cache.conversion.max-size:10000}") long maxSize,
+                           @Value("${querymind.cache.conversion.ttl:24h}") Duration ttl,
+                           PersistentConversionStore store) {
+        this(maxSize, ttl, store, Ticker.systemTicker());
+    }
+
+    ConversionCache(long maxSize, Duration ttl, PersistentConversionStore store, Ticker ticker) {
+        long ttlNanos = ttl.toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .ticker(ticker)
+                .expireAfter(new Expiry<Key, Cached>() {
+                    @Override
+                    public long expireAfterCreate(Key key, Cached value, long currentTime) {
+                        return Math.max(0, value.writtenNanos() + ttlNanos - currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, Cached value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, Cached value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        this.store = store != null && store.isEnabled() ? store : null;
+        this.ticker = ticker;
+    }
+
+    public record Key(String question, String provider, String schemaFingerprint) {}
+
+    /**
+     * Cached SQL with the explanation it was generated with and the snapshot tables it references
+     */
+    public record Entry(String sqlQuery, String explanation, Set<String> tables) {}
+
+    /**
+     * An entry with the ticker time it was first written, which its expiry counts from
+     */
+    private record Cached(Entry entry, long writtenNanos) {}
+
+    /**
+     * Fold case, runs of whitespace and trailing sentence punctuation so trivially different phrasings share an
+     * entry; everything else is kept, since "total > 100" and "total < 100" (or "-5" and "5") ask different things
+     */
+    public static String normalize(String question) {
+        String folded = WHITESPACE.matcher(question.toLowerCase(Locale.ROOT).trim()).replaceAll(" ");
+        return TRAILING_PUNCTUATION.matcher(folded).replaceAll("");
+    }
+
+    public static Key key(String question, String provider, String schemaFingerprint) {
+        return new Key(normalize(question), provider.toLowerCase(Locale.ROOT), schemaFingerprint);
+    }
+
+    /**
+     * Whether an answer referencing the tables is still valid after a schema change to changedTables; one whose
+     * tables are not known is not
+     */
+    static boolean survives(Set<String> tables, Set<String> changedTables) {
+        return !tables.isEmpty() && Collections.disjoint(tables, changedTables);
+    }
+
+    public Optional<Entry> get(Key key) {
+        Cached cached = cache.getIfPresent(key);
+        Entry entry = cached != null ? cached.entry() : null;
+        if (entry == null && store != null) {
+            entry = store.find(key).orElse(null);
+            if (entry != null) {
+                cache.put(key, new Cached(entry, ticker.read()));
+            }
+        }
+        if (entry != null && store != null) {
+            store.recordHit(key);
+        }
+        return Optional.ofNullable(entry);
+    }
+
+    public void put(Key key, Entry entry) {
+        cache.put(key, new Cached(entry, ticker.read()));
+        if (store != null) {
+            store.put(key, entry);
+        }
+    }
+
+    /**
+     * Cache an answer in memory only, until it has been checked and {@link #persist persisted}
+     */
+    public void putInMemory(Key key, Entry entry) {
+        cache.put(key, new Cached(entry, ticker.read()));
+    }
+
+    /**
+     * Write the entry cached in memory under the key to the store
+     */
+    public void persist(Key key) {
+        if (store == null) {
+            return;
+        }
+        Cached cached = cache.asMap().get(key);
+        if (cached != null) {
+            store.put(key, cached.entry());
+        }
+    }
+
+    public void invalidate(Key key) {
+        cache.invalidate(key);
+        if (store != null) {
+            store.remove(key);
+        }
+    }
+
+    /**
+     * Load the store's warm set without holding up startup; entries cached in the meantime win
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmFromStore() {
+        if (store == null) {
+            return;
+        }
+        Thread.ofVirtual().name("conversion-cache-warmup").start(
+                () -> store.loadWarmSet((key, entry) -> cache.asMap().putIfAbsent(key, new Cached(entry, ticker.read()))));
+    }
+
+    @EventListener
+    public void onSchemaChanged(SchemaSnapshotChangedEvent event) {
+        if (event.getPrevious() == null) {
+            return;
+        }
+        String oldFingerprint = event.getPrevious().getFingerprint();
+        String newFingerprint = event.getCurrent().getFingerprint();
+        Set<String> changedTables = event.getChangedTables();
+        int migrated = 0;
+        int dropped = 0;
+        for (Map.Entry<Key, Cached> cached : new ArrayList<>(cache.asMap().entrySet())) {
+            Key key = cached.getKey();
+            if (!key.schemaFingerprint().equals(oldFingerprint)) {
+                continue;
+            }
+            cache.invalidate(key);
+            if (survives(cached.getValue().entry().tables(), changedTables)) {
+                // Only the key changes: the expiry still counts from the original write, and an answer that was
+                // never persisted stays in memory only
+                cache.put(new Key(key.question(), key.provider(), newFingerprint), cached.getValue());
+                migrated++;
+            } else {
+                dropped++;
+            }
+        }
+        if (store != null) {
+            store.migrate(oldFingerprint, newFingerprint, changedTables);
+        }
+        log.info("Schema change touched {}: kept {} cached conversions, dropped {}", changedTables, migrated, dropped);
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("evictions", stats.evictionCount());
+        result.put("hitRate", stats.hitRate());
+        if (store != null) {
+            result.put("persistent", store.stats());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.mehrdad.querymind.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Per-request record of where a conversion spent its time, which provider answered and how it ended.
+ * Stages are accumulated in the order they first ran; the same trace may be written from other threads, so
+ * updates are synchronized.
+ */
+public final class ConversionTrace {
+
+    public static final String OUTCOME_LLM = "llm";
+    public static final String OUTCOME_CACHE = "cache";
+    public static final String OUTCOME_COALESCED = "coalesced";
+    public static final String OUTCOME_HEURISTIC = "heuristic-fallback";
+    public static final String OUTCOME_ERROR = "error";
+    public static final String OUTCOME_REJECTED = "rejected";
+    public static final String OUTCOME_INVALID = "invalid-sql";
+
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> stageNanos = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile String provider = "none";
+    private volatile String outcome;
+    private volatile int promptTokens = -1;
+    private volatile int rowCount = -1;
+    private volatile String client;
+
+    public <T> T time(String stage, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    public void record(String stage, long nanos) {
+        stageNanos.merge(stage, nanos, Long::sum);
+    }
+
+    public Map<String, Long> getStageNanos() {
+        synchronized (stageNanos) {
+            return new LinkedHashMap<>(stageNanos);
+        }
+    }
+
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Stage breakdown in milliseconds plus the elapsed total, for clients that asked for timings
+     */
+    public Map<String, Double> toMillis() {
+        Map<String, Double> millis = new LinkedHashMap<>();
+        getStageNanos().forEach((stage, nanos) -> millis.put(stage, nanos / (double) TimeUnit.MILLISECONDS.toNanos(1)));
+        millis.put("total", getElapsedNanos() / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        return millis;
+    }
+
+    public String getProvider() { return provider; }
+    public void setProvider(String provider) { this.provider = provider; }
+    /** Admission control key of the caller; null for work the service started itself */
+    public String getClient() { return client; }
+    public void setClient(String client) { this.client = client; }
+    public String getOutcome() { return outcome; }
+    public void setOutcome(String outcome) { this.outcome = outcome; }
+    public int getPromptTokens() { return promptTokens; }
+    public void setPromptTokens(int promptTokens) { this.promptTokens = promptTokens; }
+    public int getRowCount() { return rowCount; }
+    public void setRowCount(int rowCount) { this.rowCount = rowCount; }
+}
@@ -0,0 +1,240 @@
+package com.example.mehrdad.querymind.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps schema introspection and generated queries off each other's connections: introspection uses a small
+ * metadata pool, executions use their own pools - a separately sized read pool on the primary or one pool per
+ * read replica. Each execution goes to the pool with the fewest outstanding queries, ties rotating. A pool admits
+ * at most max-outstanding queries (its connections plus a short wait queue) and rejects further ones at once
+ * with a {@link PoolSaturatedException} (503 with Retry-After) rather than letting them queue on the pool. Meters per pool: querymind.datasource.outstanding,
+ * querymind.datasource.rejected and querymind.datasource.queries (time a lease was held), all tagged with pool.
+ */
+public class DataSourceRouter implements AutoCloseable {
+
+    private final Pool metadata;
+    private final List<Pool> execution;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    public DataSourceRouter(Pool metadata, List<Pool> execution, MeterRegistry meterRegistry) {
+        if (execution.isEmpty()) {
+            throw new IllegalArgumentException("At least one execution pool is required");
+        }
+        this.metadata = metadata;
+        this.execution = List.copyOf(execution);
+        this.meterRegistry = meterRegistry;
+        register(metadata);
+        this.execution.forEach(this::register);
+    }
+
+    /**
+     * Router sending everything to one data source without admission limits, e.g. for tests and benchmarks
+     */
+    public static DataSourceRouter direct(DataSource dataSource) {
+        return new DataSourceRouter(new Pool("metadata", dataSource, Integer.MAX_VALUE, false),
+                List.of(new Pool("execution", dataSource, Integer.MAX_VALUE, false)), new SimpleMeterRegistry());
+    }
+
+    /**
+     * A data source with its admission limit
+     */
+    public static final class Pool {
+        private final String name;
+        private final DataSource dataSource;
+        private final JdbcTemplate jdbcTemplate;
+        private final int maxOutstanding;
+        private final boolean owned;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private Timer timer;
+
+        /**
+         * @param owned whether the router closes the data source on shutdown
+         */
+        public Pool(String name, DataSource dataSource, int maxOutstanding, boolean owned) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.jdbcTemplate = new JdbcTemplate(dataSource);
+            this.maxOutstanding = maxOutstanding;
+            this.owned = owned;
+        }
+
+        public String getName() { return name; }
+        public DataSource getDataSource() { return dataSource; }
+        public int getOutstanding() { return outstanding.get(); }
+        public int getMaxOutstanding() { return maxOutstanding; }
+
+        private boolean tryAdmit() {
+            int current;
+            do {
+                current = outstanding.get();
+                if (current >= maxOutstanding) {
+                    return false;
+                }
+            } while (!outstanding.compareAndSet(current, current + 1));
+            admitted.increment();
+            return true;
+        }
+
+        /**
+         * Roughly how long a lease is held, i.e. when the next slot should free up; between 1 and 60 s
+         */
+        private Duration retryAfter() {
+            double seconds = timer != null ? timer.mean(TimeUnit.SECONDS) : 0;
+            return Duration.ofSeconds(Math.min(60, Math.max(1, (long) Math.ceil(seconds))));
+        }
+
+        private Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("outstanding", outstanding.get());
+            stats.put("maxOutstanding", maxOutstanding == Integer.MAX_VALUE ? null : maxOutstanding);
+            stats.put("admitted", admitted.sum());
+            stats.put("rejected", rejected.sum());
+            if (dataSource instanceof HikariDataSource hikari && hikari.getHikariPoolMXBean() != null) {
+                HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+                stats.put("maxPoolSize", hikari.getMaximumPoolSize());
+                stats.put("activeConnections", pool.getActiveConnections());
+                stats.put("idleConnections", pool.getIdleConnections());
+                stats.put("threadsAwaitingConnection", pool.getThreadsAwaitingConnection());
+            }
+            return stats;
+        }
+    }
+
+    /**
+     * Admission to one pool; close it when the statement is done
+     */
+    public final class Lease implements AutoCloseable {
+        private final Pool pool;
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(Pool pool) {
+            this.pool = pool;
+        }
+
+        public String getPoolName() { return pool.name; }
+        public DataSource getDataSource() { return pool.dataSource; }
+        public JdbcTemplate getJdbcTemplate() { return pool.jdbcTemplate; }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                pool.outstanding.decrementAndGet();
+                pool.timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Lease on the metadata pool
+     *
+     * @throws PoolSaturatedException when the pool is saturated
+     */
+    public Lease acquireMetadata() {
+        if (!metadata.tryAdmit()) {
+            metadata.rejected.increment();
+            throw new PoolSaturatedException(metadata.name, metadata.retryAfter(),
+                    "Metadata pool saturated (" + metadata.maxOutstanding + " outstanding)");
+        }
+        return new Lease(metadata);
+    }
+
+    /**
+     * Lease on the execution pool with the fewest outstanding queries, falling back to the next least busy one
+     * if it fills up concurrently
+     *
+     * @throws PoolSaturatedException when every execution pool is saturated
+     */
+    public Lease acquireExecution() {
+        int size = execution.size();
+        int start = Math.floorMod(cursor.getAndIncrement(), size);
+        // Loads are read once so the order stays consistent while other threads come and go
+        List<int[]> candidates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            candidates.add(new int[]{index, execution.get(index).getOutstanding()});
+        }
+        // Stable sort, so pools with equal load keep the rotated order
+        candidates.sort(Comparator.comparingInt(candidate -> candidate[1]));
+        for (int[] candidate : candidates) {
+            Pool pool = execution.get(candidate[0]);
+            if (pool.tryAdmit()) {
+                return new Lease(pool);
+            }
+        }
+        Pool least = execution.get(candidates.get(0)[0]);
+        least.rejected.increment();
+        throw new PoolSaturatedException(least.name, least.retryAfter(), "Execution pools saturated, try again later");
+    }
+
+    /**
+     * Connections of the smallest execution pool, or Integer.MAX_VALUE when its size is not known (e.g. a direct
+     * router over a plain data source)
+     */
+    public int getExecutionPoolSize() {
+        int size = Integer.MAX_VALUE;
+        for (Pool pool : execution) {
+            if (pool.dataSource instanceof HikariDataSource hikari) {
+                size = Math.min(size, hikari.getMaximumPoolSize());
+            }
+        }
+        return size;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put(metadata.name, metadata.stats());
+        for (Pool pool : execution) {
+            stats.put(pool.name, pool.stats());
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        List<Pool> pools = new ArrayList<>(execution);
+        pools.add(metadata);
+        for (Pool pool : pools) {
+            if (pool.owned && pool.dataSource instanceof HikariDataSource hikari) {
+                hikari.close();
+            }
+        }
+    }
+
+    private void register(Pool pool) {
+        Gauge.builder("querymind.datasource.outstanding", pool, Pool::getOutstanding)
+                .description("Queries admitted to the pool and not yet finished")
+                .tag("pool", pool.name)
+                .register(meterRegistry);
+        FunctionCounter.builder("querymind.datasource.rejected", pool, p -> p.rejected.sum())
+                .description("Queries turned away because the pool was saturated")
+                .tag("pool", pool.name)
+                .register(meterRegistry);
+        pool.timer = Timer.builder("querymind.datasource.queries")
+                .description("Time a query held its admission to the pool")
+                .tag("pool", pool.name)
+                .register(meterRegistry);
+    }
+}
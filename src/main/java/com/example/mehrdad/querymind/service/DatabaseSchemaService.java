@@ -1,143 +1,301 @@
 package com.example.mehrdad.querymind.service;
 
-import lombok.RequiredArgsConstructor;
-import org.springframework.jdbc.core.JdbcTemplate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.*;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+@Slf4j
 @Service
-@RequiredArgsConstructor
 public class DatabaseSchemaService {
 
-    private final DataSource dataSource;
-    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceRouter dataSourceRouter;
+    private final List<SchemaIntrospector> introspectors;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutionPolicy executionPolicy;
+    private final ResultCache resultCache;
+    private final StatementCache statementCache;
+
+    private final String introspectionMode;
+    private final boolean incrementalRefresh;
+    private final int fullRefreshEvery;
+
+    // ReentrantLock rather than synchronized so a refresh never pins a virtual carrier thread
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final AtomicLong versionSequence = new AtomicLong();
+    private volatile SchemaSnapshot snapshot;
+    // Catalog signatures seen by the last refresh; guarded by refreshLock
+    private Map<String, String> tableSignatures;
+    private int refreshesSinceFull;
+
+    public DatabaseSchemaService(DataSourceRouter dataSourceRouter,
+                                 List<SchemaIntrospector> introspectors,
+                                 ApplicationEventPublisher eventPublisher,
+                                 ExecutionPolicy executionPolicy,
+                                 ResultCache resultCache,
+                                 StatementCache statementCache,
+                                 @Value("${querymind.schema.introspection:auto}") String introspectionMode,
+                                 @Value("${querymind.schema.incremental-refresh:true}") boolean incrementalRefresh,
+                                 @Value("${querymind.schema.full-refresh-every:12}") int fullRefreshEvery) {
+        this.dataSourceRouter = dataSourceRouter;
+        this.introspectors = introspectors;
+        this.eventPublisher = eventPublisher;
+        this.executionPolicy = executionPolicy;
+        this.resultCache = resultCache;
+        this.statementCache = statementCache;
+        this.introspectionMode = introspectionMode;
+        this.incrementalRefresh = incrementalRefresh;
+        this.fullRefreshEvery = fullRefreshEvery;
+    }
 
     /**
-     * Get all tables in the database with their columns enriched with PK/FK information
+     * Get all tables in the database with their columns enriched with PK/FK information (served from the snapshot)
      */
     public Map<String, List<ColumnInfo>> getAllTables() {
-        Map<String, List<ColumnInfo>> schema = new LinkedHashMap<>();
-
-        try (Connection conn = dataSource.getConnection()) {
-            DatabaseMetaData metaData = conn.getMetaData();
-
-            // Get all tables
-            try (ResultSet tables = metaData.getTables(conn.getCatalog(), null, "%", new String[]{"TABLE"})) {
-                while (tables.next()) {
-                    String tableName = tables.getString("TABLE_NAME");
-                    List<ColumnInfo> columns = new ArrayList<>();
-
-                    // Collect primary keys for this table
-                    Set<String> primaryKeys = new HashSet<>();
-                    try (ResultSet pkRs = metaData.getPrimaryKeys(conn.getCatalog(), null, tableName)) {
-                        while (pkRs.next()) {
-                            primaryKeys.add(pkRs.getString("COLUMN_NAME"));
-                        }
-                    }
+        return getSnapshot().getTables();
+    }
 
-                    // Collect foreign keys (imported keys) for this table
-                    Map<String, List<String>> fkTargetsByColumn = new HashMap<>();
-                    try (ResultSet fkRs = metaData.getImportedKeys(conn.getCatalog(), null, tableName)) {
-                        while (fkRs.next()) {
-                            String fkColumn = fkRs.getString("FKCOLUMN_NAME");
-                            String pkTable = fkRs.getString("PKTABLE_NAME");
-                            String pkColumn = fkRs.getString("PKCOLUMN_NAME");
-                            fkTargetsByColumn.computeIfAbsent(fkColumn, c -> new ArrayList<>())
-                                    .add(pkTable + "." + pkColumn);
-                        }
-                    }
+    /**
+     * Current schema snapshot; loaded on first access and afterwards read without locking
+     */
+    public SchemaSnapshot getSnapshot() {
+        SchemaSnapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        refreshLock.lock();
+        try {
+            return snapshot != null ? snapshot : refreshSnapshot();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
 
-                    // Get columns for this table
-                    try (ResultSet columnsRs = metaData.getColumns(conn.getCatalog(), null, tableName, "%")) {
-                        while (columnsRs.next()) {
-                            ColumnInfo columnInfo = new ColumnInfo();
-                            columnInfo.setName(columnsRs.getString("COLUMN_NAME"));
-                            columnInfo.setType(columnsRs.getString("TYPE_NAME"));
-                            columnInfo.setSize(columnsRs.getInt("COLUMN_SIZE"));
-                            columnInfo.setNullable(columnsRs.getInt("NULLABLE") == DatabaseMetaData.columnNullable);
-                            columnInfo.setPrimaryKey(primaryKeys.contains(columnInfo.getName()));
-                            if (fkTargetsByColumn.containsKey(columnInfo.getName())) {
-                                columnInfo.setForeignKeyTargets(fkTargetsByColumn.get(columnInfo.getName()));
-                            }
-                            columns.add(columnInfo);
+    /**
+     * Re-introspect the database and publish a new snapshot if the schema changed. When the introspector
+     * provides table signatures only tables whose signature changed (plus tables whose foreign keys point at
+     * them) are re-read and re-rendered; every full-refresh-every'th refresh reads the whole catalog.
+     */
+    public SchemaSnapshot refreshSnapshot() {
+        refreshLock.lock();
+        try {
+            SchemaSnapshot previous = snapshot;
+            Map<String, List<ColumnInfo>> tables;
+            Map<String, String> renderedTables;
+            try (DataSourceRouter.Lease lease = dataSourceRouter.acquireMetadata();
+                 Connection conn = lease.getDataSource().getConnection()) {
+                SchemaIntrospector introspector = selectIntrospector(conn.getMetaData());
+                long start = System.nanoTime();
+                Map<String, String> signatures = incrementalRefresh ? introspector.loadTableSignatures(conn) : null;
+                boolean fullDue = fullRefreshEvery > 0 && ++refreshesSinceFull >= fullRefreshEvery;
+                boolean incremental = previous != null && signatures != null && tableSignatures != null && !fullDue;
+                if (incremental && signatures.equals(tableSignatures)) {
+                    return previous;
+                }
+                Set<String> reload = incremental ? tablesToReload(previous, signatures) : null;
+
+                if (reload != null && reload.size() * 2 <= signatures.size()) {
+                    Map<String, List<ColumnInfo>> reloaded = reload.isEmpty() ? Map.of() : introspector.loadTables(conn, reload);
+                    tables = new LinkedHashMap<>();
+                    renderedTables = new LinkedHashMap<>();
+                    for (String table : signatures.keySet()) {
+                        List<ColumnInfo> columns = reload.contains(table) ? reloaded.get(table) : previous.getTables().get(table);
+                        if (columns != null) {
+                            tables.put(table, columns);
+                            renderedTables.put(table, reload.contains(table)
+                                    ? renderTable(table, columns) : previous.getRenderedTables().get(table));
                         }
                     }
+                    log.debug("Incremental schema refresh re-read {} of {} tables with '{}' strategy in {} ms: {}",
+                            reload.size(), signatures.size(), introspector.getName(),
+                            (System.nanoTime() - start) / 1_000_000, reload);
+                } else {
+                    tables = introspector.loadTables(conn);
+                    renderedTables = renderTables(tables);
+                    refreshesSinceFull = 0;
+                    log.debug("Introspected {} tables with '{}' strategy in {} ms",
+                            tables.size(), introspector.getName(), (System.nanoTime() - start) / 1_000_000);
+                }
+                tableSignatures = signatures;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to retrieve database schema: " + e.getMessage(), e);
+            }
 
-                    if (!columns.isEmpty()) {
-                        schema.put(tableName, columns);
-                    }
+            String schemaString = String.join("\n", renderedTables.values());
+            if (previous != null && previous.getFingerprint().equals(SchemaSnapshot.fingerprint(schemaString))) {
+                return previous;
+            }
+            SchemaSnapshot next = new SchemaSnapshot(
+                    versionSequence.incrementAndGet(), tables, renderedTables, schemaString, Instant.now());
+            snapshot = next;
+            SchemaSnapshotChangedEvent event = new SchemaSnapshotChangedEvent(previous, next);
+            log.info("Published schema snapshot v{} ({} tables, fingerprint {}; added {}, removed {}, modified {})",
+                    next.getVersion(), next.getTables().size(), next.getFingerprint(),
+                    event.getAddedTables(), event.getRemovedTables(), event.getModifiedTables());
+            eventPublisher.publishEvent(event);
+            return next;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Tables whose signature differs from the last refresh, plus unchanged tables whose foreign keys point at a
+     * changed or removed table (their rendering names the target column). Empty when tables were only removed.
+     */
+    private Set<String> tablesToReload(SchemaSnapshot previous, Map<String, String> signatures) {
+        Set<String> changed = new LinkedHashSet<>();
+        signatures.forEach((table, signature) -> {
+            if (!signature.equals(tableSignatures.get(table))) {
+                changed.add(table);
+            }
+        });
+        Set<String> removed = new HashSet<>(tableSignatures.keySet());
+        removed.removeAll(signatures.keySet());
+
+        Set<String> touched = new HashSet<>(changed);
+        touched.addAll(removed);
+        Set<String> reload = new LinkedHashSet<>(changed);
+        for (Map.Entry<String, List<ColumnInfo>> entry : previous.getTables().entrySet()) {
+            if (signatures.containsKey(entry.getKey()) && referencesAny(entry.getValue(), touched)) {
+                reload.add(entry.getKey());
+            }
+        }
+        return reload;
+    }
+
+    private static boolean referencesAny(List<ColumnInfo> columns, Set<String> tables) {
+        for (ColumnInfo column : columns) {
+            if (column.getForeignKeyTargets() == null) {
+                continue;
+            }
+            for (String target : column.getForeignKeyTargets()) {
+                int dot = target.indexOf('.');
+                if (tables.contains(dot < 0 ? target : target.substring(0, dot))) {
+                    return true;
                 }
             }
+        }
+        return false;
+    }
 
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmSnapshot() {
+        refreshSnapshot();
+    }
+
+    @Scheduled(initialDelayString = "${querymind.schema.refresh-interval-ms:300000}",
+            fixedDelayString = "${querymind.schema.refresh-interval-ms:300000}")
+    public void scheduledRefresh() {
+        try {
+            refreshSnapshot();
         } catch (Exception e) {
-            throw new RuntimeException("Failed to retrieve database schema: " + e.getMessage(), e);
+            log.warn("Scheduled schema refresh failed, keeping snapshot v{}: {}",
+                    snapshot != null ? snapshot.getVersion() : 0, e.getMessage());
         }
+    }
 
-        return schema;
+    private SchemaIntrospector selectIntrospector(DatabaseMetaData metaData) throws SQLException {
+        for (SchemaIntrospector introspector : introspectors) {
+            boolean selected = "auto".equalsIgnoreCase(introspectionMode)
+                    || introspector.getName().equalsIgnoreCase(introspectionMode);
+            if (selected && introspector.supports(metaData)) {
+                return introspector;
+            }
+        }
+        throw new IllegalStateException("No schema introspector available for mode '" + introspectionMode + "'");
     }
 
     /**
-     * Get schema as a formatted string for AI including PK and FK annotations
+     * Get schema as a formatted string for AI including PK and FK annotations (pre-rendered in the snapshot)
      */
     public String getSchemaAsString() {
-        Map<String, List<ColumnInfo>> schema = getAllTables();
-        StringBuilder sb = new StringBuilder();
+        return getSnapshot().getSchemaString();
+    }
 
+    private Map<String, String> renderTables(Map<String, List<ColumnInfo>> schema) {
+        Map<String, String> rendered = new LinkedHashMap<>();
         for (Map.Entry<String, List<ColumnInfo>> entry : schema.entrySet()) {
-            sb.append(entry.getKey()).append(" (\n");
-            for (int i = 0; i < entry.getValue().size(); i++) {
-                ColumnInfo col = entry.getValue().get(i);
-                sb.append("  ").append(col.getName()).append(" ").append(col.getType());
-                List<String> annotations = new ArrayList<>();
-                if (col.isPrimaryKey()) annotations.add("PK");
-                if (col.getForeignKeyTargets() != null && !col.getForeignKeyTargets().isEmpty()) {
-                    annotations.add("FK->" + String.join("|", col.getForeignKeyTargets()));
-                }
-                if (!annotations.isEmpty()) {
-                    sb.append(" [").append(String.join(", ", annotations)).append("]");
-                }
-                if (i < entry.getValue().size() - 1) sb.append(",");
-                sb.append("\n");
-            }
-            sb.append(")\n");
+            rendered.put(entry.getKey(), renderTable(entry.getKey(), entry.getValue()));
         }
+        return rendered;
+    }
 
-        return sb.toString().trim();
+    private String renderTable(String tableName, List<ColumnInfo> columns) {
+        return VerboseSchemaRenderer.render(tableName, columns);
     }
 
     /**
-     * Execute a SELECT query and return results (read-only safety)
+     * Execute a SELECT query and return results (read-only safety). Identical statements are served from the
+     * result cache. The execution policy bounds the statement, which then runs with its compared literals
+     * extracted into bind parameters; reading stops once its row or byte budget is spent and the result is marked truncated.
+     *
+     * @throws PoolSaturatedException when no execution pool can take the query; other failures are reported in the result
      */
     public QueryExecutionResult executeQuery(String sqlQuery) {
         QueryExecutionResult result = new QueryExecutionResult();
 
         try {
-            String trimmedQuery = sqlQuery.trim().toUpperCase(Locale.ROOT);
-            if (!trimmedQuery.startsWith("SELECT")) {
-                result.setSuccess(false);
-                result.setError("Only SELECT queries are allowed for execution");
+            ExecutionPolicy.Plan plan = executionPolicy.plan(sqlQuery);
+            SqlParameterizer.Parameterized statement = statementCache.parameterize(plan.sql());
+
+            String cacheKey = statement.key();
+            Optional<ResultCache.Entry> cached = resultCache.get(cacheKey);
+            if (cached.isPresent()) {
+                result.setSuccess(true);
+                result.setResult(cached.get().result());
+                result.setRowCount(cached.get().rowCount());
+                result.setTruncated(cached.get().truncationReason());
+                result.setCached(true);
                 return result;
             }
+            long cacheGeneration = resultCache.generation();
 
-            List<Map<String, Object>> rows = jdbcTemplate.query(sqlQuery, (rs, rowNum) -> {
-                Map<String, Object> row = new LinkedHashMap<>();
-                ResultSetMetaData metaData = rs.getMetaData();
-                int columnCount = metaData.getColumnCount();
-                for (int i = 1; i <= columnCount; i++) {
-                    String columnName = metaData.getColumnName(i);
-                    Object value = rs.getObject(i);
-                    row.put(columnName, value);
-                }
-                return row;
-            });
+            ColumnarResult columnar;
+            try (DataSourceRouter.Lease lease = dataSourceRouter.acquireExecution()) {
+                result.setPool(lease.getPoolName());
+                columnar = lease.getJdbcTemplate().query(
+                        con -> statement.bind(executionPolicy.prepare(con, plan.withSql(statement.sql()))), rs -> {
+                    ColumnarResult.Builder builder = new ColumnarResult.Builder(ColumnarResult.describe(rs.getMetaData()));
+                    long bytes = 0;
+                    while (rs.next()) {
+                        if (builder.getRowCount() == plan.rowLimit()) {
+                            result.setTruncated("Result limited to " + plan.rowLimit() + " rows");
+                            break;
+                        }
+                        bytes += builder.addRow(rs);
+                        if (bytes >= plan.byteLimit()) {
+                            result.setTruncated("Result limited to about " + plan.byteLimit() + " bytes after "
+                                    + builder.getRowCount() + " rows");
+                            break;
+                        }
+                    }
+                    result.setEstimatedBytes(bytes);
+                    return builder.build();
+                });
+            }
 
             result.setSuccess(true);
-            result.setRows(rows);
-            result.setRowCount(rows.size());
+            result.setResult(columnar);
+            result.setRowCount(columnar != null ? columnar.getRowCount() : 0);
+            resultCache.put(cacheKey, result, getSnapshot().referencedTables(statement.shape()), cacheGeneration);
 
+        } catch (PoolSaturatedException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            result.setSuccess(false);
+            result.setError(e.getMessage());
         } catch (Exception e) {
             result.setSuccess(false);
             result.setError("Query execution failed: " + e.getMessage());
@@ -146,42 +304,144 @@ public class DatabaseSchemaService {
         return result;
     }
 
-    public static class ColumnInfo {
-        private String name;
-        private String type;
-        private int size;
-        private boolean nullable;
-        private boolean primaryKey;
-        private List<String> foreignKeyTargets; // Each entry: targetTable.targetColumn
+    /**
+     * Execute a SELECT query and hand each row to the handler as the cursor advances, without buffering the result.
+     * The values array is reused between rows; the returned result carries the row count but no rows.
+     *
+     * @throws PoolSaturatedException when no execution pool can take the query; other failures are reported in the result
+     */
+    public QueryExecutionResult streamQuery(String sqlQuery, RowHandler handler) {
+        QueryExecutionResult result = new QueryExecutionResult();
+
+        try {
+            ExecutionPolicy.Plan plan = executionPolicy.planStream(sqlQuery);
+            SqlParameterizer.Parameterized statement = statementCache.parameterize(plan.sql());
+
+            Integer rowCount;
+            try (DataSourceRouter.Lease lease = dataSourceRouter.acquireExecution()) {
+                result.setPool(lease.getPoolName());
+                rowCount = lease.getJdbcTemplate().query(con -> {
+                    PreparedStatement ps = statement.bind(executionPolicy.prepare(con, plan.withSql(statement.sql())));
+                    handler.onStatement(ps);
+                    return ps;
+                }, rs -> {
+                    List<ColumnarResult.Column> columns = ColumnarResult.describe(rs.getMetaData());
+                    int columnCount = columns.size();
+                    Object[] values = new Object[columnCount];
+                    int count = 0;
+                    try {
+                        handler.onColumns(columns);
+                        while (rs.next()) {
+                            if (count == plan.rowLimit()) {
+                                result.setTruncated("Result limited to " + plan.rowLimit() + " rows");
+                                break;
+                            }
+                            for (int i = 0; i < columnCount; i++) {
+                                values[i] = rs.getObject(i + 1);
+                            }
+                            handler.onRow(values);
+                            count++;
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return count;
+                });
+            }
+
+            result.setSuccess(true);
+            result.setRowCount(rowCount != null ? rowCount : 0);
+
+        } catch (PoolSaturatedException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            result.setSuccess(false);
+            result.setError(e.getMessage());
+        } catch (Exception e) {
+            result.setSuccess(false);
+            result.setError("Query execution failed: " + e.getMessage());
+        }
+
+        return result;
+    }
+
+    /**
+     * Receives a streamed result: column descriptions once, then one call per row
+     */
+    public interface RowHandler {
+        /**
+         * The statement about to run, e.g. to {@link Statement#cancel()} it from another thread
+         */
+        default void onStatement(Statement statement) {
+        }
+
+        void onColumns(List<ColumnarResult.Column> columns) throws IOException;
+        void onRow(Object[] values) throws IOException;
+    }
+
+    /**
+     * One catalog column; immutable, since snapshots built by incremental refreshes share the columns of the
+     * tables they did not re-read
+     */
+    public static final class ColumnInfo {
+        private final String name;
+        private final String type;
+        private final int size;
+        private final boolean nullable;
+        private final boolean primaryKey;
+        private final List<String> foreignKeyTargets; // Each entry: targetTable.targetColumn; null when there are none
+
+        public ColumnInfo(String name, String type, int size, boolean nullable, boolean primaryKey,
+                          List<String> foreignKeyTargets) {
+            this.name = name;
+            this.type = type;
+            this.size = size;
+            this.nullable = nullable;
+            this.primaryKey = primaryKey;
+            this.foreignKeyTargets = foreignKeyTargets != null ? List.copyOf(foreignKeyTargets) : null;
+        }
 
         public String getName() { return name; }
-        public void setName(String name) { this.name = name; }
         public String getType() { return type; }
-        public void setType(String type) { this.type = type; }
         public int getSize() { return size; }
-        public void setSize(int size) { this.size = size; }
         public boolean isNullable() { return nullable; }
-        public void setNullable(boolean nullable) { this.nullable = nullable; }
         public boolean isPrimaryKey() { return primaryKey; }
-        public void setPrimaryKey(boolean primaryKey) { this.primaryKey = primaryKey; }
         public List<String> getForeignKeyTargets() { return foreignKeyTargets; }
-        public void setForeignKeyTargets(List<String> foreignKeyTargets) { this.foreignKeyTargets = foreignKeyTargets; }
     }
 
     public static class QueryExecutionResult {
         private boolean success;
-        private List<Map<String, Object>> rows;
+        private ColumnarResult result;
         private int rowCount;
         private String error;
+        private String truncationReason;
+        private long estimatedBytes;
+        private boolean cached;
+        private String pool;
 
         public boolean isSuccess() { return success; }
         public void setSuccess(boolean success) { this.success = success; }
-        public List<Map<String, Object>> getRows() { return rows; }
-        public void setRows(List<Map<String, Object>> rows) { this.rows = rows; }
+        public ColumnarResult getResult() { return result; }
+        public void setResult(ColumnarResult result) { this.result = result; }
+        /** Row-map compatibility view of the columnar result */
+        public List<Map<String, Object>> getRows() { return result != null ? result.toRowMaps() : null; }
         public int getRowCount() { return rowCount; }
         public void setRowCount(int rowCount) { this.rowCount = rowCount; }
         public String getError() { return error; }
         public void setError(String error) { this.error = error; }
+        /** True when the execution policy stopped reading before the end of the result */
+        public boolean isTruncated() { return truncationReason != null; }
+        public String getTruncationReason() { return truncationReason; }
+        public void setTruncated(String reason) { this.truncationReason = reason; }
+        /** Approximate heap size of the buffered rows */
+        public long getEstimatedBytes() { return estimatedBytes; }
+        public void setEstimatedBytes(long estimatedBytes) { this.estimatedBytes = estimatedBytes; }
+        /** True when the result came from the result cache instead of the database */
+        public boolean isCached() { return cached; }
+        public void setCached(boolean cached) { this.cached = cached; }
+        /** Execution pool the statement ran on; null when served from the result cache */
+        public String getPool() { return pool; }
+        public void setPool(String pool) { this.pool = pool; }
     }
 }
 
@@ -0,0 +1,191 @@
+package com.example.mehrdad.querymind.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Guardrails for executing generated SQL on a shared node. Before execution the statement is checked to be a
+ * single SELECT and its top-level LIMIT is added or capped; the JDBC statement gets a query timeout, fetch size
+ * and max rows; while reading, callers stop once the row or byte budget is spent and report the truncation.
+ */
+@Component
+public class ExecutionPolicy {
+
+    private final int maxRows;
+    private final int streamMaxRows;
+    private final long maxBytes;
+    private final int timeoutSeconds;
+    private final int fetchSize;
+
+    public ExecutionPolicy(@Value("${querymind.execution.max-rows:10000}") int maxRows,
+                           @Value("${querymind.execution.stream-max-rows:1000000}") int streamMaxRows,
+                           @Value("${querymind.execution.max-bytes:16MB}") DataSize maxBytes,
+                           @Value("${querymind.execution.timeout:30s}") Duration timeout,
+                           @Value("${querymind.execution.fetch-size:500}") int fetchSize) {
+        this.maxRows = maxRows;
+        this.streamMaxRows = streamMaxRows;
+        this.maxBytes = maxBytes.toBytes();
+        this.timeoutSeconds = (int) Math.max(1, timeout.toSeconds());
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * A statement ready to run: the (possibly rewritten) SQL and the number of rows the caller may read
+     */
+    public record Plan(String sql, int rowLimit, long byteLimit) {
+
+        /**
+         * Same budgets for an equivalent rewrite of the statement, e.g. its parameterized shape
+         */
+        public Plan withSql(String rewritten) {
+            return new Plan(rewritten, rowLimit, byteLimit);
+        }
+    }
+
+    public int getMaxRows() { return maxRows; }
+    public int getStreamMaxRows() { return streamMaxRows; }
+    public long getMaxBytes() { return maxBytes; }
+
+    /**
+     * Plan a buffered execution bounded by max-rows and max-bytes
+     */
+    public Plan plan(String sql) {
+        return plan(sql, maxRows, maxBytes);
+    }
+
+    /**
+     * Plan a streamed execution; rows are not buffered, so only the row budget applies
+     */
+    public Plan planStream(String sql) {
+        return plan(sql, streamMaxRows, Long.MAX_VALUE);
+    }
+
+    /**
+     * Whether plan() would accept the statement, i.e. it is a single SELECT
+     */
+    public static boolean isSelect(String sql) {
+        Scan scan = scan(SqlTokenizer.stripTrailingSemicolons(sql.trim()));
+        return scan.separatorAt < 0 && scan.firstKeyword.equals("SELECT");
+    }
+
+    private Plan plan(String sql, int rowLimit, long byteLimit) {
+        String statement = SqlTokenizer.stripTrailingSemicolons(sql.trim());
+        Scan scan = scan(statement);
+        if (scan.separatorAt >= 0) {
+            throw new IllegalArgumentException("Only a single SELECT statement is allowed for execution");
+        }
+        if (!scan.firstKeyword.equals("SELECT")) {
+            throw new IllegalArgumentException("Only SELECT queries are allowed for execution");
+        }
+
+        // One row beyond the budget is fetched so truncation can be detected
+        long fetchLimit = (long) rowLimit + 1;
+        String bounded = statement;
+        if (scan.limitValueStart >= 0) {
+            long requested = Long.parseLong(statement.substring(scan.limitValueStart, scan.limitValueEnd));
+            if (requested > fetchLimit) {
+                bounded = statement.substring(0, scan.limitValueStart) + fetchLimit + statement.substring(scan.limitValueEnd);
+            }
+        } else if (!scan.hasLimitClause) {
+            bounded = statement + "\nLIMIT " + fetchLimit;
+        }
+        return new Plan(bounded, rowLimit, byteLimit);
+    }
+
+    /**
+     * Forward-only, read-only statement with timeout, fetch size and a driver-side row cap
+     */
+    public PreparedStatement prepare(Connection con, Plan plan) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(plan.sql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setQueryTimeout(timeoutSeconds);
+        ps.setFetchSize(fetchSize);
+        ps.setMaxRows(plan.rowLimit() == Integer.MAX_VALUE ? 0 : plan.rowLimit() + 1);
+        return ps;
+    }
+
+    /**
+     * Rough heap footprint of a value read from a result set, used against the byte budget
+     */
+    public static long estimateSize(Object value) {
+        if (value == null) return 0;
+        if (value instanceof CharSequence text) return 40 + 2L * text.length();
+        if (value instanceof byte[] bytes) return 16 + bytes.length;
+        if (value instanceof Long || value instanceof Integer || value instanceof Double
+                || value instanceof Float || value instanceof Short || value instanceof Byte || value instanceof Boolean) return 16;
+        if (value instanceof Number) return 40;
+        if (value instanceof Date || value instanceof TemporalAccessor) return 24;
+        return 64;
+    }
+
+    private static final class Scan {
+        String firstKeyword = "";
+        int separatorAt = -1;
+        boolean hasLimitClause;
+        int limitValueStart = -1;
+        int limitValueEnd = -1;
+    }
+
+    /**
+     * Walk the statement once, skipping quoted text and comments, tracking parenthesis depth and recording the
+     * first keyword, any statement separator and the last top-level LIMIT / FETCH clause
+     */
+    private static Scan scan(String sql) {
+        Scan scan = new Scan();
+        int depth = 0;
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            int comment = SqlTokenizer.endOfComment(sql, i);
+            if (comment > i) {
+                i = comment;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                i = SqlTokenizer.endOfQuoted(sql, i, c);
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                i++;
+            } else if (c == ';') {
+                if (scan.separatorAt < 0) scan.separatorAt = i;
+                i++;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) i++;
+                String word = sql.substring(start, i).toUpperCase(Locale.ROOT);
+                if (scan.firstKeyword.isEmpty()) {
+                    scan.firstKeyword = word;
+                }
+                if (depth == 0 && (word.equals("LIMIT") || word.equals("FETCH") || word.equals("TOP"))) {
+                    scan.hasLimitClause = true;
+                    scan.limitValueStart = -1;
+                    if (word.equals("LIMIT")) {
+                        int v = i;
+                        while (v < n && Character.isWhitespace(sql.charAt(v))) v++;
+                        int digits = v;
+                        while (digits < n && Character.isDigit(sql.charAt(digits))) digits++;
+                        boolean literal = digits > v && (digits == n || !Character.isLetterOrDigit(sql.charAt(digits)));
+                        if (literal && digits - v < 19) {
+                            scan.limitValueStart = v;
+                            scan.limitValueEnd = digits;
+                        }
+                    }
+                }
+            } else {
+                i++;
+            }
+        }
+        return scan;
+    }
+}
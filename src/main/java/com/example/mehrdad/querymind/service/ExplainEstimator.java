@@ -0,0 +1,216 @@
+package com.example.mehrdad.querymind.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.example.mehrdad.querymind.service.SqlTokenizer.Token;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Asks the database what a statement would cost without running it. EXPLAIN output differs per database:
+ * PostgreSQL gives a total cost and per-node row estimates (the largest node counts), MySQL gives the rows examined
+ * per table (multiplied, as a nested loop would), and H2 only marks full table scans, so its estimate is the
+ * product of the scanned tables' row counts with index lookups counted as one row. Other databases get no estimate.
+ * A plain single-table read (no join, grouping, aggregate, sort or subquery) stops at its LIMIT, so its estimate is
+ * capped there; the policy's own LIMIT therefore does not get a bounded read of a large table rejected.
+ */
+@Component
+public class ExplainEstimator {
+
+    private static final Pattern H2_TABLE_SCAN = Pattern.compile("/\\*\\s*([^\\s*]+)\\.tableScan\\b");
+    private static final Pattern POSTGRES_NODE = Pattern.compile("cost=[0-9.]+\\.\\.([0-9.]+) rows=(\\d+)");
+    private static final Set<String> UNBOUNDED_BY_LIMIT = Set.of(
+            "JOIN", "GROUP", "HAVING", "DISTINCT", "ORDER", "UNION", "INTERSECT", "EXCEPT", "MINUS");
+    private static final Set<String> AGGREGATES = Set.of("COUNT", "SUM", "AVG", "MIN", "MAX");
+
+    /**
+     * Estimated rows the plan reads, the database's own cost figure if it reports one, and the plan text
+     */
+    public record Estimate(long rows, Double cost, String plan) {}
+
+    private final DataSourceRouter dataSourceRouter;
+    private final int timeoutSeconds;
+    // H2 row counts by qualified table name; COUNT(*) is cheap there but not free on every request
+    private final Cache<String, Long> tableRows;
+
+    public ExplainEstimator(DataSourceRouter dataSourceRouter,
+                            @Value("${querymind.validation.explain-timeout:5s}") Duration timeout,
+                            @Value("${querymind.validation.table-rows-ttl:5m}") Duration tableRowsTtl) {
+        this.dataSourceRouter = dataSourceRouter;
+        this.timeoutSeconds = (int) Math.max(1, timeout.toSeconds());
+        this.tableRows = Caffeine.newBuilder()
+                .maximumSize(1000)
+                .expireAfterWrite(tableRowsTtl)
+                .build();
+    }
+
+    /**
+     * Estimate for the statement, or empty when the database's EXPLAIN output is not understood
+     *
+     * @throws org.springframework.dao.DataAccessException when the database rejects the statement
+     */
+    public Optional<Estimate> estimate(String sql) {
+        return estimate(sql, statement -> {});
+    }
+
+    /**
+     * As {@link #estimate(String)}, handing every JDBC statement it opens to the listener so the caller can cancel it
+     */
+    public Optional<Estimate> estimate(String sql, Consumer<Statement> onStatement) {
+        long limit = readLimit(sql);
+        return estimatePlan(sql, onStatement).map(estimate -> limit >= 0 && estimate.rows() > limit
+                ? new Estimate(limit, estimate.cost(), estimate.plan())
+                : estimate);
+    }
+
+    /**
+     * The top-level LIMIT of a statement that reads at most that many rows, or -1 when a join, grouping,
+     * aggregate, sort or subquery may read any number of rows to produce them
+     */
+    static long readLimit(String sql) {
+        List<Token> tokens = SqlTokenizer.tokenize(SqlTokenizer.stripTrailingSemicolons(sql.trim()));
+        long limit = -1;
+        boolean inFrom = false;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            String upper = token.text().toUpperCase(Locale.ROOT);
+            boolean call = i + 1 < tokens.size() && tokens.get(i + 1).text().equals("(");
+            if (token.word() && (UNBOUNDED_BY_LIMIT.contains(upper) || (call && AGGREGATES.contains(upper))
+                    || (token.depth() > 0 && upper.equals("SELECT")))) {
+                return -1;
+            }
+            if (token.depth() > 0) {
+                continue;
+            }
+            if (token.is("FROM")) {
+                inFrom = true;
+            } else if (token.is("WHERE") || token.is("LIMIT") || token.is("FETCH") || token.is("OFFSET")) {
+                inFrom = false;
+            } else if (inFrom && token.text().equals(",")) {
+                return -1;
+            }
+            if (token.is("LIMIT") && i + 1 < tokens.size() && tokens.get(i + 1).text().matches("\\d{1,18}")) {
+                limit = Long.parseLong(tokens.get(i + 1).text());
+            }
+        }
+        return limit;
+    }
+
+    private Optional<Estimate> estimatePlan(String sql, Consumer<Statement> onStatement) {
+        try (DataSourceRouter.Lease lease = dataSourceRouter.acquireExecution()) {
+            return lease.getJdbcTemplate().execute((ConnectionCallback<Optional<Estimate>>) con -> {
+                String product = con.getMetaData().getDatabaseProductName().toUpperCase(Locale.ROOT);
+                if (product.contains("H2")) {
+                    String plan = String.join("\n", explain(con, sql, 1, onStatement));
+                    long rows = 1;
+                    for (String table : h2ScannedTables(plan)) {
+                        rows = saturatedMultiply(rows, Math.max(1, rowCount(con, table, onStatement)));
+                    }
+                    return Optional.of(new Estimate(rows, null, plan));
+                }
+                if (product.contains("POSTGRES")) {
+                    return Optional.of(postgresEstimate(explain(con, sql, 1, onStatement)));
+                }
+                if (product.contains("MYSQL") || product.contains("MARIADB")) {
+                    List<String> rowsPerTable = explain(con, sql, -1, onStatement);
+                    long rows = 1;
+                    for (String value : rowsPerTable) {
+                        rows = saturatedMultiply(rows, Math.max(1, Long.parseLong(value)));
+                    }
+                    return Optional.of(new Estimate(rows, null, "rows per table: " + rowsPerTable));
+                }
+                return Optional.empty();
+            });
+        }
+    }
+
+    /**
+     * Qualified names of the tables an H2 plan reads in full
+     */
+    static List<String> h2ScannedTables(String plan) {
+        List<String> tables = new ArrayList<>();
+        Matcher m = H2_TABLE_SCAN.matcher(plan);
+        while (m.find()) {
+            tables.add(m.group(1).replace("\"", ""));
+        }
+        return tables;
+    }
+
+    /**
+     * Total cost of the top node and the largest row estimate of any node of a PostgreSQL text plan
+     */
+    static Estimate postgresEstimate(List<String> lines) {
+        Double cost = null;
+        long rows = 0;
+        for (String line : lines) {
+            Matcher m = POSTGRES_NODE.matcher(line);
+            if (m.find()) {
+                if (cost == null) {
+                    cost = Double.parseDouble(m.group(1));
+                }
+                rows = Math.max(rows, Long.parseLong(m.group(2)));
+            }
+        }
+        return new Estimate(rows, cost, String.join("\n", lines));
+    }
+
+    /**
+     * EXPLAIN output as strings: the given column of every row, or with column -1 the non-null "rows" column
+     */
+    private List<String> explain(Connection con, String sql, int column, Consumer<Statement> onStatement)
+            throws SQLException {
+        List<String> values = new ArrayList<>();
+        try (Statement statement = con.createStatement()) {
+            onStatement.accept(statement);
+            statement.setQueryTimeout(timeoutSeconds);
+            try (ResultSet rs = statement.executeQuery("EXPLAIN " + sql)) {
+                while (rs.next()) {
+                    String value = column > 0 ? rs.getString(column) : rs.getString("rows");
+                    if (value != null) {
+                        values.add(value);
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    private long rowCount(Connection con, String qualifiedTable, Consumer<Statement> onStatement) throws SQLException {
+        Long cached = tableRows.getIfPresent(qualifiedTable);
+        if (cached != null) {
+            return cached;
+        }
+        StringBuilder quoted = new StringBuilder();
+        for (String part : qualifiedTable.split("\\.")) {
+            quoted.append(quoted.isEmpty() ? "" : ".").append('"').append(part.replace("\"", "\"\"")).append('"');
+        }
+        try (Statement statement = con.createStatement()) {
+            onStatement.accept(statement);
+            statement.setQueryTimeout(timeoutSeconds);
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + quoted)) {
+                long count = rs.next() ? rs.getLong(1) : 0;
+                tableRows.put(qualifiedTable, count);
+                return count;
+            }
+        }
+    }
+
+    private static long saturatedMultiply(long a, long b) {
+        return b != 0 && a > Long.MAX_VALUE / b ? Long.MAX_VALUE : a * b;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.mehrdad.querymind.service;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+@Component
+public class GeminiLlmProvider implements LlmProvider {
+
+    private final ChatModel vertexAiGeminiChatModel;
+    private final ProviderBulkhead bulkhead;
+
+    public GeminiLlmProvider(@Autowired(required = false) ChatModel vertexAiGeminiChatModel,
+                             @Qualifier("geminiBulkhead") ProviderBulkhead bulkhead) {
+        this.vertexAiGeminiChatModel = vertexAiGeminiChatModel;
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public String getName() {
+        return "gemini";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Google Gemini 1.5 Flash";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return vertexAiGeminiChatModel != null;
+    }
+
+    @Override
+    public String getUnavailableReason() {
+        return "Gemini is not configured";
+    }
+
+    @Override
+    public String generate(String systemPrompt, String userPrompt) throws Exception {
+        // Gemini takes a single prompt, so the system instructions are prepended
+        String fullPrompt = systemPrompt + "\n\n" + userPrompt;
+        return bulkhead.call(() -> vertexAiGeminiChatModel.call(fullPrompt));
+    }
+}
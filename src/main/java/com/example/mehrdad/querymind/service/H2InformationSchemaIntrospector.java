@@ -0,0 +1,170 @@
+package com.example.mehrdad.querymind.service;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Set-based introspection for H2: columns, primary keys and foreign keys for the whole catalog
+ * are read with three INFORMATION_SCHEMA queries regardless of the number of tables. Table signatures
+ * are hashed inside the database from the column definitions and key constraint names.
+ */
+@Component
+@Order(0)
+public class H2InformationSchemaIntrospector implements SchemaIntrospector {
+
+    public static final String NAME = "information-schema";
+
+    // %s is replaced by an optional table filter
+    private static final String COLUMNS_SQL =
+            "SELECT c.TABLE_SCHEMA, c.TABLE_NAME, c.COLUMN_NAME, c.DATA_TYPE, " +
+            "COALESCE(c.CHARACTER_MAXIMUM_LENGTH, c.NUMERIC_PRECISION, c.DATETIME_PRECISION, 0) AS COLUMN_SIZE, " +
+            "c.IS_NULLABLE " +
+            "FROM INFORMATION_SCHEMA.COLUMNS c " +
+            "JOIN INFORMATION_SCHEMA.TABLES t ON t.TABLE_SCHEMA = c.TABLE_SCHEMA AND t.TABLE_NAME = c.TABLE_NAME " +
+            "WHERE t.TABLE_TYPE = 'BASE TABLE' AND t.TABLE_SCHEMA <> 'INFORMATION_SCHEMA'%s " +
+            "ORDER BY c.TABLE_SCHEMA, c.TABLE_NAME, c.ORDINAL_POSITION";
+
+    private static final String PRIMARY_KEYS_SQL =
+            "SELECT k.TABLE_SCHEMA, k.TABLE_NAME, k.COLUMN_NAME " +
+            "FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS tc " +
+            "JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE k " +
+            "ON k.CONSTRAINT_SCHEMA = tc.CONSTRAINT_SCHEMA AND k.CONSTRAINT_NAME = tc.CONSTRAINT_NAME " +
+            "WHERE tc.CONSTRAINT_TYPE = 'PRIMARY KEY'%s";
+
+    private static final String FOREIGN_KEYS_SQL =
+            "SELECT fk.TABLE_SCHEMA, fk.TABLE_NAME, fk.COLUMN_NAME, " +
+            "pk.TABLE_NAME AS PK_TABLE_NAME, pk.COLUMN_NAME AS PK_COLUMN_NAME " +
+            "FROM INFORMATION_SCHEMA.REFERENTIAL_CONSTRAINTS rc " +
+            "JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE fk " +
+            "ON fk.CONSTRAINT_SCHEMA = rc.CONSTRAINT_SCHEMA AND fk.CONSTRAINT_NAME = rc.CONSTRAINT_NAME " +
+            "JOIN INFORMATION_SCHEMA.KEY_COLUMN_USAGE pk " +
+            "ON pk.CONSTRAINT_SCHEMA = rc.UNIQUE_CONSTRAINT_SCHEMA AND pk.CONSTRAINT_NAME = rc.UNIQUE_CONSTRAINT_NAME " +
+            "AND pk.ORDINAL_POSITION = fk.POSITION_IN_UNIQUE_CONSTRAINT%s " +
+            "ORDER BY fk.TABLE_SCHEMA, fk.TABLE_NAME, pk.TABLE_NAME, fk.ORDINAL_POSITION";
+
+    private static final String COLUMN_SIGNATURES_SQL =
+            "SELECT c.TABLE_NAME, COUNT(*) AS COLUMN_COUNT, HASH('SHA-256', LISTAGG(" +
+            "c.COLUMN_NAME || ' ' || c.DATA_TYPE || ' ' || " +
+            "COALESCE(c.CHARACTER_MAXIMUM_LENGTH, c.NUMERIC_PRECISION, c.DATETIME_PRECISION, 0) || ' ' || c.IS_NULLABLE, ',') " +
+            "WITHIN GROUP (ORDER BY c.ORDINAL_POSITION)) AS COLUMNS_HASH " +
+            "FROM INFORMATION_SCHEMA.COLUMNS c " +
+            "JOIN INFORMATION_SCHEMA.TABLES t ON t.TABLE_SCHEMA = c.TABLE_SCHEMA AND t.TABLE_NAME = c.TABLE_NAME " +
+            "WHERE t.TABLE_TYPE = 'BASE TABLE' AND t.TABLE_SCHEMA <> 'INFORMATION_SCHEMA' " +
+            "GROUP BY c.TABLE_SCHEMA, c.TABLE_NAME " +
+            "ORDER BY c.TABLE_SCHEMA, c.TABLE_NAME";
+
+    // Constraint names change whenever a key is dropped or re-created
+    private static final String CONSTRAINT_SIGNATURES_SQL =
+            "SELECT TABLE_NAME, LISTAGG(CONSTRAINT_TYPE || ' ' || CONSTRAINT_NAME, ',') " +
+            "WITHIN GROUP (ORDER BY CONSTRAINT_NAME) AS CONSTRAINTS " +
+            "FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS " +
+            "WHERE CONSTRAINT_TYPE IN ('PRIMARY KEY', 'FOREIGN KEY') AND TABLE_SCHEMA <> 'INFORMATION_SCHEMA' " +
+            "GROUP BY TABLE_SCHEMA, TABLE_NAME";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(DatabaseMetaData metaData) throws SQLException {
+        return "H2".equalsIgnoreCase(metaData.getDatabaseProductName());
+    }
+
+    @Override
+    public Map<String, List<DatabaseSchemaService.ColumnInfo>> loadTables(Connection conn) throws SQLException {
+        return loadTables(conn, null);
+    }
+
+    /**
+     * Same three queries restricted to the given tables; null loads the whole catalog
+     */
+    @Override
+    public Map<String, List<DatabaseSchemaService.ColumnInfo>> loadTables(Connection conn, Set<String> tableNames)
+            throws SQLException {
+        Set<String> primaryKeys = new HashSet<>();
+        Map<String, List<String>> fkTargetsByColumn = new HashMap<>();
+        Map<String, List<DatabaseSchemaService.ColumnInfo>> schema = new LinkedHashMap<>();
+        if (tableNames != null && tableNames.isEmpty()) {
+            return schema;
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(withTableFilter(PRIMARY_KEYS_SQL, "k", tableNames))) {
+                while (rs.next()) {
+                    primaryKeys.add(columnKey(rs.getString("TABLE_SCHEMA"), rs.getString("TABLE_NAME"), rs.getString("COLUMN_NAME")));
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(withTableFilter(FOREIGN_KEYS_SQL, "fk", tableNames))) {
+                while (rs.next()) {
+                    fkTargetsByColumn.computeIfAbsent(
+                            columnKey(rs.getString("TABLE_SCHEMA"), rs.getString("TABLE_NAME"), rs.getString("COLUMN_NAME")),
+                            c -> new ArrayList<>()
+                    ).add(rs.getString("PK_TABLE_NAME") + "." + rs.getString("PK_COLUMN_NAME"));
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(withTableFilter(COLUMNS_SQL, "c", tableNames))) {
+                while (rs.next()) {
+                    String tableName = rs.getString("TABLE_NAME");
+                    String key = columnKey(rs.getString("TABLE_SCHEMA"), tableName, rs.getString("COLUMN_NAME"));
+
+                    DatabaseSchemaService.ColumnInfo columnInfo = new DatabaseSchemaService.ColumnInfo(
+                            rs.getString("COLUMN_NAME"),
+                            rs.getString("DATA_TYPE"),
+                            rs.getInt("COLUMN_SIZE"),
+                            "YES".equalsIgnoreCase(rs.getString("IS_NULLABLE")),
+                            primaryKeys.contains(key),
+                            fkTargetsByColumn.get(key));
+                    schema.computeIfAbsent(tableName, t -> new ArrayList<>()).add(columnInfo);
+                }
+            }
+        }
+
+        return schema;
+    }
+
+    @Override
+    public Map<String, String> loadTableSignatures(Connection conn) throws SQLException {
+        Map<String, String> constraints = new HashMap<>();
+        Map<String, String> signatures = new LinkedHashMap<>();
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery(CONSTRAINT_SIGNATURES_SQL)) {
+                while (rs.next()) {
+                    constraints.put(rs.getString("TABLE_NAME"), rs.getString("CONSTRAINTS"));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery(COLUMN_SIGNATURES_SQL)) {
+                while (rs.next()) {
+                    String tableName = rs.getString("TABLE_NAME");
+                    signatures.put(tableName, rs.getInt("COLUMN_COUNT") + ":"
+                            + HexFormat.of().formatHex(rs.getBytes("COLUMNS_HASH")) + ":" + constraints.get(tableName));
+                }
+            }
+        }
+        return signatures;
+    }
+
+    private static String withTableFilter(String sql, String alias, Set<String> tableNames) {
+        if (tableNames == null) {
+            return String.format(sql, "");
+        }
+        StringJoiner names = new StringJoiner(", ", " AND " + alias + ".TABLE_NAME IN (", ")");
+        for (String name : tableNames) {
+            names.add("'" + name.replace("'", "''") + "'");
+        }
+        return String.format(sql, names);
+    }
+
+    private static String columnKey(String schema, String table, String column) {
+        return schema + '.' + table + '.' + column;
+    }
+}
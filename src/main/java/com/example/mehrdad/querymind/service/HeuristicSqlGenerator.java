@@ -0,0 +1,382 @@
+package com.example.mehrdad.querymind.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rule-based NL-to-SQL used when no LLM answers. Each schema is compiled once into a {@link Model}: a keyword
+ * automaton over table names (and their singular/plural and spaced forms), column names and count phrases,
+ * plus an FK graph. A question is then answered with one scan of its text and a shortest-path join plan that
+ * connects every mentioned table.
+ */
+@Component
+public class HeuristicSqlGenerator {
+
+    private static final Pattern TABLE_HEADER = Pattern.compile("^(?:TABLE\\s+)?(\\w+)\\s*\\($", Pattern.CASE_INSENSITIVE);
+    private static final Pattern COLUMN_LINE = Pattern.compile("^(\\w+)\\s+([^\\[]*?)\\s*(?:\\[(.*)])?,?$");
+    private static final Pattern TARGET_SEPARATOR = Pattern.compile("\\|");
+    private static final Pattern ANNOTATION_SEPARATOR = Pattern.compile("\\s*,\\s*");
+
+    private record VersionedModel(long version, Model model) {}
+
+    private volatile VersionedModel snapshotModel;
+    private final Cache<String, Model> customSchemaModels = Caffeine.newBuilder().maximumSize(64).build();
+
+    public String generate(String text, SchemaSnapshot snapshot) {
+        return modelFor(snapshot).generate(text);
+    }
+
+    /**
+     * Answer against a schema in the rendered prompt format ("TABLE (\n  col TYPE [PK, FK->t.c],\n)")
+     */
+    public String generate(String text, String schemaString) {
+        if (schemaString == null || schemaString.isBlank()) {
+            return Model.EMPTY.generate(text);
+        }
+        return customSchemaModels.get(schemaString, s -> Model.of(parseSchema(s))).generate(text);
+    }
+
+    private Model modelFor(SchemaSnapshot snapshot) {
+        VersionedModel current = snapshotModel;
+        if (current == null || current.version() != snapshot.getVersion()) {
+            current = new VersionedModel(snapshot.getVersion(), Model.of(snapshot.getTables()));
+            snapshotModel = current;
+        }
+        return current.model();
+    }
+
+    /**
+     * Parse the rendered schema format back into the structured model
+     */
+    static Map<String, List<DatabaseSchemaService.ColumnInfo>> parseSchema(String schemaString) {
+        Map<String, List<DatabaseSchemaService.ColumnInfo>> tables = new LinkedHashMap<>();
+        List<DatabaseSchemaService.ColumnInfo> current = null;
+        for (String rawLine : schemaString.split("\n")) {
+            String line = rawLine.trim();
+            if (line.isEmpty()) continue;
+            Matcher header = TABLE_HEADER.matcher(line);
+            if (header.matches()) {
+                current = new ArrayList<>();
+                tables.put(header.group(1), current);
+                continue;
+            }
+            if (line.startsWith(")")) {
+                current = null;
+                continue;
+            }
+            Matcher column = current != null ? COLUMN_LINE.matcher(line) : null;
+            if (column == null || !column.matches()) continue;
+            boolean primaryKey = false;
+            List<String> foreignKeyTargets = null;
+            if (column.group(3) != null) {
+                for (String annotation : ANNOTATION_SEPARATOR.split(column.group(3))) {
+                    if (annotation.equals("PK")) {
+                        primaryKey = true;
+                    } else if (annotation.startsWith("FK->")) {
+                        foreignKeyTargets = List.of(TARGET_SEPARATOR.split(annotation.substring(4)));
+                    }
+                }
+            }
+            current.add(new DatabaseSchemaService.ColumnInfo(column.group(1), column.group(2), 0, false, primaryKey,
+                    foreignKeyTargets));
+        }
+        return tables;
+    }
+
+    /**
+     * Compiled, immutable heuristic model of one schema
+     */
+    static final class Model {
+
+        static final Model EMPTY = of(Map.of());
+
+        private static final int COUNT_PHRASE = -2;
+
+        private final String[] tables;
+        private final String[][] columns;
+        private final KeywordMatcher matcher;
+        // keyword id -> table index, COUNT_PHRASE, or -1 when the keyword only names columns
+        private final int[] keywordTable;
+        // keyword id -> (table, column) pairs packed as table << 16 | column
+        private final int[][] keywordColumns;
+        private final int[] edgeFrom;
+        private final int[] edgeTo;
+        private final String[] edgeCondition;
+        private final int[][] adjacency;
+
+        private Model(String[] tables, String[][] columns, KeywordMatcher matcher, int[] keywordTable,
+                      int[][] keywordColumns, int[] edgeFrom, int[] edgeTo, String[] edgeCondition, int[][] adjacency) {
+            this.tables = tables;
+            this.columns = columns;
+            this.matcher = matcher;
+            this.keywordTable = keywordTable;
+            this.keywordColumns = keywordColumns;
+            this.edgeFrom = edgeFrom;
+            this.edgeTo = edgeTo;
+            this.edgeCondition = edgeCondition;
+            this.adjacency = adjacency;
+        }
+
+        static Model of(Map<String, List<DatabaseSchemaService.ColumnInfo>> schema) {
+            String[] tables = schema.keySet().toArray(new String[0]);
+            String[][] columns = new String[tables.length][];
+            Map<String, Integer> tableIndex = new HashMap<>();
+            for (int t = 0; t < tables.length; t++) {
+                tableIndex.put(tables[t].toLowerCase(Locale.ROOT), t);
+                List<DatabaseSchemaService.ColumnInfo> cols = schema.get(tables[t]);
+                columns[t] = new String[cols.size()];
+                for (int c = 0; c < cols.size(); c++) {
+                    columns[t][c] = cols.get(c).getName();
+                }
+            }
+
+            KeywordMatcher.Builder builder = new KeywordMatcher.Builder();
+            Map<Integer, Integer> tableKeywords = new HashMap<>();
+            Map<Integer, List<Integer>> columnKeywords = new HashMap<>();
+            for (String phrase : List.of("count", "how many", "number of")) {
+                tableKeywords.put(builder.add(phrase), COUNT_PHRASE);
+            }
+            for (int t = 0; t < tables.length; t++) {
+                for (String form : tableForms(tables[t])) {
+                    int id = builder.add(form);
+                    if (id >= 0) tableKeywords.putIfAbsent(id, t);
+                }
+            }
+            for (int t = 0; t < tables.length; t++) {
+                for (int c = 0; c < columns[t].length && c < 0xFFFF; c++) {
+                    for (String form : spacedForms(columns[t][c])) {
+                        int id = builder.add(form);
+                        if (id >= 0) columnKeywords.computeIfAbsent(id, k -> new ArrayList<>()).add(t << 16 | c);
+                    }
+                }
+            }
+            KeywordMatcher matcher = builder.build();
+
+            int[] keywordTable = new int[matcher.keywordCount()];
+            int[][] keywordColumns = new int[matcher.keywordCount()][];
+            for (int k = 0; k < keywordTable.length; k++) {
+                keywordTable[k] = tableKeywords.getOrDefault(k, -1);
+                List<Integer> refs = columnKeywords.getOrDefault(k, List.of());
+                keywordColumns[k] = refs.stream().mapToInt(Integer::intValue).toArray();
+            }
+
+            // FK graph; edges are traversable in both directions
+            List<int[]> edges = new ArrayList<>();
+            List<String> conditions = new ArrayList<>();
+            for (int t = 0; t < tables.length; t++) {
+                for (DatabaseSchemaService.ColumnInfo col : schema.get(tables[t])) {
+                    if (col.getForeignKeyTargets() == null) continue;
+                    for (String target : col.getForeignKeyTargets()) {
+                        int dot = target.lastIndexOf('.');
+                        Integer to = dot > 0 ? tableIndex.get(target.substring(0, dot).toLowerCase(Locale.ROOT)) : null;
+                        if (to == null || to == t) continue;
+                        edges.add(new int[]{t, to});
+                        conditions.add(tables[t] + "." + col.getName() + " = " + tables[to] + "." + target.substring(dot + 1));
+                    }
+                }
+            }
+            int[] edgeFrom = new int[edges.size()];
+            int[] edgeTo = new int[edges.size()];
+            List<List<Integer>> incident = new ArrayList<>();
+            for (int t = 0; t < tables.length; t++) incident.add(new ArrayList<>());
+            for (int e = 0; e < edges.size(); e++) {
+                edgeFrom[e] = edges.get(e)[0];
+                edgeTo[e] = edges.get(e)[1];
+                incident.get(edgeFrom[e]).add(e);
+                incident.get(edgeTo[e]).add(e);
+            }
+            int[][] adjacency = new int[tables.length][];
+            for (int t = 0; t < tables.length; t++) {
+                adjacency[t] = incident.get(t).stream().mapToInt(Integer::intValue).toArray();
+            }
+            return new Model(tables, columns, matcher, keywordTable, keywordColumns,
+                    edgeFrom, edgeTo, conditions.toArray(new String[0]), adjacency);
+        }
+
+        String generate(String text) {
+            if (text == null || text.trim().isEmpty()) return "SELECT 1;";
+
+            // One pass over the text; overlapping matches resolve to the longest keyword. Whole-word matches
+            // cannot overlap beyond half the text, which bounds the buffers.
+            int capacity = text.length() / 2 + 1;
+            int[] matchKeyword = new int[capacity];
+            int[] matchStart = new int[capacity];
+            int[] matchEnd = new int[capacity];
+            int[] matchCount = {0};
+            matcher.scan(text, (keyword, start, end) -> {
+                int n = matchCount[0];
+                while (n > 0 && start <= matchStart[n - 1]) {
+                    n--; // this match covers the previous one
+                }
+                if (n > 0 && start < matchEnd[n - 1]) {
+                    return; // shorter or partially overlapping keyword inside an accepted match
+                }
+                matchKeyword[n] = keyword;
+                matchStart[n] = start;
+                matchEnd[n] = end;
+                matchCount[0] = n + 1;
+            });
+
+            boolean wantsCount = false;
+            int[] mentioned = new int[matchCount[0]];
+            int mentionedCount = 0;
+            for (int m = 0; m < matchCount[0]; m++) {
+                int table = keywordTable[matchKeyword[m]];
+                if (table == COUNT_PHRASE) {
+                    wantsCount = true;
+                } else if (table >= 0 && indexOf(mentioned, mentionedCount, table) < 0) {
+                    mentioned[mentionedCount++] = table;
+                }
+            }
+
+            // Columns project from a mentioned table, or name the table when it is the only candidate
+            int[] projected = new int[matchCount[0]];
+            int projectedCount = 0;
+            for (int m = 0; m < matchCount[0]; m++) {
+                int[] refs = keywordColumns[matchKeyword[m]];
+                int chosen = -1;
+                for (int ref : refs) {
+                    if (indexOf(mentioned, mentionedCount, ref >>> 16) >= 0) {
+                        chosen = ref;
+                        break;
+                    }
+                }
+                if (chosen < 0 && mentionedCount == 0 && refs.length == 1) {
+                    chosen = refs[0];
+                    mentioned[mentionedCount++] = chosen >>> 16;
+                }
+                if (chosen >= 0 && indexOf(projected, projectedCount, chosen) < 0) {
+                    projected[projectedCount++] = chosen;
+                }
+            }
+
+            if (mentionedCount == 0) {
+                return wantsCount ? "SELECT COUNT(*) FROM table_name;" : "SELECT * FROM table_name;";
+            }
+
+            StringBuilder from = new StringBuilder(tables[mentioned[0]]);
+            boolean[] joined = new boolean[tables.length];
+            joined[mentioned[0]] = true;
+            int joinedMentioned = 1;
+            int[] selected = new int[mentionedCount];
+            selected[0] = mentioned[0];
+            for (int i = 1; i < mentionedCount; i++) {
+                if (joined[mentioned[i]] || joinPath(mentioned[i], joined, from)) {
+                    selected[joinedMentioned++] = mentioned[i];
+                }
+            }
+
+            StringBuilder sql = new StringBuilder("SELECT ");
+            boolean qualify = from.length() > tables[mentioned[0]].length();
+            if (wantsCount) {
+                sql.append("COUNT(*) AS cnt");
+            } else if (projectedCount > 0 && projectedInQuery(projected, projectedCount, joined)) {
+                for (int p = 0; p < projectedCount; p++) {
+                    if (!joined[projected[p] >>> 16]) continue;
+                    if (sql.length() > 7) sql.append(", ");
+                    if (qualify) sql.append(tables[projected[p] >>> 16]).append('.');
+                    sql.append(columns[projected[p] >>> 16][projected[p] & 0xFFFF]);
+                }
+            } else if (!qualify) {
+                sql.append('*');
+            } else {
+                for (int i = 0; i < joinedMentioned; i++) {
+                    if (i > 0) sql.append(", ");
+                    sql.append(tables[selected[i]]).append(".*");
+                }
+            }
+            return sql.append(" FROM ").append(from).append(';').toString();
+        }
+
+        /**
+         * Breadth-first search from every already joined table to the target; appends the JOINs of the shortest
+         * path and marks its tables joined. Returns false when the target is not reachable through FKs.
+         */
+        private boolean joinPath(int target, boolean[] joined, StringBuilder from) {
+            int[] viaEdge = new int[tables.length];
+            Arrays.fill(viaEdge, -1);
+            int[] queue = new int[tables.length];
+            int head = 0;
+            int tail = 0;
+            for (int t = 0; t < tables.length; t++) {
+                if (joined[t]) queue[tail++] = t;
+            }
+            boolean found = false;
+            while (head < tail && !found) {
+                int t = queue[head++];
+                for (int e : adjacency[t]) {
+                    int other = edgeFrom[e] == t ? edgeTo[e] : edgeFrom[e];
+                    if (joined[other] || viaEdge[other] >= 0) continue;
+                    viaEdge[other] = e;
+                    if (other == target) {
+                        found = true;
+                        break;
+                    }
+                    queue[tail++] = other;
+                }
+            }
+            if (!found) return false;
+
+            // Walk back to the joined set, then emit the JOINs outward from it
+            int[] path = new int[tables.length];
+            int length = 0;
+            for (int t = target; !joined[t]; ) {
+                path[length++] = t;
+                int e = viaEdge[t];
+                t = edgeFrom[e] == t ? edgeTo[e] : edgeFrom[e];
+            }
+            for (int i = length - 1; i >= 0; i--) {
+                int t = path[i];
+                from.append(" JOIN ").append(tables[t]).append(" ON ").append(edgeCondition[viaEdge[t]]);
+                joined[t] = true;
+            }
+            return true;
+        }
+
+        private static boolean projectedInQuery(int[] projected, int count, boolean[] joined) {
+            for (int p = 0; p < count; p++) {
+                if (joined[projected[p] >>> 16]) return true;
+            }
+            return false;
+        }
+
+        private static int indexOf(int[] values, int count, int value) {
+            for (int i = 0; i < count; i++) {
+                if (values[i] == value) return i;
+            }
+            return -1;
+        }
+
+        private static List<String> tableForms(String table) {
+            String lower = table.toLowerCase(Locale.ROOT);
+            Set<String> forms = new LinkedHashSet<>();
+            forms.add(lower);
+            if (lower.endsWith("ies")) {
+                forms.add(lower.substring(0, lower.length() - 3) + "y");
+            } else if (lower.endsWith("ses") || lower.endsWith("xes")) {
+                forms.add(lower.substring(0, lower.length() - 2));
+            } else if (lower.endsWith("s") && !lower.endsWith("ss")) {
+                forms.add(lower.substring(0, lower.length() - 1));
+            } else if (lower.endsWith("y")) {
+                forms.add(lower.substring(0, lower.length() - 1) + "ies");
+            } else {
+                forms.add(lower + "s");
+            }
+            List<String> result = new ArrayList<>();
+            for (String form : forms) {
+                result.addAll(spacedForms(form));
+            }
+            return result;
+        }
+
+        private static List<String> spacedForms(String name) {
+            String lower = name.toLowerCase(Locale.ROOT);
+            return lower.indexOf('_') >= 0 ? List.of(lower, lower.replace('_', ' ')) : List.of(lower);
+        }
+    }
+}
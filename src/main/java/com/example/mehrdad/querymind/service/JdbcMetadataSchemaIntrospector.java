@@ -0,0 +1,131 @@
+package com.example.mehrdad.querymind.service;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Portable fallback using DatabaseMetaData; costs one getTables call plus three metadata calls per table.
+ * Table signatures come from a single catalog-wide getColumns call and cover column definitions only, so
+ * key-only changes are picked up by the periodic full refresh.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class JdbcMetadataSchemaIntrospector implements SchemaIntrospector {
+
+    public static final String NAME = "metadata";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(DatabaseMetaData metaData) {
+        return true;
+    }
+
+    @Override
+    public Map<String, List<DatabaseSchemaService.ColumnInfo>> loadTables(Connection conn) throws SQLException {
+        return loadTables(conn, null);
+    }
+
+    @Override
+    public Map<String, List<DatabaseSchemaService.ColumnInfo>> loadTables(Connection conn, Set<String> tableNames)
+            throws SQLException {
+        Map<String, List<DatabaseSchemaService.ColumnInfo>> schema = new LinkedHashMap<>();
+        DatabaseMetaData metaData = conn.getMetaData();
+
+        // Get all tables
+        try (ResultSet tables = metaData.getTables(conn.getCatalog(), null, "%", new String[]{"TABLE"})) {
+            while (tables.next()) {
+                if ("INFORMATION_SCHEMA".equalsIgnoreCase(tables.getString("TABLE_SCHEM"))) {
+                    continue;
+                }
+                String tableName = tables.getString("TABLE_NAME");
+                if (tableNames != null && !tableNames.contains(tableName)) {
+                    continue;
+                }
+                List<DatabaseSchemaService.ColumnInfo> columns = new ArrayList<>();
+
+                // Collect primary keys for this table
+                Set<String> primaryKeys = new HashSet<>();
+                try (ResultSet pkRs = metaData.getPrimaryKeys(conn.getCatalog(), null, tableName)) {
+                    while (pkRs.next()) {
+                        primaryKeys.add(pkRs.getString("COLUMN_NAME"));
+                    }
+                }
+
+                // Collect foreign keys (imported keys) for this table
+                Map<String, List<String>> fkTargetsByColumn = new HashMap<>();
+                try (ResultSet fkRs = metaData.getImportedKeys(conn.getCatalog(), null, tableName)) {
+                    while (fkRs.next()) {
+                        String fkColumn = fkRs.getString("FKCOLUMN_NAME");
+                        String pkTable = fkRs.getString("PKTABLE_NAME");
+                        String pkColumn = fkRs.getString("PKCOLUMN_NAME");
+                        fkTargetsByColumn.computeIfAbsent(fkColumn, c -> new ArrayList<>())
+                                .add(pkTable + "." + pkColumn);
+                    }
+                }
+
+                // Get columns for this table
+                try (ResultSet columnsRs = metaData.getColumns(conn.getCatalog(), null, tableName, "%")) {
+                    while (columnsRs.next()) {
+                        String columnName = columnsRs.getString("COLUMN_NAME");
+                        columns.add(new DatabaseSchemaService.ColumnInfo(
+                                columnName,
+                                columnsRs.getString("TYPE_NAME"),
+                                columnsRs.getInt("COLUMN_SIZE"),
+                                columnsRs.getInt("NULLABLE") == DatabaseMetaData.columnNullable,
+                                primaryKeys.contains(columnName),
+                                fkTargetsByColumn.get(columnName)));
+                    }
+                }
+
+                if (!columns.isEmpty()) {
+                    schema.put(tableName, columns);
+                }
+            }
+        }
+
+        return schema;
+    }
+
+    @Override
+    public Map<String, String> loadTableSignatures(Connection conn) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        Set<String> tableNames = new HashSet<>();
+        try (ResultSet tables = metaData.getTables(conn.getCatalog(), null, "%", new String[]{"TABLE"})) {
+            while (tables.next()) {
+                if (!"INFORMATION_SCHEMA".equalsIgnoreCase(tables.getString("TABLE_SCHEM"))) {
+                    tableNames.add(tables.getString("TABLE_NAME"));
+                }
+            }
+        }
+
+        Map<String, StringBuilder> definitions = new LinkedHashMap<>();
+        try (ResultSet columns = metaData.getColumns(conn.getCatalog(), null, "%", "%")) {
+            while (columns.next()) {
+                String tableName = columns.getString("TABLE_NAME");
+                if (!tableNames.contains(tableName) || "INFORMATION_SCHEMA".equalsIgnoreCase(columns.getString("TABLE_SCHEM"))) {
+                    continue;
+                }
+                definitions.computeIfAbsent(tableName, t -> new StringBuilder())
+                        .append(columns.getString("COLUMN_NAME")).append(' ')
+                        .append(columns.getString("TYPE_NAME")).append(' ')
+                        .append(columns.getInt("COLUMN_SIZE")).append(' ')
+                        .append(columns.getInt("NULLABLE")).append(',');
+            }
+        }
+
+        Map<String, String> signatures = new LinkedHashMap<>();
+        definitions.forEach((table, definition) -> signatures.put(table, SchemaSnapshot.fingerprint(definition.toString())));
+        return signatures;
+    }
+}
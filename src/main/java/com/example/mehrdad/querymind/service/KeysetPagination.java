@@ -0,0 +1,167 @@
+package com.example.mehrdad.querymind.service;
+
+import com.example.mehrdad.querymind.service.SqlTokenizer.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Decides whether a generated SELECT can be paged by seeking past the last key seen instead of holding a cursor
+ * open, and rewrites it if so. Only a single-table SELECT without DISTINCT, GROUP BY, set operators or a LIMIT of
+ * its own qualifies, and its table must have a single-column primary key that the select list returns: every row
+ * then carries a distinct key, so "rows after the last key" never skips or repeats a row. An ORDER BY is kept only
+ * when it orders by that key; any other order falls back to a held cursor.
+ */
+public final class KeysetPagination {
+
+    private static final String PAGE_ALIAS = "KEYSET_PAGE";
+    private static final Set<String> UNSUPPORTED = Set.of("DISTINCT", "GROUP", "HAVING", "UNION", "INTERSECT",
+            "EXCEPT", "MINUS", "JOIN", "LIMIT", "OFFSET", "FETCH", "TOP", "WINDOW", "QUALIFY", "WITH", "INTO", "FOR");
+
+    private KeysetPagination() {
+    }
+
+    /**
+     * A statement that pages by key: the original SELECT without its ORDER BY, and the key it is ordered by
+     */
+    public record Keyset(String innerSql, String table, String keyColumn, boolean descending) {
+
+        /**
+         * SQL for one page of at most fetch rows around inner (innerSql or its parameterized shape); after the
+         * first page the last key seen is bound as the parameter following the inner statement's own
+         */
+        public String pageSql(String inner, boolean first, int fetch) {
+            String key = PAGE_ALIAS + "." + keyColumn;
+            return "SELECT * FROM (" + inner + ") " + PAGE_ALIAS
+                    + (first ? "" : " WHERE " + key + (descending ? " < ?" : " > ?"))
+                    + " ORDER BY " + key + (descending ? " DESC" : "")
+                    + " LIMIT " + fetch;
+        }
+    }
+
+    public static Optional<Keyset> plan(String sql, SchemaSnapshot snapshot) {
+        String statement = SqlTokenizer.stripTrailingSemicolons(sql.trim());
+        List<Token> tokens = SqlTokenizer.tokenize(statement);
+        if (tokens.isEmpty() || !tokens.get(0).is("SELECT")) {
+            return Optional.empty();
+        }
+        int from = -1;
+        int where = -1;
+        int order = -1;
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.depth() > 0) {
+                continue;
+            }
+            String upper = token.word() ? token.text().toUpperCase(Locale.ROOT) : token.text();
+            if (UNSUPPORTED.contains(upper) || upper.equals(";")) {
+                return Optional.empty();
+            }
+            if (upper.equals("FROM") && from < 0) {
+                from = i;
+            } else if (upper.equals("WHERE") && where < 0) {
+                where = i;
+            } else if (upper.equals("ORDER") && i + 1 < tokens.size() && tokens.get(i + 1).is("BY")) {
+                order = i;
+            }
+        }
+        if (from < 0 || (where >= 0 && where < from) || (order >= 0 && order < Math.max(from, where))) {
+            return Optional.empty();
+        }
+
+        // FROM clause: one table, optionally schema-qualified and aliased
+        int fromEnd = where >= 0 ? where : order >= 0 ? order : tokens.size();
+        List<Token> source = tokens.subList(from + 1, fromEnd);
+        String tableName;
+        String alias = null;
+        int next;
+        if (source.size() >= 3 && source.get(1).text().equals(".")) {
+            tableName = source.get(2).text();
+            next = 3;
+        } else if (!source.isEmpty()) {
+            tableName = source.get(0).text();
+            next = 1;
+        } else {
+            return Optional.empty();
+        }
+        if (next < source.size() && source.get(next).is("AS")) {
+            next++;
+        }
+        if (next < source.size()) {
+            alias = source.get(next).text();
+            next++;
+        }
+        if (next != source.size() || !source.stream().allMatch(t -> t.word() || t.text().equals("."))) {
+            return Optional.empty();
+        }
+        String table = snapshot.resolveTable(tableName);
+        if (table == null) {
+            return Optional.empty();
+        }
+        List<DatabaseSchemaService.ColumnInfo> keys = snapshot.getTables().get(table).stream()
+                .filter(DatabaseSchemaService.ColumnInfo::isPrimaryKey)
+                .toList();
+        if (keys.size() != 1) {
+            return Optional.empty();
+        }
+        String key = keys.get(0).getName();
+        Set<String> qualifiers = alias != null ? Set.of(table.toUpperCase(Locale.ROOT), alias.toUpperCase(Locale.ROOT))
+                : Set.of(table.toUpperCase(Locale.ROOT));
+
+        // The key must come back in the result under its own name
+        boolean keySelected = false;
+        for (List<Token> item : splitItems(tokens.subList(1, from))) {
+            if (isColumn(item, "*", qualifiers) || isColumn(item, key, qualifiers)) {
+                keySelected = true;
+            }
+        }
+        if (!keySelected) {
+            return Optional.empty();
+        }
+
+        boolean descending = false;
+        if (order >= 0) {
+            List<Token> orderBy = new ArrayList<>(tokens.subList(order + 2, tokens.size()));
+            Token last = orderBy.isEmpty() ? null : orderBy.get(orderBy.size() - 1);
+            if (last != null && (last.is("ASC") || last.is("DESC"))) {
+                descending = last.is("DESC");
+                orderBy.remove(orderBy.size() - 1);
+            }
+            if (!isColumn(orderBy, key, qualifiers)) {
+                return Optional.empty();
+            }
+        }
+        String inner = order >= 0 ? statement.substring(0, tokens.get(order).start()).trim() : statement;
+        return Optional.of(new Keyset(inner, table, key, descending));
+    }
+
+    /**
+     * True when the tokens are exactly the column, bare or qualified by the table or its alias
+     */
+    private static boolean isColumn(List<Token> item, String column, Set<String> qualifiers) {
+        if (item.size() == 1) {
+            return item.get(0).text().equalsIgnoreCase(column);
+        }
+        return item.size() == 3 && item.get(1).text().equals(".")
+                && qualifiers.contains(item.get(0).text().toUpperCase(Locale.ROOT))
+                && item.get(2).text().equalsIgnoreCase(column);
+    }
+
+    private static List<List<Token>> splitItems(List<Token> selectList) {
+        List<List<Token>> items = new ArrayList<>();
+        List<Token> current = new ArrayList<>();
+        for (Token token : selectList) {
+            if (token.depth() == 0 && token.text().equals(",")) {
+                items.add(current);
+                current = new ArrayList<>();
+            } else {
+                current.add(token);
+            }
+        }
+        items.add(current);
+        return items;
+    }
+}
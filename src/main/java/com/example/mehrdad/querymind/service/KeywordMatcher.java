@@ -0,0 +1,161 @@
+package com.example.mehrdad.querymind.service;
+
+import java.util.*;
+
+/**
+ * Aho-Corasick automaton over lower-case keywords made of letters, digits, spaces and underscores. A scan is a
+ * single pass over the text with no per-character allocation and reports whole-word matches only.
+ */
+final class KeywordMatcher {
+
+    // a-z, 0-9, '_' and ' '
+    private static final int ALPHABET = 38;
+
+    @FunctionalInterface
+    interface Visitor {
+        void onMatch(int keyword, int start, int end);
+    }
+
+    private final int[][] delta;
+    private final int[] output;
+    private final int[] outputLink;
+    private final int[] keywordLength;
+
+    private KeywordMatcher(int[][] delta, int[] output, int[] outputLink, int[] keywordLength) {
+        this.delta = delta;
+        this.output = output;
+        this.outputLink = outputLink;
+        this.keywordLength = keywordLength;
+    }
+
+    int keywordCount() {
+        return keywordLength.length;
+    }
+
+    /**
+     * Report every whole-word keyword occurrence, in order of end position; longer keywords ending at the same
+     * position are reported first
+     */
+    void scan(CharSequence text, Visitor visitor) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int code = code(text.charAt(i));
+            if (code < 0) {
+                state = 0;
+                continue;
+            }
+            state = delta[state][code];
+            int end = i + 1;
+            if (end < text.length() && isWordChar(text.charAt(end))) {
+                continue;
+            }
+            for (int s = output[state] >= 0 ? state : outputLink[state]; s > 0; s = outputLink[s]) {
+                int keyword = output[s];
+                int start = end - keywordLength[keyword];
+                if (start == 0 || !isWordChar(text.charAt(start - 1))) {
+                    visitor.onMatch(keyword, start, end);
+                }
+            }
+        }
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static int code(char c) {
+        if (c >= 'a' && c <= 'z') return c - 'a';
+        if (c >= 'A' && c <= 'Z') return c - 'A';
+        if (c >= '0' && c <= '9') return 26 + (c - '0');
+        if (c == '_') return 36;
+        if (Character.isWhitespace(c)) return 37;
+        return -1;
+    }
+
+    static final class Builder {
+        private final List<int[]> transitions = new ArrayList<>();
+        private final List<Integer> outputs = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<Integer> lengths = new ArrayList<>();
+
+        Builder() {
+            newState();
+        }
+
+        /**
+         * Add a keyword and return its id; adding the same keyword twice returns the same id, and keywords with
+         * characters outside the alphabet are rejected with -1
+         */
+        int add(String keyword) {
+            String normalized = keyword.toLowerCase(Locale.ROOT).trim();
+            if (normalized.isEmpty()) return -1;
+            Integer existing = ids.get(normalized);
+            if (existing != null) return existing;
+            for (int i = 0; i < normalized.length(); i++) {
+                if (code(normalized.charAt(i)) < 0) return -1;
+            }
+            int state = 0;
+            for (int i = 0; i < normalized.length(); i++) {
+                int c = code(normalized.charAt(i));
+                int next = transitions.get(state)[c];
+                if (next == 0) {
+                    next = newState();
+                    transitions.get(state)[c] = next;
+                }
+                state = next;
+            }
+            int id = lengths.size();
+            lengths.add(normalized.length());
+            outputs.set(state, id);
+            ids.put(normalized, id);
+            return id;
+        }
+
+        KeywordMatcher build() {
+            int states = transitions.size();
+            int[][] delta = transitions.toArray(new int[0][]);
+            int[] output = new int[states];
+            int[] fail = new int[states];
+            int[] outputLink = new int[states];
+            for (int s = 0; s < states; s++) {
+                output[s] = outputs.get(s);
+            }
+
+            // Breadth-first: complete the goto function into a DFA and link each state to the nearest
+            // proper suffix state that ends a keyword
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int c = 0; c < ALPHABET; c++) {
+                int child = delta[0][c];
+                if (child != 0) {
+                    fail[child] = 0;
+                    queue.add(child);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int s = queue.poll();
+                outputLink[s] = output[fail[s]] >= 0 ? fail[s] : outputLink[fail[s]];
+                for (int c = 0; c < ALPHABET; c++) {
+                    int child = delta[s][c];
+                    if (child != 0) {
+                        fail[child] = delta[fail[s]][c];
+                        queue.add(child);
+                    } else {
+                        delta[s][c] = delta[fail[s]][c];
+                    }
+                }
+            }
+
+            int[] keywordLength = new int[lengths.size()];
+            for (int i = 0; i < keywordLength.length; i++) {
+                keywordLength[i] = lengths.get(i);
+            }
+            return new KeywordMatcher(delta, output, outputLink, keywordLength);
+        }
+
+        private int newState() {
+            transitions.add(new int[ALPHABET]);
+            outputs.add(-1);
+            return transitions.size() - 1;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.mehrdad.querymind.service;
+
+/**
+ * One LLM backend able to turn a system and user prompt into raw model output
+ */
+public interface LlmProvider {
+
+    /**
+     * Identifier used by llm.provider and in routing statistics
+     */
+    String getName();
+
+    /**
+     * Human readable model name used in response explanations
+     */
+    String getDescription();
+
+    boolean isAvailable();
+
+    /**
+     * Why the provider cannot be used; only meaningful when it is not available
+     */
+    String getUnavailableReason();
+
+    String generate(String systemPrompt, String userPrompt) throws Exception;
+}
@@ -0,0 +1,255 @@
+package com.example.mehrdad.querymind.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Chooses which LLM provider answers a prompt. Each provider carries rolling latency and error statistics and a
+ * circuit breaker. In latency mode requests go to the healthy provider with the lowest median latency; in static
+ * mode the configured llm.provider always goes first and the others are only used as failover. With hedging
+ * enabled a second provider is fired when the first has not answered within its own p95, and the first valid SQL
+ * wins.
+ */
+@Slf4j
+@Service
+public class LlmProviderRouter {
+
+    /**
+     * The winning answer; cleanupNanos is the time its cleaner took, for the caller's trace
+     */
+    public record Routed(String sql, LlmProvider provider, boolean hedged, long cleanupNanos) {}
+
+    private record Attempt(LlmProvider provider, String sql, Exception error, long cleanupNanos) {}
+
+    private final List<LlmProvider> providers;
+    private final String preferredProvider;
+    private final boolean latencyRouting;
+    private final boolean hedgeEnabled;
+    private final long defaultHedgeDelayMs;
+    private final Map<String, ProviderHealth> health = new LinkedHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong hedgesFired = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+
+    public LlmProviderRouter(List<LlmProvider> providers,
+                             @Value("${llm.provider:openai}") String preferredProvider,
+                             @Value("${llm.routing.mode:latency}") String mode,
+                             @Value("${llm.routing.hedge.enabled:false}") boolean hedgeEnabled,
+                             @Value("${llm.routing.hedge.default-delay:2s}") Duration defaultHedgeDelay,
+                             @Value("${llm.routing.breaker.window:50}") int window,
+                             @Value("${llm.routing.breaker.min-samples:10}") int minSamples,
+                             @Value("${llm.routing.breaker.error-rate-threshold:0.5}") double errorRateThreshold,
+                             @Value("${llm.routing.breaker.slow-call-threshold:20s}") Duration slowCallThreshold,
+                             @Value("${llm.routing.breaker.open-duration:30s}") Duration openDuration) {
+        this.providers = List.copyOf(providers);
+        this.preferredProvider = preferredProvider;
+        this.latencyRouting = !"static".equalsIgnoreCase(mode);
+        this.hedgeEnabled = hedgeEnabled;
+        this.defaultHedgeDelayMs = defaultHedgeDelay.toMillis();
+        for (LlmProvider provider : providers) {
+            health.put(provider.getName(), new ProviderHealth(window, minSamples, errorRateThreshold, slowCallThreshold, openDuration));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The provider named by llm.provider, falling back to the first registered one
+     */
+    public LlmProvider getPreferredProvider() {
+        return providers.stream()
+                .filter(p -> p.getName().equalsIgnoreCase(preferredProvider))
+                .findFirst()
+                .orElse(providers.get(0));
+    }
+
+    /**
+     * The provider the next request would go to first, or the preferred one when none is currently routable
+     */
+    public LlmProvider getLeadingProvider() {
+        List<LlmProvider> candidates = candidates();
+        return candidates.isEmpty() ? getPreferredProvider() : candidates.get(0);
+    }
+
+    public List<String> getProviderNames() {
+        return providers.stream().map(LlmProvider::getName).toList();
+    }
+
+    public boolean hasAvailableProvider() {
+        return providers.stream().anyMatch(LlmProvider::isAvailable);
+    }
+
+    /**
+     * Send the prompt to the best provider (and possibly a hedge) and return the first cleaned answer that is a
+     * single SELECT, which is all execution accepts. A hedge still running when another attempt wins finishes
+     * in the background, so the cleaner must not write into per-request state.
+     */
+    public Routed route(String systemPrompt, String userPrompt, UnaryOperator<String> cleaner) {
+        List<LlmProvider> candidates = candidates();
+        if (candidates.isEmpty()) {
+            throw new IllegalStateException("No healthy LLM provider available");
+        }
+
+        BlockingQueue<Attempt> outcomes = new LinkedBlockingQueue<>();
+        Deque<LlmProvider> remaining = new ArrayDeque<>(candidates);
+        LlmProvider primary = null;
+        int pending = 0;
+        boolean hedged = false;
+        Exception lastError = null;
+
+        try {
+            while (true) {
+                if (pending == 0) {
+                    // Nothing in flight: start the next candidate (initial call or failover after an error)
+                    LlmProvider next = launchNext(remaining, systemPrompt, userPrompt, cleaner, outcomes);
+                    if (next == null) break;
+                    if (primary == null) primary = next;
+                    pending++;
+                }
+
+                Attempt attempt;
+                if (hedgeEnabled && !hedged && !remaining.isEmpty()) {
+                    attempt = outcomes.poll(hedgeDelayMs(primary), TimeUnit.MILLISECONDS);
+                    if (attempt == null) {
+                        if (launchNext(remaining, systemPrompt, userPrompt, cleaner, outcomes) != null) {
+                            hedged = true;
+                            pending++;
+                            hedgesFired.incrementAndGet();
+                        }
+                        continue;
+                    }
+                } else {
+                    attempt = outcomes.take();
+                }
+
+                pending--;
+                if (attempt.sql() != null) {
+                    if (hedged && attempt.provider() != primary) {
+                        hedgesWon.incrementAndGet();
+                    }
+                    return new Routed(attempt.sql(), attempt.provider(), hedged, attempt.cleanupNanos());
+                }
+                lastError = attempt.error();
+                log.warn("LLM provider {} failed: {}", attempt.provider().getName(), lastError.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for LLM providers", e);
+        }
+
+        if (lastError == null) {
+            throw new IllegalStateException("No healthy LLM provider available");
+        }
+        throw new RuntimeException("All LLM providers failed: " + lastError.getMessage(), lastError);
+    }
+
+    /**
+     * Routing order for the next request: available providers whose breaker would admit a call
+     */
+    List<LlmProvider> candidates() {
+        List<LlmProvider> candidates = new ArrayList<>();
+        for (LlmProvider provider : providers) {
+            if (provider.isAvailable() && health.get(provider.getName()).isCallPermitted()) {
+                candidates.add(provider);
+            }
+        }
+        Comparator<LlmProvider> preferredFirst = Comparator.comparing(p -> !p.getName().equalsIgnoreCase(preferredProvider));
+        if (latencyRouting) {
+            // Providers without enough samples rank as fastest so they get explored
+            candidates.sort(Comparator.<LlmProvider>comparingLong(p -> {
+                ProviderHealth h = health.get(p.getName());
+                return h.hasEnoughSamples() ? h.percentile(0.5) : 0;
+            }).thenComparing(preferredFirst));
+        } else {
+            candidates.sort(preferredFirst);
+        }
+        return candidates;
+    }
+
+    private LlmProvider launchNext(Deque<LlmProvider> remaining, String systemPrompt, String userPrompt,
+                                   UnaryOperator<String> cleaner, BlockingQueue<Attempt> outcomes) {
+        while (!remaining.isEmpty()) {
+            LlmProvider provider = remaining.poll();
+            ProviderHealth providerHealth = health.get(provider.getName());
+            if (!providerHealth.tryAcquirePermission()) {
+                continue;
+            }
+            // A losing hedge is left to finish so its latency still lands in the provider's statistics
+            executor.execute(() -> outcomes.add(attempt(provider, providerHealth, systemPrompt, userPrompt, cleaner)));
+            return provider;
+        }
+        return null;
+    }
+
+    private Attempt attempt(LlmProvider provider, ProviderHealth providerHealth, String systemPrompt,
+                            String userPrompt, UnaryOperator<String> cleaner) {
+        long start = System.nanoTime();
+        try {
+            String answer = provider.generate(systemPrompt, userPrompt);
+            long cleanupStart = System.nanoTime();
+            String sql = cleaner.apply(answer);
+            long end = System.nanoTime();
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(end - start);
+            if (!ExecutionPolicy.isSelect(sql)) {
+                providerHealth.recordFailure(elapsedMs);
+                return new Attempt(provider, null,
+                        new IllegalStateException(provider.getName() + " did not return a single SELECT statement"), 0);
+            }
+            providerHealth.recordSuccess(elapsedMs);
+            return new Attempt(provider, sql, null, end - cleanupStart);
+        } catch (ProviderBusyException e) {
+            // Local back-pressure: neither a provider failure nor provider latency
+            providerHealth.releasePermission();
+            return new Attempt(provider, null, e, 0);
+        } catch (Exception e) {
+            providerHealth.recordFailure(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return new Attempt(provider, null, e, 0);
+        }
+    }
+
+    private long hedgeDelayMs(LlmProvider primary) {
+        ProviderHealth h = health.get(primary.getName());
+        return h.hasEnoughSamples() ? Math.max(1, h.percentile(0.95)) : defaultHedgeDelayMs;
+    }
+
+    /**
+     * Per-provider routing statistics for the providers endpoint
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("mode", latencyRouting ? "latency" : "static");
+        result.put("hedgeEnabled", hedgeEnabled);
+        result.put("hedgesFired", hedgesFired.get());
+        result.put("hedgesWon", hedgesWon.get());
+        List<Map<String, Object>> perProvider = new ArrayList<>();
+        for (LlmProvider provider : providers) {
+            ProviderHealth h = health.get(provider.getName());
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", provider.getName());
+            entry.put("available", provider.isAvailable());
+            entry.put("state", h.getState().name());
+            entry.put("samples", h.getSampleCount());
+            entry.put("p50Ms", h.percentile(0.5));
+            entry.put("p95Ms", h.percentile(0.95));
+            entry.put("errorRate", h.errorRate());
+            perProvider.add(entry);
+        }
+        result.put("providers", perProvider);
+        return result;
+    }
+
+    ProviderHealth getHealth(String provider) {
+        return health.get(provider);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.mehrdad.querymind.service;
+
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.service.OpenAiService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+public class OpenAiLlmProvider implements LlmProvider {
+
+    private final OpenAiService openAiService;
+    private final ProviderBulkhead bulkhead;
+
+    public OpenAiLlmProvider(@Autowired(required = false) OpenAiService openAiService,
+                             @Qualifier("openAiBulkhead") ProviderBulkhead bulkhead) {
+        this.openAiService = openAiService;
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public String getName() {
+        return "openai";
+    }
+
+    @Override
+    public String getDescription() {
+        return "OpenAI GPT-3.5";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return openAiService != null;
+    }
+
+    @Override
+    public String getUnavailableReason() {
+        return "OpenAI API key not configured";
+    }
+
+    @Override
+    public String generate(String systemPrompt, String userPrompt) throws Exception {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(new ChatMessage("system", systemPrompt));
+        messages.add(new ChatMessage("user", userPrompt));
+
+        ChatCompletionRequest completionRequest = ChatCompletionRequest.builder()
+                .model("gpt-3.5-turbo")
+                .messages(messages)
+                .temperature(0.2)
+                .maxTokens(400)
+                .build();
+
+        return bulkhead.call(() -> openAiService.createChatCompletion(completionRequest))
+                .getChoices().get(0).getMessage().getContent().trim();
+    }
+}
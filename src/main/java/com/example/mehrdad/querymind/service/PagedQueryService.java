@@ -0,0 +1,429 @@
+package com.example.mehrdad.querymind.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Executes generated SQL one page at a time. The first call returns the first page and, if more rows follow, an
+ * opaque cursor id for the next one. Statements that {@link KeysetPagination} can rewrite page by key: each page is
+ * its own short query that seeks past the last key served, so no connection is held between pages and a page costs
+ * the same wherever it falls in the result. Any other statement keeps its result set open on a dedicated connection
+ * (a held cursor) until it is read to the end, closed, or left idle past idle-timeout; at most max-held-cursors are
+ * open at once, and that may be at most half the execution pool so idle cursors cannot starve other queries of
+ * connections. Across all pages a cursor serves at most stream-max-rows rows.
+ */
+@Slf4j
+@Service
+public class PagedQueryService {
+
+    public static final String MODE_KEYSET = "keyset";
+    public static final String MODE_HELD = "held-cursor";
+
+    private final DataSourceRouter dataSourceRouter;
+    private final DatabaseSchemaService databaseSchemaService;
+    private final ExecutionPolicy executionPolicy;
+    private final StatementCache statementCache;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final Duration idleTimeout;
+    private final Duration keysetIdleTimeout;
+    private final int maxHeldCursors;
+
+    private final Map<String, Cursor> cursors = new ConcurrentHashMap<>();
+    private final AtomicInteger heldOpen = new AtomicInteger();
+    private final LongAdder pagesServed = new LongAdder();
+    private final LongAdder reaped = new LongAdder();
+
+    public PagedQueryService(DataSourceRouter dataSourceRouter,
+                             DatabaseSchemaService databaseSchemaService,
+                             ExecutionPolicy executionPolicy,
+                             StatementCache statementCache,
+                             MeterRegistry meterRegistry,
+                             @Value("${querymind.pagination.default-page-size:100}") int defaultPageSize,
+                             @Value("${querymind.pagination.max-page-size:1000}") int maxPageSize,
+                             @Value("${querymind.pagination.idle-timeout:2m}") Duration idleTimeout,
+                             @Value("${querymind.pagination.keyset-idle-timeout:30m}") Duration keysetIdleTimeout,
+                             @Value("${querymind.pagination.max-held-cursors:4}") int maxHeldCursors) {
+        int poolSize = dataSourceRouter.getExecutionPoolSize();
+        if (poolSize != Integer.MAX_VALUE && maxHeldCursors > poolSize / 2) {
+            throw new IllegalArgumentException("querymind.pagination.max-held-cursors (" + maxHeldCursors
+                    + ") must be at most half of the execution pool size (" + poolSize + ")");
+        }
+        this.dataSourceRouter = dataSourceRouter;
+        this.databaseSchemaService = databaseSchemaService;
+        this.executionPolicy = executionPolicy;
+        this.statementCache = statementCache;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.idleTimeout = idleTimeout;
+        this.keysetIdleTimeout = keysetIdleTimeout;
+        this.maxHeldCursors = maxHeldCursors;
+        Gauge.builder("querymind.pagination.open-cursors", this, service -> service.countOpen(MODE_KEYSET))
+                .description("Paged results waiting for their next page")
+                .tag("mode", MODE_KEYSET)
+                .register(meterRegistry);
+        Gauge.builder("querymind.pagination.open-cursors", heldOpen, AtomicInteger::get)
+                .description("Paged results waiting for their next page")
+                .tag("mode", MODE_HELD)
+                .register(meterRegistry);
+    }
+
+    /**
+     * One page of rows; cursor is null once the result has been read to the end
+     */
+    public record Page(String cursor, String mode, ColumnarResult result, int rowCount, boolean hasMore,
+                       String truncationReason) {
+    }
+
+    private record Fetched(ColumnarResult result, boolean more) {
+    }
+
+    private abstract static class Cursor {
+        final String id = UUID.randomUUID().toString();
+        final int pageSize;
+        final int rowLimit;
+        final ReentrantLock lock = new ReentrantLock();
+        volatile long lastAccessNanos = System.nanoTime();
+        int delivered;
+        boolean closed;
+
+        Cursor(int pageSize, int rowLimit) {
+            this.pageSize = pageSize;
+            this.rowLimit = rowLimit;
+        }
+
+        abstract String mode();
+
+        abstract Fetched fetch(int rows) throws SQLException;
+
+        /**
+         * Free whatever the cursor holds between pages
+         */
+        void release() {
+        }
+    }
+
+    /**
+     * Pages by seeking past the last key served; holds nothing but that key between pages
+     */
+    private final class KeysetCursor extends Cursor {
+        private final KeysetPagination.Keyset keyset;
+        private final SqlParameterizer.Parameterized inner;
+        private Object lastKey;
+
+        KeysetCursor(KeysetPagination.Keyset keyset, int pageSize, int rowLimit) {
+            super(pageSize, rowLimit);
+            this.keyset = keyset;
+            this.inner = statementCache.parameterize(keyset.innerSql());
+        }
+
+        @Override
+        String mode() {
+            return MODE_KEYSET;
+        }
+
+        @Override
+        Fetched fetch(int rows) {
+            boolean first = delivered == 0;
+            // One row beyond the page tells whether another page follows
+            ExecutionPolicy.Plan plan = new ExecutionPolicy.Plan(keyset.pageSql(inner.sql(), first, rows + 1), rows, Long.MAX_VALUE);
+            try (DataSourceRouter.Lease lease = dataSourceRouter.acquireExecution()) {
+                return lease.getJdbcTemplate().query(con -> {
+                    PreparedStatement ps = inner.bind(executionPolicy.prepare(con, plan));
+                    if (!first) {
+                        ps.setObject(inner.parameters().size() + 1, lastKey);
+                    }
+                    return ps;
+                }, rs -> {
+                    List<ColumnarResult.Column> columns = ColumnarResult.describe(rs.getMetaData());
+                    int keyIndex = keyIndex(columns);
+                    ColumnarResult.Builder builder = new ColumnarResult.Builder(columns);
+                    boolean more = false;
+                    while (rs.next()) {
+                        if (builder.getRowCount() == rows) {
+                            more = true;
+                            break;
+                        }
+                        builder.addRow(rs);
+                        lastKey = rs.getObject(keyIndex);
+                    }
+                    return new Fetched(builder.build(), more);
+                });
+            }
+        }
+
+        private int keyIndex(List<ColumnarResult.Column> columns) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (columns.get(i).getName().equalsIgnoreCase(keyset.keyColumn())) {
+                    return i + 1;
+                }
+            }
+            throw new IllegalStateException("Key column " + keyset.keyColumn() + " missing from the result");
+        }
+    }
+
+    /**
+     * Keeps the result set open on its own connection and reads the next page from where the last one stopped
+     */
+    private final class HeldCursor extends Cursor {
+        private final DataSourceRouter.Lease lease;
+        private final Connection connection;
+        private final PreparedStatement statement;
+        private final ResultSet resultSet;
+        private final List<ColumnarResult.Column> columns;
+        // Whether the result set is positioned on a row not served yet
+        private boolean onRow;
+
+        HeldCursor(ExecutionPolicy.Plan plan, int pageSize) throws SQLException {
+            super(pageSize, plan.rowLimit());
+            SqlParameterizer.Parameterized parameterized = statementCache.parameterize(plan.sql());
+            lease = dataSourceRouter.acquireExecution();
+            Connection con = null;
+            PreparedStatement ps = null;
+            try {
+                con = lease.getDataSource().getConnection();
+                // Drivers such as PostgreSQL only fetch in batches inside a transaction
+                con.setAutoCommit(false);
+                con.setReadOnly(true);
+                ps = parameterized.bind(executionPolicy.prepare(con, plan.withSql(parameterized.sql())));
+                ps.setFetchSize(pageSize);
+                resultSet = ps.executeQuery();
+                columns = ColumnarResult.describe(resultSet.getMetaData());
+                onRow = resultSet.next();
+            } catch (SQLException | RuntimeException e) {
+                closeQuietly(ps, con);
+                lease.close();
+                throw e;
+            }
+            connection = con;
+            statement = ps;
+        }
+
+        @Override
+        String mode() {
+            return MODE_HELD;
+        }
+
+        @Override
+        Fetched fetch(int rows) throws SQLException {
+            ColumnarResult.Builder builder = new ColumnarResult.Builder(columns);
+            while (onRow && builder.getRowCount() < rows) {
+                builder.addRow(resultSet);
+                onRow = resultSet.next();
+            }
+            return new Fetched(builder.build(), onRow);
+        }
+
+        @Override
+        void release() {
+            try {
+                resultSet.close();
+            } catch (SQLException e) {
+                log.debug("Closing held cursor {} result set failed: {}", id, e.getMessage());
+            }
+            closeQuietly(statement, connection);
+            lease.close();
+            heldOpen.decrementAndGet();
+        }
+    }
+
+    /**
+     * Run the statement and return its first page; pageSize defaults to default-page-size and is capped at
+     * max-page-size
+     *
+     * @throws IllegalArgumentException when the statement is not a single SELECT
+     * @throws IllegalStateException    when max-held-cursors held cursors are already open
+     */
+    public Page open(String sql, Integer pageSize) {
+        int size = pageSize == null || pageSize <= 0 ? defaultPageSize : Math.min(pageSize, maxPageSize);
+        ExecutionPolicy.Plan plan = executionPolicy.planStream(sql);
+        Optional<KeysetPagination.Keyset> keyset = KeysetPagination.plan(sql, databaseSchemaService.getSnapshot());
+        Cursor cursor;
+        if (keyset.isPresent()) {
+            cursor = new KeysetCursor(keyset.get(), size, plan.rowLimit());
+        } else {
+            if (heldOpen.incrementAndGet() > maxHeldCursors) {
+                heldOpen.decrementAndGet();
+                throw new IllegalStateException("Too many open result cursors, try again later");
+            }
+            try {
+                cursor = new HeldCursor(plan, size);
+            } catch (SQLException | RuntimeException e) {
+                heldOpen.decrementAndGet();
+                throw failure(e);
+            }
+        }
+        return read(cursor);
+    }
+
+    /**
+     * Next page of an open cursor; empty when the cursor is unknown, read to the end, closed or expired
+     */
+    public Optional<Page> next(String cursorId) {
+        Cursor cursor = cursors.get(cursorId);
+        if (cursor == null) {
+            return Optional.empty();
+        }
+        cursor.lock.lock();
+        try {
+            return cursor.closed ? Optional.empty() : Optional.of(read(cursor));
+        } finally {
+            cursor.lock.unlock();
+        }
+    }
+
+    /**
+     * Release a cursor before it has been read to the end; false if it was not open
+     */
+    public boolean close(String cursorId) {
+        Cursor cursor = cursors.get(cursorId);
+        if (cursor == null) {
+            return false;
+        }
+        cursor.lock.lock();
+        try {
+            boolean open = !cursor.closed;
+            discard(cursor);
+            return open;
+        } finally {
+            cursor.lock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("openKeyset", countOpen(MODE_KEYSET));
+        stats.put("openHeld", heldOpen.get());
+        stats.put("maxHeld", maxHeldCursors);
+        stats.put("pagesServed", pagesServed.sum());
+        stats.put("reaped", reaped.sum());
+        return stats;
+    }
+
+    /**
+     * Close cursors left idle: held cursors after idle-timeout, keyset cursors after keyset-idle-timeout
+     */
+    @Scheduled(fixedDelayString = "${querymind.pagination.reap-interval-ms:30000}")
+    public void reapIdle() {
+        long now = System.nanoTime();
+        for (Cursor cursor : cursors.values()) {
+            Duration timeout = cursor instanceof HeldCursor ? idleTimeout : keysetIdleTimeout;
+            if (now - cursor.lastAccessNanos >= timeout.toNanos() && cursor.lock.tryLock()) {
+                try {
+                    if (!cursor.closed) {
+                        reaped.increment();
+                        log.debug("Closing {} cursor {} after {} idle", cursor.mode(), cursor.id, timeout);
+                    }
+                    discard(cursor);
+                } finally {
+                    cursor.lock.unlock();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Cursor cursor : cursors.values()) {
+            cursor.lock.lock();
+            try {
+                discard(cursor);
+            } finally {
+                cursor.lock.unlock();
+            }
+        }
+    }
+
+    private Page read(Cursor cursor) {
+        cursor.lastAccessNanos = System.nanoTime();
+        Fetched fetched;
+        try {
+            fetched = cursor.fetch(Math.min(cursor.pageSize, cursor.rowLimit - cursor.delivered));
+        } catch (SQLException | RuntimeException e) {
+            // A keyset cursor can simply be asked again; a held result set is in an unknown position
+            if (cursor instanceof HeldCursor) {
+                discard(cursor);
+            }
+            throw failure(e);
+        }
+        cursor.delivered += fetched.result().getRowCount();
+        pagesServed.increment();
+
+        boolean more = fetched.more();
+        String truncationReason = null;
+        if (more && cursor.delivered >= cursor.rowLimit) {
+            truncationReason = "Result limited to " + cursor.rowLimit + " rows";
+            more = false;
+        }
+        if (more) {
+            cursors.put(cursor.id, cursor);
+        } else {
+            discard(cursor);
+        }
+        return new Page(more ? cursor.id : null, cursor.mode(), fetched.result(), fetched.result().getRowCount(),
+                more, truncationReason);
+    }
+
+    private void discard(Cursor cursor) {
+        cursors.remove(cursor.id, cursor);
+        if (!cursor.closed) {
+            cursor.closed = true;
+            cursor.release();
+        }
+    }
+
+    private int countOpen(String mode) {
+        int count = 0;
+        for (Cursor cursor : cursors.values()) {
+            if (cursor.mode().equals(mode)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static RuntimeException failure(Exception e) {
+        if (e instanceof IllegalArgumentException || e instanceof IllegalStateException
+                || e instanceof PoolSaturatedException) {
+            return (RuntimeException) e;
+        }
+        Throwable cause = e instanceof DataAccessException dataAccess && dataAccess.getMostSpecificCause() != null
+                ? dataAccess.getMostSpecificCause() : e;
+        return new RuntimeException("Query execution failed: " + cause.getMessage(), e);
+    }
+
+    private static void closeQuietly(PreparedStatement statement, Connection connection) {
+        try {
+            if (statement != null) {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            log.debug("Closing held cursor statement failed: {}", e.getMessage());
+        }
+        try {
+            if (connection != null) {
+                connection.rollback();
+                connection.close();
+            }
+        } catch (SQLException e) {
+            log.debug("Closing held cursor connection failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package com.example.mehrdad.querymind.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * On-disk copy of the conversion cache in an embedded H2 file database, so LLM answers survive a restart. Nothing
+ * here runs on the request path: puts and hits are collected in memory and written in batches every
+ * flush-interval, reads only happen for the warm set at startup and, when read-through is switched on, for cache
+ * misses that would otherwise go to the LLM, and those skip the store whenever a flush holds it. Only answers
+ * that passed the pre-execution checks are written. A schema change re-keys the rows that survive it to the new
+ * fingerprint (keeping their creation time) and deletes the rest. Entries past their TTL
+ * or beyond max-entries (least recently hit first) are removed by a periodic compaction; H2 reclaims the freed
+ * file space in the background.
+ */
+@Slf4j
+@Component
+public class PersistentConversionStore {
+
+    // Longer questions are not stored: one over-long key would fail the whole batched MERGE of a flush
+    private static final int MAX_QUESTION_LENGTH = 4000;
+    private static final String CREATE_TABLE = """
+            CREATE TABLE IF NOT EXISTS CONVERSION_CACHE (
+              QUESTION VARCHAR(%d) NOT NULL,
+              PROVIDER VARCHAR(32) NOT NULL,
+              SCHEMA_FINGERPRINT VARCHAR(64) NOT NULL,
+              SQL_QUERY CLOB NOT NULL,
+              EXPLANATION CLOB,
+              TABLE_NAMES VARCHAR(4000),
+              CREATED_AT TIMESTAMP NOT NULL,
+              LAST_HIT_AT TIMESTAMP NOT NULL,
+              HITS BIGINT DEFAULT 0 NOT NULL,
+              PRIMARY KEY (QUESTION, PROVIDER, SCHEMA_FINGERPRINT)
+            )""".formatted(MAX_QUESTION_LENGTH);
+    private static final String CREATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS CONVERSION_CACHE_LAST_HIT ON CONVERSION_CACHE (LAST_HIT_AT)";
+    private static final String COLUMNS =
+            "QUESTION, PROVIDER, SCHEMA_FINGERPRINT, SQL_QUERY, EXPLANATION, TABLE_NAMES";
+
+    private final boolean enabled;
+    private final String url;
+    private final int warmSetSize;
+    private final int maxEntries;
+    private final int maxPending;
+    private final boolean readThrough;
+    private final Duration ttl;
+
+    // Guards the connection and every statement run on it (lookups, flushes, compaction, close)
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<ConversionCache.Key, ConversionCache.Entry> pendingPuts = new ConcurrentHashMap<>();
+    private final Map<ConversionCache.Key, LongAdder> pendingHits = new ConcurrentHashMap<>();
+    private final Set<ConversionCache.Key> pendingRemovals = ConcurrentHashMap.newKeySet();
+    private final Queue<Migration> pendingMigrations = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder readThroughHits = new LongAdder();
+    private final LongAdder readThroughSkipped = new LongAdder();
+    private final LongAdder compacted = new LongAdder();
+    private Connection connection;
+    private volatile boolean failed;
+    private volatile int warmed = -1;
+
+    public PersistentConversionStore(@Value("${querymind.cache.persistent.enabled:false}") boolean enabled,
+                                     @Value("${querymind.cache.persistent.path:./data/conversion-cache}") String path,
+                                     @Value("${querymind.cache.persistent.warm-set-size:2000}") int warmSetSize,
+                                     @Value("${querymind.cache.persistent.max-entries:50000}") int maxEntries,
+                                     @Value("${querymind.cache.persistent.max-pending:10000}") int maxPending,
+                                     @Value("${querymind.cache.persistent.read-through:false}") boolean readThrough,
+                                     @Value("${querymind.cache.conversion.ttl:24h}") Duration ttl) {
+        this.enabled = enabled;
+        this.url = "jdbc:h2:file:" + path + ";DB_CLOSE_ON_EXIT=FALSE";
+        this.warmSetSize = warmSetSize;
+        this.maxEntries = maxEntries;
+        this.maxPending = maxPending;
+        this.readThrough = readThrough;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Rows under one schema fingerprint to re-key to the next, except those referencing a changed table
+     */
+    private record Migration(String from, String to, Set<String> changedTables) {}
+
+    public boolean isEnabled() {
+        return enabled && !failed;
+    }
+
+    /**
+     * Queue an entry for the next flush; dropped (and counted) when max-pending writes are already waiting, and
+     * skipped (and counted) when the question is too long for the table
+     */
+    public void put(ConversionCache.Key key, ConversionCache.Entry entry) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (key.question().length() > MAX_QUESTION_LENGTH) {
+            skipped.increment();
+            return;
+        }
+        if (pendingCount.incrementAndGet() > maxPending) {
+            pendingCount.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        pendingRemovals.remove(key);
+        if (pendingPuts.put(key, entry) != null) {
+            pendingCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Queue the entry's deletion for the next flush, superseding a queued write of it
+     */
+    public void remove(ConversionCache.Key key) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (pendingPuts.remove(key) != null) {
+            pendingCount.decrementAndGet();
+        }
+        pendingRemovals.add(key);
+    }
+
+    /**
+     * Queue moving the rows stored under the old schema fingerprint to the new one for the next flush; rows that
+     * do not {@link ConversionCache#survives survive} the change are deleted. Runs after the flush's writes, so
+     * entries still queued under the old fingerprint move too.
+     */
+    public void migrate(String fromFingerprint, String toFingerprint, Set<String> changedTables) {
+        if (isEnabled()) {
+            pendingMigrations.add(new Migration(fromFingerprint, toFingerprint, Set.copyOf(changedTables)));
+        }
+    }
+
+    /**
+     * Count a cache hit; hits decide which entries make the warm set and which compaction keeps
+     */
+    public void recordHit(ConversionCache.Key key) {
+        if (isEnabled()) {
+            pendingHits.computeIfAbsent(key, k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * The stored entry for a cache miss, or empty when there is none, read-through is off, or a flush or
+     * warm-up currently holds the store
+     */
+    public Optional<ConversionCache.Entry> find(ConversionCache.Key key) {
+        // Before the warm-up has opened the database a lookup would pay for opening it
+        if (!isEnabled() || !readThrough || warmed < 0) {
+            return Optional.empty();
+        }
+        if (!lock.tryLock()) {
+            readThroughSkipped.increment();
+            return Optional.empty();
+        }
+        try (PreparedStatement ps = connection().prepareStatement("SELECT " + COLUMNS
+                + " FROM CONVERSION_CACHE WHERE QUESTION = ? AND PROVIDER = ? AND SCHEMA_FINGERPRINT = ? AND CREATED_AT >= ?")) {
+            bindKey(ps, key);
+            ps.setTimestamp(4, Timestamp.from(Instant.now().minus(ttl)));
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    readThroughHits.increment();
+                    return Optional.of(entry(rs));
+                }
+            }
+        } catch (SQLException e) {
+            log.debug("Persistent conversion cache lookup failed: {}", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Hand the most recently hit unexpired entries, at most warm-set-size, to the consumer
+     */
+    public int loadWarmSet(BiConsumer<ConversionCache.Key, ConversionCache.Entry> consumer) {
+        if (!isEnabled()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        int loaded = 0;
+        lock.lock();
+        try (PreparedStatement ps = connection().prepareStatement("SELECT " + COLUMNS
+                + " FROM CONVERSION_CACHE WHERE CREATED_AT >= ? ORDER BY LAST_HIT_AT DESC LIMIT ?")) {
+            ps.setTimestamp(1, Timestamp.from(Instant.now().minus(ttl)));
+            ps.setInt(2, Math.max(0, warmSetSize));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(new ConversionCache.Key(rs.getString(1), rs.getString(2), rs.getString(3)), entry(rs));
+                    loaded++;
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("Loading the conversion cache warm set failed: {}", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+        warmed = loaded;
+        log.info("Warmed conversion cache with {} stored entries in {} ms", loaded, (System.nanoTime() - start) / 1_000_000);
+        return loaded;
+    }
+
+    /**
+     * Write queued entries and hit counts in one transaction
+     */
+    @Scheduled(initialDelayString = "${querymind.cache.persistent.flush-interval-ms:1000}",
+            fixedDelayString = "${querymind.cache.persistent.flush-interval-ms:1000}")
+    public void flush() {
+        if (!isEnabled() || (pendingPuts.isEmpty() && pendingHits.isEmpty() && pendingRemovals.isEmpty()
+                && pendingMigrations.isEmpty())) {
+            return;
+        }
+        List<ConversionCache.Key> removals = new ArrayList<>();
+        for (ConversionCache.Key key : new ArrayList<>(pendingRemovals)) {
+            if (pendingRemovals.remove(key)) {
+                removals.add(key);
+            }
+        }
+        Map<ConversionCache.Key, ConversionCache.Entry> puts = drain(pendingPuts);
+        pendingCount.addAndGet(-puts.size());
+        Map<ConversionCache.Key, Long> hits = new HashMap<>();
+        for (ConversionCache.Key key : new ArrayList<>(pendingHits.keySet())) {
+            LongAdder count = pendingHits.remove(key);
+            if (count != null) {
+                hits.put(key, count.sum());
+            }
+        }
+        List<Migration> migrations = new ArrayList<>();
+        for (Migration migration; (migration = pendingMigrations.poll()) != null; ) {
+            migrations.add(migration);
+        }
+        lock.lock();
+        try {
+            Connection con = connection();
+            Timestamp now = Timestamp.from(Instant.now());
+            try {
+                if (!removals.isEmpty()) {
+                    try (PreparedStatement ps = con.prepareStatement("DELETE FROM CONVERSION_CACHE"
+                            + " WHERE QUESTION = ? AND PROVIDER = ? AND SCHEMA_FINGERPRINT = ?")) {
+                        for (ConversionCache.Key key : removals) {
+                            bindKey(ps, key);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                if (!puts.isEmpty()) {
+                    try (PreparedStatement ps = con.prepareStatement("MERGE INTO CONVERSION_CACHE (" + COLUMNS
+                            + ", CREATED_AT, LAST_HIT_AT) KEY (QUESTION, PROVIDER, SCHEMA_FINGERPRINT) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+                        for (Map.Entry<ConversionCache.Key, ConversionCache.Entry> put : puts.entrySet()) {
+                            bindKey(ps, put.getKey());
+                            ps.setString(4, put.getValue().sqlQuery());
+                            ps.setString(5, put.getValue().explanation());
+                            ps.setString(6, String.join(",", put.getValue().tables()));
+                            ps.setTimestamp(7, now);
+                            ps.setTimestamp(8, now);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                if (!hits.isEmpty()) {
+                    try (PreparedStatement ps = con.prepareStatement("UPDATE CONVERSION_CACHE SET HITS = HITS + ?, LAST_HIT_AT = ?"
+                            + " WHERE QUESTION = ? AND PROVIDER = ? AND SCHEMA_FINGERPRINT = ?")) {
+                        for (Map.Entry<ConversionCache.Key, Long> hit : hits.entrySet()) {
+                            ps.setLong(1, hit.getValue());
+                            ps.setTimestamp(2, now);
+                            ps.setString(3, hit.getKey().question());
+                            ps.setString(4, hit.getKey().provider());
+                            ps.setString(5, hit.getKey().schemaFingerprint());
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                }
+                for (Migration migration : migrations) {
+                    migrate(con, migration);
+                }
+                con.commit();
+                written.add(puts.size());
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            dropped.add(puts.size());
+            log.warn("Persisting {} conversions failed: {}", puts.size(), e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove expired entries and the least recently hit ones beyond max-entries
+     */
+    @Scheduled(initialDelayString = "${querymind.cache.persistent.compact-interval-ms:3600000}",
+            fixedDelayString = "${querymind.cache.persistent.compact-interval-ms:3600000}")
+    public void compact() {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.lock();
+        try (Statement statement = connection().createStatement();
+             PreparedStatement expired = connection().prepareStatement("DELETE FROM CONVERSION_CACHE WHERE CREATED_AT < ?")) {
+            expired.setTimestamp(1, Timestamp.from(Instant.now().minus(ttl)));
+            int removed = expired.executeUpdate();
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM CONVERSION_CACHE")) {
+                rs.next();
+                if (rs.getLong(1) > maxEntries) {
+                    // Entries hit at the same instant as the max-entries'th most recent one are all kept
+                    removed += statement.executeUpdate("DELETE FROM CONVERSION_CACHE WHERE LAST_HIT_AT < (SELECT LAST_HIT_AT"
+                            + " FROM CONVERSION_CACHE ORDER BY LAST_HIT_AT DESC OFFSET " + (maxEntries - 1) + " ROWS FETCH NEXT 1 ROWS ONLY)");
+                }
+            }
+            connection.commit();
+            compacted.add(removed);
+            if (removed > 0) {
+                log.info("Compacted persistent conversion cache: removed {} entries", removed);
+            }
+        } catch (SQLException e) {
+            log.warn("Compacting the persistent conversion cache failed: {}", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("warmed", warmed < 0 ? null : warmed);
+        stats.put("pending", pendingCount.get());
+        stats.put("written", written.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("skipped", skipped.sum());
+        stats.put("readThroughHits", readThroughHits.sum());
+        stats.put("readThroughSkipped", readThroughSkipped.sum());
+        stats.put("compacted", compacted.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+        lock.lock();
+        try {
+            if (connection != null) {
+                connection.close();
+                connection = null;
+            }
+        } catch (SQLException e) {
+            log.debug("Closing the persistent conversion cache failed: {}", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The store's connection, opened and the table created on first use; call with the lock held
+     */
+    private Connection connection() throws SQLException {
+        if (connection == null) {
+            try {
+                Connection con = DriverManager.getConnection(url, "sa", "");
+                try (Statement statement = con.createStatement()) {
+                    statement.execute(CREATE_TABLE);
+                    statement.execute(CREATE_INDEX);
+                } catch (SQLException e) {
+                    con.close();
+                    throw e;
+                }
+                con.setAutoCommit(false);
+                connection = con;
+            } catch (SQLException e) {
+                disable("opening " + url, e);
+                throw e;
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Re-key the surviving rows of a migration unless the new key is already stored, then delete what is left
+     * under the old fingerprint; call with the lock held
+     */
+    private void migrate(Connection con, Migration migration) throws SQLException {
+        List<String[]> surviving = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement(
+                "SELECT QUESTION, PROVIDER, TABLE_NAMES FROM CONVERSION_CACHE WHERE SCHEMA_FINGERPRINT = ?")) {
+            ps.setString(1, migration.from());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (ConversionCache.survives(tables(rs.getString(3)), migration.changedTables())) {
+                        surviving.add(new String[]{rs.getString(1), rs.getString(2)});
+                    }
+                }
+            }
+        }
+        if (!surviving.isEmpty()) {
+            try (PreparedStatement ps = con.prepareStatement("UPDATE CONVERSION_CACHE SET SCHEMA_FINGERPRINT = ?"
+                    + " WHERE QUESTION = ? AND PROVIDER = ? AND SCHEMA_FINGERPRINT = ? AND NOT EXISTS (SELECT 1"
+                    + " FROM CONVERSION_CACHE N WHERE N.QUESTION = ? AND N.PROVIDER = ? AND N.SCHEMA_FINGERPRINT = ?)")) {
+                for (String[] row : surviving) {
+                    ps.setString(1, migration.to());
+                    ps.setString(2, row[0]);
+                    ps.setString(3, row[1]);
+                    ps.setString(4, migration.from());
+                    ps.setString(5, row[0]);
+                    ps.setString(6, row[1]);
+                    ps.setString(7, migration.to());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        try (PreparedStatement ps = con.prepareStatement("DELETE FROM CONVERSION_CACHE WHERE SCHEMA_FINGERPRINT = ?")) {
+            ps.setString(1, migration.from());
+            int deleted = ps.executeUpdate();
+            log.debug("Moved stored conversions from schema {} to {}: {} kept, {} deleted",
+                    migration.from(), migration.to(), surviving.size(), deleted);
+        }
+    }
+
+    private void disable(String stage, SQLException e) {
+        // E.g. the file is locked by another instance; the in-memory cache keeps working on its own
+        failed = true;
+        pendingPuts.clear();
+        pendingHits.clear();
+        pendingRemovals.clear();
+        pendingMigrations.clear();
+        pendingCount.set(0);
+        log.warn("Persistent conversion cache disabled after {} failed: {}", stage, e.getMessage());
+    }
+
+    private static <K, V> Map<K, V> drain(Map<K, V> pending) {
+        Map<K, V> drained = new HashMap<>();
+        for (K key : new ArrayList<>(pending.keySet())) {
+            V value = pending.remove(key);
+            if (value != null) {
+                drained.put(key, value);
+            }
+        }
+        return drained;
+    }
+
+    private static void bindKey(PreparedStatement ps, ConversionCache.Key key) throws SQLException {
+        ps.setString(1, key.question());
+        ps.setString(2, key.provider());
+        ps.setString(3, key.schemaFingerprint());
+    }
+
+    private static ConversionCache.Entry entry(ResultSet rs) throws SQLException {
+        return new ConversionCache.Entry(rs.getString(4), rs.getString(5), tables(rs.getString(6)));
+    }
+
+    private static Set<String> tables(String tableNames) {
+        return tableNames == null || tableNames.isEmpty() ? Set.of() : Set.of(tableNames.split(","));
+    }
+}
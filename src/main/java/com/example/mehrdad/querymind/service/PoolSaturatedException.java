@@ -0,0 +1,14 @@
+package com.example.mehrdad.querymind.service;
+
+import java.time.Duration;
+
+/**
+ * A query was turned away because the connection pools it may use already admit as many queries as they can hold.
+ * Unlike a full admission queue this is the server running out of database capacity, so it is answered with 503.
+ */
+public class PoolSaturatedException extends AdmissionRejectedException {
+
+    public PoolSaturatedException(String pool, Duration retryAfter, String message) {
+        super(pool, retryAfter, message);
+    }
+}
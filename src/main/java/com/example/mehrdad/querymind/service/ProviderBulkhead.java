@@ -0,0 +1,52 @@
+package com.example.mehrdad.querymind.service;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of in-flight calls to one LLM provider and, optionally, their rate. Callers wait up to the
+ * acquire timeout for a slot and then a rate token and fail fast afterwards, with a {@link ProviderBusyException},
+ * instead of piling up behind a slow vendor. The slot comes first so a caller that times out waiting for it has
+ * not spent a token on a call that never happens.
+ */
+public class ProviderBulkhead {
+
+    private final String provider;
+    private final int maxConcurrency;
+    private final Duration acquireTimeout;
+    private final Semaphore permits;
+    private final TokenBucket rateLimiter;
+
+    public ProviderBulkhead(String provider, int maxConcurrency, Duration acquireTimeout) {
+        this(provider, maxConcurrency, acquireTimeout, new TokenBucket(0, 1));
+    }
+
+    public ProviderBulkhead(String provider, int maxConcurrency, Duration acquireTimeout, TokenBucket rateLimiter) {
+        this.provider = provider;
+        this.maxConcurrency = maxConcurrency;
+        this.acquireTimeout = acquireTimeout;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.rateLimiter = rateLimiter;
+    }
+
+    public String getProvider() { return provider; }
+    public int getMaxConcurrency() { return maxConcurrency; }
+    public int getInFlight() { return maxConcurrency - permits.availablePermits(); }
+
+    public <T> T call(Callable<T> call) throws Exception {
+        long deadline = System.nanoTime() + acquireTimeout.toNanos();
+        if (!permits.tryAcquire(acquireTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+            throw new ProviderBusyException(provider + " concurrency limit of " + maxConcurrency + " reached");
+        }
+        try {
+            if (!rateLimiter.acquire(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())))) {
+                throw new ProviderBusyException(provider + " rate limit reached");
+            }
+            return call.call();
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.mehrdad.querymind.service;
+
+/**
+ * A call was turned away by this instance's own bulkhead or rate limit before it reached the provider, so it says
+ * nothing about the provider's health
+ */
+public class ProviderBusyException extends IllegalStateException {
+
+    public ProviderBusyException(String message) {
+        super(message);
+    }
+}
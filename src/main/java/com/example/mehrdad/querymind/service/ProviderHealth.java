@@ -0,0 +1,194 @@
+package com.example.mehrdad.querymind.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Rolling latency and error statistics for one provider plus a circuit breaker. The breaker opens when the
+ * error rate or the p95 latency of the window crosses its threshold, stays open for a cool-down and then lets a
+ * single probe call through before closing again.
+ */
+public class ProviderHealth {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int minSamples;
+    private final double errorRateThreshold;
+    private final long slowCallThresholdMs;
+    private final long openDurationMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long[] latencies;
+    private final boolean[] failures;
+    private int next;
+    private int size;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    public ProviderHealth(int window, int minSamples, double errorRateThreshold,
+                          Duration slowCallThreshold, Duration openDuration) {
+        this.latencies = new long[window];
+        this.failures = new boolean[window];
+        this.minSamples = minSamples;
+        this.errorRateThreshold = errorRateThreshold;
+        this.slowCallThresholdMs = slowCallThreshold.toMillis();
+        this.openDurationMs = openDuration.toMillis();
+    }
+
+    /**
+     * Whether a call would currently be let through, without reserving it
+     */
+    public boolean isCallPermitted() {
+        lock.lock();
+        try {
+            return switch (state) {
+                case CLOSED -> true;
+                case OPEN -> System.currentTimeMillis() - openedAt >= openDurationMs;
+                case HALF_OPEN -> !probeInFlight;
+            };
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserve a call; after the cool-down only one probe is admitted until its outcome is recorded
+     */
+    public boolean tryAcquirePermission() {
+        lock.lock();
+        try {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+                state = State.HALF_OPEN;
+                probeInFlight = false;
+            }
+            return switch (state) {
+                case CLOSED -> true;
+                case OPEN -> false;
+                case HALF_OPEN -> {
+                    if (probeInFlight) yield false;
+                    probeInFlight = true;
+                    yield true;
+                }
+            };
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give back a reservation whose call never reached the provider, so a half-open breaker can probe again
+     */
+    public void releasePermission() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                probeInFlight = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void recordSuccess(long latencyMs) {
+        record(latencyMs, false);
+    }
+
+    public void recordFailure(long latencyMs) {
+        record(latencyMs, true);
+    }
+
+    private void record(long latencyMs, boolean failed) {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                probeInFlight = false;
+                if (failed || latencyMs >= slowCallThresholdMs) {
+                    open();
+                } else {
+                    // Probe succeeded: start from a clean window so the old bad samples do not re-open the breaker
+                    state = State.CLOSED;
+                    size = 0;
+                    next = 0;
+                }
+                return;
+            }
+            latencies[next] = latencyMs;
+            failures[next] = failed;
+            next = (next + 1) % latencies.length;
+            size = Math.min(size + 1, latencies.length);
+            if (state == State.CLOSED && size >= minSamples
+                    && (errorRateLocked() >= errorRateThreshold || percentileLocked(0.95) >= slowCallThresholdMs)) {
+                open();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+
+    public State getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getSampleCount() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean hasEnoughSamples() {
+        return getSampleCount() >= minSamples;
+    }
+
+    /**
+     * Latency percentile over the window in milliseconds, or -1 without samples
+     */
+    public long percentile(double p) {
+        lock.lock();
+        try {
+            return percentileLocked(p);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double errorRate() {
+        lock.lock();
+        try {
+            return errorRateLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long percentileLocked(double p) {
+        if (size == 0) return -1;
+        long[] sorted = Arrays.copyOf(latencies, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    private double errorRateLocked() {
+        if (size == 0) return 0;
+        int failed = 0;
+        for (int i = 0; i < size; i++) {
+            if (failures[i]) failed++;
+        }
+        return (double) failed / size;
+    }
+}
@@ -0,0 +1,448 @@
+package com.example.mehrdad.querymind.service;
+
+import com.example.mehrdad.querymind.dto.QueryResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs convert-and-execute requests in the background so a slow LLM call or query does not hold an HTTP
+ * connection. At most max-concurrent jobs run at once and at most max-queued more wait for a slot; further
+ * submissions are refused. Rows go to a {@link SpillableRowBuffer}, which moves them to a temp file past the
+ * spill threshold. Executions take a slot of the execution stage in the internal client's admission queue.
+ * Cancelling interrupts a job that is queued or converting and cancels the JDBC statement of
+ * a job whose SQL is being checked or executed. Finished jobs are kept for the retention period, but at most
+ * max-retained of them and only as many as fit their in-memory rows into max-retained-memory (spilled results
+ * count only against max-retained); past either limit the oldest finished jobs are dropped early.
+ */
+@Slf4j
+@Service
+public class QueryJobService {
+
+    public enum State {
+        QUEUED, CONVERTING, EXECUTING, SUCCEEDED, FAILED, CANCELLED;
+
+        public boolean isTerminal() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private final AIQueryService aiQueryService;
+    private final QueryPreflight queryPreflight;
+    private final DatabaseSchemaService databaseSchemaService;
+    private final AdmissionController admissionController;
+    private final QueryMetrics queryMetrics;
+    private final ObjectMapper objectMapper;
+    private final int maxPending;
+    private final long spillThresholdBytes;
+    private final Duration retention;
+    private final int maxRetained;
+    private final long maxRetainedMemoryBytes;
+    private final int maxPageSize;
+    private final Path spillDirectory;
+
+    private final Semaphore slots;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    // Serializes early eviction so concurrent finishing jobs do not each drop the same surplus
+    private final ReentrantLock retentionLock = new ReentrantLock();
+    private final LongAdder evicted = new LongAdder();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("query-job-", 0).factory());
+
+    public QueryJobService(AIQueryService aiQueryService,
+                           QueryPreflight queryPreflight,
+                           DatabaseSchemaService databaseSchemaService,
+                           AdmissionController admissionController,
+                           QueryMetrics queryMetrics,
+                           ObjectMapper objectMapper,
+                           @Value("${querymind.jobs.max-concurrent:4}") int maxConcurrent,
+                           @Value("${querymind.jobs.max-queued:100}") int maxQueued,
+                           @Value("${querymind.jobs.spill-threshold:8MB}") DataSize spillThreshold,
+                           @Value("${querymind.jobs.retention:15m}") Duration retention,
+                           @Value("${querymind.jobs.max-retained:1000}") int maxRetained,
+                           @Value("${querymind.jobs.max-retained-memory:256MB}") DataSize maxRetainedMemory,
+                           @Value("${querymind.jobs.max-page-size:10000}") int maxPageSize,
+                           @Value("${querymind.jobs.spill-directory:}") String spillDirectory) {
+        this.aiQueryService = aiQueryService;
+        this.queryPreflight = queryPreflight;
+        this.databaseSchemaService = databaseSchemaService;
+        this.admissionController = admissionController;
+        this.queryMetrics = queryMetrics;
+        this.objectMapper = objectMapper;
+        this.slots = new Semaphore(Math.max(1, maxConcurrent), true);
+        this.maxPending = Math.max(1, maxConcurrent) + Math.max(0, maxQueued);
+        this.spillThresholdBytes = spillThreshold.toBytes();
+        this.retention = retention;
+        this.maxRetained = maxRetained;
+        this.maxRetainedMemoryBytes = maxRetainedMemory.toBytes();
+        this.maxPageSize = maxPageSize;
+        this.spillDirectory = spillDirectory.isBlank() ? null : Path.of(spillDirectory);
+    }
+
+    /**
+     * Background convert-and-execute request and its progress
+     */
+    public final class Job {
+        private final String id = UUID.randomUUID().toString();
+        private final String text;
+        private final String databaseSchema;
+        private final Instant submittedAt = Instant.now();
+        private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+        private final SpillableRowBuffer rows = new SpillableRowBuffer(objectMapper, spillThresholdBytes, spillDirectory);
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile String sqlQuery;
+        private volatile String explanation;
+        private volatile String error;
+        private volatile List<String> warnings = List.of();
+        private volatile String truncationReason;
+        private volatile List<ColumnarResult.Column> columns = List.of();
+        private volatile int rowsRead;
+        private volatile Thread worker;
+        private volatile Statement statement;
+
+        private Job(String text, String databaseSchema) {
+            this.text = text;
+            this.databaseSchema = databaseSchema;
+        }
+
+        public String getId() { return id; }
+        public State getState() { return state.get(); }
+        public List<ColumnarResult.Column> getColumns() { return columns; }
+        public int getRowCount() { return rowsRead; }
+
+        /**
+         * Current stage, timestamps and row progress
+         */
+        public Map<String, Object> status() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            State current = state.get();
+            status.put("jobId", id);
+            status.put("state", current);
+            status.put("submittedAt", submittedAt.toString());
+            status.put("startedAt", startedAt != null ? startedAt.toString() : null);
+            status.put("finishedAt", finishedAt != null ? finishedAt.toString() : null);
+            Instant end = finishedAt != null ? finishedAt : Instant.now();
+            status.put("elapsedMs", Duration.between(submittedAt, end).toMillis());
+            status.put("sqlQuery", sqlQuery);
+            status.put("explanation", explanation);
+            status.put("error", error);
+            if (!warnings.isEmpty()) {
+                status.put("warnings", warnings);
+            }
+            status.put("rowsRead", rowsRead);
+            status.put("truncated", truncationReason != null);
+            status.put("truncationReason", truncationReason);
+            status.put("spilled", rows.isSpilled());
+            return status;
+        }
+
+        /**
+         * Bytes of result rows held in memory; a spilled result keeps only its file
+         */
+        private long retainedBytes() {
+            return rows.isSpilled() ? 0 : rows.getBytes();
+        }
+
+        /**
+         * Move to a later non-terminal stage unless the job already finished (e.g. was cancelled)
+         */
+        private boolean advance(State next) {
+            State current = state.get();
+            return !current.isTerminal() && state.compareAndSet(current, next);
+        }
+
+        private boolean finish(State terminal, String reason) {
+            State current;
+            do {
+                current = state.get();
+                if (current.isTerminal()) {
+                    return false;
+                }
+            } while (!state.compareAndSet(current, terminal));
+            if (reason != null) {
+                error = reason;
+            }
+            finishedAt = Instant.now();
+            return true;
+        }
+    }
+
+    /**
+     * Queue a job
+     *
+     * @throws IllegalStateException when the queue is full
+     */
+    public Job submit(String text, String databaseSchema) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            throw new IllegalStateException("Too many queued jobs, try again later");
+        }
+        Job job = new Job(text, databaseSchema);
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RuntimeException e) {
+            pending.decrementAndGet();
+            jobs.remove(job.id);
+            throw new IllegalStateException("Job scheduler is shut down", e);
+        }
+        return job;
+    }
+
+    public Optional<Job> get(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Cancel a job that has not finished yet; returns false if it already had
+     */
+    public boolean cancel(Job job) {
+        if (!job.finish(State.CANCELLED, "Cancelled")) {
+            return false;
+        }
+        // The worker is only set while the job waits for a slot or for the conversion, where an interrupt is safe;
+        // preflight and execution run JDBC and are stopped through their current statement
+        Thread worker = job.worker;
+        if (worker != null) {
+            worker.interrupt();
+        }
+        Statement current = job.statement;
+        if (current != null) {
+            cancelStatement(current);
+        }
+        return true;
+    }
+
+    /**
+     * Rows [offset, offset + limit) of a succeeded job; the limit is capped at max-page-size
+     *
+     * @throws IllegalStateException when the job has not succeeded
+     */
+    public List<Object> page(Job job, int offset, int limit) throws IOException {
+        if (job.state.get() != State.SUCCEEDED) {
+            throw new IllegalStateException("Job is " + job.state.get() + ", results are available once it has SUCCEEDED");
+        }
+        return job.rows.page(offset, Math.min(limit, maxPageSize));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<State, Integer> byState = new EnumMap<>(State.class);
+        jobs.values().forEach(job -> byState.merge(job.state.get(), 1, Integer::sum));
+        int runningNow = running.get();
+        stats.put("running", runningNow);
+        stats.put("queued", Math.max(0, pending.get() - runningNow));
+        stats.put("retained", byState);
+        stats.put("evicted", evicted.sum());
+        return stats;
+    }
+
+    private void run(Job job) {
+        job.worker = Thread.currentThread();
+        boolean acquired = false;
+        try {
+            slots.acquire();
+            acquired = true;
+            running.incrementAndGet();
+            if (!job.advance(State.CONVERTING)) {
+                return;
+            }
+            job.startedAt = Instant.now();
+
+            ConversionTrace trace = new ConversionTrace();
+            QueryResponse converted = aiQueryService.convertTextToQuery(job.text, job.databaseSchema, trace);
+            // The conversion is over; preflight runs EXPLAIN over JDBC, so from here cancellation goes through the
+            // statement, not an interrupt
+            job.worker = null;
+            Thread.interrupted();
+            if (job.state.get() == State.CANCELLED) {
+                return;
+            }
+            QueryPreflight.Outcome preflight = queryPreflight.review(job.text, job.databaseSchema, converted, trace,
+                    statement -> watchStatement(job, statement));
+            QueryResponse conversion = preflight.response();
+            job.warnings = preflight.warnings();
+            job.sqlQuery = conversion.getSqlQuery();
+            job.explanation = conversion.getExplanation();
+            if (!conversion.isSuccess()) {
+                if (preflight.passed()) {
+                    trace.setOutcome(ConversionTrace.OUTCOME_ERROR);
+                }
+                queryMetrics.record(trace);
+                job.finish(State.FAILED, conversion.getError());
+                return;
+            }
+            if (!job.advance(State.EXECUTING)) {
+                return;
+            }
+
+            DatabaseSchemaService.QueryExecutionResult result;
+            try (AdaptiveLimiter.Permit permit = trace.time("execution-admission",
+                    () -> admissionController.acquireExecution(AdmissionController.INTERNAL_CLIENT))) {
+                // A job's run time grows with its result, not with how busy the database is
+                permit.skipSample();
+                result = trace.time("execution",
+                        () -> databaseSchemaService.streamQuery(conversion.getSqlQuery(), new JobRowHandler(job)));
+            }
+            job.rows.finish();
+            job.truncationReason = result.getTruncationReason();
+            trace.setRowCount(result.getRowCount());
+            if (!result.isSuccess()) {
+                trace.setOutcome(ConversionTrace.OUTCOME_ERROR);
+            }
+            queryMetrics.record(trace);
+            job.finish(result.isSuccess() ? State.SUCCEEDED : State.FAILED, result.getError());
+        } catch (InterruptedException e) {
+            job.finish(State.CANCELLED, "Cancelled");
+        } catch (IOException | RuntimeException e) {
+            log.warn("Job {} failed", job.id, e);
+            job.finish(State.FAILED, "Job failed: " + e.getMessage());
+        } finally {
+            job.worker = null;
+            if (acquired) {
+                running.decrementAndGet();
+                slots.release();
+            }
+            pending.decrementAndGet();
+            if (job.state.get() != State.SUCCEEDED) {
+                closeQuietly(job);
+            }
+            enforceRetentionLimits();
+        }
+    }
+
+    /**
+     * Buffers rows into the job and exposes the statement for cancellation
+     */
+    private static final class JobRowHandler implements DatabaseSchemaService.RowHandler {
+        private final Job job;
+
+        JobRowHandler(Job job) {
+            this.job = job;
+        }
+
+        @Override
+        public void onStatement(Statement statement) {
+            watchStatement(job, statement);
+        }
+
+        @Override
+        public void onColumns(List<ColumnarResult.Column> columns) {
+            job.columns = columns;
+        }
+
+        @Override
+        public void onRow(Object[] values) throws IOException {
+            if (job.state.get() == State.CANCELLED) {
+                throw new IOException("Job cancelled");
+            }
+            job.rows.add(values);
+            job.rowsRead = job.rows.getRowCount();
+        }
+    }
+
+    /**
+     * Drop finished jobs past their retention, deleting any spill files
+     */
+    @Scheduled(fixedDelayString = "${querymind.jobs.reap-interval-ms:60000}")
+    public void reapExpired() {
+        Instant cutoff = Instant.now().minus(retention);
+        for (Job job : jobs.values()) {
+            Instant finished = job.finishedAt;
+            if (finished != null && finished.isBefore(cutoff) && jobs.remove(job.id, job)) {
+                closeQuietly(job);
+            }
+        }
+    }
+
+    /**
+     * Drop the oldest finished jobs while more than max-retained are kept or their in-memory rows exceed
+     * max-retained-memory
+     */
+    private void enforceRetentionLimits() {
+        retentionLock.lock();
+        try {
+            List<Job> finished = new ArrayList<>();
+            long memory = 0;
+            for (Job job : jobs.values()) {
+                if (job.finishedAt != null) {
+                    finished.add(job);
+                    memory += job.retainedBytes();
+                }
+            }
+            if (finished.size() <= maxRetained && memory <= maxRetainedMemoryBytes) {
+                return;
+            }
+            finished.sort(Comparator.comparing(job -> job.finishedAt));
+            int count = finished.size();
+            for (Job job : finished) {
+                if (count <= maxRetained && memory <= maxRetainedMemoryBytes) {
+                    break;
+                }
+                if (jobs.remove(job.id, job)) {
+                    count--;
+                    memory -= job.retainedBytes();
+                    evicted.increment();
+                    closeQuietly(job);
+                }
+            }
+        } finally {
+            retentionLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        jobs.values().forEach(QueryJobService::closeQuietly);
+    }
+
+    /**
+     * Make the statement the one cancel() stops, cancelling it at once if the job was cancelled meanwhile
+     */
+    private static void watchStatement(Job job, Statement statement) {
+        job.statement = statement;
+        if (job.state.get() == State.CANCELLED) {
+            cancelStatement(statement);
+        }
+    }
+
+    private static void cancelStatement(Statement statement) {
+        try {
+            statement.cancel();
+        } catch (SQLException e) {
+            log.debug("Statement cancel failed: {}", e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Job job) {
+        try {
+            job.rows.close();
+        } catch (IOException e) {
+            log.warn("Could not delete spill file of job {}: {}", job.id, e.getMessage());
+        }
+    }
+}
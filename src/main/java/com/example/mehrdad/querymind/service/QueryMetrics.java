@@ -0,0 +1,62 @@
+package com.example.mehrdad.querymind.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes finished conversion traces to Micrometer. Every meter is tagged with the provider that answered and
+ * the outcome, so stage latencies can be compared between LLM answers, cache hits and heuristic fallbacks:
+ * querymind.stage (tag stage), querymind.conversion (end to end), querymind.prompt.tokens and querymind.result.rows.
+ */
+@Component
+@RequiredArgsConstructor
+public class QueryMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public void record(ConversionTrace trace) {
+        String provider = trace.getProvider();
+        String outcome = trace.getOutcome() != null ? trace.getOutcome() : ConversionTrace.OUTCOME_ERROR;
+
+        trace.getStageNanos().forEach((stage, nanos) -> Timer.builder("querymind.stage")
+                .description("Time spent in one stage of the conversion pipeline")
+                .tag("stage", stage)
+                .tag("provider", provider)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS));
+
+        Timer.builder("querymind.conversion")
+                .description("End-to-end time of a conversion request")
+                .tag("provider", provider)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(trace.getElapsedNanos(), TimeUnit.NANOSECONDS);
+
+        if (trace.getPromptTokens() >= 0) {
+            DistributionSummary.builder("querymind.prompt.tokens")
+                    .description("Estimated size of the prompt sent to the LLM")
+                    .baseUnit("tokens")
+                    .tag("provider", provider)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(trace.getPromptTokens());
+        }
+        if (trace.getRowCount() >= 0) {
+            DistributionSummary.builder("querymind.result.rows")
+                    .description("Rows returned by executed queries")
+                    .baseUnit("rows")
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(trace.getRowCount());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.mehrdad.querymind.service;
+
+import com.example.mehrdad.querymind.dto.QueryResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Checks generated SQL before it is executed: {@link SqlValidator} against the schema snapshot, then a cost gate
+ * on the {@link ExplainEstimator} estimate that rejects plans above the row or cost limit and warns above a lower
+ * threshold. A fresh LLM answer that passes is written to the persistent conversion cache; one that fails either
+ * check gets one repair attempt from the LLM with the problems spelled out; a repair that passes replaces the
+ * cached conversion, and a conversion that stays broken is evicted so the next request asks afresh. Meter:
+ * querymind.validation.checks, tagged with result (passed, warned, repaired, rejected).
+ */
+@Service
+public class QueryPreflight {
+
+    private static final Set<String> LLM_OUTCOMES = Set.of(
+            ConversionTrace.OUTCOME_LLM, ConversionTrace.OUTCOME_CACHE, ConversionTrace.OUTCOME_COALESCED);
+
+    /**
+     * The conversion to execute (the repaired one if a repair passed), or a failed one carrying the errors
+     */
+    public record Outcome(QueryResponse response, List<String> errors, List<String> warnings) {
+        public boolean passed() {
+            return errors.isEmpty();
+        }
+    }
+
+    private record Check(List<String> errors, List<String> warnings) {}
+
+    private final AIQueryService aiQueryService;
+    private final DatabaseSchemaService databaseSchemaService;
+    private final ExecutionPolicy executionPolicy;
+    private final ExplainEstimator explainEstimator;
+    private final boolean enabled;
+    private final boolean repair;
+    private final boolean explain;
+    private final long maxRows;
+    private final long warnRows;
+    private final double maxCost;
+    private final double warnCost;
+    private final Counter passed;
+    private final Counter warned;
+    private final Counter repaired;
+    private final Counter rejected;
+
+    public QueryPreflight(AIQueryService aiQueryService,
+                          DatabaseSchemaService databaseSchemaService,
+                          ExecutionPolicy executionPolicy,
+                          ExplainEstimator explainEstimator,
+                          MeterRegistry meterRegistry,
+                          @Value("${querymind.validation.enabled:true}") boolean enabled,
+                          @Value("${querymind.validation.repair:true}") boolean repair,
+                          @Value("${querymind.validation.explain:true}") boolean explain,
+                          @Value("${querymind.validation.max-estimated-rows:50000000}") long maxRows,
+                          @Value("${querymind.validation.warn-estimated-rows:1000000}") long warnRows,
+                          @Value("${querymind.validation.max-cost:0}") double maxCost,
+                          @Value("${querymind.validation.warn-cost:0}") double warnCost) {
+        this.aiQueryService = aiQueryService;
+        this.databaseSchemaService = databaseSchemaService;
+        this.executionPolicy = executionPolicy;
+        this.explainEstimator = explainEstimator;
+        this.enabled = enabled;
+        this.repair = repair;
+        this.explain = explain;
+        this.maxRows = maxRows;
+        this.warnRows = warnRows;
+        this.maxCost = maxCost;
+        this.warnCost = warnCost;
+        this.passed = counter(meterRegistry, "passed");
+        this.warned = counter(meterRegistry, "warned");
+        this.repaired = counter(meterRegistry, "repaired");
+        this.rejected = counter(meterRegistry, "rejected");
+    }
+
+    /**
+     * Check a successful conversion before execution, repairing it once through the LLM if it fails; the stages
+     * show up in the trace as validation and repair
+     */
+    public Outcome review(String text, String databaseSchema, QueryResponse conversion, ConversionTrace trace) {
+        return review(text, databaseSchema, conversion, trace, statement -> {});
+    }
+
+    /**
+     * As {@link #review(String, String, QueryResponse, ConversionTrace)}, handing the EXPLAIN statements to the
+     * listener so a caller that cancels through the statement can stop the cost check too
+     */
+    public Outcome review(String text, String databaseSchema, QueryResponse conversion, ConversionTrace trace,
+                          Consumer<Statement> onStatement) {
+        if (!conversion.isSuccess()) {
+            return new Outcome(conversion, List.of(), List.of());
+        }
+        if (!enabled) {
+            // With the checks switched off every answer counts as passed
+            confirm(text, databaseSchema, trace);
+            return new Outcome(conversion, List.of(), List.of());
+        }
+        Check check = trace.time("validation", () -> check(conversion.getSqlQuery(), onStatement));
+        if (check.errors().isEmpty()) {
+            (check.warnings().isEmpty() ? passed : warned).increment();
+            confirm(text, databaseSchema, trace);
+            return new Outcome(conversion, List.of(), check.warnings());
+        }
+
+        // Only LLM output is repaired (and was cached); heuristic SQL would come out the same again
+        boolean fromLlm = LLM_OUTCOMES.contains(trace.getOutcome());
+        QueryResponse attempt = conversion;
+        if (repair && fromLlm) {
+            Optional<QueryResponse> repairedConversion = aiQueryService.repairQuery(
+                    text, databaseSchema, conversion.getSqlQuery(), check.errors(), trace);
+            if (repairedConversion.isPresent()) {
+                attempt = repairedConversion.get();
+                String repairedSql = attempt.getSqlQuery();
+                check = trace.time("validation", () -> check(repairedSql, onStatement));
+                if (check.errors().isEmpty()) {
+                    aiQueryService.rememberRepair(text, databaseSchema, attempt, trace.getProvider());
+                    repaired.increment();
+                    return new Outcome(attempt, List.of(), check.warnings());
+                }
+            }
+        }
+        if (fromLlm) {
+            aiQueryService.forgetConversion(text, databaseSchema);
+        }
+        rejected.increment();
+        trace.setOutcome(ConversionTrace.OUTCOME_INVALID);
+        return new Outcome(new QueryResponse(
+                attempt.getSqlQuery(),
+                attempt.getExplanation(),
+                false,
+                "Generated SQL failed pre-execution checks: " + String.join("; ", check.errors())
+        ), check.errors(), check.warnings());
+    }
+
+    /**
+     * Persist a conversion the LLM has just produced; cached answers were confirmed when they were produced
+     */
+    private void confirm(String text, String databaseSchema, ConversionTrace trace) {
+        if (ConversionTrace.OUTCOME_LLM.equals(trace.getOutcome())) {
+            aiQueryService.confirmConversion(text, databaseSchema, trace.getProvider());
+        }
+    }
+
+    private Check check(String sql, Consumer<Statement> onStatement) {
+        List<String> errors = new ArrayList<>();
+        List<String> warnings = new ArrayList<>();
+        SqlValidator.Result validation = SqlValidator.validate(sql, databaseSchemaService.getSnapshot());
+        errors.addAll(validation.errors());
+        warnings.addAll(validation.warnings());
+        if (!errors.isEmpty() || !explain) {
+            return new Check(errors, warnings);
+        }
+        try {
+            explainEstimator.estimate(executionPolicy.plan(sql).sql(), onStatement)
+                    .ifPresent(estimate -> gate(estimate, errors, warnings));
+        } catch (IllegalArgumentException e) {
+            errors.add(e.getMessage());
+        } catch (DataAccessResourceFailureException e) {
+            warnings.add("Cost check skipped: " + e.getMostSpecificCause().getMessage());
+        } catch (NonTransientDataAccessException e) {
+            // The database could not even plan it: broken SQL the validator did not catch
+            errors.add("Database rejected the statement: " + e.getMostSpecificCause().getMessage());
+        } catch (RuntimeException e) {
+            warnings.add("Cost check skipped: " + e.getMessage());
+        }
+        return new Check(errors, warnings);
+    }
+
+    private void gate(ExplainEstimator.Estimate estimate, List<String> errors, List<String> warnings) {
+        if (maxRows > 0 && estimate.rows() > maxRows) {
+            errors.add("Plan is estimated to read about " + estimate.rows() + " rows, above the limit of " + maxRows
+                    + "; filter more selectively or join on key columns");
+        } else if (warnRows > 0 && estimate.rows() > warnRows) {
+            warnings.add("Plan is estimated to read about " + estimate.rows() + " rows");
+        }
+        if (estimate.cost() == null) {
+            return;
+        }
+        if (maxCost > 0 && estimate.cost() > maxCost) {
+            errors.add("Plan cost " + estimate.cost() + " is above the limit of " + maxCost);
+        } else if (warnCost > 0 && estimate.cost() > warnCost) {
+            warnings.add("Plan cost " + estimate.cost() + " is high");
+        }
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("querymind.validation.checks")
+                .description("Pre-execution checks of generated SQL by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
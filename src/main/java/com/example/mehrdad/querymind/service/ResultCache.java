@@ -0,0 +1,182 @@
+package com.example.mehrdad.querymind.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of executed generated SQL keyed by normalized statement text and bound values. The cache is bounded by
+ * the estimated heap size of the results; each entry lives for the shortest TTL among the tables it reads. Entries
+ * are dropped when a schema change touches one of their tables or when a table's write version is bumped.
+ */
+@Slf4j
+@Component
+public class ResultCache {
+
+    private final boolean enabled;
+    private final long maxEntryBytes;
+    private final Duration defaultTtl;
+    private final Map<String, Duration> tableTtls = new HashMap<>();
+    private final Cache<String, Entry> cache;
+    // Bumped on every invalidation; a result computed across a bump is not stored
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong bumps = new AtomicLong();
+
+    public ResultCache(@Value("${querymind.cache.result.enabled:true}") boolean enabled,
+                       @Value("${querymind.cache.result.max-size:64MB}") DataSize maxSize,
+                       @Value("${querymind.cache.result.max-entry-size:4MB}") DataSize maxEntrySize,
+                       @Value("${querymind.cache.result.ttl:5m}") Duration defaultTtl,
+                       @Value("${querymind.cache.result.table-ttl:}") String tableTtls) {
+        this.enabled = enabled;
+        this.maxEntryBytes = maxEntrySize.toBytes();
+        this.defaultTtl = defaultTtl;
+        for (String pair : tableTtls.split(",")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                this.tableTtls.put(pair.substring(0, eq).trim().toUpperCase(Locale.ROOT),
+                        DurationStyle.detectAndParse(pair.substring(eq + 1).trim()));
+            }
+        }
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String key, Entry entry) -> (int) Math.min(Integer.MAX_VALUE, entry.bytes() + 2L * key.length()))
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return entry.ttl().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return entry.ttl().toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Cached result with the tables it was read from
+     */
+    public record Entry(ColumnarResult result, int rowCount, String truncationReason, Set<String> tables,
+                        long bytes, Duration ttl) {}
+
+    /**
+     * Collapse whitespace and fold case outside quoted text and drop comments and trailing semicolons, so
+     * formatting differences in generated SQL map to the same entry. Executions key entries by the parameterized
+     * statement's {@link SqlParameterizer.Parameterized#key()}, which is normalized the same way.
+     */
+    public static String normalize(String sql) {
+        return SqlParameterizer.verbatim(sql).shape();
+    }
+
+    /**
+     * Invalidation generation to capture before executing; pass it back to {@link #put}
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public Optional<Entry> get(String normalizedSql) {
+        return enabled ? Optional.ofNullable(cache.getIfPresent(normalizedSql)) : Optional.empty();
+    }
+
+    public void put(String normalizedSql, DatabaseSchemaService.QueryExecutionResult result, Set<String> tables,
+                    long generationAtStart) {
+        if (!enabled || result.getResult() == null || result.getEstimatedBytes() > maxEntryBytes) {
+            return;
+        }
+        Duration ttl = ttlFor(tables);
+        if (ttl.isZero() || ttl.isNegative()) {
+            return;
+        }
+        Entry entry = new Entry(result.getResult(), result.getRowCount(), result.getTruncationReason(),
+                Set.copyOf(tables), result.getEstimatedBytes(), ttl);
+        if (generation.get() == generationAtStart) {
+            cache.put(normalizedSql, entry);
+            // An invalidation racing with the put may have missed this entry
+            if (generation.get() != generationAtStart) {
+                cache.invalidate(normalizedSql);
+            }
+        }
+    }
+
+    private Duration ttlFor(Set<String> tables) {
+        Duration ttl = defaultTtl;
+        for (String table : tables) {
+            Duration tableTtl = tableTtls.get(table.toUpperCase(Locale.ROOT));
+            if (tableTtl != null && tableTtl.compareTo(ttl) < 0) {
+                ttl = tableTtl;
+            }
+        }
+        return ttl;
+    }
+
+    /**
+     * Record a write to the table: every cached result that read it is dropped
+     */
+    public int bumpTable(String table) {
+        bumps.incrementAndGet();
+        return invalidateTables(Set.of(table.toUpperCase(Locale.ROOT)), false);
+    }
+
+    @EventListener
+    public void onSchemaChanged(SchemaSnapshotChangedEvent event) {
+        if (event.getPrevious() == null) {
+            return;
+        }
+        Set<String> changed = new HashSet<>();
+        event.getChangedTables().forEach(t -> changed.add(t.toUpperCase(Locale.ROOT)));
+        int dropped = invalidateTables(changed, true);
+        log.info("Schema change touched {}: dropped {} cached results", event.getChangedTables(), dropped);
+    }
+
+    private int invalidateTables(Set<String> upperCaseTables, boolean includeUnknown) {
+        generation.incrementAndGet();
+        int dropped = 0;
+        for (Map.Entry<String, Entry> cached : cache.asMap().entrySet()) {
+            Set<String> tables = cached.getValue().tables();
+            boolean affected = includeUnknown && tables.isEmpty();
+            for (String table : tables) {
+                if (upperCaseTables.contains(table.toUpperCase(Locale.ROOT))) {
+                    affected = true;
+                    break;
+                }
+            }
+            if (affected && cache.asMap().remove(cached.getKey(), cached.getValue())) {
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("size", cache.estimatedSize());
+        result.put("weightedBytes", cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L));
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("evictions", stats.evictionCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("tableBumps", bumps.get());
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.mehrdad.querymind.service;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Strategy for reading tables, columns and PK/FK information from a live connection
+ */
+public interface SchemaIntrospector {
+
+    /**
+     * Short identifier used by the querymind.schema.introspection setting
+     */
+    String getName();
+
+    /**
+     * Whether this strategy can introspect the database described by the given metadata
+     */
+    boolean supports(DatabaseMetaData metaData) throws SQLException;
+
+    /**
+     * Load all user tables keyed by table name, columns in ordinal order
+     */
+    Map<String, List<DatabaseSchemaService.ColumnInfo>> loadTables(Connection connection) throws SQLException;
+
+    /**
+     * Load only the named tables; used by incremental refresh to re-read the tables whose signature changed
+     */
+    default Map<String, List<DatabaseSchemaService.ColumnInfo>> loadTables(Connection connection, Set<String> tableNames)
+            throws SQLException {
+        Map<String, List<DatabaseSchemaService.ColumnInfo>> tables = loadTables(connection);
+        tables.keySet().retainAll(tableNames);
+        return tables;
+    }
+
+    /**
+     * Cheap per-table change signal keyed by table name, in the same order as {@link #loadTables(Connection)}.
+     * Two equal signatures mean the table does not need to be re-read. Null when the strategy has none, in
+     * which case every refresh re-reads the whole catalog.
+     */
+    default Map<String, String> loadTableSignatures(Connection connection) throws SQLException {
+        return null;
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.mehrdad.querymind.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Picks the part of the schema that is relevant to a question before the prompt is built. Tables are scored
+ * through an inverted index of table and column name tokens (with light stemming and synonyms), boosted by their
+ * FK neighbours, and the top-K tables are sent together with the FK join paths that connect them. The text is
+ * produced by the renderer named in querymind.schema.prompt.format and, when max-tokens is set, cut to that budget
+ * with the best ranked tables kept first.
+ */
+@Slf4j
+@Component
+public class SchemaRelevanceSelector {
+
+    private static final Pattern TOKEN_SPLIT = Pattern.compile("[^a-z0-9]+");
+    private static final double TABLE_WEIGHT = 3.0;
+    private static final double COLUMN_WEIGHT = 1.0;
+    private static final double NEIGHBOUR_BOOST = 0.25;
+    private static final int MAX_JOIN_HOPS = 3;
+    private static final Set<String> STOP_WORDS = Set.of(
+            "id", "the", "a", "an", "of", "in", "on", "for", "by", "with", "and", "or", "to", "all", "show", "list",
+            "get", "find", "how", "many", "what", "which", "who", "is", "are", "me", "number", "count", "total");
+
+    private final boolean enabled;
+    private final int topK;
+    private final Map<String, List<String>> synonyms;
+    private final SchemaRenderer renderer;
+    private final int maxTokens;
+    private volatile Index index;
+
+    public SchemaRelevanceSelector(boolean enabled, int topK, String synonyms) {
+        this(enabled, topK, synonyms, List.of(new VerboseSchemaRenderer()), VerboseSchemaRenderer.NAME, 0);
+    }
+
+    @Autowired
+    public SchemaRelevanceSelector(@Value("${querymind.schema.pruning.enabled:true}") boolean enabled,
+                                   @Value("${querymind.schema.pruning.top-k:8}") int topK,
+                                   @Value("${querymind.schema.pruning.synonyms:customer=user,client=user,buyer=user,purchase=order,sale=order,item=product}") String synonyms,
+                                   List<SchemaRenderer> renderers,
+                                   @Value("${querymind.schema.prompt.format:verbose}") String format,
+                                   @Value("${querymind.schema.prompt.max-tokens:0}") int maxTokens) {
+        this.enabled = enabled;
+        this.topK = topK;
+        this.synonyms = parseSynonyms(synonyms);
+        this.renderer = renderers.stream()
+                .filter(r -> r.getName().equalsIgnoreCase(format.trim()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown querymind.schema.prompt.format: " + format));
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * Schema text for the prompt together with what was kept and how many tokens pruning saved
+     */
+    public record PromptSchema(String schemaText, List<String> tables, int totalTables, int fullTokens, int promptTokens) {
+        public int tokensSaved() { return fullTokens - promptTokens; }
+        public boolean pruned() { return tables.size() < totalTables; }
+    }
+
+    public PromptSchema select(String question, SchemaSnapshot snapshot) {
+        Index current = indexFor(snapshot);
+        int totalTables = snapshot.getTables().size();
+        if (!enabled || totalTables <= topK) {
+            return full(snapshot, current);
+        }
+
+        Map<String, Double> scores = score(question, current);
+        if (scores.isEmpty()) {
+            // Nothing in the question points at a table; pruning blindly would hide the answer from the LLM
+            return full(snapshot, current);
+        }
+
+        List<String> ranked = new ArrayList<>(scores.keySet());
+        ranked.sort(Comparator.comparing((String t) -> -scores.get(t)).thenComparing(t -> t));
+        Set<String> selected = new LinkedHashSet<>(ranked.subList(0, Math.min(topK, ranked.size())));
+        addJoinPaths(selected, current);
+
+        PromptSchema result;
+        if (isPassthrough()) {
+            StringBuilder sb = new StringBuilder();
+            List<String> tables = new ArrayList<>();
+            for (Map.Entry<String, String> entry : snapshot.getRenderedTables().entrySet()) {
+                if (selected.contains(entry.getKey())) {
+                    if (sb.length() > 0) sb.append('\n');
+                    sb.append(entry.getValue());
+                    tables.add(entry.getKey());
+                }
+            }
+            String schemaText = sb.toString();
+            result = new PromptSchema(schemaText, tables, totalTables, current.fullTokens(), TokenEstimator.estimate(schemaText));
+        } else {
+            // Ranked tables come before the join-path tables, so the budget cuts the least relevant first
+            SchemaRenderer.Rendered rendered = renderer.render(snapshot, selected, maxTokens);
+            result = new PromptSchema(rendered.text(), rendered.tables(), totalTables, current.fullTokens(), rendered.tokens());
+        }
+        log.debug("Schema pruned to {} of {} tables for '{}', ~{} prompt tokens saved",
+                result.tables().size(), totalTables, question, result.tokensSaved());
+        return result;
+    }
+
+    private PromptSchema full(SchemaSnapshot snapshot, Index current) {
+        SchemaRenderer.Rendered rendered = current.full();
+        if (rendered == null) {
+            return new PromptSchema(snapshot.getSchemaString(), new ArrayList<>(snapshot.getTables().keySet()),
+                    snapshot.getTables().size(), current.fullTokens(), current.fullTokens());
+        }
+        return new PromptSchema(rendered.text(), rendered.tables(), snapshot.getTables().size(),
+                current.fullTokens(), rendered.tokens());
+    }
+
+    /**
+     * Verbose format without a budget is exactly the snapshot's own text, which needs no re-rendering
+     */
+    private boolean isPassthrough() {
+        return maxTokens <= 0 && VerboseSchemaRenderer.NAME.equals(renderer.getName());
+    }
+
+    private Map<String, Double> score(String question, Index current) {
+        Map<String, Double> base = new HashMap<>();
+        for (String token : TOKEN_SPLIT.split(question.toLowerCase(Locale.ROOT))) {
+            if (token.isEmpty() || STOP_WORDS.contains(token)) continue;
+            String stem = stem(token);
+            addPostings(base, current.postings().get(stem));
+            for (String synonym : synonyms.getOrDefault(stem, List.of())) {
+                addPostings(base, current.postings().get(synonym));
+            }
+        }
+
+        Map<String, Double> scores = new HashMap<>(base);
+        for (Map.Entry<String, Double> entry : base.entrySet()) {
+            for (String neighbour : current.neighbours().getOrDefault(entry.getKey(), Set.of())) {
+                scores.merge(neighbour, entry.getValue() * NEIGHBOUR_BOOST, Double::sum);
+            }
+        }
+        return scores;
+    }
+
+    private static void addPostings(Map<String, Double> scores, Map<String, Double> postings) {
+        if (postings == null) return;
+        postings.forEach((table, weight) -> scores.merge(table, weight, Double::sum));
+    }
+
+    /**
+     * Add the tables on the shortest FK path between every pair of selected tables so the LLM can write the joins
+     */
+    private void addJoinPaths(Set<String> selected, Index current) {
+        List<String> seeds = new ArrayList<>(selected);
+        for (int i = 0; i < seeds.size(); i++) {
+            for (int j = i + 1; j < seeds.size(); j++) {
+                List<String> path = shortestPath(seeds.get(i), seeds.get(j), current.neighbours());
+                if (path != null && path.size() - 1 <= MAX_JOIN_HOPS) {
+                    selected.addAll(path);
+                }
+            }
+        }
+    }
+
+    private static List<String> shortestPath(String from, String to, Map<String, Set<String>> neighbours) {
+        Map<String, String> parent = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        parent.put(from, from);
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            String table = queue.poll();
+            if (table.equals(to)) {
+                LinkedList<String> path = new LinkedList<>();
+                for (String t = to; !t.equals(from); t = parent.get(t)) {
+                    path.addFirst(t);
+                }
+                path.addFirst(from);
+                return path;
+            }
+            for (String next : neighbours.getOrDefault(table, Set.of())) {
+                if (parent.putIfAbsent(next, table) == null) {
+                    queue.add(next);
+                }
+            }
+        }
+        return null;
+    }
+
+    private Index indexFor(SchemaSnapshot snapshot) {
+        Index current = index;
+        if (current == null || current.version() != snapshot.getVersion()) {
+            current = buildIndex(snapshot);
+            index = current;
+        }
+        return current;
+    }
+
+    private Index buildIndex(SchemaSnapshot snapshot) {
+        Map<String, Map<String, Double>> postings = new HashMap<>();
+        Map<String, Set<String>> neighbours = new HashMap<>();
+        for (Map.Entry<String, List<DatabaseSchemaService.ColumnInfo>> entry : snapshot.getTables().entrySet()) {
+            String table = entry.getKey();
+            for (String token : tokens(table)) {
+                postings.computeIfAbsent(token, t -> new HashMap<>()).merge(table, TABLE_WEIGHT, Math::max);
+            }
+            for (DatabaseSchemaService.ColumnInfo column : entry.getValue()) {
+                for (String token : tokens(column.getName())) {
+                    postings.computeIfAbsent(token, t -> new HashMap<>()).merge(table, COLUMN_WEIGHT, Math::max);
+                }
+                if (column.getForeignKeyTargets() == null) continue;
+                for (String target : column.getForeignKeyTargets()) {
+                    String targetTable = snapshot.resolveTable(target.substring(0, target.indexOf('.')));
+                    if (targetTable != null && !targetTable.equals(table)) {
+                        neighbours.computeIfAbsent(table, t -> new LinkedHashSet<>()).add(targetTable);
+                        neighbours.computeIfAbsent(targetTable, t -> new LinkedHashSet<>()).add(table);
+                    }
+                }
+            }
+        }
+        SchemaRenderer.Rendered full = isPassthrough()
+                ? null
+                : renderer.render(snapshot, snapshot.getTables().keySet(), maxTokens);
+        return new Index(snapshot.getVersion(), postings, neighbours, TokenEstimator.estimate(snapshot.getSchemaString()), full);
+    }
+
+    private static Set<String> tokens(String identifier) {
+        Set<String> tokens = new HashSet<>();
+        String lower = identifier.toLowerCase(Locale.ROOT);
+        tokens.add(stem(lower.replace("_", "")));
+        for (String part : TOKEN_SPLIT.split(lower)) {
+            if (!part.isEmpty() && !STOP_WORDS.contains(part)) {
+                tokens.add(stem(part));
+            }
+        }
+        return tokens;
+    }
+
+    static String stem(String token) {
+        if (token.length() > 4 && token.endsWith("ies")) return token.substring(0, token.length() - 3) + "y";
+        if (token.length() > 4 && (token.endsWith("ses") || token.endsWith("xes"))) return token.substring(0, token.length() - 2);
+        if (token.length() > 3 && token.endsWith("s") && !token.endsWith("ss")) return token.substring(0, token.length() - 1);
+        return token;
+    }
+
+    private static Map<String, List<String>> parseSynonyms(String spec) {
+        Map<String, List<String>> result = new HashMap<>();
+        for (String pair : spec.split(",")) {
+            String[] parts = pair.split("=");
+            if (parts.length != 2) continue;
+            String from = stem(parts[0].trim().toLowerCase(Locale.ROOT));
+            String to = stem(parts[1].trim().toLowerCase(Locale.ROOT));
+            result.computeIfAbsent(from, k -> new ArrayList<>()).add(to);
+        }
+        return result;
+    }
+
+    private record Index(long version, Map<String, Map<String, Double>> postings,
+                         Map<String, Set<String>> neighbours, int fullTokens, SchemaRenderer.Rendered full) {}
+}
@@ -0,0 +1,146 @@
+package com.example.mehrdad.querymind.service;
+
+import java.util.*;
+
+/**
+ * Serializes tables of a snapshot into schema text for the prompt, within an optional token budget. Tables are
+ * budgeted in the caller's priority order: first every table that fits gets a keys-only block (PK and FK columns,
+ * enough to write joins), stopping at the first that does not fit; then, again in priority order, blocks are
+ * widened to all columns while the budget allows. Output lists the included tables in catalog order, so the
+ * same snapshot, priority and budget always produce the same text.
+ */
+public abstract class SchemaRenderer {
+
+    /**
+     * Rendered text, the included tables in catalog order and whether anything was cut to fit the budget
+     */
+    public record Rendered(String text, List<String> tables, int tokens, boolean truncated) {}
+
+    /**
+     * Value of querymind.schema.prompt.format selecting this renderer
+     */
+    public abstract String getName();
+
+    /**
+     * Block for one table; when keysOnly is set only PK and FK columns are listed and the omission is marked
+     */
+    protected abstract String renderTable(String table, List<DatabaseSchemaService.ColumnInfo> columns, boolean keysOnly);
+
+    /**
+     * Line describing one FK edge, or null when the format shows FKs inline
+     */
+    protected String renderEdge(String table, DatabaseSchemaService.ColumnInfo column, String target) {
+        return null;
+    }
+
+    /**
+     * Render the given tables (highest priority first); a budget of zero or less means unlimited
+     */
+    public Rendered render(SchemaSnapshot snapshot, Collection<String> priority, int tokenBudget) {
+        Map<String, List<DatabaseSchemaService.ColumnInfo>> tables = snapshot.getTables();
+        Set<String> candidates = new LinkedHashSet<>();
+        for (String table : priority) {
+            if (tables.containsKey(table)) {
+                candidates.add(table);
+            }
+        }
+        long budget = tokenBudget > 0 ? tokenBudget : Long.MAX_VALUE;
+
+        Map<String, Integer> keysCost = new HashMap<>();
+        Map<String, Integer> fullCost = new HashMap<>();
+        Map<String, List<Edge>> outgoing = new HashMap<>();
+        Map<String, List<Edge>> incoming = new HashMap<>();
+        for (String table : candidates) {
+            List<DatabaseSchemaService.ColumnInfo> columns = tables.get(table);
+            keysCost.put(table, TokenEstimator.estimate(renderTable(table, columns, true)));
+            fullCost.put(table, TokenEstimator.estimate(renderTable(table, columns, false)));
+            for (Edge edge : edges(table, columns, snapshot)) {
+                if (candidates.contains(edge.target())) {
+                    outgoing.computeIfAbsent(table, t -> new ArrayList<>()).add(edge);
+                    incoming.computeIfAbsent(edge.target(), t -> new ArrayList<>()).add(edge);
+                }
+            }
+        }
+
+        // An edge line is charged once both of its tables are in
+        long used = 0;
+        Set<String> included = new LinkedHashSet<>();
+        Set<String> charged = new HashSet<>();
+        for (String table : candidates) {
+            int cost = keysCost.get(table);
+            List<Edge> added = new ArrayList<>();
+            for (Edge edge : outgoing.getOrDefault(table, List.of())) {
+                if (included.contains(edge.target()) || edge.target().equals(table)) added.add(edge);
+            }
+            for (Edge edge : incoming.getOrDefault(table, List.of())) {
+                if (included.contains(edge.source())) added.add(edge);
+            }
+            Set<String> lines = new HashSet<>();
+            for (Edge edge : added) {
+                if (!charged.contains(edge.line()) && lines.add(edge.line())) {
+                    cost += TokenEstimator.estimate(edge.line());
+                }
+            }
+            if (used + cost > budget) {
+                break;
+            }
+            included.add(table);
+            charged.addAll(lines);
+            used += cost;
+        }
+        Set<String> widened = new HashSet<>();
+        for (String table : included) {
+            int extra = fullCost.get(table) - keysCost.get(table);
+            if (used + extra <= budget) {
+                widened.add(table);
+                used += extra;
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        List<String> rendered = new ArrayList<>();
+        Set<String> edgeLines = new LinkedHashSet<>();
+        boolean truncated = included.size() < candidates.size();
+        for (Map.Entry<String, List<DatabaseSchemaService.ColumnInfo>> entry : tables.entrySet()) {
+            String table = entry.getKey();
+            if (!included.contains(table)) {
+                continue;
+            }
+            boolean keysOnly = !widened.contains(table);
+            truncated |= keysOnly && fullCost.get(table) > keysCost.get(table);
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(renderTable(table, entry.getValue(), keysOnly));
+            for (Edge edge : outgoing.getOrDefault(table, List.of())) {
+                if (included.contains(edge.target())) edgeLines.add(edge.line());
+            }
+            rendered.add(table);
+        }
+        for (String line : edgeLines) {
+            sb.append('\n').append(line);
+        }
+        String text = sb.toString();
+        return new Rendered(text, rendered, TokenEstimator.estimate(text), truncated);
+    }
+
+    private record Edge(String source, String target, String line) {}
+
+    private List<Edge> edges(String table, List<DatabaseSchemaService.ColumnInfo> columns, SchemaSnapshot snapshot) {
+        List<Edge> edges = new ArrayList<>();
+        for (DatabaseSchemaService.ColumnInfo column : columns) {
+            if (column.getForeignKeyTargets() == null) continue;
+            for (String target : column.getForeignKeyTargets()) {
+                int dot = target.indexOf('.');
+                String targetTable = snapshot.resolveTable(dot < 0 ? target : target.substring(0, dot));
+                String line = targetTable != null ? renderEdge(table, column, target) : null;
+                if (line != null) {
+                    edges.add(new Edge(table, targetTable, line));
+                }
+            }
+        }
+        return edges;
+    }
+
+    static boolean isKey(DatabaseSchemaService.ColumnInfo column) {
+        return column.isPrimaryKey() || (column.getForeignKeyTargets() != null && !column.getForeignKeyTargets().isEmpty());
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.mehrdad.querymind.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable, versioned view of the database schema together with its pre-rendered prompt string.
+ * A snapshot is published once and then shared by all readers without locking.
+ */
+public final class SchemaSnapshot {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final long version;
+    private final Map<String, List<DatabaseSchemaService.ColumnInfo>> tables;
+    private final Map<String, String> renderedTables;
+    private final Map<String, String> tableFingerprints;
+    private final Map<String, String> tableNamesByLowerCase;
+    private final String schemaString;
+    private final String fingerprint;
+    private final Instant loadedAt;
+
+    SchemaSnapshot(long version, Map<String, List<DatabaseSchemaService.ColumnInfo>> tables,
+                   Map<String, String> renderedTables, String schemaString, Instant loadedAt) {
+        Map<String, List<DatabaseSchemaService.ColumnInfo>> copy = new LinkedHashMap<>();
+        Map<String, String> tableHashes = new LinkedHashMap<>();
+        Map<String, String> lowerCaseNames = new HashMap<>();
+        for (Map.Entry<String, List<DatabaseSchemaService.ColumnInfo>> entry : tables.entrySet()) {
+            copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+            tableHashes.put(entry.getKey(), fingerprint(renderedTables.get(entry.getKey())));
+            lowerCaseNames.put(entry.getKey().toLowerCase(Locale.ROOT), entry.getKey());
+        }
+        this.version = version;
+        this.tables = Collections.unmodifiableMap(copy);
+        this.renderedTables = Collections.unmodifiableMap(new LinkedHashMap<>(renderedTables));
+        this.tableFingerprints = Collections.unmodifiableMap(tableHashes);
+        this.tableNamesByLowerCase = Collections.unmodifiableMap(lowerCaseNames);
+        this.schemaString = schemaString;
+        this.fingerprint = fingerprint(schemaString);
+        this.loadedAt = loadedAt;
+    }
+
+    public long getVersion() { return version; }
+    public Map<String, List<DatabaseSchemaService.ColumnInfo>> getTables() { return tables; }
+    /** Prompt rendering of each table, in catalog order; the schema string is these blocks joined by newlines */
+    public Map<String, String> getRenderedTables() { return renderedTables; }
+    /** Content hash of each table's rendering, used to tell which tables a schema change touched */
+    public Map<String, String> getTableFingerprints() { return tableFingerprints; }
+    public String getSchemaString() { return schemaString; }
+    public String getFingerprint() { return fingerprint; }
+    public Instant getLoadedAt() { return loadedAt; }
+
+    /**
+     * Catalog spelling of a table name matched case-insensitively, or null if the table does not exist
+     */
+    public String resolveTable(String name) {
+        return tableNamesByLowerCase.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Tables of this snapshot that are referenced as identifiers in the given SQL text
+     */
+    public Set<String> referencedTables(String sql) {
+        Set<String> referenced = new LinkedHashSet<>();
+        Matcher m = IDENTIFIER.matcher(sql);
+        while (m.find()) {
+            String table = resolveTable(m.group());
+            if (table != null) {
+                referenced.add(table);
+            }
+        }
+        return referenced;
+    }
+
+    /**
+     * Short, stable content hash of a rendered schema; equal schemas always produce equal fingerprints
+     */
+    public static String fingerprint(String schemaString) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(schemaString.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.mehrdad.querymind.service;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Published when a refresh produces a snapshot with a different fingerprint, carrying the per-table diff so
+ * listeners can invalidate only what touched the changed tables. The previous snapshot is null for the initial load.
+ */
+public class SchemaSnapshotChangedEvent {
+
+    private final SchemaSnapshot previous;
+    private final SchemaSnapshot current;
+
+    public SchemaSnapshotChangedEvent(SchemaSnapshot previous, SchemaSnapshot current) {
+        this.previous = previous;
+        this.current = current;
+    }
+
+    public SchemaSnapshot getPrevious() { return previous; }
+    public SchemaSnapshot getCurrent() { return current; }
+
+    /**
+     * Tables present only in the current snapshot
+     */
+    public Set<String> getAddedTables() {
+        Set<String> added = new LinkedHashSet<>(current.getTableFingerprints().keySet());
+        if (previous != null) {
+            added.removeAll(previous.getTableFingerprints().keySet());
+        }
+        return added;
+    }
+
+    /**
+     * Tables present only in the previous snapshot
+     */
+    public Set<String> getRemovedTables() {
+        if (previous == null) {
+            return Set.of();
+        }
+        Set<String> removed = new LinkedHashSet<>(previous.getTableFingerprints().keySet());
+        removed.removeAll(current.getTableFingerprints().keySet());
+        return removed;
+    }
+
+    /**
+     * Tables present in both snapshots whose rendering changed
+     */
+    public Set<String> getModifiedTables() {
+        Set<String> modified = new LinkedHashSet<>();
+        if (previous == null) {
+            return modified;
+        }
+        Map<String, String> before = previous.getTableFingerprints();
+        current.getTableFingerprints().forEach((table, fingerprint) -> {
+            String old = before.get(table);
+            if (old != null && !old.equals(fingerprint)) {
+                modified.add(table);
+            }
+        });
+        return modified;
+    }
+
+    /**
+     * Tables that were added, removed or whose rendering changed between the two snapshots
+     */
+    public Set<String> getChangedTables() {
+        Set<String> changed = new LinkedHashSet<>();
+        Map<String, String> before = previous != null ? previous.getTableFingerprints() : Map.of();
+        Map<String, String> after = current.getTableFingerprints();
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            if (!Objects.equals(before.get(entry.getKey()), entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String table : before.keySet()) {
+            if (!after.containsKey(table)) {
+                changed.add(table);
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.mehrdad.querymind.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rows of a finished job result. Rows are kept in memory until their estimated size passes the threshold; from
+ * then on every row is written as one JSON array line to a temp file, with the file offset of every
+ * {@value #INDEX_INTERVAL}th row indexed so a page read seeks close to its first row. Written by one thread;
+ * pages are read after {@link #finish()}.
+ */
+final class SpillableRowBuffer implements Closeable {
+
+    static final int INDEX_INTERVAL = 256;
+
+    private final ObjectMapper objectMapper;
+    private final long thresholdBytes;
+    private final Path spillDirectory;
+
+    private List<Object[]> rows = new ArrayList<>();
+    private long bytes;
+    private int rowCount;
+
+    private volatile Path file;
+    private OutputStream out;
+    private long position;
+    private long[] index = new long[16];
+
+    SpillableRowBuffer(ObjectMapper objectMapper, long thresholdBytes, Path spillDirectory) {
+        this.objectMapper = objectMapper;
+        this.thresholdBytes = thresholdBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    int getRowCount() { return rowCount; }
+    boolean isSpilled() { return file != null; }
+    long getBytes() { return bytes; }
+
+    /**
+     * Append a row; the array is copied, so callers may reuse it
+     */
+    void add(Object[] values) throws IOException {
+        if (out != null) {
+            write(values, rowCount);
+            rowCount++;
+            return;
+        }
+        Object[] row = values.clone();
+        for (Object value : row) {
+            bytes += Integer.BYTES + ExecutionPolicy.estimateSize(value);
+        }
+        rows.add(row);
+        rowCount++;
+        if (bytes > thresholdBytes) {
+            spill();
+        }
+    }
+
+    /**
+     * Flush the spill file; no rows may be added afterwards
+     */
+    void finish() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Rows [offset, offset + limit) as Object[] (in memory) or raw JSON arrays (spilled); both serialize the same
+     */
+    List<Object> page(int offset, int limit) throws IOException {
+        int from = Math.min(Math.max(0, offset), rowCount);
+        int to = (int) Math.min(rowCount, (long) from + Math.max(0, limit));
+        if (file == null) {
+            return new ArrayList<>(rows.subList(from, to));
+        }
+        List<Object> page = new ArrayList<>(to - from);
+        if (from == to) {
+            return page;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(index[from / INDEX_INTERVAL]);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            for (int skip = from % INDEX_INTERVAL; skip > 0; skip--) {
+                reader.readLine();
+            }
+            for (int i = from; i < to; i++) {
+                page.add(new RawValue(reader.readLine()));
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public void close() throws IOException {
+        rows = List.of();
+        try {
+            finish();
+        } finally {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        file = spillDirectory != null
+                ? Files.createTempFile(spillDirectory, "querymind-job-", ".ndjson")
+                : Files.createTempFile("querymind-job-", ".ndjson");
+        out = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+        List<Object[]> buffered = rows;
+        rows = List.of();
+        for (int i = 0; i < buffered.size(); i++) {
+            write(buffered.get(i), i);
+        }
+    }
+
+    private void write(Object[] values, int row) throws IOException {
+        if (row % INDEX_INTERVAL == 0) {
+            recordIndex(row);
+        }
+        byte[] line = objectMapper.writeValueAsBytes(values);
+        out.write(line);
+        out.write('\n');
+        position += line.length + 1;
+    }
+
+    private void recordIndex(int row) {
+        int slot = row / INDEX_INTERVAL;
+        if (slot == index.length) {
+            index = Arrays.copyOf(index, index.length * 2);
+        }
+        index[slot] = position;
+    }
+}
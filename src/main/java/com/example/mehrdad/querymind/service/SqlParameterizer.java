@@ -0,0 +1,352 @@
+package com.example.mehrdad.querymind.service;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Turns generated SQL into the statement to run plus bind values, and a normalized shape to key caches on. String
+ * and numeric literals that are compared against something ({@code = <> < > <= >= != LIKE BETWEEN ... AND ...} or
+ * an {@code IN (...)} list of literals) become {@code ?} parameters. Literals elsewhere (select list, ORDER BY
+ * positions, LIMIT, typed literals like DATE '...') are kept, since binding them could change the statement's
+ * meaning. The statement that runs is the original text without comments and with only those literals replaced,
+ * so identifiers keep their case; the shape also collapses whitespace and upper-cases unquoted text. Statements that
+ * differ only in compared constants therefore share one statement text, and with it the database's parsed plan.
+ */
+public final class SqlParameterizer {
+
+    private SqlParameterizer() {
+    }
+
+    /**
+     * Statement to run and its normalized shape, both with {@code ?} placeholders, and the values to bind, in order
+     */
+    public record Parameterized(String sql, String shape, List<Object> parameters) {
+
+        /**
+         * Unambiguous key for the statement including its values, usable by caches of executed results
+         */
+        public String key() {
+            if (parameters.isEmpty()) {
+                return shape;
+            }
+            StringBuilder sb = new StringBuilder(shape).append(" -- ");
+            for (int i = 0; i < parameters.size(); i++) {
+                if (i > 0) sb.append(", ");
+                Object value = parameters.get(i);
+                if (value instanceof String text) {
+                    sb.append('\'').append(text.replace("'", "''")).append('\'');
+                } else {
+                    sb.append(value);
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Bind the values; strings go to PostgreSQL untyped so it infers the type from the column they are compared
+         * with (a date or UUID column would otherwise reject a varchar), other drivers convert them themselves
+         */
+        public PreparedStatement bind(PreparedStatement ps) throws SQLException {
+            if (parameters.isEmpty()) {
+                return ps;
+            }
+            boolean untypedStrings = ps.getConnection().getMetaData().getDatabaseProductName()
+                    .toUpperCase(Locale.ROOT).contains("POSTGRES");
+            for (int i = 0; i < parameters.size(); i++) {
+                Object value = parameters.get(i);
+                if (value instanceof Long number) {
+                    ps.setLong(i + 1, number);
+                } else if (value instanceof BigDecimal decimal) {
+                    ps.setBigDecimal(i + 1, decimal);
+                } else if (untypedStrings) {
+                    ps.setObject(i + 1, value, Types.OTHER);
+                } else {
+                    ps.setString(i + 1, (String) value);
+                }
+            }
+            return ps;
+        }
+    }
+
+    /**
+     * The statement and its shape without extracting any literal
+     */
+    public static Parameterized verbatim(String sql) {
+        return scan(sql, false);
+    }
+
+    public static Parameterized parameterize(String sql) {
+        return scan(sql, true);
+    }
+
+    private static Parameterized scan(String sql, boolean extract) {
+        // Existing placeholders would be numbered wrongly; leave such statements alone
+        if (extract && hasPlaceholder(sql)) {
+            extract = false;
+        }
+        StringBuilder out = new StringBuilder(sql.length());
+        // The original text up to copied, with extracted literals replaced
+        StringBuilder text = new StringBuilder(sql.length());
+        int copied = 0;
+        List<Object> parameters = new ArrayList<>();
+        // Comparison context of the previous token, and per parenthesis depth whether it holds an IN list
+        Context context = new Context();
+        boolean pendingSpace = false;
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = out.length() > 0;
+                i++;
+                continue;
+            }
+            int comment = SqlTokenizer.endOfComment(sql, i);
+            if (comment > i) {
+                // Dropped from what runs too, so nothing appended after the statement can end up commented out
+                text.append(sql, copied, i).append(' ');
+                copied = comment;
+                i = comment;
+                pendingSpace = out.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                out.append(' ');
+                pendingSpace = false;
+            }
+
+            if (c == '\'') {
+                int end = SqlTokenizer.endOfQuoted(sql, i, '\'');
+                if (extract && context.acceptsLiteral()) {
+                    parameters.add(sql.substring(i + 1, end - 1).replace("''", "'"));
+                    out.append('?');
+                    text.append(sql, copied, i).append('?');
+                    copied = end;
+                } else {
+                    out.append(sql, i, end);
+                }
+                context.literal();
+                i = end;
+            } else if (c == '"' || c == '`') {
+                int end = SqlTokenizer.endOfQuoted(sql, i, c);
+                out.append(sql, i, end);
+                context.other();
+                i = end;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < n && Character.isDigit(sql.charAt(i + 1)))) {
+                int end = endOfNumber(sql, i);
+                boolean negative = context.pendingSign && out.length() > 0 && out.charAt(out.length() - 1) == '-';
+                boolean plain = end == n || !isIdentifierChar(sql.charAt(end));
+                if (extract && plain && context.acceptsLiteral(negative)) {
+                    String literal = (negative ? "-" : "") + sql.substring(i, end);
+                    if (negative) out.setLength(out.length() - 1);
+                    parameters.add(number(literal));
+                    out.append('?');
+                    text.append(sql, copied, negative ? i - 1 : i).append('?');
+                    copied = end;
+                } else {
+                    while (end < n && isIdentifierChar(sql.charAt(end))) end++;
+                    out.append(sql, i, end);
+                }
+                context.literal();
+                i = end;
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < n && isIdentifierChar(sql.charAt(i))) i++;
+                String word = sql.substring(start, i).toUpperCase(Locale.ROOT);
+                out.append(word);
+                if (i < n && sql.charAt(i) == '\'') {
+                    // Prefixed literal such as N'...', X'...' or E'...': kept as is
+                    int end = SqlTokenizer.endOfQuoted(sql, i, '\'');
+                    out.append(sql, i, end);
+                    context.literal();
+                    i = end;
+                } else {
+                    context.word(word);
+                }
+            } else if (c == '=' || c == '<' || c == '>' || c == '!') {
+                int start = i;
+                while (i < n && "=<>!".indexOf(sql.charAt(i)) >= 0) i++;
+                out.append(sql, start, i);
+                context.comparison();
+            } else if (c == '(') {
+                out.append(c);
+                context.open();
+                i++;
+            } else if (c == ')') {
+                out.append(c);
+                context.close();
+                i++;
+            } else if (c == ',') {
+                out.append(c);
+                context.comma();
+                i++;
+            } else if (c == '-') {
+                out.append(c);
+                context.sign();
+                i++;
+            } else {
+                out.append(c);
+                context.other();
+                i++;
+            }
+        }
+        int end = out.length();
+        while (end > 0 && (out.charAt(end - 1) == ';' || out.charAt(end - 1) == ' ')) end--;
+        out.setLength(end);
+        text.append(sql, copied, n);
+        return new Parameterized(SqlTokenizer.stripTrailingSemicolons(text.toString().trim()), out.toString(),
+                Collections.unmodifiableList(parameters));
+    }
+
+    /**
+     * Tracks whether the next literal is an operand of a comparison, a BETWEEN bound or an IN-list element
+     */
+    private static final class Context {
+        private static final int MAX_DEPTH = 64;
+
+        private boolean afterComparison;
+        private boolean pendingSign;
+        private boolean afterInKeyword;
+        private boolean listElementExpected;
+        private int depth;
+        // Depths whose parenthesis opened an IN list that so far held only literals
+        private final boolean[] inList = new boolean[MAX_DEPTH];
+        private final int[] betweenPending = new int[MAX_DEPTH];
+
+        boolean acceptsLiteral() {
+            return acceptsLiteral(false);
+        }
+
+        boolean acceptsLiteral(boolean negative) {
+            if (negative) {
+                return pendingSign && (afterComparison || listElementExpected);
+            }
+            return afterComparison || listElementExpected;
+        }
+
+        void literal() {
+            reset();
+        }
+
+        void word(String word) {
+            boolean between = word.equals("BETWEEN");
+            boolean betweenAnd = word.equals("AND") && depth < MAX_DEPTH && betweenPending[depth] > 0;
+            boolean in = word.equals("IN");
+            if (depth < MAX_DEPTH) {
+                inList[depth] = false;
+                if (between) {
+                    betweenPending[depth]++;
+                } else if (betweenAnd) {
+                    betweenPending[depth]--;
+                }
+            }
+            reset();
+            afterComparison = between || betweenAnd || word.equals("LIKE") || word.equals("ILIKE");
+            afterInKeyword = in;
+        }
+
+        void comparison() {
+            reset();
+            afterComparison = true;
+        }
+
+        void sign() {
+            boolean expecting = afterComparison || listElementExpected;
+            boolean element = listElementExpected;
+            reset();
+            pendingSign = expecting;
+            afterComparison = expecting && !element;
+            listElementExpected = element;
+        }
+
+        void open() {
+            boolean list = afterInKeyword;
+            reset();
+            depth++;
+            if (depth < MAX_DEPTH) {
+                inList[depth] = list;
+                betweenPending[depth] = 0;
+            }
+            listElementExpected = list;
+        }
+
+        void close() {
+            if (depth < MAX_DEPTH && depth > 0) {
+                inList[depth] = false;
+            }
+            depth = Math.max(0, depth - 1);
+            reset();
+        }
+
+        void comma() {
+            reset();
+            listElementExpected = depth < MAX_DEPTH && inList[depth];
+        }
+
+        void other() {
+            if (depth < MAX_DEPTH) {
+                inList[depth] = false;
+            }
+            reset();
+        }
+
+        private void reset() {
+            afterComparison = false;
+            pendingSign = false;
+            afterInKeyword = false;
+            listElementExpected = false;
+        }
+    }
+
+    private static boolean hasPlaceholder(String sql) {
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                i = SqlTokenizer.endOfQuoted(sql, i, c);
+            } else if (c == '?') {
+                return true;
+            } else {
+                i++;
+            }
+        }
+        return false;
+    }
+
+    private static int endOfNumber(String sql, int start) {
+        int i = start;
+        int n = sql.length();
+        while (i < n && Character.isDigit(sql.charAt(i))) i++;
+        if (i < n && sql.charAt(i) == '.') {
+            i++;
+            while (i < n && Character.isDigit(sql.charAt(i))) i++;
+        }
+        if (i + 1 < n && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+            int exponent = i + 1;
+            if (exponent < n && (sql.charAt(exponent) == '+' || sql.charAt(exponent) == '-')) exponent++;
+            if (exponent < n && Character.isDigit(sql.charAt(exponent))) {
+                i = exponent;
+                while (i < n && Character.isDigit(sql.charAt(i))) i++;
+            }
+        }
+        return i;
+    }
+
+    private static Object number(String text) {
+        if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0 && text.length() < 19) {
+            return Long.parseLong(text);
+        }
+        return new BigDecimal(text);
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.mehrdad.querymind.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Just enough lexing of generated SQL to reason about its structure without a full parser: words, quoted literals
+ * and single-character symbols, each with the parenthesis depth it appears at. The quote, comment and trailing
+ * semicolon handling is shared with the single-pass scanners of {@link ExecutionPolicy} and {@link SqlParameterizer}.
+ */
+final class SqlTokenizer {
+
+    private SqlTokenizer() {
+    }
+
+    record Token(String text, int start, int depth, boolean word) {
+        boolean is(String keyword) {
+            return word && text.equalsIgnoreCase(keyword);
+        }
+    }
+
+    /**
+     * Tokens of the statement; comments are skipped and quoted identifiers become words without their quotes
+     */
+    static List<Token> tokenize(String sql) {
+        List<Token> tokens = new ArrayList<>();
+        int depth = 0;
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            int comment = endOfComment(sql, i);
+            if (comment > i) {
+                i = comment;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                int end = endOfQuoted(sql, i, c);
+                boolean identifier = c != '\'';
+                String text = identifier
+                        ? sql.substring(i + 1, Math.max(i + 1, end - 1)).replace(c + "" + c, String.valueOf(c))
+                        : sql.substring(i, end);
+                tokens.add(new Token(text, i, depth, identifier));
+                i = end;
+            } else if (Character.isLetterOrDigit(c) || c == '_') {
+                int start = i;
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_' || sql.charAt(i) == '$')) i++;
+                tokens.add(new Token(sql.substring(start, i), start, depth, true));
+            } else {
+                if (c == ')') depth--;
+                tokens.add(new Token(String.valueOf(c), i, depth, false));
+                if (c == '(') depth++;
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Index just past the closing quote; doubled quotes inside are escapes. An unterminated quote runs to the end
+     */
+    static int endOfQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        int n = sql.length();
+        while (i < n) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < n && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return n;
+    }
+
+    /**
+     * Index just past the line or block comment starting at {@code start}, or {@code start} when there is none
+     */
+    static int endOfComment(String sql, int start) {
+        int n = sql.length();
+        if (start + 1 >= n) {
+            return start;
+        }
+        char c = sql.charAt(start);
+        char next = sql.charAt(start + 1);
+        if (c == '-' && next == '-') {
+            int eol = sql.indexOf('\n', start);
+            return eol < 0 ? n : eol + 1;
+        }
+        if (c == '/' && next == '*') {
+            int close = sql.indexOf("*/", start + 2);
+            return close < 0 ? n : close + 2;
+        }
+        return start;
+    }
+
+    static String stripTrailingSemicolons(String sql) {
+        int end = sql.length();
+        while (end > 0 && (sql.charAt(end - 1) == ';' || Character.isWhitespace(sql.charAt(end - 1)))) {
+            end--;
+        }
+        return sql.substring(0, end);
+    }
+}
@@ -0,0 +1,361 @@
+package com.example.mehrdad.querymind.service;
+
+import com.example.mehrdad.querymind.service.SqlTokenizer.Token;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks a generated SELECT against the schema snapshot before it reaches the database. Every table it reads must
+ * exist and every column it names must exist on one of the tables in the statement; both are errors. Two columns
+ * equated across tables should form a key pair (a declared foreign key, or a primary key and a column named after
+ * its table such as USER_ID for USERS.ID); anything else is legal SQL but usually a misread schema, so it is only a
+ * warning. Names the statement defines itself (CTEs, derived tables, aliases) are accepted as they are, and once it
+ * reads from a derived table, bare column names are no longer checked because their origin is not known.
+ */
+public final class SqlValidator {
+
+    private static final Set<String> KEYWORDS = Set.of(
+            "SELECT", "FROM", "WHERE", "AND", "OR", "NOT", "NULL", "IS", "IN", "LIKE", "ILIKE", "BETWEEN", "EXISTS",
+            "AS", "ON", "USING", "JOIN", "INNER", "LEFT", "RIGHT", "FULL", "OUTER", "CROSS", "NATURAL", "LATERAL",
+            "GROUP", "BY", "ORDER", "HAVING", "LIMIT", "OFFSET", "FETCH", "FIRST", "NEXT", "ROW", "ROWS", "ONLY",
+            "ASC", "DESC", "NULLS", "LAST", "DISTINCT", "ALL", "ANY", "SOME", "UNION", "INTERSECT", "EXCEPT", "MINUS",
+            "CASE", "WHEN", "THEN", "ELSE", "END", "TRUE", "FALSE", "UNKNOWN", "WITH", "RECURSIVE", "OVER",
+            "PARTITION", "WINDOW", "QUALIFY", "FILTER", "WITHIN", "RANGE", "UNBOUNDED", "PRECEDING", "FOLLOWING",
+            "CURRENT", "INTERVAL", "DATE", "TIME", "TIMESTAMP", "ZONE", "CURRENT_DATE", "CURRENT_TIME",
+            "CURRENT_TIMESTAMP", "LOCALTIME", "LOCALTIMESTAMP", "CURRENT_USER", "SESSION_USER", "SYSDATE", "TOP",
+            "PERCENT", "TIES", "ESCAPE", "VALUES", "YEAR", "QUARTER", "MONTH", "WEEK", "DAY", "HOUR", "MINUTE",
+            "SECOND", "EPOCH", "DOW", "DOY", "BOTH", "LEADING", "TRAILING", "FOR", "UPDATE", "SIMILAR", "TO", "ARRAY");
+
+    private SqlValidator() {
+    }
+
+    public record Result(List<String> errors, List<String> warnings) {
+        public boolean valid() {
+            return errors.isEmpty();
+        }
+    }
+
+    public static Result validate(String sql, SchemaSnapshot snapshot) {
+        Set<String> errors = new LinkedHashSet<>();
+        Set<String> warnings = new LinkedHashSet<>();
+        List<Token> tokens = SqlTokenizer.tokenize(SqlTokenizer.stripTrailingSemicolons(sql.trim()));
+        if (tokens.isEmpty() || !(tokens.get(0).is("SELECT") || tokens.get(0).is("WITH"))) {
+            // Anything but a query is refused by the execution policy with its own message
+            return new Result(List.of(), List.of());
+        }
+        Scope scope = new Scope(tokens, snapshot, errors);
+        scope.collectNames();
+        scope.checkReferences(warnings);
+        return new Result(List.copyOf(errors), List.copyOf(warnings));
+    }
+
+    /**
+     * Tables, aliases and self-defined names of one statement, shared by all of its subqueries
+     */
+    private static final class Scope {
+        private final List<Token> tokens;
+        private final SchemaSnapshot snapshot;
+        private final Set<String> errors;
+        private final int[] enclosing;
+        private final boolean[] consumed;
+        // Upper-case qualifier (table name or alias) to the catalog tables it may stand for
+        private final Map<String, Set<String>> qualifiers = new HashMap<>();
+        private final Set<String> defined = new HashSet<>();
+        private final Set<String> tables = new LinkedHashSet<>();
+        private boolean derivedSource;
+
+        Scope(List<Token> tokens, SchemaSnapshot snapshot, Set<String> errors) {
+            this.tokens = tokens;
+            this.snapshot = snapshot;
+            this.errors = errors;
+            this.enclosing = new int[tokens.size()];
+            this.consumed = new boolean[tokens.size()];
+            Deque<Integer> open = new ArrayDeque<>();
+            for (int i = 0; i < tokens.size(); i++) {
+                String text = tokens.get(i).text();
+                if (text.equals(")") && !open.isEmpty()) {
+                    open.pop();
+                }
+                enclosing[i] = open.isEmpty() ? -1 : open.peek();
+                if (text.equals("(")) {
+                    open.push(i);
+                }
+            }
+        }
+
+        void collectNames() {
+            if (tokens.get(0).is("WITH")) {
+                collectCommonTableExpressions();
+            }
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                if ((token.is("FROM") && readsTables(i)) || token.is("JOIN")) {
+                    readSources(i + 1, token.is("FROM"));
+                }
+            }
+            for (int i = 1; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                if (!token.word() || isKeyword(token)) {
+                    continue;
+                }
+                Token previous = tokens.get(i - 1);
+                // Explicit aliases, and implicit ones written straight after an expression ("COUNT(*) n", "END total")
+                if (previous.is("AS") || previous.is("END") || previous.text().equals(")")
+                        || previous.text().startsWith("'") || previous.word() && !isKeyword(previous)) {
+                    defined.add(upper(token));
+                }
+            }
+        }
+
+        void checkReferences(Set<String> warnings) {
+            Set<String> columns = new HashSet<>();
+            for (String table : tables) {
+                snapshot.getTables().get(table).forEach(c -> columns.add(c.getName().toUpperCase(Locale.ROOT)));
+            }
+            for (int i = 0; i < tokens.size(); i++) {
+                Token token = tokens.get(i);
+                if (!token.word() || consumed[i]) {
+                    continue;
+                }
+                if (isDot(i + 1) && i + 2 < tokens.size()) {
+                    if (isDot(i + 3)) {
+                        // schema.table.column: leave the three-part form to the database
+                        i += 4;
+                        continue;
+                    }
+                    Column left = qualifiedColumn(i);
+                    int end = i + 2;
+                    if (left != null && end + 4 < tokens.size() && tokens.get(end + 1).text().equals("=")
+                            && tokens.get(end + 2).word() && isDot(end + 3)) {
+                        Column right = qualifiedColumn(end + 2);
+                        if (right != null && !left.table().equals(right.table())
+                                && !isKeyPair(left, right) && !isKeyPair(right, left)) {
+                            warnings.add("Join condition " + left.text() + " = " + right.text()
+                                    + " does not follow a foreign key between " + left.table() + " and " + right.table());
+                        }
+                        end += 4;
+                    }
+                    i = end;
+                    continue;
+                }
+                if (derivedSource || isKeyword(token) || Character.isDigit(token.text().charAt(0))
+                        || defined.contains(upper(token)) || qualifiers.containsKey(upper(token))
+                        || i + 1 < tokens.size() && tokens.get(i + 1).text().equals("(")
+                        || i > 0 && (isDot(i - 1) || tokens.get(i - 1).text().equals(":"))) {
+                    continue;
+                }
+                if (!columns.contains(upper(token))) {
+                    errors.add(tables.isEmpty()
+                            ? "Unknown column " + token.text()
+                            : "Unknown column " + token.text() + " (not in " + String.join(", ", tables) + ")");
+                }
+            }
+        }
+
+        /**
+         * The column named by qualifier.column at index i, or null if it does not resolve to a single catalog
+         * column; unknown qualifiers and columns are reported as errors on the way
+         */
+        private Column qualifiedColumn(int i) {
+            Token qualifier = tokens.get(i);
+            Token column = tokens.get(i + 2);
+            String text = qualifier.text() + "." + column.text();
+            Set<String> candidates = qualifiers.get(upper(qualifier));
+            if (candidates == null) {
+                if (!defined.contains(upper(qualifier))) {
+                    errors.add("Unknown table or alias " + qualifier.text() + " in " + text);
+                }
+                return null;
+            }
+            if (column.text().equals("*") || !column.word()) {
+                return null;
+            }
+            String found = null;
+            for (String table : candidates) {
+                if (findColumn(table, column.text()) != null) {
+                    found = table;
+                }
+            }
+            if (found == null) {
+                errors.add("Unknown column " + text + " (" + String.join(", ", candidates) + " has no such column)");
+                return null;
+            }
+            return candidates.size() == 1
+                    ? new Column(found, findColumn(found, column.text()), text)
+                    : null;
+        }
+
+        private void collectCommonTableExpressions() {
+            int i = 1;
+            if (i < tokens.size() && tokens.get(i).is("RECURSIVE")) {
+                i++;
+            }
+            while (i < tokens.size() && tokens.get(i).word()) {
+                defined.add(upper(tokens.get(i)));
+                consumed[i] = true;
+                derivedSource = true;
+                int body = i + 1;
+                while (body < tokens.size() && !tokens.get(body).is("AS")) {
+                    body++;
+                }
+                if (body + 1 >= tokens.size() || !tokens.get(body + 1).text().equals("(")) {
+                    return;
+                }
+                i = closing(body + 1) + 1;
+                if (i >= tokens.size() || !tokens.get(i).text().equals(",")) {
+                    return;
+                }
+                i++;
+            }
+        }
+
+        /**
+         * Reads "table [AS] alias", "(subquery) [AS] alias" and, after FROM, comma-separated lists of them
+         */
+        private void readSources(int i, boolean list) {
+            while (i < tokens.size()) {
+                Token token = tokens.get(i);
+                if (token.is("LATERAL")) {
+                    i++;
+                    continue;
+                }
+                Set<String> resolved;
+                if (token.text().equals("(")) {
+                    derivedSource = true;
+                    resolved = null;
+                    i = closing(i) + 1;
+                } else if (token.word() && !isKeyword(token)) {
+                    int nameIndex = isDot(i + 1) && i + 2 < tokens.size() ? i + 2 : i;
+                    for (int k = i; k <= nameIndex; k++) {
+                        consumed[k] = true;
+                    }
+                    Token name = tokens.get(nameIndex);
+                    i = nameIndex + 1;
+                    if (i < tokens.size() && tokens.get(i).text().equals("(")) {
+                        // Table function
+                        derivedSource = true;
+                        resolved = null;
+                        i = closing(i) + 1;
+                    } else if (defined.contains(upper(name))) {
+                        resolved = null;
+                    } else {
+                        String table = snapshot.resolveTable(name.text());
+                        if (table == null) {
+                            errors.add("Unknown table " + name.text());
+                            // Its columns are unknown too, so bare names cannot be checked
+                            derivedSource = true;
+                            resolved = Set.of();
+                        } else {
+                            tables.add(table);
+                            resolved = Set.of(table);
+                            qualify(upper(name), table);
+                        }
+                    }
+                } else {
+                    return;
+                }
+                if (i < tokens.size() && tokens.get(i).is("AS")) {
+                    i++;
+                }
+                if (i < tokens.size() && tokens.get(i).word() && !isKeyword(tokens.get(i))) {
+                    consumed[i] = true;
+                    String alias = upper(tokens.get(i));
+                    if (resolved == null || resolved.isEmpty()) {
+                        defined.add(alias);
+                    } else {
+                        resolved.forEach(table -> qualify(alias, table));
+                    }
+                    i++;
+                }
+                if (!list || i >= tokens.size() || !tokens.get(i).text().equals(",")) {
+                    return;
+                }
+                i++;
+            }
+        }
+
+        /**
+         * False for the FROM inside EXTRACT(... FROM ...), TRIM, SUBSTRING and IS DISTINCT FROM
+         */
+        private boolean readsTables(int from) {
+            if (from >= 2 && tokens.get(from - 1).is("DISTINCT")
+                    && (tokens.get(from - 2).is("IS") || tokens.get(from - 2).is("NOT"))) {
+                return false;
+            }
+            int open = enclosing[from];
+            return open < 0 || open + 1 < tokens.size() && tokens.get(open + 1).is("SELECT");
+        }
+
+        private void qualify(String qualifier, String table) {
+            qualifiers.computeIfAbsent(qualifier, q -> new LinkedHashSet<>()).add(table);
+        }
+
+        private int closing(int open) {
+            int depth = tokens.get(open).depth();
+            for (int i = open + 1; i < tokens.size(); i++) {
+                if (tokens.get(i).text().equals(")") && tokens.get(i).depth() == depth) {
+                    return i;
+                }
+            }
+            return tokens.size() - 1;
+        }
+
+        private boolean isDot(int i) {
+            return i < tokens.size() && tokens.get(i).text().equals(".");
+        }
+
+        private DatabaseSchemaService.ColumnInfo findColumn(String table, String column) {
+            for (DatabaseSchemaService.ColumnInfo info : snapshot.getTables().get(table)) {
+                if (info.getName().equalsIgnoreCase(column)) {
+                    return info;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * True when from references to: a declared foreign key, or to is its table's primary key and from is
+         * named after that table (USER_ID or USERS_ID for USERS.ID)
+         */
+        private boolean isKeyPair(Column from, Column to) {
+            String target = to.table() + "." + to.info().getName();
+            List<String> declared = from.info().getForeignKeyTargets();
+            if (declared != null && declared.stream().anyMatch(target::equalsIgnoreCase)) {
+                return true;
+            }
+            if (!to.info().isPrimaryKey()) {
+                return false;
+            }
+            String name = from.info().getName().toUpperCase(Locale.ROOT);
+            String table = to.table().toUpperCase(Locale.ROOT);
+            String key = "_" + to.info().getName().toUpperCase(Locale.ROOT);
+            return name.equals(table + key) || name.equals(singular(table) + key);
+        }
+    }
+
+    private record Column(String table, DatabaseSchemaService.ColumnInfo info, String text) {
+    }
+
+    private static String singular(String table) {
+        if (table.endsWith("IES")) {
+            return table.substring(0, table.length() - 3) + "Y";
+        }
+        return table.endsWith("S") ? table.substring(0, table.length() - 1) : table;
+    }
+
+    private static boolean isKeyword(Token token) {
+        return token.word() && KEYWORDS.contains(upper(token));
+    }
+
+    private static String upper(Token token) {
+        return token.text().toUpperCase(Locale.ROOT);
+    }
+}
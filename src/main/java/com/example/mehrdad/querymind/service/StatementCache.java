@@ -0,0 +1,66 @@
+package com.example.mehrdad.querymind.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded registry of parameterized statement shapes sent to the database. Executions prepare the statement with its
+ * compared literals replaced by placeholders and bind them, so the driver's per-connection statement and plan cache
+ * (H2 QUERY_CACHE_SIZE, pgJDBC prepareThreshold, MySQL cachePrepStmts) sees one statement text where it used to see
+ * one per constant. No
+ * statement is held here: the stats count shapes seen again within the last max-size distinct ones, which is how
+ * often parameterizing gave the driver a text it may already have prepared, not how often it actually reused one.
+ */
+@Component
+public class StatementCache {
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final Cache<String, Boolean> shapes;
+    private final LongAdder parameterized = new LongAdder();
+
+    public StatementCache(@Value("${querymind.execution.statement-cache.enabled:true}") boolean enabled,
+                          @Value("${querymind.execution.statement-cache.max-size:256}") int maxSize) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.shapes = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Normalize the statement, extract its literals when enabled and record the shape
+     */
+    public SqlParameterizer.Parameterized parameterize(String sql) {
+        if (!enabled) {
+            return SqlParameterizer.verbatim(sql);
+        }
+        SqlParameterizer.Parameterized statement = SqlParameterizer.parameterize(sql);
+        if (!statement.parameters().isEmpty()) {
+            parameterized.increment();
+        }
+        shapes.get(statement.shape(), shape -> Boolean.TRUE);
+        return statement;
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = shapes.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("trackedShapes", shapes.estimatedSize());
+        result.put("maxSize", maxSize);
+        result.put("repeatedShapes", stats.hitCount());
+        result.put("distinctShapes", stats.missCount());
+        result.put("evictions", stats.evictionCount());
+        result.put("parameterized", parameterized.sum());
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.mehrdad.querymind.service;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Rate limiter refilling at a fixed rate up to a burst size. A caller that finds the bucket empty reserves the
+ * next token (the balance goes negative) and sleeps until it is due, so waiting callers are served in order.
+ * A rate of zero or less means unlimited.
+ */
+public class TokenBucket {
+
+    private final double permitsPerNano;
+    private final double burst;
+    private final ReentrantLock lock = new ReentrantLock();
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+    }
+
+    public boolean isUnlimited() {
+        return permitsPerNano <= 0;
+    }
+
+    /**
+     * Take one token, waiting at most the timeout for it to become available
+     *
+     * @return false when no token would be available within the timeout; nothing is reserved in that case
+     */
+    public boolean acquire(Duration timeout) throws InterruptedException {
+        if (isUnlimited()) {
+            return true;
+        }
+        long waitNanos;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerNano);
+            lastRefill = now;
+            waitNanos = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / permitsPerNano);
+            if (waitNanos > timeout.toNanos()) {
+                return false;
+            }
+            tokens -= 1;
+        } finally {
+            lock.unlock();
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.mehrdad.querymind.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The snapshot's own format: one column per line as {@code name TYPE [PK, FK->table.column]}, FKs inline
+ */
+@Component
+public class VerboseSchemaRenderer extends SchemaRenderer {
+
+    public static final String NAME = "verbose";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    protected String renderTable(String table, List<DatabaseSchemaService.ColumnInfo> columns, boolean keysOnly) {
+        List<DatabaseSchemaService.ColumnInfo> shown = columns;
+        if (keysOnly) {
+            shown = columns.stream().filter(SchemaRenderer::isKey).toList();
+        }
+        String block = render(table, shown);
+        if (shown.size() < columns.size()) {
+            block = block.substring(0, block.length() - 1) + "  ...\n)";
+        }
+        return block;
+    }
+
+    /**
+     * Rendering used for the snapshot's schema string
+     */
+    static String render(String tableName, List<DatabaseSchemaService.ColumnInfo> columns) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(tableName).append(" (\n");
+        for (int i = 0; i < columns.size(); i++) {
+            DatabaseSchemaService.ColumnInfo col = columns.get(i);
+            sb.append("  ").append(col.getName()).append(" ").append(col.getType());
+            List<String> annotations = new ArrayList<>();
+            if (col.isPrimaryKey()) annotations.add("PK");
+            if (col.getForeignKeyTargets() != null && !col.getForeignKeyTargets().isEmpty()) {
+                annotations.add("FK->" + String.join("|", col.getForeignKeyTargets()));
+            }
+            if (!annotations.isEmpty()) {
+                sb.append(" [").append(String.join(", ", annotations)).append("]");
+            }
+            if (i < columns.size() - 1) sb.append(",");
+            sb.append("\n");
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+}
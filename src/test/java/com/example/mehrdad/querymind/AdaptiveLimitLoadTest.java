@@ -0,0 +1,89 @@
+package com.example.mehrdad.querymind;
+
+import com.example.mehrdad.querymind.service.AdaptiveLimiter;
+import com.example.mehrdad.querymind.service.AdmissionRejectedException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives an adaptive limiter whose limit is free to move against a backend that serves four calls at a time: the
+ * limit must fall while the backend is overloaded and climb again once its capacity is raised. Wall-clock bound, so
+ * tagged "load" and run with -Pload-tests.
+ */
+@Tag("load")
+class AdaptiveLimitLoadTest {
+
+    private static final int INITIAL_LIMIT = 32;
+    private static final int CALLERS = 64;
+    private static final Duration WORK = Duration.ofMillis(10);
+    private static final Duration PHASE = Duration.ofMillis(1500);
+
+    @Test
+    void limitFallsUnderOverloadAndRecoversWhenCapacityReturns() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("execution", INITIAL_LIMIT, 1, CALLERS,
+                1000, 4, Duration.ofSeconds(5), 2.5);
+        Semaphore backend = new Semaphore(4, true);
+
+        // Light load first, so the limiter learns the backend's own latency
+        for (int i = 0; i < 40; i++) {
+            call(limiter, backend, "warm-up");
+        }
+        assertThat(limiter.getLimit()).isEqualTo(INITIAL_LIMIT);
+
+        hammer(limiter, backend);
+        double squeezed = limiter.getLimit();
+        assertThat(squeezed).as("limit under overload, stats %s", limiter.stats()).isLessThan(INITIAL_LIMIT / 2.0);
+
+        backend.release(CALLERS - 4);
+        hammer(limiter, backend);
+        assertThat(limiter.getLimit()).as("limit after recovery, stats %s", limiter.stats())
+                .isGreaterThan(squeezed * 2);
+    }
+
+    private static void hammer(AdaptiveLimiter limiter, Semaphore backend) throws Exception {
+        long deadline = System.nanoTime() + PHASE.toNanos();
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                String client = "client-" + i;
+                futures.add(callers.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        try {
+                            call(limiter, backend, client);
+                        } catch (AdmissionRejectedException e) {
+                            Thread.sleep(WORK.toMillis());
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+    }
+
+    /**
+     * One call through the limiter to a backend that queues whatever exceeds its capacity
+     */
+    private static void call(AdaptiveLimiter limiter, Semaphore backend, String client) throws InterruptedException {
+        try (AdaptiveLimiter.Permit permit = limiter.acquire(client)) {
+            backend.acquire();
+            try {
+                Thread.sleep(WORK.toMillis());
+            } finally {
+                backend.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.mehrdad.querymind;
+
+import com.example.mehrdad.querymind.support.ConversionLoadHarness;
+import com.example.mehrdad.querymind.support.StubChatModel;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A greedy client hammering /convert from many workers must be pushed back with 429s while a polite client sending
+ * one request at a time keeps being served close to the LLM's own latency. Wall-clock bound, so tagged "load" and
+ * run with -Pload-tests.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        classes = {QueryMindApplication.class, AdmissionControlLoadTest.SlowLlm.class},
+        properties = {"spring.threads.virtual.enabled=true", "llm.provider=gemini", "gemini.client.max-concurrency=1000",
+                "querymind.admission.llm.initial-limit=4", "querymind.admission.llm.min-limit=4",
+                "querymind.admission.llm.max-limit=4", "querymind.admission.max-queued-per-client=4"})
+class AdmissionControlLoadTest {
+
+    private static final Duration LLM_LATENCY = Duration.ofMillis(100);
+
+    @TestConfiguration
+    static class SlowLlm {
+        @Bean
+        @Primary
+        ChatModel stubChatModel() {
+            return new StubChatModel(LLM_LATENCY);
+        }
+    }
+
+    @LocalServerPort
+    int port;
+
+    @Test
+    void greedyClientIsRejectedWhilePoliteClientIsServed() throws Exception {
+        ConversionLoadHarness.ContentionResult result = ConversionLoadHarness.contention(port, 32, 20);
+
+        assertThat(result.greedyRejected()).isPositive();
+        assertThat(result.retryAfterSent()).isTrue();
+        assertThat(result.greedyOk()).isPositive();
+        assertThat(result.politeRejected()).isZero();
+        assertThat(result.politeOk()).isEqualTo(20);
+        assertThat(result.politeP90Millis()).as("polite p90 of %s", result).isLessThan(LLM_LATENCY.toMillis() * 5);
+    }
+}
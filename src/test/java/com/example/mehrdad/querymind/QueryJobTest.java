@@ -0,0 +1,125 @@
+package com.example.mehrdad.querymind;
+
+import com.example.mehrdad.querymind.service.DatabaseSchemaService;
+import com.example.mehrdad.querymind.service.QueryJobService;
+import com.example.mehrdad.querymind.support.SlowFunction;
+import com.example.mehrdad.querymind.support.StubChatModel;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(classes = {QueryMindApplication.class, QueryJobTest.SlowLlm.class},
+        properties = {"llm.provider=gemini", "querymind.jobs.spill-threshold=1KB"})
+class QueryJobTest {
+
+    @TestConfiguration
+    static class SlowLlm {
+        @Bean
+        @Primary
+        ChatModel stubChatModel() {
+            return new StubChatModel(Duration.ofMillis(300), prompt -> prompt.contains("slowly")
+                    ? "SELECT id FROM tick WHERE pause(id) < 0;"
+                    : "SELECT * FROM orders ORDER BY id;");
+        }
+    }
+
+    @Autowired
+    QueryJobService queryJobService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    DatabaseSchemaService databaseSchemaService;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void jobRunsInTheBackgroundAndPagesThroughSpilledRows() throws Exception {
+        QueryJobService.Job job = queryJobService.submit("list all orders", null);
+        assertThat(job.getState()).isIn(QueryJobService.State.QUEUED, QueryJobService.State.CONVERTING);
+
+        awaitTerminal(job);
+
+        assertThat(job.getState()).isEqualTo(QueryJobService.State.SUCCEEDED);
+        assertThat(job.getRowCount()).isEqualTo(6);
+        assertThat(job.status()).containsEntry("spilled", true);
+        List<Object> page = queryJobService.page(job, 2, 3);
+        assertThat(page).hasSize(3);
+        assertThat(objectMapper.writeValueAsString(page.get(0))).startsWith("[3,");
+    }
+
+    @Test
+    void cancellingStopsTheJobBeforeItExecutes() throws Exception {
+        QueryJobService.Job job = queryJobService.submit("list every order", null);
+
+        assertThat(queryJobService.cancel(job)).isTrue();
+        awaitIdle();
+
+        assertThat(job.getState()).isEqualTo(QueryJobService.State.CANCELLED);
+        assertThat(job.getRowCount()).isZero();
+        assertThat(queryJobService.cancel(job)).isFalse();
+        assertThatThrownBy(() -> queryJobService.page(job, 0, 10)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void cancellingARunningJobCancelsItsStatement() throws Exception {
+        // About two minutes of work at a millisecond per row, far beyond the test's patience
+        jdbcTemplate.execute("CREATE TABLE tick (id INT PRIMARY KEY)");
+        jdbcTemplate.execute("INSERT INTO tick SELECT X FROM SYSTEM_RANGE(1, 100000)");
+        jdbcTemplate.execute("CREATE ALIAS pause FOR 'com.example.mehrdad.querymind.support.SlowFunction.pause'");
+        databaseSchemaService.refreshSnapshot();
+        try {
+            int callsBefore = SlowFunction.calls();
+            QueryJobService.Job job = queryJobService.submit("slowly go through every tick", null);
+            await(() -> SlowFunction.calls() > callsBefore);
+            assertThat(job.getState()).isEqualTo(QueryJobService.State.EXECUTING);
+
+            assertThat(queryJobService.cancel(job)).isTrue();
+            awaitIdle();
+
+            assertThat(job.getState()).isEqualTo(QueryJobService.State.CANCELLED);
+            assertThat(job.status()).containsEntry("error", "Cancelled");
+            // The worker is done, so the statement returned; it only could have that early by being cancelled
+            assertThat(SlowFunction.calls() - callsBefore).isLessThan(100_000);
+        } finally {
+            jdbcTemplate.execute("DROP ALIAS pause");
+            jdbcTemplate.execute("DROP TABLE tick");
+            databaseSchemaService.refreshSnapshot();
+        }
+    }
+
+    private static void awaitTerminal(QueryJobService.Job job) throws InterruptedException {
+        await(() -> job.getState().isTerminal());
+    }
+
+    /**
+     * Wait until no job is queued or running, i.e. every worker has left its statement
+     */
+    private void awaitIdle() throws InterruptedException {
+        await(() -> Integer.valueOf(0).equals(queryJobService.stats().get("running"))
+                && Integer.valueOf(0).equals(queryJobService.stats().get("queued")));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition still false after 10 s").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.mehrdad.querymind;
+
+import com.example.mehrdad.querymind.support.ConversionLoadHarness;
+import com.example.mehrdad.querymind.support.StubChatModel;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares how many concurrent conversions one node keeps in flight against a slow fake LLM
+ * with platform request threads (capped at 16) and with virtual threads. Wall-clock bound, so tagged "load" and
+ * run with -Pload-tests.
+ */
+@Tag("load")
+class VirtualThreadLoadTest {
+
+    private static final int REQUESTS = 200;
+    private static final int PLATFORM_THREADS = 16;
+
+    @TestConfiguration
+    static class SlowLlm {
+        @Bean
+        @Primary
+        ChatModel stubChatModel() {
+            return new StubChatModel(Duration.ofMillis(300));
+        }
+    }
+
+    @Nested
+    @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = {QueryMindApplication.class, SlowLlm.class},
+            properties = {"spring.threads.virtual.enabled=false", "server.tomcat.threads.max=" + PLATFORM_THREADS,
+                    "llm.provider=gemini", "gemini.client.max-concurrency=1000", "querymind.admission.enabled=false"})
+    class PlatformThreads {
+
+        @LocalServerPort
+        int port;
+
+        @Autowired
+        ChatModel chatModel;
+
+        @Test
+        void inFlightConversionsAreCappedByTheRequestThreadPool() throws Exception {
+            ConversionLoadHarness.Result result = ConversionLoadHarness.burst(port, REQUESTS, (StubChatModel) chatModel);
+
+            assertThat(result.succeeded()).isEqualTo(REQUESTS);
+            assertThat(result.peakInFlightLlmCalls()).as("peak in flight of %s", result).isLessThanOrEqualTo(PLATFORM_THREADS);
+        }
+    }
+
+    @Nested
+    @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = {QueryMindApplication.class, SlowLlm.class},
+            properties = {"spring.threads.virtual.enabled=true", "server.tomcat.threads.max=" + PLATFORM_THREADS,
+                    "llm.provider=gemini", "gemini.client.max-concurrency=1000", "querymind.admission.enabled=false"})
+    class VirtualThreads {
+
+        @LocalServerPort
+        int port;
+
+        @Autowired
+        ChatModel chatModel;
+
+        @Test
+        void inFlightConversionsAreNoLongerCappedByPlatformThreads() throws Exception {
+            ConversionLoadHarness.Result result = ConversionLoadHarness.burst(port, REQUESTS, (StubChatModel) chatModel);
+
+            assertThat(result.succeeded()).isEqualTo(REQUESTS);
+            assertThat(result.peakInFlightLlmCalls()).as("peak in flight of %s", result).isGreaterThan(PLATFORM_THREADS);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.mehrdad.querymind.config;
+
+import com.sun.net.httpserver.HttpServer;
+import com.theokanning.openai.completion.chat.ChatCompletionRequest;
+import com.theokanning.openai.completion.chat.ChatMessage;
+import com.theokanning.openai.service.OpenAiService;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives 200 concurrent chat completions against a local stub of the OpenAI API, once with a client built per
+ * request the way {@code new OpenAiService(key, Duration.ofSeconds(30))} used to, and once with the shared pooled
+ * client. Each case starts from its own thread baseline and closes its clients before the next one runs.
+ */
+@Tag("load")
+class OpenAiClientLoadTest {
+
+    private static final int CONCURRENCY = 200;
+    private static final String COMPLETION = "{\"id\":\"stub\",\"object\":\"chat.completion\",\"created\":0," +
+            "\"model\":\"gpt-3.5-turbo\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\"," +
+            "\"content\":\"SELECT COUNT(*) FROM orders;\"},\"finish_reason\":\"stop\"}]," +
+            "\"usage\":{\"prompt_tokens\":1,\"completion_tokens\":1,\"total_tokens\":2}}";
+
+    private static HttpServer server;
+    private static ThreadPoolExecutor serverThreads;
+    private static String baseUrl;
+
+    @BeforeAll
+    static void startStub() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), CONCURRENCY);
+        server.createContext("/v1/chat/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = COMPLETION.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        // Started up front so the stub's own threads are not counted against either client
+        serverThreads = new ThreadPoolExecutor(64, 64, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        serverThreads.prestartAllCoreThreads();
+        server.setExecutor(serverThreads);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterAll
+    static void stopStub() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Test
+    void sharedClientNeedsFewerThreadsWithoutHurtingTailLatency() throws Exception {
+        OkHttpClient sharedClient = LlmClientConfig.createOpenAiClient("test-key", 20,
+                Duration.ofMinutes(5), Duration.ofSeconds(5), Duration.ofSeconds(30));
+        Run pooled;
+        try {
+            OpenAiService shared = LlmClientConfig.createOpenAiService(sharedClient, baseUrl);
+            pooled = run(() -> shared);
+        } finally {
+            close(sharedClient);
+        }
+
+        List<OkHttpClient> perRequestClients = new CopyOnWriteArrayList<>();
+        Run perRequest;
+        try {
+            perRequest = run(() -> {
+                // The client new OpenAiService(key, Duration.ofSeconds(30)) built, aimed at the stub
+                OkHttpClient client = OpenAiService.defaultClient("test-key", Duration.ofSeconds(30));
+                perRequestClients.add(client);
+                return LlmClientConfig.createOpenAiService(client, baseUrl);
+            });
+        } finally {
+            perRequestClients.forEach(OpenAiClientLoadTest::close);
+        }
+
+        assertThat(pooled.failures()).isZero();
+        assertThat(perRequest.failures()).isZero();
+        // Every per-request client keeps its own connection pool, and a cleanup thread, alive after its call
+        assertThat(perRequest.okHttpThreads())
+                .as("OkHttp threads started by %d per-request clients", CONCURRENCY)
+                .isGreaterThanOrEqualTo(CONCURRENCY / 2);
+        assertThat(pooled.okHttpThreads())
+                .as("OkHttp threads of the shared client vs %d per request", perRequest.okHttpThreads())
+                .isLessThanOrEqualTo(2);
+        assertThat(pooled.p99Ms())
+                .as("p99 of the shared client vs %d ms per request", perRequest.p99Ms())
+                .isLessThanOrEqualTo(perRequest.p99Ms() + perRequest.p99Ms() / 10 + 5);
+    }
+
+    private static void close(OkHttpClient client) {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private static Run run(Supplier<OpenAiService> services) throws Exception {
+        ThreadPoolExecutor callers = new ThreadPoolExecutor(CONCURRENCY, CONCURRENCY, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        callers.prestartAllCoreThreads();
+        int okHttpThreadsBefore = okHttpThreads();
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < CONCURRENCY; i++) {
+            futures.add(callers.submit(() -> {
+                start.await();
+                long began = System.nanoTime();
+                services.get().createChatCompletion(ChatCompletionRequest.builder()
+                        .model("gpt-3.5-turbo")
+                        .messages(List.of(new ChatMessage("user", "how many orders")))
+                        .build());
+                latencies.add((System.nanoTime() - began) / 1_000_000);
+                return null;
+            }));
+        }
+        start.countDown();
+        int failures = 0;
+        for (Future<?> future : futures) {
+            try {
+                future.get(60, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                failures++;
+            }
+        }
+        int okHttpThreads = okHttpThreads() - okHttpThreadsBefore;
+        callers.shutdown();
+        callers.awaitTermination(10, TimeUnit.SECONDS);
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        long p99 = sorted.isEmpty() ? 0 : sorted.get(Math.max(0, (int) Math.ceil(sorted.size() * 0.99) - 1));
+        return new Run(p99, okHttpThreads, failures);
+    }
+
+    /**
+     * Live threads started by OkHttp (connection pool cleanup and dispatcher threads)
+     */
+    private static int okHttpThreads() {
+        return (int) Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("OkHttp"))
+                .count();
+    }
+
+    /**
+     * p99 latency, OkHttp threads started during the run and failed calls
+     */
+    private record Run(long p99Ms, int okHttpThreads, int failures) {}
+}
@@ -0,0 +1,121 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdaptiveLimiterTest {
+
+    @Test
+    void rejectsWithRetryAfterOnceTheClientsQueueIsFull() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("llm", 1, 1, 1, 10, 1, Duration.ofSeconds(5), 2.5);
+        AdaptiveLimiter.Permit held = limiter.acquire("greedy");
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            CompletableFuture<AdaptiveLimiter.Permit> queued = CompletableFuture.supplyAsync(() -> acquire(limiter, "greedy"), executor);
+            awaitQueued(limiter, 1);
+
+            assertThatThrownBy(() -> limiter.acquire("greedy"))
+                    .isInstanceOf(AdmissionRejectedException.class)
+                    .satisfies(e -> assertThat(((AdmissionRejectedException) e).getRetryAfter()).isPositive());
+            assertThat(limiter.getRejected()).isEqualTo(1);
+
+            held.close();
+            queued.get().close();
+        }
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void queuedClientsAreServedInTurn() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("llm", 1, 1, 1, 10, 10, Duration.ofSeconds(5), 2.5);
+        AdaptiveLimiter.Permit held = limiter.acquire("greedy");
+        ConcurrentLinkedQueue<String> served = new ConcurrentLinkedQueue<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<CompletableFuture<Void>> calls = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                calls.add(CompletableFuture.runAsync(() -> serve(limiter, "greedy", served), executor));
+                awaitQueued(limiter, i + 1);
+            }
+            calls.add(CompletableFuture.runAsync(() -> serve(limiter, "polite", served), executor));
+            awaitQueued(limiter, 4);
+
+            held.close();
+            CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new)).get();
+        }
+        // The polite client's single call goes second, not behind all of the greedy client's calls
+        assertThat(served).containsExactly("greedy", "polite", "greedy", "greedy");
+    }
+
+    @Test
+    void timesOutWhenNoSlotFreesUp() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("execution", 1, 1, 1, 10, 10, Duration.ofMillis(50), 2.5);
+        try (AdaptiveLimiter.Permit held = limiter.acquire("a")) {
+            assertThatThrownBy(() -> limiter.acquire("b"))
+                    .isInstanceOf(AdmissionRejectedException.class)
+                    .hasMessageContaining("no slot");
+            assertThat(limiter.getQueued()).isZero();
+        }
+    }
+
+    @Test
+    void droppedCallsShrinkTheLimit() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("llm", 10, 2, 20, 10, 10, Duration.ofSeconds(1), 2.5);
+        for (int i = 0; i < 10; i++) {
+            AdaptiveLimiter.Permit permit = limiter.acquire("a");
+            permit.markDropped();
+            permit.close();
+        }
+        assertThat(limiter.getLimit()).isLessThan(10).isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void cacheHitsAndOneFastOutlierDoNotCollapseTheLimit() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("execution", 8, 1, 24, 10, 10, Duration.ofSeconds(1), 2.5);
+        for (int i = 0; i < 20; i++) {
+            try (AdaptiveLimiter.Permit hit = limiter.acquire("a")) {
+                hit.skipSample();
+            }
+        }
+        limiter.acquire("a").close();
+        for (int i = 0; i < 20; i++) {
+            try (AdaptiveLimiter.Permit query = limiter.acquire("a")) {
+                Thread.sleep(5);
+            }
+        }
+        // A minimum-ever baseline would have taken the instant call as normal and cut the limit on every query
+        assertThat(limiter.getLimit()).isGreaterThan(7);
+    }
+
+    private static void serve(AdaptiveLimiter limiter, String client, ConcurrentLinkedQueue<String> served) {
+        try (AdaptiveLimiter.Permit permit = acquire(limiter, client)) {
+            served.add(client);
+        }
+    }
+
+    private static AdaptiveLimiter.Permit acquire(AdaptiveLimiter limiter, String client) {
+        try {
+            return limiter.acquire(client);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitQueued(AdaptiveLimiter limiter, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (limiter.getQueued() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(limiter.getQueued()).isEqualTo(expected);
+    }
+}
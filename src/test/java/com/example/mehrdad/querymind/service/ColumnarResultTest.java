@@ -0,0 +1,43 @@
+package com.example.mehrdad.querymind.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnarResultTest {
+
+    @Test
+    void storesTypedColumnsAndSerializesCompactly() throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:columnar", "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE items (id BIGINT PRIMARY KEY, qty INT, price DECIMAL(10,2), name VARCHAR(20))");
+            stmt.execute("INSERT INTO items VALUES (1, 3, 9.99, 'pen'), (2, NULL, 1250.50, NULL)");
+
+            ColumnarResult result;
+            try (ResultSet rs = stmt.executeQuery("SELECT id, qty, price, name FROM items ORDER BY id")) {
+                result = ColumnarResult.from(rs);
+            }
+
+            assertThat(result.getRowCount()).isEqualTo(2);
+            assertThat(result.getColumns()).extracting(ColumnarResult.Column::getKind).containsExactly(
+                    ColumnarResult.Kind.LONG, ColumnarResult.Kind.LONG, ColumnarResult.Kind.DOUBLE, ColumnarResult.Kind.OBJECT);
+            assertThat(result.getValue(1, 1)).isNull();
+            assertThat(result.getValue(1, 2)).isEqualTo(1250.5);
+
+            String json = new ObjectMapper().writeValueAsString(result);
+            assertThat(json).startsWith("{\"columns\":[{\"name\":\"ID\",\"type\":\"BIGINT\"},");
+            assertThat(json).endsWith("\"rows\":[[1,3,9.99,\"pen\"],[2,null,1250.5,null]]}");
+
+            List<Map<String, Object>> rows = result.toRowMaps();
+            assertThat(rows.get(0)).containsKeys("ID", "QTY", "PRICE", "NAME");
+        }
+    }
+}
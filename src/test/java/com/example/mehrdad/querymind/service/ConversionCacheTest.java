@@ -0,0 +1,74 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversionCacheTest {
+
+    @Test
+    void normalizesCaseWhitespaceAndTrailingPunctuation() {
+        assertThat(ConversionCache.normalize("  How many ORDERS   are pending?? "))
+                .isEqualTo(ConversionCache.normalize("how many orders are pending"));
+    }
+
+    @Test
+    void comparisonAndSignCharactersKeepQuestionsApart() {
+        assertThat(ConversionCache.key("orders with total > 100", "gemini", "abc"))
+                .isNotEqualTo(ConversionCache.key("orders with total < 100", "gemini", "abc"));
+        assertThat(ConversionCache.normalize("total >= 5")).isNotEqualTo(ConversionCache.normalize("total = 5"));
+        assertThat(ConversionCache.normalize("balance -5")).isNotEqualTo(ConversionCache.normalize("balance 5"));
+    }
+
+    @Test
+    void schemaChangeDropsOnlyEntriesTouchingChangedTables() {
+        ConversionCache cache = new ConversionCache(100, Duration.ofMinutes(5));
+        SchemaSnapshot before = snapshot(1, Map.of("USERS", "USERS (\n  ID BIGINT\n)", "ORDERS", "ORDERS (\n  ID BIGINT\n)"));
+        SchemaSnapshot after = snapshot(2, Map.of("USERS", "USERS (\n  ID BIGINT\n)", "ORDERS", "ORDERS (\n  ID BIGINT,\n  NOTE VARCHAR\n)"));
+
+        ConversionCache.Key usersKey = ConversionCache.key("list users", "gemini", before.getFingerprint());
+        ConversionCache.Key ordersKey = ConversionCache.key("list orders", "gemini", before.getFingerprint());
+        cache.put(usersKey, new ConversionCache.Entry("SELECT * FROM USERS;", "llm", Set.of("USERS")));
+        cache.put(ordersKey, new ConversionCache.Entry("SELECT * FROM ORDERS;", "llm", Set.of("ORDERS")));
+
+        cache.onSchemaChanged(new SchemaSnapshotChangedEvent(before, after));
+
+        assertThat(cache.get(ConversionCache.key("list users", "gemini", after.getFingerprint()))).isPresent();
+        assertThat(cache.get(ConversionCache.key("list orders", "gemini", after.getFingerprint()))).isEmpty();
+        assertThat(cache.get(usersKey)).isEmpty();
+    }
+
+    @Test
+    void migratedEntriesKeepTheExpiryOfTheirOriginalWrite() {
+        AtomicLong now = new AtomicLong();
+        ConversionCache cache = new ConversionCache(100, Duration.ofMinutes(5), null, now::get);
+        SchemaSnapshot before = snapshot(1, Map.of("USERS", "USERS (\n  ID BIGINT\n)", "ORDERS", "ORDERS (\n  ID BIGINT\n)"));
+        SchemaSnapshot after = snapshot(2, Map.of("USERS", "USERS (\n  ID BIGINT\n)", "ORDERS", "ORDERS (\n  ID BIGINT,\n  NOTE VARCHAR\n)"));
+        cache.put(ConversionCache.key("list users", "gemini", before.getFingerprint()),
+                new ConversionCache.Entry("SELECT * FROM USERS;", "llm", Set.of("USERS")));
+
+        now.set(Duration.ofMinutes(4).toNanos());
+        cache.onSchemaChanged(new SchemaSnapshotChangedEvent(before, after));
+        ConversionCache.Key migrated = ConversionCache.key("list users", "gemini", after.getFingerprint());
+        assertThat(cache.get(migrated)).isPresent();
+
+        now.set(Duration.ofMinutes(6).toNanos());
+        assertThat(cache.get(migrated)).isEmpty();
+    }
+
+    private static SchemaSnapshot snapshot(long version, Map<String, String> rendered) {
+        Map<String, String> ordered = new LinkedHashMap<>(new TreeMap<>(rendered));
+        Map<String, List<DatabaseSchemaService.ColumnInfo>> tables = new LinkedHashMap<>();
+        ordered.keySet().forEach(t -> tables.put(t, List.of()));
+        return new SchemaSnapshot(version, tables, ordered, String.join("\n", ordered.values()), Instant.now());
+    }
+}
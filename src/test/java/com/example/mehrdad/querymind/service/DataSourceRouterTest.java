@@ -0,0 +1,106 @@
+package com.example.mehrdad.querymind.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DataSourceRouterTest {
+
+    private final DataSource primary = h2("router_primary");
+    private final DataSource replicaA = h2("router_replica_a");
+    private final DataSource replicaB = h2("router_replica_b");
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private DataSourceRouter router;
+
+    @BeforeEach
+    void setUp() {
+        for (Map.Entry<DataSource, String> db : Map.of(primary, "primary", replicaA, "a", replicaB, "b").entrySet()) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(db.getKey());
+            jdbcTemplate.execute("CREATE TABLE origin (id BIGINT PRIMARY KEY, name VARCHAR(20))");
+            jdbcTemplate.update("INSERT INTO origin VALUES (1, ?)", db.getValue());
+        }
+        router = new DataSourceRouter(new DataSourceRouter.Pool("metadata", primary, 1, false),
+                List.of(new DataSourceRouter.Pool("replica-a", replicaA, 2, false),
+                        new DataSourceRouter.Pool("replica-b", replicaB, 2, false)),
+                meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (DataSource dataSource : List.of(primary, replicaA, replicaB)) {
+            new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+        }
+    }
+
+    @Test
+    void routesToThePoolWithFewestOutstandingQueries() {
+        try (DataSourceRouter.Lease first = router.acquireExecution();
+             DataSourceRouter.Lease second = router.acquireExecution();
+             DataSourceRouter.Lease third = router.acquireExecution()) {
+            assertThat(second.getPoolName()).isNotEqualTo(first.getPoolName());
+            assertThat(third.getPoolName()).isIn("replica-a", "replica-b");
+            assertThat(meterRegistry.get("querymind.datasource.outstanding").tag("pool", third.getPoolName())
+                    .gauge().value()).isEqualTo(2.0);
+        }
+        assertThat(meterRegistry.get("querymind.datasource.outstanding").tag("pool", "replica-a").gauge().value()).isZero();
+    }
+
+    @Test
+    void rejectsOnceEveryPoolIsSaturated() {
+        List<DataSourceRouter.Lease> leases = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            leases.add(router.acquireExecution());
+        }
+
+        assertThatThrownBy(router::acquireExecution)
+                .hasMessageContaining("saturated")
+                .isInstanceOfSatisfying(PoolSaturatedException.class, e -> assertThat(e.getRetryAfter()).isPositive());
+
+        leases.remove(0).close();
+        try (DataSourceRouter.Lease lease = router.acquireExecution()) {
+            assertThat(lease.getPoolName()).isIn("replica-a", "replica-b");
+        }
+        leases.forEach(DataSourceRouter.Lease::close);
+        double rejected = meterRegistry.get("querymind.datasource.rejected").functionCounters().stream()
+                .mapToDouble(FunctionCounter::count).sum();
+        assertThat(rejected).isEqualTo(1.0);
+    }
+
+    @Test
+    void executionsSpreadAcrossReplicasWhileIntrospectionUsesThePrimary() {
+        DatabaseSchemaService service = SchemaServiceFixture.schemaService(router).build();
+
+        assertThat(service.refreshSnapshot().getTables()).containsOnlyKeys("ORIGIN");
+
+        Map<String, Integer> byPool = new HashMap<>();
+        List<Object> origins = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            DatabaseSchemaService.QueryExecutionResult result = service.executeQuery("SELECT name FROM origin");
+            assertThat(result.isSuccess()).isTrue();
+            byPool.merge(result.getPool(), 1, Integer::sum);
+            origins.add(result.getRows().get(0).get("NAME"));
+        }
+
+        assertThat(byPool).containsOnlyKeys("replica-a", "replica-b");
+        assertThat(byPool.values()).containsOnly(5);
+        assertThat(origins).containsOnly("a", "b");
+        assertThat(router.stats()).containsKeys("metadata", "replica-a", "replica-b");
+    }
+
+    private static DataSource h2(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+}
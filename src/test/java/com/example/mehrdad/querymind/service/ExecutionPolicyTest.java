@@ -0,0 +1,35 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExecutionPolicyTest {
+
+    private final ExecutionPolicy policy = new ExecutionPolicy(100, 1000, DataSize.ofMegabytes(1), Duration.ofSeconds(5), 50);
+
+    @Test
+    void addsOrCapsTopLevelLimit() {
+        assertThat(policy.plan("SELECT * FROM users;").sql()).isEqualTo("SELECT * FROM users\nLIMIT 101");
+        assertThat(policy.plan("SELECT * FROM users LIMIT 5000").sql()).isEqualTo("SELECT * FROM users LIMIT 101");
+        assertThat(policy.plan("SELECT * FROM users LIMIT 10").sql()).isEqualTo("SELECT * FROM users LIMIT 10");
+        // LIMIT inside a subquery or a string literal does not bound the outer query
+        assertThat(policy.plan("SELECT * FROM (SELECT id FROM users LIMIT 5) u WHERE note <> 'limit 3'").sql())
+                .endsWith("'limit 3'\nLIMIT 101");
+        assertThat(policy.planStream("SELECT * FROM users").sql()).endsWith("LIMIT 1001");
+    }
+
+    @Test
+    void rejectsAnythingButOneSelect() {
+        assertThatThrownBy(() -> policy.plan("SELECT 1; DROP TABLE users"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("single SELECT");
+        assertThatThrownBy(() -> policy.plan("DELETE FROM users"))
+                .hasMessage("Only SELECT queries are allowed for execution");
+        assertThat(policy.plan("SELECT ';' AS semi FROM users").sql()).startsWith("SELECT ';' AS semi");
+    }
+}
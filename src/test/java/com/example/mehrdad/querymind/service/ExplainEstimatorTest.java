@@ -0,0 +1,83 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExplainEstimatorTest {
+
+    private final DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:explain;DB_CLOSE_DELAY=-1", "sa", "");
+    private final ExplainEstimator estimator = new ExplainEstimator(DataSourceRouter.direct(dataSource),
+            Duration.ofSeconds(5), Duration.ofMinutes(5));
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE customer (id BIGINT PRIMARY KEY, name VARCHAR(20))");
+        jdbcTemplate.execute("CREATE TABLE purchase (id BIGINT PRIMARY KEY, customer_id BIGINT REFERENCES customer (id))");
+        for (int i = 1; i <= 50; i++) {
+            jdbcTemplate.update("INSERT INTO customer VALUES (?, ?)", i, "c" + i);
+        }
+        for (int i = 1; i <= 200; i++) {
+            jdbcTemplate.update("INSERT INTO purchase VALUES (?, ?)", i, 1 + i % 50);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void h2EstimateMultipliesFullScansAndCountsKeyLookupsAsOneRow() {
+        assertThat(estimator.estimate("SELECT name FROM customer WHERE id = 7").orElseThrow().rows()).isEqualTo(1);
+        assertThat(estimator.estimate("SELECT name FROM customer").orElseThrow().rows()).isEqualTo(50);
+        assertThat(estimator.estimate("SELECT * FROM purchase, customer").orElseThrow().rows()).isEqualTo(10_000);
+        // A join on the key scans one side and looks the other up
+        assertThat(estimator.estimate("SELECT * FROM purchase p JOIN customer c ON c.id = p.customer_id")
+                .orElseThrow().rows()).isLessThanOrEqualTo(200);
+    }
+
+    @Test
+    void plainReadsAreCappedByTheirLimit() {
+        assertThat(estimator.estimate("SELECT * FROM purchase\nLIMIT 10").orElseThrow().rows()).isEqualTo(10);
+        assertThat(estimator.estimate("SELECT * FROM purchase, customer LIMIT 10").orElseThrow().rows()).isEqualTo(10_000);
+
+        assertThat(ExplainEstimator.readLimit("SELECT name FROM customer WHERE id IN (1, 2) LIMIT 10001;")).isEqualTo(10_001);
+        assertThat(ExplainEstimator.readLimit("SELECT name FROM customer")).isEqualTo(-1);
+        assertThat(ExplainEstimator.readLimit("SELECT * FROM purchase p JOIN customer c ON c.id = p.customer_id LIMIT 5"))
+                .isEqualTo(-1);
+        assertThat(ExplainEstimator.readLimit("SELECT COUNT(*) FROM purchase LIMIT 5")).isEqualTo(-1);
+        assertThat(ExplainEstimator.readLimit("SELECT * FROM purchase ORDER BY customer_id LIMIT 5")).isEqualTo(-1);
+        assertThat(ExplainEstimator.readLimit("SELECT * FROM customer WHERE id IN (SELECT customer_id FROM purchase) LIMIT 5"))
+                .isEqualTo(-1);
+    }
+
+    @Test
+    void statementsTheDatabaseCannotPlanAreRejected() {
+        assertThatThrownBy(() -> estimator.estimate("SELECT nope FROM customer"))
+                .isInstanceOf(DataAccessException.class);
+    }
+
+    @Test
+    void postgresPlansUseTheTopCostAndTheWidestNode() {
+        ExplainEstimator.Estimate estimate = ExplainEstimator.postgresEstimate(List.of(
+                "Hash Join  (cost=35.50..1287.40 rows=120 width=64)",
+                "  Hash Cond: (o.user_id = u.id)",
+                "  ->  Seq Scan on orders o  (cost=0.00..1100.00 rows=60000 width=32)",
+                "  ->  Hash  (cost=23.00..23.00 rows=1000 width=32)"));
+
+        assertThat(estimate.cost()).isEqualTo(1287.40);
+        assertThat(estimate.rows()).isEqualTo(60_000);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeuristicSqlGeneratorTest {
+
+    private static final String SCHEMA = String.join("\n",
+            "USERS (\n  ID BIGINT [PK],\n  NAME VARCHAR,\n  EMAIL VARCHAR\n)",
+            "PRODUCTS (\n  ID BIGINT [PK],\n  NAME VARCHAR,\n  PRICE DECIMAL\n)",
+            "ORDERS (\n  ID BIGINT [PK],\n  USER_ID BIGINT [FK->USERS.ID],\n  PRODUCT_ID BIGINT [FK->PRODUCTS.ID],\n  STATUS VARCHAR\n)",
+            "ORDER_ITEMS (\n  ID BIGINT [PK],\n  ORDER_ID BIGINT [FK->ORDERS.ID]\n)");
+
+    private final HeuristicSqlGenerator generator = new HeuristicSqlGenerator();
+
+    @Test
+    void answersSingleTableQuestions() {
+        assertThat(generator.generate("How many users are there?", SCHEMA)).isEqualTo("SELECT COUNT(*) AS cnt FROM USERS;");
+        assertThat(generator.generate("list every product", SCHEMA)).isEqualTo("SELECT * FROM PRODUCTS;");
+        assertThat(generator.generate("show user emails", SCHEMA)).isEqualTo("SELECT * FROM USERS;");
+        assertThat(generator.generate("show the email of each user", SCHEMA)).isEqualTo("SELECT EMAIL FROM USERS;");
+    }
+
+    @Test
+    void joinsEveryMentionedTableAlongShortestFkPaths() {
+        assertThat(generator.generate("which products did each user buy", SCHEMA)).isEqualTo(
+                "SELECT PRODUCTS.*, USERS.* FROM PRODUCTS"
+                        + " JOIN ORDERS ON ORDERS.PRODUCT_ID = PRODUCTS.ID"
+                        + " JOIN USERS ON ORDERS.USER_ID = USERS.ID;");
+        assertThat(generator.generate("count order items per user", SCHEMA)).isEqualTo(
+                "SELECT COUNT(*) AS cnt FROM ORDER_ITEMS"
+                        + " JOIN ORDERS ON ORDER_ITEMS.ORDER_ID = ORDERS.ID"
+                        + " JOIN USERS ON ORDERS.USER_ID = USERS.ID;");
+    }
+
+    @Test
+    void fallsBackWhenNothingMatches() {
+        assertThat(generator.generate("what is the weather", SCHEMA)).isEqualTo("SELECT * FROM table_name;");
+        assertThat(generator.generate("  ", SCHEMA)).isEqualTo("SELECT 1;");
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncrementalSchemaRefreshTest {
+
+    private final List<SchemaSnapshotChangedEvent> events = new ArrayList<>();
+    private final List<Set<String>> partialLoads = new ArrayList<>();
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private DatabaseSchemaService service;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:incremental_refresh;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE parent (id BIGINT PRIMARY KEY, name VARCHAR(50))");
+        jdbcTemplate.execute("CREATE TABLE child (id BIGINT PRIMARY KEY, parent_id BIGINT REFERENCES parent(id))");
+        for (int i = 0; i < 4; i++) {
+            jdbcTemplate.execute("CREATE TABLE other" + i + " (id BIGINT PRIMARY KEY)");
+        }
+
+        SchemaIntrospector recording = new H2InformationSchemaIntrospector() {
+            @Override
+            public Map<String, List<DatabaseSchemaService.ColumnInfo>> loadTables(Connection conn, Set<String> tableNames)
+                    throws SQLException {
+                if (tableNames != null) {
+                    partialLoads.add(tableNames);
+                }
+                return super.loadTables(conn, tableNames);
+            }
+        };
+        service = SchemaServiceFixture.schemaService(dataSource)
+                .introspectors(recording)
+                .eventPublisher(event -> events.add((SchemaSnapshotChangedEvent) event))
+                .incrementalRefresh(0)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void unchangedCatalogKeepsTheSnapshotWithoutReadingTables() {
+        SchemaSnapshot first = service.refreshSnapshot();
+
+        assertThat(service.refreshSnapshot()).isSameAs(first);
+        assertThat(partialLoads).isEmpty();
+        assertThat(events).hasSize(1);
+    }
+
+    @Test
+    void newColumnReReadsOnlyThatTable() {
+        SchemaSnapshot first = service.refreshSnapshot();
+        jdbcTemplate.execute("ALTER TABLE other1 ADD COLUMN note VARCHAR(20)");
+
+        SchemaSnapshot next = service.refreshSnapshot();
+
+        assertThat(partialLoads).containsExactly(Set.of("OTHER1"));
+        assertThat(next.getVersion()).isGreaterThan(first.getVersion());
+        assertThat(next.getRenderedTables().get("OTHER1")).contains("NOTE");
+        assertThat(next.getRenderedTables().get("PARENT")).isSameAs(first.getRenderedTables().get("PARENT"));
+        assertThat(next.getTables().keySet()).containsExactlyElementsOf(first.getTables().keySet());
+        SchemaSnapshotChangedEvent event = events.get(events.size() - 1);
+        assertThat(event.getModifiedTables()).containsExactly("OTHER1");
+        assertThat(event.getAddedTables()).isEmpty();
+    }
+
+    @Test
+    void changedKeyColumnAlsoReRendersTablesReferencingIt() {
+        service.refreshSnapshot();
+        jdbcTemplate.execute("ALTER TABLE parent ALTER COLUMN id RENAME TO parent_key");
+
+        SchemaSnapshot next = service.refreshSnapshot();
+
+        assertThat(partialLoads).containsExactly(Set.of("PARENT", "CHILD"));
+        assertThat(next.getRenderedTables().get("CHILD")).contains("FK->PARENT.PARENT_KEY");
+        assertThat(events.get(events.size() - 1).getChangedTables()).containsExactlyInAnyOrder("PARENT", "CHILD");
+    }
+
+    @Test
+    void droppedTableIsReportedAsRemoved() {
+        service.refreshSnapshot();
+        jdbcTemplate.execute("DROP TABLE other3");
+
+        SchemaSnapshot next = service.refreshSnapshot();
+
+        assertThat(next.getTables()).doesNotContainKey("OTHER3");
+        assertThat(events.get(events.size() - 1).getRemovedTables()).containsExactly("OTHER3");
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeysetPaginationTest {
+
+    private final SchemaSnapshot snapshot = snapshot();
+
+    @Test
+    void singleTableSelectPagesByItsPrimaryKey() {
+        Optional<KeysetPagination.Keyset> keyset = KeysetPagination.plan(
+                "SELECT u.name, u.id FROM users u WHERE u.age > 30 ORDER BY u.id DESC;", snapshot);
+
+        assertThat(keyset).isPresent();
+        assertThat(keyset.get().table()).isEqualTo("USERS");
+        assertThat(keyset.get().keyColumn()).isEqualTo("ID");
+        assertThat(keyset.get().descending()).isTrue();
+        assertThat(keyset.get().innerSql()).isEqualTo("SELECT u.name, u.id FROM users u WHERE u.age > 30");
+        assertThat(keyset.get().pageSql("SELECT 1", false, 11))
+                .isEqualTo("SELECT * FROM (SELECT 1) KEYSET_PAGE WHERE KEYSET_PAGE.ID < ? ORDER BY KEYSET_PAGE.ID DESC LIMIT 11");
+    }
+
+    @Test
+    void selectStarWithoutOrderSeeksAscending() {
+        Optional<KeysetPagination.Keyset> keyset = KeysetPagination.plan("select * from Users where name like 'A%'", snapshot);
+
+        assertThat(keyset).isPresent();
+        assertThat(keyset.get().descending()).isFalse();
+        assertThat(keyset.get().pageSql(keyset.get().innerSql(), true, 101))
+                .isEqualTo("SELECT * FROM (select * from Users where name like 'A%') KEYSET_PAGE ORDER BY KEYSET_PAGE.ID LIMIT 101");
+    }
+
+    @Test
+    void statementsWithoutAUniqueOrderedKeyFallBack() {
+        assertThat(KeysetPagination.plan("SELECT name FROM users", snapshot)).isEmpty();
+        assertThat(KeysetPagination.plan("SELECT * FROM users ORDER BY name", snapshot)).isEmpty();
+        assertThat(KeysetPagination.plan("SELECT * FROM users LIMIT 10", snapshot)).isEmpty();
+        assertThat(KeysetPagination.plan("SELECT DISTINCT id FROM users", snapshot)).isEmpty();
+        assertThat(KeysetPagination.plan("SELECT u.id FROM users u JOIN orders o ON o.user_id = u.id", snapshot)).isEmpty();
+        assertThat(KeysetPagination.plan("SELECT * FROM users, orders", snapshot)).isEmpty();
+        assertThat(KeysetPagination.plan("SELECT user_id, COUNT(*) FROM orders GROUP BY user_id", snapshot)).isEmpty();
+        assertThat(KeysetPagination.plan("SELECT * FROM order_items", snapshot)).isEmpty();
+        assertThat(KeysetPagination.plan("SELECT * FROM (SELECT * FROM users) t", snapshot)).isEmpty();
+    }
+
+    @Test
+    void keywordsInsideSubqueriesAndLiteralsDoNotCount() {
+        assertThat(KeysetPagination.plan(
+                "SELECT id, (SELECT COUNT(DISTINCT o.id) FROM orders o) AS n FROM users WHERE name <> 'a JOIN b'", snapshot))
+                .isPresent();
+    }
+
+    private static SchemaSnapshot snapshot() {
+        Map<String, List<DatabaseSchemaService.ColumnInfo>> tables = new LinkedHashMap<>();
+        tables.put("USERS", List.of(column("ID", true), column("NAME", false), column("AGE", false)));
+        tables.put("ORDERS", List.of(column("ID", true), column("USER_ID", false)));
+        // Composite key: no single column orders the rows uniquely
+        tables.put("ORDER_ITEMS", List.of(column("ORDER_ID", true), column("PRODUCT_ID", true)));
+        Map<String, String> rendered = new LinkedHashMap<>();
+        tables.keySet().forEach(name -> rendered.put(name, name));
+        return new SchemaSnapshot(1, tables, rendered, String.join("\n", rendered.values()), Instant.now());
+    }
+
+    private static DatabaseSchemaService.ColumnInfo column(String name, boolean primaryKey) {
+        return new DatabaseSchemaService.ColumnInfo(name, "BIGINT", 0, false, primaryKey, null);
+    }
+}
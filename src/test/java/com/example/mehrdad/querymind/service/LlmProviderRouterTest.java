@@ -0,0 +1,110 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LlmProviderRouterTest {
+
+    @Test
+    void hedgesToSecondProviderWhenPrimaryIsSlow() {
+        FakeProvider slow = new FakeProvider("gemini", 2_000, false);
+        FakeProvider fast = new FakeProvider("openai", 10, false);
+        LlmProviderRouter router = router(List.of(slow, fast), "static", true);
+
+        long start = System.nanoTime();
+        LlmProviderRouter.Routed routed = router.route("system", "user", s -> s);
+        long elapsedMs = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertThat(routed.provider()).isSameAs(fast);
+        assertThat(routed.hedged()).isTrue();
+        assertThat(elapsedMs).isLessThan(1_000);
+        router.shutdown();
+    }
+
+    @Test
+    void failingProviderIsTakenOutOfRotation() {
+        FakeProvider broken = new FakeProvider("gemini", 0, true);
+        FakeProvider healthy = new FakeProvider("openai", 0, false);
+        LlmProviderRouter router = router(List.of(broken, healthy), "static", false);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(router.route("system", "user", s -> s).provider()).isSameAs(healthy);
+        }
+
+        assertThat(router.getHealth("gemini").getState()).isEqualTo(ProviderHealth.State.OPEN);
+        assertThat(router.candidates()).containsExactly(healthy);
+        assertThat(broken.calls).isEqualTo(3);
+        router.shutdown();
+    }
+
+    @Test
+    void localBulkheadRejectionsDoNotCountAgainstTheProvider() {
+        FakeProvider busy = new FakeProvider("gemini", 0, new ProviderBusyException("gemini concurrency limit of 1 reached"));
+        FakeProvider healthy = new FakeProvider("openai", 0, false);
+        LlmProviderRouter router = router(List.of(busy, healthy), "static", false);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(router.route("system", "user", s -> s).provider()).isSameAs(healthy);
+        }
+
+        assertThat(router.getHealth("gemini").getState()).isEqualTo(ProviderHealth.State.CLOSED);
+        assertThat(router.getHealth("gemini").getSampleCount()).isZero();
+        assertThat(busy.calls).isEqualTo(5);
+        router.shutdown();
+    }
+
+    @Test
+    void answersExecutionWouldRejectFailOverToTheNextProvider() {
+        FakeProvider commonTableExpression = new FakeProvider("gemini", 0, false);
+        commonTableExpression.answer = "WITH t AS (SELECT 1 AS x) SELECT x FROM t;";
+        FakeProvider healthy = new FakeProvider("openai", 0, false);
+        LlmProviderRouter router = router(List.of(commonTableExpression, healthy), "static", false);
+
+        assertThat(router.route("system", "user", s -> s).provider()).isSameAs(healthy);
+        assertThat(commonTableExpression.calls).isEqualTo(1);
+        assertThat(router.getHealth("gemini").getSampleCount()).isEqualTo(1);
+        router.shutdown();
+    }
+
+    private static LlmProviderRouter router(List<LlmProvider> providers, String mode, boolean hedge) {
+        return new LlmProviderRouter(providers, "gemini", mode, hedge, Duration.ofMillis(100),
+                20, 3, 0.5, Duration.ofSeconds(20), Duration.ofMinutes(1));
+    }
+
+    private static final class FakeProvider implements LlmProvider {
+        private final String name;
+        private final long latencyMs;
+        private final Exception failure;
+        private volatile int calls;
+        private volatile String answer = "SELECT 1;";
+
+        FakeProvider(String name, long latencyMs, boolean failing) {
+            this(name, latencyMs, failing ? new IllegalStateException(name + " unavailable") : null);
+        }
+
+        FakeProvider(String name, long latencyMs, Exception failure) {
+            this.name = name;
+            this.latencyMs = latencyMs;
+            this.failure = failure;
+        }
+
+        @Override public String getName() { return name; }
+        @Override public String getDescription() { return name; }
+        @Override public boolean isAvailable() { return true; }
+        @Override public String getUnavailableReason() { return null; }
+
+        @Override
+        public String generate(String systemPrompt, String userPrompt) throws Exception {
+            calls++;
+            Thread.sleep(latencyMs);
+            if (failure != null) {
+                throw failure;
+            }
+            return answer;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.mehrdad.querymind.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PagedQueryServiceTest {
+
+    private final DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:paging;DB_CLOSE_DELAY=-1", "sa", "");
+    private DatabaseSchemaService databaseSchemaService;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE item (id BIGINT PRIMARY KEY, category VARCHAR(10))");
+        jdbcTemplate.batchUpdate("INSERT INTO item VALUES (?, ?)", rows(250));
+        databaseSchemaService = SchemaServiceFixture.schemaService(dataSource).executionPolicy(policy(1000)).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void keysetPagesCoverTheResultOnceInKeyOrder() {
+        PagedQueryService service = service(policy(1000), Duration.ofMinutes(1), 4);
+
+        PagedQueryService.Page page = service.open("SELECT category, id FROM item WHERE id > 10 ORDER BY id", 100);
+        assertThat(page.mode()).isEqualTo(PagedQueryService.MODE_KEYSET);
+        List<Long> ids = new ArrayList<>(ids(page));
+        List<Integer> sizes = new ArrayList<>(List.of(page.rowCount()));
+        while (page.hasMore()) {
+            page = service.next(page.cursor()).orElseThrow();
+            ids.addAll(ids(page));
+            sizes.add(page.rowCount());
+        }
+
+        assertThat(sizes).containsExactly(100, 100, 40);
+        assertThat(ids).hasSize(240).doesNotHaveDuplicates().isSorted().startsWith(11L);
+        assertThat(page.cursor()).isNull();
+        assertThat(service.stats()).containsEntry("openKeyset", 0);
+    }
+
+    @Test
+    void otherStatementsHoldTheirCursorUntilReadToTheEnd() {
+        PagedQueryService service = service(policy(1000), Duration.ofMinutes(1), 4);
+
+        PagedQueryService.Page first = service.open("SELECT category, COUNT(*) AS n FROM item GROUP BY category", 2);
+        assertThat(first.mode()).isEqualTo(PagedQueryService.MODE_HELD);
+        assertThat(first.rowCount()).isEqualTo(2);
+        assertThat(service.stats()).containsEntry("openHeld", 1);
+
+        PagedQueryService.Page last = service.next(first.cursor()).orElseThrow();
+        assertThat(last.rowCount()).isEqualTo(1);
+        assertThat(last.hasMore()).isFalse();
+        assertThat(service.stats()).containsEntry("openHeld", 0);
+        assertThat(service.next(first.cursor())).isEmpty();
+    }
+
+    @Test
+    void idleHeldCursorsAreReapedAndTheLimitIsEnforced() {
+        PagedQueryService service = service(policy(1000), Duration.ZERO, 1);
+
+        PagedQueryService.Page page = service.open("SELECT * FROM item ORDER BY category", 10);
+        assertThatThrownBy(() -> service.open("SELECT * FROM item ORDER BY category DESC", 10))
+                .isInstanceOf(IllegalStateException.class);
+
+        service.reapIdle();
+        assertThat(service.next(page.cursor())).isEmpty();
+        assertThat(service.stats()).containsEntry("openHeld", 0).containsEntry("reaped", 1L);
+        assertThat(service.open("SELECT * FROM item ORDER BY category DESC", 10).hasMore()).isTrue();
+    }
+
+    @Test
+    void stopsAtTheRowBudgetAcrossPages() {
+        PagedQueryService service = service(policy(150), Duration.ofMinutes(1), 4);
+
+        PagedQueryService.Page page = service.open("SELECT * FROM item", 100);
+        PagedQueryService.Page last = service.next(page.cursor()).orElseThrow();
+
+        assertThat(last.rowCount()).isEqualTo(50);
+        assertThat(last.hasMore()).isFalse();
+        assertThat(last.truncationReason()).contains("150 rows");
+    }
+
+    private PagedQueryService service(ExecutionPolicy policy, Duration idleTimeout, int maxHeldCursors) {
+        return new PagedQueryService(DataSourceRouter.direct(dataSource), databaseSchemaService, policy,
+                new StatementCache(true, 16), new SimpleMeterRegistry(), 100, 1000, idleTimeout, idleTimeout, maxHeldCursors);
+    }
+
+    private static ExecutionPolicy policy(int streamMaxRows) {
+        return new ExecutionPolicy(100, streamMaxRows, DataSize.ofMegabytes(1), Duration.ofSeconds(5), 50);
+    }
+
+    private static List<Long> ids(PagedQueryService.Page page) {
+        int column = page.result().getColumns().get(0).getName().equals("ID") ? 0 : 1;
+        List<Long> ids = new ArrayList<>();
+        for (int row = 0; row < page.rowCount(); row++) {
+            ids.add(((Number) page.result().getValue(row, column)).longValue());
+        }
+        return ids;
+    }
+
+    private static List<Object[]> rows(int count) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            rows.add(new Object[]{i, "C" + (i % 3)});
+        }
+        return rows;
+    }
+}
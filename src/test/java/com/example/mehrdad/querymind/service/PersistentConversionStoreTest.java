@@ -0,0 +1,158 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PersistentConversionStoreTest {
+
+    private static final Duration TTL = Duration.ofHours(1);
+
+    @TempDir
+    Path directory;
+
+    private final List<PersistentConversionStore> stores = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        stores.forEach(PersistentConversionStore::close);
+    }
+
+    @Test
+    void entriesAreWrittenOnFlushAndServedAfterARestart() {
+        PersistentConversionStore store = store(100, 1000);
+        ConversionCache cache = new ConversionCache(100, TTL, store);
+        ConversionCache.Key key = ConversionCache.key("list users", "gemini", "abc");
+        cache.put(key, new ConversionCache.Entry("SELECT * FROM USERS;", "llm", Set.of("USERS")));
+
+        // Nothing reaches the file until the background flush
+        assertThat(store(100, 1000).loadWarmSet((k, e) -> { })).isZero();
+        store.flush();
+        store.close();
+
+        PersistentConversionStore restarted = store(100, 1000);
+        ConversionCache warmed = new ConversionCache(100, TTL, restarted);
+        Map<ConversionCache.Key, ConversionCache.Entry> warmSet = new LinkedHashMap<>();
+        assertThat(restarted.loadWarmSet(warmSet::put)).isEqualTo(1);
+        assertThat(warmSet).containsKey(key);
+        assertThat(warmSet.get(key).tables()).containsExactly("USERS");
+
+        // Not in the warm set of this instance, but found on disk by the read-through lookup
+        assertThat(warmed.get(key)).map(ConversionCache.Entry::sqlQuery).contains("SELECT * FROM USERS;");
+        assertThat(restarted.stats()).containsEntry("readThroughHits", 1L);
+    }
+
+    @Test
+    void warmSetPrefersRecentlyHitEntriesAndCompactionBoundsTheStore() throws Exception {
+        PersistentConversionStore store = store(1, 2);
+        ConversionCache cache = new ConversionCache(100, TTL, store);
+        for (String question : List.of("list users", "list orders", "list products")) {
+            cache.put(ConversionCache.key(question, "gemini", "abc"), new ConversionCache.Entry("SELECT 1;", "llm", Set.of()));
+            store.flush();
+            Thread.sleep(5);
+        }
+        cache.get(ConversionCache.key("list users", "gemini", "abc"));
+        store.flush();
+
+        List<String> warm = new ArrayList<>();
+        store.loadWarmSet((key, entry) -> warm.add(key.question()));
+        assertThat(warm).containsExactly("list users");
+
+        store.compact();
+        List<String> kept = new ArrayList<>();
+        store(10, 10).loadWarmSet((key, entry) -> kept.add(key.question()));
+        assertThat(kept).containsExactlyInAnyOrder("list users", "list products");
+        assertThat(store.stats()).containsEntry("compacted", 1L);
+    }
+
+    @Test
+    void invalidatedEntriesAreDeletedOnFlush() {
+        PersistentConversionStore store = store(100, 1000);
+        ConversionCache cache = new ConversionCache(100, TTL, store);
+        ConversionCache.Key broken = ConversionCache.key("list users", "gemini", "abc");
+        ConversionCache.Key kept = ConversionCache.key("list orders", "gemini", "abc");
+        cache.put(broken, new ConversionCache.Entry("SELECT nme FROM USERS;", "llm", Set.of("USERS")));
+        cache.put(kept, new ConversionCache.Entry("SELECT * FROM ORDERS;", "llm", Set.of("ORDERS")));
+        store.flush();
+
+        cache.invalidate(broken);
+        store.flush();
+
+        List<String> stored = new ArrayList<>();
+        store.loadWarmSet((key, entry) -> stored.add(key.question()));
+        assertThat(stored).containsExactly("list orders");
+        assertThat(cache.get(broken)).isEmpty();
+    }
+
+    @Test
+    void overLongQuestionsAreSkippedWithoutLosingTheRestOfTheFlush() {
+        PersistentConversionStore store = store(100, 1000);
+        ConversionCache cache = new ConversionCache(100, TTL, store);
+        ConversionCache.Key tooLong = ConversionCache.key("list users " + "x".repeat(5000), "gemini", "abc");
+        ConversionCache.Key kept = ConversionCache.key("list orders", "gemini", "abc");
+        cache.put(tooLong, new ConversionCache.Entry("SELECT * FROM USERS;", "llm", Set.of("USERS")));
+        cache.put(kept, new ConversionCache.Entry("SELECT * FROM ORDERS;", "llm", Set.of("ORDERS")));
+        store.flush();
+
+        List<String> stored = new ArrayList<>();
+        store.loadWarmSet((key, entry) -> stored.add(key.question()));
+        assertThat(stored).containsExactly("list orders");
+        assertThat(store.stats()).containsEntry("skipped", 1L).containsEntry("dropped", 0L);
+        // The in-memory cache still answers it
+        assertThat(cache.get(tooLong)).isPresent();
+    }
+
+    @Test
+    void uncheckedAnswersStayInMemoryUntilPersisted() {
+        PersistentConversionStore store = store(100, 1000);
+        ConversionCache cache = new ConversionCache(100, TTL, store);
+        ConversionCache.Key checked = ConversionCache.key("list users", "gemini", "abc");
+        ConversionCache.Key unchecked = ConversionCache.key("list orders", "gemini", "abc");
+        cache.putInMemory(checked, new ConversionCache.Entry("SELECT * FROM USERS;", "llm", Set.of("USERS")));
+        cache.putInMemory(unchecked, new ConversionCache.Entry("SELECT * FROM ORDRS;", "llm", Set.of()));
+
+        cache.persist(checked);
+        store.flush();
+
+        List<String> stored = new ArrayList<>();
+        store.loadWarmSet((key, entry) -> stored.add(key.question()));
+        assertThat(stored).containsExactly("list users");
+        assertThat(cache.get(unchecked)).isPresent();
+    }
+
+    @Test
+    void schemaChangesMoveSurvivingRowsAndDeleteTheRest() {
+        PersistentConversionStore store = store(100, 1000);
+        ConversionCache cache = new ConversionCache(100, TTL, store);
+        cache.put(ConversionCache.key("list users", "gemini", "old"), new ConversionCache.Entry("SELECT * FROM USERS;", "llm", Set.of("USERS")));
+        cache.put(ConversionCache.key("list orders", "gemini", "old"), new ConversionCache.Entry("SELECT * FROM ORDERS;", "llm", Set.of("ORDERS")));
+        store.flush();
+        // Queued but not yet written when the schema changes: moves along with the stored rows
+        cache.put(ConversionCache.key("count users", "gemini", "old"), new ConversionCache.Entry("SELECT COUNT(*) FROM USERS;", "llm", Set.of("USERS")));
+
+        store.migrate("old", "new", Set.of("ORDERS"));
+        store.flush();
+
+        List<ConversionCache.Key> stored = new ArrayList<>();
+        store.loadWarmSet((key, entry) -> stored.add(key));
+        assertThat(stored).containsExactlyInAnyOrder(ConversionCache.key("list users", "gemini", "new"),
+                ConversionCache.key("count users", "gemini", "new"));
+    }
+
+    private PersistentConversionStore store(int warmSetSize, int maxEntries) {
+        PersistentConversionStore store = new PersistentConversionStore(true, directory.resolve("cache").toString(),
+                warmSetSize, maxEntries, 100, true, TTL);
+        stores.add(store);
+        return store;
+    }
+}
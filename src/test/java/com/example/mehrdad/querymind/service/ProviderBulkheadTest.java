@@ -0,0 +1,45 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProviderBulkheadTest {
+
+    @Test
+    void callersTurnedAwayForASlotDoNotSpendRateTokens() throws Exception {
+        // Two tokens and practically no refill: every token spent on a call that never ran would be missed
+        ProviderBulkhead bulkhead = new ProviderBulkhead("gemini", 1, Duration.ofMillis(50), new TokenBucket(0.001, 2));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> holder = executor.submit(() -> bulkhead.call(() -> {
+                started.countDown();
+                release.await();
+                return "first";
+            }));
+            started.await();
+
+            for (int i = 0; i < 3; i++) {
+                assertThatThrownBy(() -> bulkhead.call(() -> "rejected"))
+                        .isInstanceOf(ProviderBusyException.class)
+                        .hasMessageContaining("concurrency limit");
+            }
+            release.countDown();
+            assertThat(holder.get()).isEqualTo("first");
+        }
+
+        assertThat(bulkhead.call(() -> "second")).isEqualTo("second");
+        assertThatThrownBy(() -> bulkhead.call(() -> "third"))
+                .isInstanceOf(ProviderBusyException.class)
+                .hasMessageContaining("rate limit");
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.mehrdad.querymind.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QueryMetricsTest {
+
+    @Test
+    void publishesStageTimersTaggedByProviderAndOutcome() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ConversionTrace trace = new ConversionTrace();
+        trace.record("schema", TimeUnit.MILLISECONDS.toNanos(2));
+        trace.record("llm", TimeUnit.MILLISECONDS.toNanos(40));
+        trace.record("llm", TimeUnit.MILLISECONDS.toNanos(10));
+        trace.setProvider("gemini");
+        trace.setOutcome(ConversionTrace.OUTCOME_LLM);
+        trace.setPromptTokens(350);
+        trace.setRowCount(12);
+
+        new QueryMetrics(registry).record(trace);
+
+        assertThat(registry.get("querymind.stage").tags("stage", "llm", "provider", "gemini", "outcome", "llm")
+                .timer().totalTime(TimeUnit.MILLISECONDS)).isEqualTo(50.0);
+        assertThat(registry.get("querymind.conversion").tags("outcome", "llm").timer().count()).isEqualTo(1);
+        assertThat(registry.get("querymind.prompt.tokens").summary().totalAmount()).isEqualTo(350.0);
+        assertThat(registry.get("querymind.result.rows").summary().totalAmount()).isEqualTo(12.0);
+        assertThat(trace.toMillis()).containsKeys("schema", "llm", "total");
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResultCacheTest {
+
+    private final ResultCache cache = new ResultCache(true, DataSize.ofMegabytes(1), DataSize.ofKilobytes(64),
+            Duration.ofMinutes(5), "ORDERS=0s");
+
+    @Test
+    void normalizesFormattingButNotQuotedText() {
+        assertThat(ResultCache.normalize("select *\n  from  users where name = 'Ann';"))
+                .isEqualTo("SELECT * FROM USERS WHERE NAME = 'Ann'");
+    }
+
+    @Test
+    void bumpDropsOnlyResultsReadingTheTable() {
+        cache.put("SELECT * FROM USERS", result(), Set.of("USERS"), cache.generation());
+        cache.put("SELECT * FROM PRODUCTS", result(), Set.of("PRODUCTS"), cache.generation());
+
+        assertThat(cache.bumpTable("users")).isEqualTo(1);
+
+        assertThat(cache.get("SELECT * FROM USERS")).isEmpty();
+        assertThat(cache.get("SELECT * FROM PRODUCTS")).isPresent();
+    }
+
+    @Test
+    void skipsTablesWithZeroTtlAndResultsComputedAcrossAnInvalidation() {
+        cache.put("SELECT * FROM ORDERS", result(), Set.of("ORDERS"), cache.generation());
+        assertThat(cache.get("SELECT * FROM ORDERS")).isEmpty();
+
+        long generation = cache.generation();
+        cache.bumpTable("PRODUCTS");
+        cache.put("SELECT * FROM USERS", result(), Set.of("USERS"), generation);
+        assertThat(cache.get("SELECT * FROM USERS")).isEmpty();
+    }
+
+    private static DatabaseSchemaService.QueryExecutionResult result() {
+        DatabaseSchemaService.QueryExecutionResult result = new DatabaseSchemaService.QueryExecutionResult();
+        result.setSuccess(true);
+        result.setResult(new ColumnarResult.Builder(List.of()).build());
+        result.setEstimatedBytes(128);
+        return result;
+    }
+}
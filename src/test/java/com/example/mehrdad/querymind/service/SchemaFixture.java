@@ -0,0 +1,59 @@
+package com.example.mehrdad.querymind.service;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schema snapshots for unit tests, declared table by table instead of introspected from a database and rendered
+ * the way introspected tables are. Every snapshot gets its own version, since version-keyed caches would otherwise
+ * hand one snapshot's index to another.
+ */
+final class SchemaFixture {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final Map<String, List<DatabaseSchemaService.ColumnInfo>> tables = new LinkedHashMap<>();
+
+    private SchemaFixture() {
+    }
+
+    public static SchemaFixture schema() {
+        return new SchemaFixture();
+    }
+
+    public SchemaFixture table(String name, DatabaseSchemaService.ColumnInfo... columns) {
+        tables.put(name, List.of(columns));
+        return this;
+    }
+
+    public SchemaSnapshot snapshot() {
+        Map<String, String> rendered = new LinkedHashMap<>();
+        tables.forEach((name, columns) -> rendered.put(name, VerboseSchemaRenderer.render(name, columns)));
+        return new SchemaSnapshot(VERSIONS.incrementAndGet(), tables, rendered, String.join("\n", rendered.values()),
+                Instant.now());
+    }
+
+    public static DatabaseSchemaService.ColumnInfo column(String name) {
+        return column(name, "BIGINT", false, null);
+    }
+
+    public static DatabaseSchemaService.ColumnInfo primaryKey(String name) {
+        return column(name, "BIGINT", true, null);
+    }
+
+    public static DatabaseSchemaService.ColumnInfo foreignKey(String name, String target) {
+        return column(name, "BIGINT", false, target);
+    }
+
+    /**
+     * @param foreignKeyTarget referenced TABLE.COLUMN, or null
+     */
+    public static DatabaseSchemaService.ColumnInfo column(String name, String type, boolean primaryKey,
+                                                          String foreignKeyTarget) {
+        return new DatabaseSchemaService.ColumnInfo(name, type, 0, false, primaryKey,
+                foreignKeyTarget != null ? List.of(foreignKeyTarget) : null);
+    }
+}
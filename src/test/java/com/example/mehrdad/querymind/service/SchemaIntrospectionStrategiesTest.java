@@ -0,0 +1,74 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the per-table DatabaseMetaData loop and the set-based INFORMATION_SCHEMA strategy describe a
+ * generated 1,000-table H2 catalog, where every table references its predecessor, identically. Their timing is
+ * compared by SchemaBenchmark.
+ */
+class SchemaIntrospectionStrategiesTest {
+
+    private static final int TABLE_COUNT = 1_000;
+
+    private static Connection connection;
+
+    @BeforeAll
+    static void createCatalog() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:introspection_bench;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Statement stmt = connection.createStatement()) {
+            for (int i = 0; i < TABLE_COUNT; i++) {
+                StringBuilder ddl = new StringBuilder("CREATE TABLE t").append(i).append(" (")
+                        .append("id BIGINT PRIMARY KEY, name VARCHAR(100) NOT NULL, amount DECIMAL(10,2), created_at TIMESTAMP");
+                if (i > 0) {
+                    ddl.append(", parent_id BIGINT REFERENCES t").append(i - 1).append("(id)");
+                }
+                stmt.addBatch(ddl.append(")").toString());
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    @AfterAll
+    static void dropCatalog() throws Exception {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    @Test
+    void bulkIntrospectionMatchesMetadataLoop() throws Exception {
+        SchemaIntrospector metadata = new JdbcMetadataSchemaIntrospector();
+        SchemaIntrospector bulk = new H2InformationSchemaIntrospector();
+        assertThat(bulk.supports(connection.getMetaData())).isTrue();
+
+        Map<String, List<DatabaseSchemaService.ColumnInfo>> fromMetadata = metadata.loadTables(connection);
+        Map<String, List<DatabaseSchemaService.ColumnInfo>> fromBulk = bulk.loadTables(connection);
+
+        assertThat(fromBulk).hasSize(TABLE_COUNT);
+        assertThat(fromBulk.keySet()).containsExactlyInAnyOrderElementsOf(fromMetadata.keySet());
+        for (Map.Entry<String, List<DatabaseSchemaService.ColumnInfo>> entry : fromMetadata.entrySet()) {
+            assertThat(describe(fromBulk.get(entry.getKey())))
+                    .as(entry.getKey())
+                    .isEqualTo(describe(entry.getValue()));
+        }
+    }
+
+    private static List<String> describe(List<DatabaseSchemaService.ColumnInfo> columns) {
+        return columns.stream()
+                .map(c -> c.getName() + " " + c.getType() + " nullable=" + c.isNullable()
+                        + " pk=" + c.isPrimaryKey() + " fk=" + c.getForeignKeyTargets())
+                .toList();
+    }
+}
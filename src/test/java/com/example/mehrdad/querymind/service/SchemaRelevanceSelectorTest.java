@@ -0,0 +1,60 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchemaRelevanceSelectorTest {
+
+    @Test
+    void keepsMentionedTablesAndTheJoinPathBetweenThem() {
+        Map<String, List<DatabaseSchemaService.ColumnInfo>> tables = new LinkedHashMap<>();
+        tables.put("USERS", List.of(column("ID", null), column("NAME", null)));
+        tables.put("ORDERS", List.of(column("ID", null), column("USER_ID", "USERS.ID")));
+        tables.put("ORDER_ITEMS", List.of(column("ID", null), column("ORDER_ID", "ORDERS.ID"), column("PRODUCT_ID", "PRODUCTS.ID")));
+        tables.put("PRODUCTS", List.of(column("ID", null), column("PRICE", null)));
+        for (int i = 0; i < 20; i++) {
+            tables.put("AUDIT_LOG_" + i, List.of(column("ID", null), column("PAYLOAD", null)));
+        }
+
+        SchemaRelevanceSelector selector = new SchemaRelevanceSelector(true, 2, "customer=user");
+        SchemaRelevanceSelector.PromptSchema schema = selector.select("which products did each customer buy", snapshot(tables));
+
+        assertThat(schema.tables()).containsExactly("USERS", "ORDERS", "ORDER_ITEMS", "PRODUCTS");
+        assertThat(schema.pruned()).isTrue();
+        assertThat(schema.tokensSaved()).isPositive();
+        assertThat(schema.schemaText()).doesNotContain("AUDIT_LOG");
+    }
+
+    @Test
+    void sendsFullSchemaWhenNothingMatches() {
+        Map<String, List<DatabaseSchemaService.ColumnInfo>> tables = new LinkedHashMap<>();
+        for (int i = 0; i < 12; i++) {
+            tables.put("T" + i, List.of(column("ID", null)));
+        }
+        SchemaSnapshot snapshot = snapshot(tables);
+
+        SchemaRelevanceSelector.PromptSchema schema = new SchemaRelevanceSelector(true, 3, "")
+                .select("what is the weather", snapshot);
+
+        assertThat(schema.schemaText()).isEqualTo(snapshot.getSchemaString());
+        assertThat(schema.tokensSaved()).isZero();
+    }
+
+    private static DatabaseSchemaService.ColumnInfo column(String name, String fkTarget) {
+        return new DatabaseSchemaService.ColumnInfo(name, "BIGINT", 0, false, "ID".equals(name),
+                fkTarget != null ? List.of(fkTarget) : null);
+    }
+
+    private static SchemaSnapshot snapshot(Map<String, List<DatabaseSchemaService.ColumnInfo>> tables) {
+        Map<String, String> rendered = new LinkedHashMap<>();
+        tables.forEach((name, columns) -> rendered.put(name, name + " (\n" + String.join(",\n",
+                columns.stream().map(c -> "  " + c.getName() + " " + c.getType()).toList()) + "\n)"));
+        return new SchemaSnapshot(1, tables, rendered, String.join("\n", rendered.values()), Instant.now());
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the verbose and compact prompt formats on the sample users/products/orders schema (with audit columns
+ * and FKs added) scaled up with unrelated filler tables. Accuracy is judged heuristically: a question counts as answerable
+ * when every column and join it needs is present in the rendered schema.
+ */
+class SchemaRendererComparisonTest {
+
+    private static final int FILLER_TABLES = 60;
+    private static final String AUDIT = "created_by,updated_at,updated_by";
+
+    private record Question(String text, List<String> columns, List<String> joins) {}
+
+    private static final List<Question> GOLD = List.of(
+            new Question("average age of users", List.of("USERS.AGE"), List.of()),
+            new Question("users who signed up this year", List.of("USERS.CREATED_AT"), List.of()),
+            new Question("products in category Electronics that are out of stock",
+                    List.of("PRODUCTS.CATEGORY", "PRODUCTS.STOCK"), List.of()),
+            new Question("total order amount per user name",
+                    List.of("USERS.NAME", "ORDERS.TOTAL_AMOUNT"), List.of("ORDERS.USER_ID->USERS.ID")),
+            new Question("pending orders for product Laptop",
+                    List.of("ORDERS.STATUS", "PRODUCTS.NAME"), List.of("ORDERS.PRODUCT_ID->PRODUCTS.ID")));
+
+    @Test
+    void compactFormatUsesFewerTokensWithoutLosingCoverage() {
+        SchemaSnapshot snapshot = scaledSampleSnapshot();
+        VerboseSchemaRenderer verbose = new VerboseSchemaRenderer();
+        CompactSchemaRenderer compact = new CompactSchemaRenderer(AUDIT);
+
+        SchemaRenderer.Rendered verboseFull = verbose.render(snapshot, snapshot.getTables().keySet(), 0);
+        SchemaRenderer.Rendered compactFull = compact.render(snapshot, snapshot.getTables().keySet(), 0);
+
+        assertThat(verboseFull.text()).isEqualTo(snapshot.getSchemaString());
+        assertThat(compactFull.tables()).hasSize(3 + FILLER_TABLES);
+        assertThat(compactFull.text()).doesNotContain("UPDATED_BY").doesNotContain("VARYING");
+        assertThat(compactFull.tokens())
+                .as("compact tokens vs %d verbose", verboseFull.tokens())
+                .isLessThan(verboseFull.tokens() * 2 / 3);
+        assertThat(accuracy(compactFull.text())).isEqualTo(accuracy(verboseFull.text())).isEqualTo(1.0);
+    }
+
+    @Test
+    void budgetedPromptsStayWithinBudgetAndKeepTheRankedTables() {
+        SchemaSnapshot snapshot = scaledSampleSnapshot();
+        int budget = 120;
+        SchemaRelevanceSelector verbose = new SchemaRelevanceSelector(true, 8, "",
+                List.of(new VerboseSchemaRenderer()), "verbose", budget);
+        SchemaRelevanceSelector compact = new SchemaRelevanceSelector(true, 8, "",
+                List.of(new VerboseSchemaRenderer(), new CompactSchemaRenderer(AUDIT)), "compact", budget);
+
+        int answerableVerbose = 0;
+        int answerableCompact = 0;
+        for (Question question : GOLD) {
+            SchemaRelevanceSelector.PromptSchema v = verbose.select(question.text(), snapshot);
+            SchemaRelevanceSelector.PromptSchema c = compact.select(question.text(), snapshot);
+            assertThat(v.promptTokens()).isLessThanOrEqualTo(budget);
+            assertThat(c.promptTokens()).isLessThanOrEqualTo(budget);
+            assertThat(compact.select(question.text(), snapshot).schemaText()).isEqualTo(c.schemaText());
+            answerableVerbose += answerable(question, v.schemaText()) ? 1 : 0;
+            answerableCompact += answerable(question, c.schemaText()) ? 1 : 0;
+        }
+
+        assertThat(answerableCompact).as("answerable in compact vs %d in verbose", answerableVerbose)
+                .isGreaterThanOrEqualTo(answerableVerbose)
+                .isEqualTo(GOLD.size());
+    }
+
+    @Test
+    void tightBudgetNarrowsToKeysBeforeDroppingTables() {
+        SchemaSnapshot snapshot = scaledSampleSnapshot();
+        CompactSchemaRenderer compact = new CompactSchemaRenderer(AUDIT);
+        List<String> priority = List.of("ORDERS", "USERS", "PRODUCTS");
+        SchemaRenderer.Rendered nothingFits = compact.render(snapshot, priority, 1);
+        SchemaRenderer.Rendered rendered = compact.render(snapshot, priority, 50);
+
+        assertThat(nothingFits.text()).isEmpty();
+        assertThat(nothingFits.truncated()).isTrue();
+        assertThat(rendered.tokens()).isLessThanOrEqualTo(50);
+        assertThat(rendered.truncated()).isTrue();
+        assertThat(rendered.tables()).containsExactly("USERS", "ORDERS");
+        assertThat(rendered.text()).contains("USERS(ID int PK,...)").contains("FK ORDERS.USER_ID->USERS.ID")
+                .doesNotContain("PRODUCTS");
+    }
+
+    @Test
+    void abbreviatesTypes() {
+        assertThat(CompactSchemaRenderer.abbreviate("CHARACTER VARYING(100)")).isEqualTo("str");
+        assertThat(CompactSchemaRenderer.abbreviate("NUMERIC(10, 2)")).isEqualTo("dec");
+        assertThat(CompactSchemaRenderer.abbreviate("TIMESTAMP WITH TIME ZONE")).isEqualTo("ts");
+        assertThat(CompactSchemaRenderer.abbreviate("GEOMETRY")).isEqualTo("geometry");
+    }
+
+    private static double accuracy(String schemaText) {
+        return GOLD.stream().filter(q -> answerable(q, schemaText)).count() / (double) GOLD.size();
+    }
+
+    private static boolean answerable(Question question, String schemaText) {
+        for (String column : question.columns()) {
+            String[] parts = column.split("\\.");
+            String block = block(schemaText, parts[0]);
+            if (block == null || !Pattern.compile("\\b" + parts[1] + "\\b").matcher(block).find()) {
+                return false;
+            }
+        }
+        for (String join : question.joins()) {
+            String[] sides = join.split("->");
+            String[] child = sides[0].split("\\.");
+            String block = block(schemaText, child[0]);
+            boolean inline = block != null && Pattern.compile("\\b" + child[1] + "\\b[^\\n]*FK->" + Pattern.quote(sides[1]))
+                    .matcher(block).find();
+            if (!inline && !schemaText.contains("FK " + join)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The rendered block of one table in either format, or null when the table is not in the text
+     */
+    private static String block(String schemaText, String table) {
+        for (String opening : List.of(table + " (\n", table + "(")) {
+            int start = schemaText.startsWith(opening) ? 0 : schemaText.indexOf("\n" + opening);
+            if (start < 0) continue;
+            int end = opening.endsWith("\n") ? schemaText.indexOf("\n)", start + 1) : schemaText.indexOf('\n', start + 1);
+            return schemaText.substring(start, end < 0 ? schemaText.length() : end);
+        }
+        return null;
+    }
+
+    private static SchemaSnapshot scaledSampleSnapshot() {
+        Map<String, List<DatabaseSchemaService.ColumnInfo>> tables = new LinkedHashMap<>();
+        tables.put("USERS", List.of(
+                column("ID", "BIGINT", true, null),
+                column("NAME", "CHARACTER VARYING(100)", false, null),
+                column("EMAIL", "CHARACTER VARYING(100)", false, null),
+                column("AGE", "INTEGER", false, null),
+                column("CREATED_AT", "TIMESTAMP", false, null),
+                column("UPDATED_AT", "TIMESTAMP", false, null),
+                column("UPDATED_BY", "CHARACTER VARYING(50)", false, null)));
+        tables.put("PRODUCTS", List.of(
+                column("ID", "BIGINT", true, null),
+                column("NAME", "CHARACTER VARYING(100)", false, null),
+                column("PRICE", "NUMERIC(10, 2)", false, null),
+                column("CATEGORY", "CHARACTER VARYING(50)", false, null),
+                column("STOCK", "INTEGER", false, null),
+                column("CREATED_AT", "TIMESTAMP", false, null),
+                column("UPDATED_AT", "TIMESTAMP", false, null),
+                column("UPDATED_BY", "CHARACTER VARYING(50)", false, null)));
+        tables.put("ORDERS", List.of(
+                column("ID", "BIGINT", true, null),
+                column("USER_ID", "BIGINT", false, "USERS.ID"),
+                column("PRODUCT_ID", "BIGINT", false, "PRODUCTS.ID"),
+                column("QUANTITY", "INTEGER", false, null),
+                column("TOTAL_AMOUNT", "NUMERIC(10, 2)", false, null),
+                column("ORDER_DATE", "TIMESTAMP", false, null),
+                column("STATUS", "CHARACTER VARYING(20)", false, null),
+                column("UPDATED_AT", "TIMESTAMP", false, null),
+                column("UPDATED_BY", "CHARACTER VARYING(50)", false, null)));
+        // Unrelated filler tables in FK chains, shaped like the sample tables but sharing no vocabulary with it
+        for (int i = 0; i < FILLER_TABLES; i++) {
+            String parent = i % 5 == 0 ? null : "WAREHOUSE_" + (i - 1) + ".ID";
+            tables.put("WAREHOUSE_" + i, List.of(
+                    column("ID", "BIGINT", true, null),
+                    column("PARENT_ID", "BIGINT", false, parent),
+                    column("CODE", "CHARACTER VARYING(20)", false, null),
+                    column("DESCRIPTION", "CHARACTER VARYING(255)", false, null),
+                    column("CAPACITY", "NUMERIC(12, 3)", false, null),
+                    column("REGION", "CHARACTER VARYING(50)", false, null),
+                    column("CREATED_AT", "TIMESTAMP", false, null),
+                    column("UPDATED_AT", "TIMESTAMP", false, null),
+                    column("UPDATED_BY", "CHARACTER VARYING(50)", false, null)));
+        }
+        Map<String, String> rendered = new LinkedHashMap<>();
+        tables.forEach((name, columns) -> rendered.put(name, VerboseSchemaRenderer.render(name, columns)));
+        return new SchemaSnapshot(1, tables, rendered, String.join("\n", rendered.values()), Instant.now());
+    }
+
+    private static DatabaseSchemaService.ColumnInfo column(String name, String type, boolean primaryKey, String fkTarget) {
+        return new DatabaseSchemaService.ColumnInfo(name, type, 0, false, primaryKey,
+                fkTarget != null ? List.of(fkTarget) : null);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.mehrdad.querymind.service;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Hand-wired DatabaseSchemaService for tests and benchmarks that run against a plain DataSource, with the
+ * settings Spring would inject spelled out. The result cache is always disabled so every execution reaches the
+ * database, and unless incremental refresh is switched on every refresh re-reads the whole catalog.
+ */
+final class SchemaServiceFixture {
+
+    private final DataSourceRouter router;
+    private List<SchemaIntrospector> introspectors = List.of(new H2InformationSchemaIntrospector(),
+            new JdbcMetadataSchemaIntrospector());
+    private ApplicationEventPublisher eventPublisher = event -> { };
+    private ExecutionPolicy executionPolicy = new ExecutionPolicy(100, 100, DataSize.ofMegabytes(1),
+            Duration.ofSeconds(5), 50);
+    private int statementCacheSize = 16;
+    private boolean incrementalRefresh;
+    private int fullRefreshEvery;
+
+    private SchemaServiceFixture(DataSourceRouter router) {
+        this.router = router;
+    }
+
+    public static SchemaServiceFixture schemaService(DataSource dataSource) {
+        return schemaService(DataSourceRouter.direct(dataSource));
+    }
+
+    public static SchemaServiceFixture schemaService(DataSourceRouter router) {
+        return new SchemaServiceFixture(router);
+    }
+
+    public SchemaServiceFixture introspectors(SchemaIntrospector... introspectors) {
+        this.introspectors = List.of(introspectors);
+        return this;
+    }
+
+    public SchemaServiceFixture eventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+        return this;
+    }
+
+    public SchemaServiceFixture executionPolicy(ExecutionPolicy executionPolicy) {
+        this.executionPolicy = executionPolicy;
+        return this;
+    }
+
+    public SchemaServiceFixture statementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+        return this;
+    }
+
+    /**
+     * Refresh only tables whose catalog signature changed, with a full refresh every fullRefreshEvery'th call
+     * (0 for never)
+     */
+    public SchemaServiceFixture incrementalRefresh(int fullRefreshEvery) {
+        this.incrementalRefresh = true;
+        this.fullRefreshEvery = fullRefreshEvery;
+        return this;
+    }
+
+    public DatabaseSchemaService build() {
+        return new DatabaseSchemaService(router, introspectors, eventPublisher, executionPolicy,
+                new ResultCache(false, DataSize.ofMegabytes(1), DataSize.ofMegabytes(1), Duration.ZERO, ""),
+                new StatementCache(true, statementCacheSize), "auto", incrementalRefresh, fullRefreshEvery);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentCallersForTheSameKeyShareOneExecution() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 20;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("how many users", () -> {
+                    executions.incrementAndGet();
+                    await(release);
+                    return "SELECT COUNT(*) FROM USERS;";
+                })));
+            }
+            // Let every caller reach the in-flight future before the leader finishes
+            while (singleFlight.getCoalescedCount() < callers - 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("SELECT COUNT(*) FROM USERS;");
+            }
+        }
+
+        assertThat(executions.get()).isEqualTo(1);
+        assertThat(singleFlight.stats()).containsEntry("coalesced", (long) callers - 1).containsEntry("inFlight", 0);
+    }
+
+    @Test
+    void failuresAreSharedAndNotRemembered() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+        try {
+            singleFlight.execute("q", () -> { throw new IllegalStateException("provider down"); });
+        } catch (IllegalStateException expected) {
+            assertThat(expected).hasMessage("provider down");
+        }
+
+        assertThat(singleFlight.execute("q", () -> "SELECT 1;")).isEqualTo("SELECT 1;");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
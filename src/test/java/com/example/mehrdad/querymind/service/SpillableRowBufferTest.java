@@ -0,0 +1,60 @@
+package com.example.mehrdad.querymind.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpillableRowBufferTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void keepsSmallResultsInMemory(@TempDir Path dir) throws Exception {
+        try (SpillableRowBuffer buffer = new SpillableRowBuffer(objectMapper, 1024 * 1024, dir)) {
+            Object[] row = new Object[2];
+            for (int i = 0; i < 10; i++) {
+                row[0] = (long) i;
+                row[1] = "name-" + i;
+                buffer.add(row);
+            }
+            buffer.finish();
+
+            assertThat(buffer.isSpilled()).isFalse();
+            assertThat(objectMapper.writeValueAsString(buffer.page(8, 5))).isEqualTo("[[8,\"name-8\"],[9,\"name-9\"]]");
+        }
+    }
+
+    @Test
+    void spillsPastThresholdAndPagesFromTheFile(@TempDir Path dir) throws Exception {
+        int rows = SpillableRowBuffer.INDEX_INTERVAL * 3 + 17;
+        SpillableRowBuffer buffer = new SpillableRowBuffer(objectMapper, 4096, dir);
+        Object[] row = new Object[2];
+        for (int i = 0; i < rows; i++) {
+            row[0] = (long) i;
+            row[1] = "name \"" + i + "\"";
+            buffer.add(row);
+        }
+        buffer.finish();
+
+        assertThat(buffer.isSpilled()).isTrue();
+        assertThat(buffer.getRowCount()).isEqualTo(rows);
+        List<Object> page = buffer.page(SpillableRowBuffer.INDEX_INTERVAL * 2 + 5, 3);
+        int first = SpillableRowBuffer.INDEX_INTERVAL * 2 + 5;
+        assertThat(objectMapper.writeValueAsString(page)).isEqualTo("[[" + first + ",\"name \\\"" + first + "\\\"\"],"
+                + "[" + (first + 1) + ",\"name \\\"" + (first + 1) + "\\\"\"],"
+                + "[" + (first + 2) + ",\"name \\\"" + (first + 2) + "\\\"\"]]");
+        assertThat(buffer.page(rows - 1, 10)).hasSize(1);
+        assertThat(buffer.page(rows, 10)).isEmpty();
+
+        buffer.close();
+        try (var files = Files.list(dir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SqlParameterizerTest {
+
+    @Test
+    void statementsDifferingOnlyInComparedConstantsShareAShape() {
+        SqlParameterizer.Parameterized pending = SqlParameterizer.parameterize(
+                "select * from orders where status = 'PENDING' and total > 10.5;");
+        SqlParameterizer.Parameterized shipped = SqlParameterizer.parameterize(
+                "SELECT *  FROM orders\nWHERE status = 'SHIPPED' AND total > 99 -- recent");
+
+        assertThat(pending.shape()).isEqualTo("SELECT * FROM ORDERS WHERE STATUS = ? AND TOTAL > ?");
+        assertThat(shipped.shape()).isEqualTo(pending.shape());
+        assertThat(pending.parameters()).containsExactly("PENDING", new BigDecimal("10.5"));
+        assertThat(shipped.parameters()).containsExactly("SHIPPED", 99L);
+        assertThat(pending.key()).isNotEqualTo(shipped.key());
+        // What runs keeps the original text around the placeholders, so identifiers and labels keep their case
+        assertThat(pending.sql()).isEqualTo("select * from orders where status = ? and total > ?");
+        assertThat(shipped.sql()).isEqualTo("SELECT *  FROM orders\nWHERE status = ? AND total > ?");
+    }
+
+    @Test
+    void extractsInListsBetweenBoundsLikePatternsAndNegativeNumbers() {
+        SqlParameterizer.Parameterized statement = SqlParameterizer.parameterize(
+                "SELECT id FROM t WHERE a IN (1, 2, -3) AND b BETWEEN 5 AND 10 AND c LIKE 'x%' AND d <> 'it''s'");
+
+        assertThat(statement.shape())
+                .isEqualTo("SELECT ID FROM T WHERE A IN (?, ?, ?) AND B BETWEEN ? AND ? AND C LIKE ? AND D <> ?");
+        assertThat(statement.parameters()).containsExactly(1L, 2L, -3L, 5L, 10L, "x%", "it's");
+        assertThat(statement.sql())
+                .isEqualTo("SELECT id FROM t WHERE a IN (?, ?, ?) AND b BETWEEN ? AND ? AND c LIKE ? AND d <> ?");
+    }
+
+    @Test
+    void keepsLiteralsWhoseBindingCouldChangeMeaning() {
+        String sql = "SELECT 'a' AS tag, COUNT(*) FROM t WHERE d = DATE '2024-01-01' AND x IN (SELECT 1 FROM u) "
+                + "GROUP BY 1 ORDER BY 2 LIMIT 10";
+
+        SqlParameterizer.Parameterized statement = SqlParameterizer.parameterize(sql);
+
+        assertThat(statement.parameters()).isEmpty();
+        assertThat(statement.shape()).isEqualTo("SELECT 'a' AS TAG, COUNT(*) FROM T WHERE D = DATE '2024-01-01' "
+                + "AND X IN (SELECT 1 FROM U) GROUP BY 1 ORDER BY 2 LIMIT 10");
+        assertThat(SqlParameterizer.parameterize("SELECT * FROM t WHERE a = ? AND b = 1").parameters()).isEmpty();
+    }
+
+    @Test
+    void boundShapeReturnsTheSameRowsAsTheLiteralStatement() throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:h2:mem:parameterizer", "sa", "");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE orders (id BIGINT PRIMARY KEY, status VARCHAR(20), total DECIMAL(10,2), "
+                    + "created_at TIMESTAMP)");
+            stmt.execute("INSERT INTO orders VALUES (1, 'PENDING', 5.00, TIMESTAMP '2023-12-01 00:00:00'), "
+                    + "(2, 'PENDING', 50.00, TIMESTAMP '2024-02-01 00:00:00'), "
+                    + "(3, 'SHIPPED', 70.00, TIMESTAMP '2024-03-01 00:00:00')");
+
+            SqlParameterizer.Parameterized statement = SqlParameterizer.parameterize(
+                    "SELECT id FROM orders WHERE status = 'PENDING' AND total >= 10 "
+                            + "AND created_at > '2024-01-01' ORDER BY id");
+            try (PreparedStatement ps = statement.bind(conn.prepareStatement(statement.sql()));
+                 ResultSet rs = ps.executeQuery()) {
+                assertThat(rs.next()).isTrue();
+                assertThat(rs.getLong(1)).isEqualTo(2);
+                assertThat(rs.next()).isFalse();
+            }
+        }
+    }
+
+    @Test
+    void statementCacheCountsRepeatedShapes() {
+        StatementCache cache = new StatementCache(true, 16);
+
+        cache.parameterize("SELECT * FROM orders WHERE status = 'PENDING'");
+        cache.parameterize("SELECT * FROM orders WHERE status = 'SHIPPED'");
+        cache.parameterize("SELECT * FROM users WHERE id = 7");
+
+        assertThat(cache.stats()).containsEntry("repeatedShapes", 1L)
+                .containsEntry("distinctShapes", 2L)
+                .containsEntry("trackedShapes", 2L)
+                .doesNotContainKey("hitRate");
+    }
+}
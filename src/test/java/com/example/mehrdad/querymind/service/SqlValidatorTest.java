@@ -0,0 +1,75 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+
+import static com.example.mehrdad.querymind.service.SchemaFixture.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SqlValidatorTest {
+
+    private final SchemaSnapshot snapshot = schema()
+            .table("USERS", primaryKey("ID"), column("NAME"), column("AGE"))
+            // USER_ID has no declared key; it matches USERS.ID by name
+            .table("ORDERS", primaryKey("ID"), column("USER_ID"), column("STATUS"), column("ORDER_DATE"))
+            .table("ORDER_ITEMS", primaryKey("ID"), foreignKey("ORDER_ID", "ORDERS.ID"), column("QTY"))
+            .snapshot();
+
+    @Test
+    void statementsThatMatchTheSchemaPass() {
+        SqlValidator.Result result = SqlValidator.validate(
+                "SELECT u.name, COUNT(o.id) AS order_count FROM users u JOIN orders o ON o.user_id = u.id "
+                        + "WHERE o.status <> 'CANCELLED' GROUP BY u.name ORDER BY order_count DESC;", snapshot);
+
+        assertThat(result.valid()).isTrue();
+        assertThat(result.warnings()).isEmpty();
+        assertThat(SqlValidator.validate("SELECT i.qty FROM order_items i JOIN orders o ON i.order_id = o.id", snapshot)
+                .warnings()).isEmpty();
+    }
+
+    @Test
+    void unknownTablesAndColumnsAreErrors() {
+        assertThat(SqlValidator.validate("SELECT * FROM customers", snapshot).errors())
+                .containsExactly("Unknown table customers");
+        assertThat(SqlValidator.validate("SELECT u.nme FROM users u", snapshot).errors())
+                .containsExactly("Unknown column u.nme (USERS has no such column)");
+        assertThat(SqlValidator.validate("SELECT x.name FROM users u", snapshot).errors())
+                .containsExactly("Unknown table or alias x in x.name");
+        assertThat(SqlValidator.validate("SELECT name FROM users WHERE created_at > CURRENT_DATE", snapshot).errors())
+                .containsExactly("Unknown column created_at (not in USERS)");
+    }
+
+    @Test
+    void joinsOutsideKeyPairsAreWarnings() {
+        SqlValidator.Result result = SqlValidator.validate(
+                "SELECT u.name FROM users u JOIN orders o ON o.status = u.name", snapshot);
+
+        assertThat(result.valid()).isTrue();
+        assertThat(result.warnings())
+                .containsExactly("Join condition o.status = u.name does not follow a foreign key between ORDERS and USERS");
+    }
+
+    @Test
+    void namesTheStatementDefinesItselfAreAccepted() {
+        assertThat(SqlValidator.validate(
+                "SELECT EXTRACT(YEAR FROM o.order_date) yr, COUNT(*) n FROM orders o GROUP BY yr", snapshot).valid()).isTrue();
+        assertThat(SqlValidator.validate(
+                "WITH recent AS (SELECT * FROM orders WHERE status = 'NEW') SELECT r.id, r.total FROM recent r", snapshot).valid()).isTrue();
+        assertThat(SqlValidator.validate(
+                "SELECT CASE WHEN age > 30 THEN 'old' ELSE 'young' END bucket FROM users ORDER BY bucket", snapshot).valid()).isTrue();
+        assertThat(SqlValidator.validate(
+                "SELECT name FROM users WHERE id IN (SELECT user_id FROM orders) AND age IS NOT NULL", snapshot).valid()).isTrue();
+        // Not a query: left to the execution policy
+        assertThat(SqlValidator.validate("DELETE FROM customers", snapshot).valid()).isTrue();
+    }
+
+    @Test
+    void doubledQuotesStayInsideOneToken() {
+        assertThat(SqlTokenizer.tokenize("SELECT name FROM users WHERE name = 'O''Brien' -- it's him"))
+                .extracting(SqlTokenizer.Token::text)
+                .containsExactly("SELECT", "name", "FROM", "users", "WHERE", "name", "=", "'O''Brien'");
+        assertThat(SqlTokenizer.tokenize("SELECT \"SAY \"\"HI\"\"\" FROM users"))
+                .extracting(SqlTokenizer.Token::text)
+                .containsExactly("SELECT", "SAY \"HI\"", "FROM", "users");
+        assertThat(SqlValidator.validate("SELECT name FROM users WHERE name = 'O''Brien'", snapshot).valid()).isTrue();
+    }
+}
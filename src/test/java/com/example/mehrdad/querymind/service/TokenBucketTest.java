@@ -0,0 +1,38 @@
+package com.example.mehrdad.querymind.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    @Test
+    void servesBurstThenRefusesWhenNextTokenIsBeyondTimeout() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, 2);
+
+        assertThat(bucket.acquire(Duration.ZERO)).isTrue();
+        assertThat(bucket.acquire(Duration.ZERO)).isTrue();
+        assertThat(bucket.acquire(Duration.ofMillis(100))).isFalse();
+    }
+
+    @Test
+    void waitsForTheNextTokenWithinTimeout() throws Exception {
+        TokenBucket bucket = new TokenBucket(20, 1);
+        assertThat(bucket.acquire(Duration.ZERO)).isTrue();
+
+        long start = System.nanoTime();
+        assertThat(bucket.acquire(Duration.ofSeconds(1))).isTrue();
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(30));
+    }
+
+    @Test
+    void zeroRateIsUnlimited() throws Exception {
+        TokenBucket bucket = new TokenBucket(0, 1);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(bucket.acquire(Duration.ZERO)).isTrue();
+        }
+        assertThat(bucket.isUnlimited()).isTrue();
+    }
+}
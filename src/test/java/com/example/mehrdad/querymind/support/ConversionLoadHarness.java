@@ -0,0 +1,127 @@
+package com.example.mehrdad.querymind.support;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local load generator: fires a burst of distinct /api/query/convert requests at once and reports how the node coped,
+ * or pits a greedy client against a polite one to see whether the polite one still gets served.
+ */
+public final class ConversionLoadHarness {
+
+    private ConversionLoadHarness() {
+    }
+
+    public record Result(int requests, int succeeded, long wallMillis, int peakInFlightLlmCalls) {
+        public double throughputPerSecond() { return requests * 1000.0 / Math.max(1, wallMillis); }
+    }
+
+    public record ContentionResult(int greedyOk, int greedyRejected, boolean retryAfterSent,
+                                   int politeOk, int politeRejected, long politeP90Millis) {
+    }
+
+    public static Result burst(int port, int requests, StubChatModel llm) throws Exception {
+        llm.reset();
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        long start = System.nanoTime();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/query/convert"))
+                    .header("Content-Type", "application/json")
+                    .timeout(Duration.ofSeconds(60))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"text\":\"how many orders for user " + i + "\"}"))
+                    .build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        int succeeded = 0;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            if (response.get().statusCode() == 200) {
+                succeeded++;
+            }
+        }
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+        return new Result(requests, succeeded, wallMillis, llm.getPeakInFlight());
+    }
+
+    /**
+     * Runs greedyWorkers closed-loop workers under one API key that retry right away after a 429, while a polite
+     * client under another key sends politeRequests one after the other
+     */
+    public static ContentionResult contention(int port, int greedyWorkers, int politeRequests) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger greedyOk = new AtomicInteger();
+        AtomicInteger greedyRejected = new AtomicInteger();
+        AtomicBoolean retryAfterSent = new AtomicBoolean();
+        AtomicInteger sequence = new AtomicInteger();
+        try (ExecutorService greedy = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int w = 0; w < greedyWorkers; w++) {
+                greedy.submit(() -> {
+                    while (running.get()) {
+                        HttpResponse<String> response = client.send(convert(port, "greedy", sequence.incrementAndGet()),
+                                HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() == 200) {
+                            greedyOk.incrementAndGet();
+                        } else if (response.statusCode() == 429) {
+                            greedyRejected.incrementAndGet();
+                            if (response.headers().firstValue("Retry-After").isPresent()) {
+                                retryAfterSent.set(true);
+                            }
+                            Thread.sleep(5);
+                        }
+                    }
+                    return null;
+                });
+            }
+            // Let the greedy client fill its queue before the polite one shows up
+            Thread.sleep(300);
+
+            int politeOk = 0;
+            int politeRejected = 0;
+            List<Long> latencies = new ArrayList<>();
+            for (int i = 0; i < politeRequests; i++) {
+                long start = System.nanoTime();
+                HttpResponse<String> response = client.send(convert(port, "polite", sequence.incrementAndGet()),
+                        HttpResponse.BodyHandlers.ofString());
+                latencies.add((System.nanoTime() - start) / 1_000_000);
+                if (response.statusCode() == 200) {
+                    politeOk++;
+                } else if (response.statusCode() == 429) {
+                    politeRejected++;
+                }
+            }
+            running.set(false);
+            latencies.sort(null);
+            long p90 = latencies.get(Math.max(0, (int) Math.ceil(latencies.size() * 0.9) - 1));
+            return new ContentionResult(greedyOk.get(), greedyRejected.get(), retryAfterSent.get(),
+                    politeOk, politeRejected, p90);
+        }
+    }
+
+    private static HttpRequest convert(int port, String apiKey, int n) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/query/convert"))
+                .header("Content-Type", "application/json")
+                .header("X-API-Key", apiKey)
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"text\":\"how many orders for " + apiKey + " user " + n + "\"}"))
+                .build();
+    }
+}
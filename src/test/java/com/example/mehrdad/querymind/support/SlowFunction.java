@@ -0,0 +1,26 @@
+package com.example.mehrdad.querymind.support;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * H2 function that takes about a millisecond per call and counts its calls, so a statement over a few thousand rows
+ * runs long enough to be cancelled mid-execution. Register it with
+ * {@code CREATE ALIAS pause FOR 'com.example.mehrdad.querymind.support.SlowFunction.pause'}.
+ */
+public final class SlowFunction {
+
+    private static final AtomicInteger CALLS = new AtomicInteger();
+
+    private SlowFunction() {
+    }
+
+    public static int pause(int value) throws InterruptedException {
+        CALLS.incrementAndGet();
+        Thread.sleep(1);
+        return value;
+    }
+
+    public static int calls() {
+        return CALLS.get();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.mehrdad.querymind.support;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Offline stand-in for the Gemini ChatModel: answers after a fixed delay and tracks how many calls are in flight.
+ */
+public class StubChatModel implements ChatModel {
+
+    private final Duration latency;
+    private final Function<String, String> answer;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    public StubChatModel(Duration latency) {
+        this(latency, prompt -> "SELECT COUNT(*) AS cnt FROM orders;");
+    }
+
+    public StubChatModel(Duration latency, Function<String, String> answer) {
+        this.latency = latency;
+        this.answer = answer;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        calls.incrementAndGet();
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(latency.toMillis());
+            return new ChatResponse(List.of(new Generation(answer.apply(prompt.getContents()))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.just(call(prompt));
+    }
+
+    public ChatOptions getDefaultOptions() {
+        return null;
+    }
+
+    public int getCalls() { return calls.get(); }
+    public int getPeakInFlight() { return peakInFlight.get(); }
+
+    public void reset() {
+        calls.set(0);
+        peakInFlight.set(0);
+    }
+}